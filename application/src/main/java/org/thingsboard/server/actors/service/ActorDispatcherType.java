@@ -0,0 +1,34 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.actors.service;
+
+public enum ActorDispatcherType {
+
+    /**
+     * Single thread executor if the pool size is 1, work-stealing pool of the configured size otherwise.
+     */
+    AUTO,
+    /**
+     * Work-stealing pool in async (FIFO) mode. Pool size 0 means the number of available processors.
+     */
+    WORK_STEALING,
+    /**
+     * New virtual thread per mailbox run, so a blocked actor does not block the other actors of the dispatcher.
+     * Falls back to {@link #WORK_STEALING} if the JVM does not support virtual threads.
+     */
+    VIRTUAL
+
+}
@@ -21,11 +21,14 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.event.EventListener;
 import org.springframework.core.annotation.Order;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.thingsboard.common.util.ThingsBoardExecutors;
 import org.thingsboard.common.util.ThingsBoardThreadFactory;
 import org.thingsboard.server.actors.ActorSystemContext;
 import org.thingsboard.server.actors.DefaultTbActorSystem;
+import org.thingsboard.server.actors.TbActorMailboxStats;
+import org.thingsboard.server.actors.TbActorMailboxType;
 import org.thingsboard.server.actors.TbActorRef;
 import org.thingsboard.server.actors.TbActorSystem;
 import org.thingsboard.server.actors.TbActorSystemSettings;
@@ -33,13 +36,17 @@ import org.thingsboard.server.actors.app.AppActor;
 import org.thingsboard.server.actors.app.AppInitMsg;
 import org.thingsboard.server.actors.stats.StatsActor;
 import org.thingsboard.server.common.msg.queue.PartitionChangeMsg;
+import org.thingsboard.server.common.stats.StatsFactory;
 import org.thingsboard.server.queue.discovery.TbApplicationEventListener;
 import org.thingsboard.server.queue.discovery.event.PartitionChangeEvent;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Service
 @Slf4j
@@ -50,9 +57,14 @@ public class DefaultActorService extends TbApplicationEventListener<PartitionCha
     public static final String DEVICE_DISPATCHER_NAME = "device-dispatcher";
     public static final String RULE_DISPATCHER_NAME = "rule-dispatcher";
 
+    private static final String MAILBOX_STATS_KEY = "actorMailbox";
+
     @Autowired
     private ActorSystemContext actorContext;
 
+    @Autowired
+    private StatsFactory statsFactory;
+
     private TbActorSystem system;
 
     private TbActorRef appActor;
@@ -78,17 +90,53 @@ public class DefaultActorService extends TbApplicationEventListener<PartitionCha
     @Value("${actors.system.rule_dispatcher_pool_size:4}")
     private int ruleDispatcherSize;
 
+    @Value("${actors.system.app_dispatcher_type:AUTO}")
+    private ActorDispatcherType appDispatcherType;
+
+    @Value("${actors.system.tenant_dispatcher_type:AUTO}")
+    private ActorDispatcherType tenantDispatcherType;
+
+    @Value("${actors.system.device_dispatcher_type:AUTO}")
+    private ActorDispatcherType deviceDispatcherType;
+
+    @Value("${actors.system.rule_dispatcher_type:AUTO}")
+    private ActorDispatcherType ruleDispatcherType;
+
+    @Value("${actors.system.dispatcher_stats_enabled:false}")
+    private boolean dispatcherStatsEnabled;
+
+    @Value("${actors.system.mailbox.type:LINKED}")
+    private TbActorMailboxType mailboxType;
+
+    @Value("${actors.system.mailbox.capacity:0}")
+    private int mailboxCapacity;
+
+    @Value("${actors.statistics.mailbox_top_size:10}")
+    private int mailboxStatsTopSize;
+
+    @Value("${actors.statistics.enabled:true}")
+    private boolean statisticsEnabled;
+
+    private AtomicLong queuedMsgsGauge;
+    private AtomicLong maxQueueSizeGauge;
+    private AtomicLong droppedMsgsGauge;
+    private final List<InstrumentedDispatcherExecutor> instrumentedDispatchers = new CopyOnWriteArrayList<>();
+
     @PostConstruct
     public void initActorSystem() {
         log.info("Initializing actor system.");
         actorContext.setActorService(this);
-        TbActorSystemSettings settings = new TbActorSystemSettings(actorThroughput, schedulerPoolSize, maxActorInitAttempts);
+        TbActorSystemSettings settings = new TbActorSystemSettings(actorThroughput, schedulerPoolSize, maxActorInitAttempts,
+                mailboxType, mailboxCapacity);
         system = new DefaultTbActorSystem(settings);
+        queuedMsgsGauge = statsFactory.createGauge(MAILBOX_STATS_KEY, new AtomicLong(), "statsName", "queuedMsgs");
+        maxQueueSizeGauge = statsFactory.createGauge(MAILBOX_STATS_KEY, new AtomicLong(), "statsName", "maxQueueSize");
+        droppedMsgsGauge = statsFactory.createGauge(MAILBOX_STATS_KEY, new AtomicLong(), "statsName", "droppedMsgs");
 
-        system.createDispatcher(APP_DISPATCHER_NAME, initDispatcherExecutor(APP_DISPATCHER_NAME, appDispatcherSize));
-        system.createDispatcher(TENANT_DISPATCHER_NAME, initDispatcherExecutor(TENANT_DISPATCHER_NAME, tenantDispatcherSize));
-        system.createDispatcher(DEVICE_DISPATCHER_NAME, initDispatcherExecutor(DEVICE_DISPATCHER_NAME, deviceDispatcherSize));
-        system.createDispatcher(RULE_DISPATCHER_NAME, initDispatcherExecutor(RULE_DISPATCHER_NAME, ruleDispatcherSize));
+        system.createDispatcher(APP_DISPATCHER_NAME, initDispatcherExecutor(APP_DISPATCHER_NAME, appDispatcherType, appDispatcherSize));
+        system.createDispatcher(TENANT_DISPATCHER_NAME, initDispatcherExecutor(TENANT_DISPATCHER_NAME, tenantDispatcherType, tenantDispatcherSize));
+        system.createDispatcher(DEVICE_DISPATCHER_NAME, initDispatcherExecutor(DEVICE_DISPATCHER_NAME, deviceDispatcherType, deviceDispatcherSize));
+        system.createDispatcher(RULE_DISPATCHER_NAME, initDispatcherExecutor(RULE_DISPATCHER_NAME, ruleDispatcherType, ruleDispatcherSize));
 
         actorContext.setActorSystem(system);
 
@@ -101,6 +149,29 @@ public class DefaultActorService extends TbApplicationEventListener<PartitionCha
         log.info("Actor system initialized.");
     }
 
+    private ExecutorService initDispatcherExecutor(String dispatcherName, ActorDispatcherType dispatcherType, int poolSize) {
+        ExecutorService executor;
+        if (dispatcherType == ActorDispatcherType.VIRTUAL && ThingsBoardExecutors.isVirtualThreadSupported()) {
+            executor = ThingsBoardExecutors.newVirtualThreadPerTaskExecutor(dispatcherName);
+        } else if (dispatcherType == ActorDispatcherType.VIRTUAL || dispatcherType == ActorDispatcherType.WORK_STEALING) {
+            if (dispatcherType == ActorDispatcherType.VIRTUAL) {
+                log.warn("[{}] Virtual threads are not supported by the current JVM, going to use work-stealing pool", dispatcherName);
+            }
+            if (poolSize == 0) {
+                poolSize = Runtime.getRuntime().availableProcessors();
+            }
+            executor = ThingsBoardExecutors.newWorkStealingPool(poolSize, dispatcherName);
+        } else {
+            executor = initDispatcherExecutor(dispatcherName, poolSize);
+        }
+        if (dispatcherStatsEnabled) {
+            InstrumentedDispatcherExecutor instrumentedExecutor = new InstrumentedDispatcherExecutor(dispatcherName, executor, statsFactory);
+            instrumentedDispatchers.add(instrumentedExecutor);
+            executor = instrumentedExecutor;
+        }
+        return executor;
+    }
+
     private ExecutorService initDispatcherExecutor(String dispatcherName, int poolSize) {
         if (poolSize == 0) {
             int cores = Runtime.getRuntime().availableProcessors();
@@ -113,6 +184,36 @@ public class DefaultActorService extends TbApplicationEventListener<PartitionCha
         }
     }
 
+    @Scheduled(fixedDelayString = "${actors.statistics.dispatcher_print_interval_ms:60000}")
+    public void printDispatcherStats() {
+        if (statisticsEnabled) {
+            for (InstrumentedDispatcherExecutor executor : instrumentedDispatchers) {
+                InstrumentedDispatcherExecutor.DispatcherStats stats = executor.getAndResetStats();
+                if (stats.getTasks() > 0) {
+                    log.info("[{}] Dispatcher Stats: tasks [{}] avg queue wait [{}us] avg run [{}us] stolen tasks [{}]",
+                            executor.getDispatcherName(), stats.getTasks(), stats.getAvgQueueWaitMicros(), stats.getAvgRunMicros(), stats.getStolenTasks());
+                }
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${actors.statistics.mailbox_print_interval_ms:60000}")
+    public void printMailboxStats() {
+        if (statisticsEnabled && system != null) {
+            TbActorMailboxStats stats = system.getMailboxStats(mailboxStatsTopSize);
+            queuedMsgsGauge.set(stats.getQueuedMsgs());
+            maxQueueSizeGauge.set(stats.getMaxQueueSize());
+            droppedMsgsGauge.set(stats.getDroppedMsgs());
+            if (stats.getQueuedMsgs() > 0 || stats.getDroppedMsgs() > 0) {
+                log.info("Actor Mailbox Stats: actors [{}] queued [{}] max queue size [{}] of actor [{}] dropped [{}]",
+                        stats.getActors(), stats.getQueuedMsgs(), stats.getMaxQueueSize(), stats.getMaxQueueActorId(), stats.getDroppedMsgs());
+                if (!stats.getDeepestMailboxes().isEmpty()) {
+                    log.info("Actor Mailbox Stats: deepest mailboxes {}", stats.getDeepestMailboxes());
+                }
+            }
+        }
+    }
+
     @EventListener(ApplicationReadyEvent.class)
     @Order(value = 2)
     public void onApplicationEvent(ApplicationReadyEvent applicationReadyEvent) {
@@ -0,0 +1,128 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.actors.service;
+
+import io.micrometer.core.instrument.Timer;
+import lombok.Data;
+import lombok.Getter;
+import org.thingsboard.server.common.stats.StatsFactory;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Executor of the actor system dispatcher that measures how long the mailbox runs wait in the executor queue and how long they run.
+ */
+public class InstrumentedDispatcherExecutor extends AbstractExecutorService {
+
+    private static final String STATS_KEY = "actorDispatcher";
+
+    @Getter
+    private final String dispatcherName;
+    private final ExecutorService delegate;
+    private final Timer queueWaitTimer;
+    private final Timer runTimer;
+    private final AtomicLong stolenTasks;
+
+    private final LongAdder tasks = new LongAdder();
+    private final LongAdder queueWaitNanos = new LongAdder();
+    private final LongAdder runNanos = new LongAdder();
+    private long lastStealCount;
+
+    public InstrumentedDispatcherExecutor(String dispatcherName, ExecutorService delegate, StatsFactory statsFactory) {
+        this.dispatcherName = dispatcherName;
+        this.delegate = delegate;
+        this.queueWaitTimer = statsFactory.createTimer(STATS_KEY, "dispatcher", dispatcherName, "statsName", "queueWait");
+        this.runTimer = statsFactory.createTimer(STATS_KEY, "dispatcher", dispatcherName, "statsName", "run");
+        this.stolenTasks = statsFactory.createGauge(STATS_KEY, new AtomicLong(), "dispatcher", dispatcherName, "statsName", "stolenTasks");
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        long submitTs = System.nanoTime();
+        delegate.execute(() -> {
+            long startTs = System.nanoTime();
+            try {
+                command.run();
+            } finally {
+                long endTs = System.nanoTime();
+                tasks.increment();
+                queueWaitNanos.add(startTs - submitTs);
+                runNanos.add(endTs - startTs);
+                queueWaitTimer.record(startTs - submitTs, TimeUnit.NANOSECONDS);
+                runTimer.record(endTs - startTs, TimeUnit.NANOSECONDS);
+            }
+        });
+    }
+
+    /**
+     * Returns the stats collected since the previous call and resets them.
+     */
+    public synchronized DispatcherStats getAndResetStats() {
+        long taskCount = tasks.sumThenReset();
+        long waitNanos = queueWaitNanos.sumThenReset();
+        long runTotalNanos = runNanos.sumThenReset();
+        long stolen = 0;
+        if (delegate instanceof ForkJoinPool) {
+            long stealCount = ((ForkJoinPool) delegate).getStealCount();
+            stolen = stealCount - lastStealCount;
+            lastStealCount = stealCount;
+            stolenTasks.set(stealCount);
+        }
+        return new DispatcherStats(taskCount,
+                taskCount > 0 ? TimeUnit.NANOSECONDS.toMicros(waitNanos / taskCount) : 0,
+                taskCount > 0 ? TimeUnit.NANOSECONDS.toMicros(runTotalNanos / taskCount) : 0,
+                stolen);
+    }
+
+    @Override
+    public void shutdown() {
+        delegate.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        return delegate.shutdownNow();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return delegate.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return delegate.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return delegate.awaitTermination(timeout, unit);
+    }
+
+    @Data
+    public static class DispatcherStats {
+        private final long tasks;
+        private final long avgQueueWaitMicros;
+        private final long avgRunMicros;
+        private final long stolenTasks;
+    }
+}
@@ -15,6 +15,7 @@
  */
 package org.thingsboard.server.controller.plugin;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.BeanCreationNotAllowedException;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -40,6 +41,7 @@ import org.thingsboard.server.service.telemetry.SessionEvent;
 import org.thingsboard.server.service.telemetry.TelemetryWebSocketMsgEndpoint;
 import org.thingsboard.server.service.telemetry.TelemetryWebSocketService;
 import org.thingsboard.server.service.telemetry.TelemetryWebSocketSessionRef;
+import org.thingsboard.server.service.telemetry.TelemetryWebSocketUpdate;
 
 import javax.websocket.RemoteEndpoint;
 import javax.websocket.SendHandler;
@@ -49,12 +51,14 @@ import java.io.IOException;
 import java.net.URI;
 import java.nio.ByteBuffer;
 import java.security.InvalidParameterException;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.LinkedBlockingQueue;
 
 @Service
 @TbCoreComponent
@@ -80,6 +84,10 @@ public class TbWebSocketHandler extends TextWebSocketHandler implements Telemetr
     private int maxSessionsPerPublicUser;
     @Value("${server.ws.limits.max_queue_per_ws_session:1000}")
     private int maxMsgQueuePerSession;
+    @Value("${server.ws.conflation_enabled:false}")
+    private boolean conflationEnabled;
+    @Value("${server.ws.max_msgs_per_frame:1}")
+    private int maxMsgsPerFrame;
 
     @Value("${server.ws.limits.max_updates_per_session:}")
     private String perSessionUpdatesConfiguration;
@@ -195,8 +203,12 @@ public class TbWebSocketHandler extends TextWebSocketHandler implements Telemetr
         private final RemoteEndpoint.Async asyncRemote;
         private final TelemetryWebSocketSessionRef sessionRef;
 
-        private volatile boolean isSending = false;
-        private final Queue<String> msgQueue;
+        private boolean isSending = false;
+        private final Queue<PendingMsg> msgQueue = new ArrayDeque<>();
+        private final Map<Integer, PendingMsg> pendingUpdates = new HashMap<>();
+        private final int maxMsgQueuePerSession;
+        // The queued messages plus the time series points merged into the pending updates
+        private int queueSize;
 
         private volatile long lastActivityTime;
 
@@ -206,7 +218,7 @@ public class TbWebSocketHandler extends TextWebSocketHandler implements Telemetr
             Session nativeSession = ((NativeWebSocketSession) session).getNativeSession(Session.class);
             this.asyncRemote = nativeSession.getAsyncRemote();
             this.sessionRef = sessionRef;
-            this.msgQueue = new LinkedBlockingQueue<>(maxMsgQueuePerSession);
+            this.maxMsgQueuePerSession = maxMsgQueuePerSession;
             this.lastActivityTime = System.currentTimeMillis();
         }
 
@@ -226,31 +238,71 @@ public class TbWebSocketHandler extends TextWebSocketHandler implements Telemetr
             }
         }
 
-        synchronized void sendMsg(String msg) {
-            if (isSending) {
-                try {
-                    msgQueue.add(msg);
-                } catch (RuntimeException e) {
-                    if (log.isTraceEnabled()) {
-                        log.trace("[{}][{}] Session closed due to queue error", sessionRef.getSecurityCtx().getTenantId(), session.getId(), e);
-                    } else {
-                        log.info("[{}][{}] Session closed due to queue error", sessionRef.getSecurityCtx().getTenantId(), session.getId());
-                    }
-                    try {
-                        close(sessionRef, CloseStatus.POLICY_VIOLATION.withReason("Max pending updates limit reached!"));
-                    } catch (IOException ioe) {
-                        log.trace("[{}] Session transport error", session.getId(), ioe);
+        synchronized void sendMsg(int subscriptionId, String msg) {
+            // the following updates of the subscription must not be merged into the updates sent before this message
+            pendingUpdates.remove(subscriptionId);
+            enqueue(new PendingMsg(subscriptionId, msg, null));
+        }
+
+        /**
+         * While the previous message is being sent, merges the update into the pending update of the same subscription if possible.
+         * The merged time series points count against the queue limit, so the pending update of a stalled client can't grow unbounded.
+         */
+        synchronized void sendUpdate(TelemetryWebSocketUpdate update) {
+            if (conflationEnabled) {
+                PendingMsg pending = pendingUpdates.get(update.getSubscriptionId());
+                if (pending != null) {
+                    TelemetryWebSocketUpdate merged = pending.update.merge(update);
+                    if (merged != null) {
+                        int points = update.getPointsCount();
+                        if (points > 0 && queueSize >= maxMsgQueuePerSession) {
+                            closeOnQueueFull();
+                            return;
+                        }
+                        pending.update = merged;
+                        pending.size += points;
+                        queueSize += points;
+                        return;
                     }
                 }
+                PendingMsg msg = new PendingMsg(update.getSubscriptionId(), null, update);
+                pendingUpdates.put(update.getSubscriptionId(), msg);
+                enqueue(msg);
             } else {
+                enqueue(new PendingMsg(update.getSubscriptionId(), null, update));
+            }
+        }
+
+        private void enqueue(PendingMsg msg) {
+            if (queueSize >= maxMsgQueuePerSession) {
+                closeOnQueueFull();
+                return;
+            }
+            msgQueue.add(msg);
+            queueSize += msg.size;
+            if (!isSending) {
                 isSending = true;
-                sendMsgInternal(msg);
+                sendNextFrame();
             }
         }
 
-        private void sendMsgInternal(String msg) {
+        private void closeOnQueueFull() {
+            log.info("[{}][{}] Session closed due to queue error", sessionRef.getSecurityCtx().getTenantId(), session.getId());
             try {
-                this.asyncRemote.sendText(msg, this);
+                close(sessionRef, CloseStatus.POLICY_VIOLATION.withReason("Max pending updates limit reached!"));
+            } catch (IOException ioe) {
+                log.trace("[{}] Session transport error", session.getId(), ioe);
+            }
+        }
+
+        private void sendNextFrame() {
+            String frame = nextFrame();
+            if (frame == null) {
+                isSending = false;
+                return;
+            }
+            try {
+                this.asyncRemote.sendText(frame, this);
             } catch (Exception e) {
                 log.trace("[{}] Failed to send msg", session.getId(), e);
                 try {
@@ -261,8 +313,41 @@ public class TbWebSocketHandler extends TextWebSocketHandler implements Telemetr
             }
         }
 
+        /**
+         * Returns the next pending message or up to max messages per frame as a JSON array.
+         */
+        private String nextFrame() {
+            String first = null;
+            StringBuilder batch = null;
+            int count = 0;
+            while (count < maxMsgsPerFrame || count == 0) {
+                PendingMsg msg = msgQueue.poll();
+                if (msg == null) {
+                    break;
+                }
+                queueSize -= msg.size;
+                if (msg.update != null) {
+                    pendingUpdates.remove(msg.subscriptionId, msg);
+                }
+                String text = msg.encode();
+                if (text == null) {
+                    continue;
+                }
+                count++;
+                if (first == null) {
+                    first = text;
+                } else {
+                    if (batch == null) {
+                        batch = new StringBuilder(first.length() * maxMsgsPerFrame).append('[').append(first);
+                    }
+                    batch.append(',').append(text);
+                }
+            }
+            return batch != null ? batch.append(']').toString() : first;
+        }
+
         @Override
-        public void onResult(SendResult result) {
+        public synchronized void onResult(SendResult result) {
             if (!result.isOK()) {
                 log.trace("[{}] Failed to send msg", session.getId(), result.getException());
                 try {
@@ -272,11 +357,31 @@ public class TbWebSocketHandler extends TextWebSocketHandler implements Telemetr
                 }
             } else {
                 lastActivityTime = System.currentTimeMillis();
-                String msg = msgQueue.poll();
-                if (msg != null) {
-                    sendMsgInternal(msg);
-                } else {
-                    isSending = false;
+                sendNextFrame();
+            }
+        }
+
+        private class PendingMsg {
+            private final int subscriptionId;
+            private final String text;
+            private TelemetryWebSocketUpdate update;
+            private int size = 1;
+
+            PendingMsg(int subscriptionId, String text, TelemetryWebSocketUpdate update) {
+                this.subscriptionId = subscriptionId;
+                this.text = text;
+                this.update = update;
+            }
+
+            String encode() {
+                if (text != null) {
+                    return text;
+                }
+                try {
+                    return update.encode();
+                } catch (JsonProcessingException e) {
+                    log.warn("[{}][{}] Failed to encode update", session.getId(), subscriptionId, e);
+                    return null;
                 }
             }
         }
@@ -284,8 +389,24 @@ public class TbWebSocketHandler extends TextWebSocketHandler implements Telemetr
 
     @Override
     public void send(TelemetryWebSocketSessionRef sessionRef, int subscriptionId, String msg) throws IOException {
+        log.debug("[{}] Processing {}", sessionRef.getSessionId(), msg);
+        SessionMetaData sessionMd = getSessionToUpdate(sessionRef, subscriptionId);
+        if (sessionMd != null) {
+            sessionMd.sendMsg(subscriptionId, msg);
+        }
+    }
+
+    @Override
+    public void send(TelemetryWebSocketSessionRef sessionRef, TelemetryWebSocketUpdate update) throws IOException {
+        log.debug("[{}][{}] Processing update", sessionRef.getSessionId(), update.getSubscriptionId());
+        SessionMetaData sessionMd = getSessionToUpdate(sessionRef, update.getSubscriptionId());
+        if (sessionMd != null) {
+            sessionMd.sendUpdate(update);
+        }
+    }
+
+    private SessionMetaData getSessionToUpdate(TelemetryWebSocketSessionRef sessionRef, int subscriptionId) {
         String externalId = sessionRef.getSessionId();
-        log.debug("[{}] Processing {}", externalId, msg);
         String internalId = externalSessionMap.get(externalId);
         if (internalId != null) {
             SessionMetaData sessionMd = internalSessionMap.get(internalId);
@@ -296,21 +417,22 @@ public class TbWebSocketHandler extends TextWebSocketHandler implements Telemetr
                         if (blacklistedSessions.putIfAbsent(externalId, sessionRef) == null) {
                             log.info("[{}][{}][{}] Failed to process session update. Max session updates limit reached"
                                     , sessionRef.getSecurityCtx().getTenantId(), sessionRef.getSecurityCtx().getId(), externalId);
-                            sessionMd.sendMsg("{\"subscriptionId\":" + subscriptionId + ", \"errorCode\":" + ThingsboardErrorCode.TOO_MANY_UPDATES.getErrorCode() + ", \"errorMsg\":\"Too many updates!\"}");
+                            sessionMd.sendMsg(subscriptionId, "{\"subscriptionId\":" + subscriptionId + ", \"errorCode\":" + ThingsboardErrorCode.TOO_MANY_UPDATES.getErrorCode() + ", \"errorMsg\":\"Too many updates!\"}");
                         }
-                        return;
+                        return null;
                     } else {
                         log.debug("[{}][{}][{}] Session is no longer blacklisted.", sessionRef.getSecurityCtx().getTenantId(), sessionRef.getSecurityCtx().getId(), externalId);
                         blacklistedSessions.remove(externalId);
                     }
                 }
-                sessionMd.sendMsg(msg);
+                return sessionMd;
             } else {
                 log.warn("[{}][{}] Failed to find session by internal id", externalId, internalId);
             }
         } else {
             log.warn("[{}] Failed to find session by external id", externalId);
         }
+        return null;
     }
 
     @Override
@@ -55,6 +55,7 @@ import org.thingsboard.server.dao.tenant.TbTenantProfileCache;
 import org.thingsboard.server.dao.tenant.TenantService;
 import org.thingsboard.server.dao.timeseries.TimeseriesService;
 import org.thingsboard.server.dao.usagerecord.ApiUsageStateService;
+import org.thingsboard.server.gen.transport.TransportProtos.EntityUsageStatsProto;
 import org.thingsboard.server.gen.transport.TransportProtos.ToUsageStatsServiceMsg;
 import org.thingsboard.server.gen.transport.TransportProtos.UsageStatsKVProto;
 import org.thingsboard.server.queue.common.TbProtoQueueMsg;
@@ -164,18 +165,28 @@ public class DefaultTbApiUsageStateService extends TbApplicationEventListener<Pa
     public void process(TbProtoQueueMsg<ToUsageStatsServiceMsg> msg, TbCallback callback) {
         ToUsageStatsServiceMsg statsMsg = msg.getValue();
 
-        TenantId tenantId = new TenantId(new UUID(statsMsg.getTenantIdMSB(), statsMsg.getTenantIdLSB()));
-        EntityId entityId;
-        if (statsMsg.getCustomerIdMSB() != 0 && statsMsg.getCustomerIdLSB() != 0) {
-            entityId = new CustomerId(new UUID(statsMsg.getCustomerIdMSB(), statsMsg.getCustomerIdLSB()));
+        if (statsMsg.getEntityStatsCount() == 0) {
+            TenantId tenantId = new TenantId(new UUID(statsMsg.getTenantIdMSB(), statsMsg.getTenantIdLSB()));
+            EntityId entityId = toEntityId(tenantId, statsMsg.getCustomerIdMSB(), statsMsg.getCustomerIdLSB());
+            processEntityUsageStats(tenantId, entityId, statsMsg.getValuesList());
         } else {
-            entityId = tenantId;
+            for (EntityUsageStatsProto entityStats : statsMsg.getEntityStatsList()) {
+                TenantId tenantId = new TenantId(new UUID(entityStats.getTenantIdMSB(), entityStats.getTenantIdLSB()));
+                EntityId entityId = toEntityId(tenantId, entityStats.getCustomerIdMSB(), entityStats.getCustomerIdLSB());
+                processEntityUsageStats(tenantId, entityId, entityStats.getValuesList());
+            }
         }
-
-        processEntityUsageStats(tenantId, entityId, statsMsg.getValuesList());
         callback.onSuccess();
     }
 
+    private static EntityId toEntityId(TenantId tenantId, long customerIdMSB, long customerIdLSB) {
+        if (customerIdMSB != 0 && customerIdLSB != 0) {
+            return new CustomerId(new UUID(customerIdMSB, customerIdLSB));
+        } else {
+            return tenantId;
+        }
+    }
+
     private void processEntityUsageStats(TenantId tenantId, EntityId entityId, List<UsageStatsKVProto> values) {
         if (deletedEntities.contains(entityId)) return;
 
@@ -91,6 +91,8 @@ public class DefaultTbRuleEngineConsumerService extends AbstractConsumerService<
     private boolean statsEnabled;
     @Value("${queue.rule-engine.prometheus-stats.enabled:false}")
     boolean prometheusStatsEnabled;
+    @Value("${queue.rule-engine.pack-processing-threads:8}")
+    private int packProcessingThreads;
 
     private final StatsFactory statsFactory;
     private final TbRuleEngineSubmitStrategyFactory submitStrategyFactory;
@@ -104,6 +106,7 @@ public class DefaultTbRuleEngineConsumerService extends AbstractConsumerService<
     private final ConcurrentMap<String, TbRuleEngineConsumerStats> consumerStats = new ConcurrentHashMap<>();
     private final ConcurrentMap<String, TbTopicWithConsumerPerPartition> topicsConsumerPerPartition = new ConcurrentHashMap<>();
     final ExecutorService submitExecutor = Executors.newSingleThreadExecutor(ThingsBoardThreadFactory.forName("tb-rule-engine-consumer-submit"));
+    ExecutorService packProcessingExecutor;
     final ScheduledExecutorService repartitionExecutor = Executors.newScheduledThreadPool(1, ThingsBoardThreadFactory.forName("tb-rule-engine-consumer-repartition"));
 
     public DefaultTbRuleEngineConsumerService(TbRuleEngineProcessingStrategyFactory processingStrategyFactory,
@@ -131,6 +134,7 @@ public class DefaultTbRuleEngineConsumerService extends AbstractConsumerService<
     @PostConstruct
     public void init() {
         super.init("tb-rule-engine-consumer", "tb-rule-engine-notifications-consumer");
+        packProcessingExecutor = Executors.newFixedThreadPool(packProcessingThreads, ThingsBoardThreadFactory.forName("tb-rule-engine-pack-processing"));
         for (TbRuleEngineQueueConfiguration configuration : ruleEngineSettings.getQueues()) {
             consumerConfigurations.putIfAbsent(configuration.getName(), configuration);
             consumerStats.put(configuration.getName(), new TbRuleEngineConsumerStats(configuration.getName(), statsFactory));
@@ -146,6 +150,9 @@ public class DefaultTbRuleEngineConsumerService extends AbstractConsumerService<
     public void stop() {
         super.destroy();
         submitExecutor.shutdownNow();
+        if (packProcessingExecutor != null) {
+            packProcessingExecutor.shutdownNow();
+        }
         repartitionExecutor.shutdownNow();
         ruleEngineSettings.getQueues().forEach(config -> consumerConfigurations.put(config.getName(), config));
     }
@@ -247,45 +254,63 @@ public class DefaultTbRuleEngineConsumerService extends AbstractConsumerService<
 
     void consumerLoop(TbQueueConsumer<TbProtoQueueMsg<ToRuleEngineMsg>> consumer, TbRuleEngineQueueConfiguration configuration, TbRuleEngineConsumerStats stats, String threadSuffix) {
         updateCurrentThreadName(threadSuffix);
+        if (configuration.isPipelinedProcessing()) {
+            pipelinedConsumerLoop(consumer, configuration, stats, threadSuffix);
+            return;
+        }
         while (!stopped && !consumer.isStopped()) {
             try {
                 List<TbProtoQueueMsg<ToRuleEngineMsg>> msgs = consumer.poll(pollDuration);
                 if (msgs.isEmpty()) {
                     continue;
                 }
-                final TbRuleEngineSubmitStrategy submitStrategy = getSubmitStrategy(configuration);
-                final TbRuleEngineProcessingStrategy ackStrategy = getAckStrategy(configuration);
-                submitStrategy.init(msgs);
-                while (!stopped) {
-                    TbMsgPackProcessingContext ctx = new TbMsgPackProcessingContext(configuration.getName(), submitStrategy);
-                    submitStrategy.submitAttempt((id, msg) -> submitExecutor.submit(() -> submitMessage(configuration, stats, ctx, id, msg)));
-
-                    final boolean timeout = !ctx.await(configuration.getPackProcessingTimeout(), TimeUnit.MILLISECONDS);
-
-                    TbRuleEngineProcessingResult result = new TbRuleEngineProcessingResult(configuration.getName(), timeout, ctx);
-                    if (timeout) {
-                        printFirstOrAll(configuration, ctx, ctx.getPendingMap(), "Timeout");
-                    }
-                    if (!ctx.getFailedMap().isEmpty()) {
-                        printFirstOrAll(configuration, ctx, ctx.getFailedMap(), "Failed");
-                    }
-                    ctx.printProfilerStats();
-
-                    TbRuleEngineProcessingDecision decision = ackStrategy.analyze(result);
-                    if (statsEnabled) {
-                        stats.log(result, decision.isCommit());
+                processMsgs(msgs, configuration, stats, getSubmitStrategy(configuration), getAckStrategy(configuration));
+                consumer.commit();
+            } catch (Exception e) {
+                if (!stopped) {
+                    log.warn("Failed to process messages from queue.", e);
+                    try {
+                        Thread.sleep(pollDuration);
+                    } catch (InterruptedException e2) {
+                        log.trace("Failed to wait until the server has capacity to handle new requests", e2);
                     }
+                }
+            }
+        }
+        log.info("TB Rule Engine Consumer stopped.");
+    }
 
-                    ctx.cleanup();
-
-                    if (decision.isCommit()) {
-                        submitStrategy.stop();
-                        break;
+    /**
+     * Keeps polling while the previous packs are processed. Each pack is processed by the same submit and ack strategies
+     * as in the regular loop, but on the pack processing executor. The processed packs are committed in the order of the polls.
+     * A pack that fails with an exception is processed again, so its messages are committed only once the pack is processed.
+     */
+    void pipelinedConsumerLoop(TbQueueConsumer<TbProtoQueueMsg<ToRuleEngineMsg>> consumer, TbRuleEngineQueueConfiguration configuration, TbRuleEngineConsumerStats stats, String consumerName) {
+        TbRuleEngineMsgPackPipeline pipeline = new TbRuleEngineMsgPackPipeline(configuration.getMaxInFlightMsgs(),
+                stats.getInFlightMsgsGauge(consumerName), stats.getCommitLagGauge(consumerName));
+        while (!stopped && !consumer.isStopped()) {
+            try {
+                if (pipeline.isCommitRequired()) {
+                    Object position = pipeline.getCommitPosition();
+                    if (position != null) {
+                        consumer.commit(position);
                     } else {
-                        submitStrategy.update(decision.getReprocessMap());
+                        consumer.commit();
                     }
+                    pipeline.onCommit();
                 }
-                consumer.commit();
+                if (!pipeline.canPoll()) {
+                    pipeline.awaitWatermark(pollDuration, TimeUnit.MILLISECONDS);
+                    continue;
+                }
+                List<TbProtoQueueMsg<ToRuleEngineMsg>> msgs = consumer.poll(pollDuration);
+                if (msgs.isEmpty()) {
+                    continue;
+                }
+                final TbRuleEngineSubmitStrategy submitStrategy = getSubmitStrategy(configuration);
+                final TbRuleEngineProcessingStrategy ackStrategy = getAckStrategy(configuration);
+                TbRuleEngineMsgPackPipeline.Pack pack = pipeline.add(msgs.size(), consumer.getCommitPosition(), !submitStrategy.isPipeliningSupported());
+                pack.submit(packProcessingExecutor, () -> processPack(pack, msgs, configuration, stats, submitStrategy, ackStrategy));
             } catch (Exception e) {
                 if (!stopped) {
                     log.warn("Failed to process messages from queue.", e);
@@ -297,9 +322,73 @@ public class DefaultTbRuleEngineConsumerService extends AbstractConsumerService<
                 }
             }
         }
+        if (pipeline.getUncommittedMsgs() > 0) {
+            log.info("[{}] Consumer stopped with [{}] not committed messages.", consumerName, pipeline.getUncommittedMsgs());
+        }
         log.info("TB Rule Engine Consumer stopped.");
     }
 
+    private void processPack(TbRuleEngineMsgPackPipeline.Pack pack, List<TbProtoQueueMsg<ToRuleEngineMsg>> msgs, TbRuleEngineQueueConfiguration configuration,
+                             TbRuleEngineConsumerStats stats, TbRuleEngineSubmitStrategy submitStrategy, TbRuleEngineProcessingStrategy ackStrategy) {
+        while (!stopped) {
+            try {
+                processMsgs(msgs, configuration, stats, submitStrategy, ackStrategy);
+                if (!stopped) {
+                    pack.complete();
+                    return;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                if (!stopped) {
+                    log.warn("Failed to process messages from queue, going to process the pack again.", e);
+                    try {
+                        Thread.sleep(pollDuration);
+                    } catch (InterruptedException e2) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                }
+            }
+        }
+        pack.fail(new IllegalStateException("Pack processing was stopped"));
+    }
+
+    private void processMsgs(List<TbProtoQueueMsg<ToRuleEngineMsg>> msgs, TbRuleEngineQueueConfiguration configuration, TbRuleEngineConsumerStats stats,
+                             TbRuleEngineSubmitStrategy submitStrategy, TbRuleEngineProcessingStrategy ackStrategy) throws InterruptedException {
+        submitStrategy.init(msgs);
+        while (!stopped) {
+            TbMsgPackProcessingContext ctx = new TbMsgPackProcessingContext(configuration.getName(), submitStrategy);
+            submitStrategy.submitAttempt((id, msg) -> submitExecutor.submit(() -> submitMessage(configuration, stats, ctx, id, msg)));
+
+            final boolean timeout = !ctx.await(configuration.getPackProcessingTimeout(), TimeUnit.MILLISECONDS);
+
+            TbRuleEngineProcessingResult result = new TbRuleEngineProcessingResult(configuration.getName(), timeout, ctx);
+            if (timeout) {
+                printFirstOrAll(configuration, ctx, ctx.getPendingMap(), "Timeout");
+            }
+            if (!ctx.getFailedMap().isEmpty()) {
+                printFirstOrAll(configuration, ctx, ctx.getFailedMap(), "Failed");
+            }
+            ctx.printProfilerStats();
+
+            TbRuleEngineProcessingDecision decision = ackStrategy.analyze(result);
+            if (statsEnabled) {
+                stats.log(result, decision.isCommit());
+            }
+
+            ctx.cleanup();
+
+            if (decision.isCommit()) {
+                submitStrategy.stop();
+                break;
+            } else {
+                submitStrategy.update(decision.getReprocessMap());
+            }
+        }
+    }
+
     void updateCurrentThreadName(String threadSuffix) {
         String name = Thread.currentThread().getName();
         int spliteratorIndex = name.indexOf(THREAD_TOPIC_SEPARATOR);
@@ -30,6 +30,7 @@ import org.thingsboard.server.common.stats.StatsType;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Slf4j
 public class TbRuleEngineConsumerStats {
@@ -42,6 +43,8 @@ public class TbRuleEngineConsumerStats {
     public static final String FAILED_MSGS = "failedMsgs";
     public static final String SUCCESSFUL_ITERATIONS = "successfulIterations";
     public static final String FAILED_ITERATIONS = "failedIterations";
+    public static final String IN_FLIGHT_MSGS = "inFlightMsgs";
+    public static final String COMMIT_LAG = "commitLag";
 
     private final StatsFactory statsFactory;
 
@@ -60,6 +63,8 @@ public class TbRuleEngineConsumerStats {
     private final ConcurrentMap<UUID, TbTenantRuleEngineStats> tenantStats = new ConcurrentHashMap<>();
     private final ConcurrentMap<TenantId, Timer> tenantMsgProcessTimers = new ConcurrentHashMap<>();
     private final ConcurrentMap<TenantId, RuleEngineException> tenantExceptions = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, AtomicInteger> inFlightMsgsGauges = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, AtomicInteger> commitLagGauges = new ConcurrentHashMap<>();
 
     private final String queueName;
 
@@ -96,6 +101,25 @@ public class TbRuleEngineConsumerStats {
                 ));
     }
 
+    /**
+     * Number of messages that are submitted by the pipelined consumer and not processed yet.
+     */
+    public AtomicInteger getInFlightMsgsGauge(String consumerName) {
+        return inFlightMsgsGauges.computeIfAbsent(consumerName, name -> createPipelineGauge(name, IN_FLIGHT_MSGS));
+    }
+
+    /**
+     * Number of messages that are polled by the pipelined consumer and not committed yet.
+     */
+    public AtomicInteger getCommitLagGauge(String consumerName) {
+        return commitLagGauges.computeIfAbsent(consumerName, name -> createPipelineGauge(name, COMMIT_LAG));
+    }
+
+    private AtomicInteger createPipelineGauge(String consumerName, String statsName) {
+        return statsFactory.createGauge(StatsType.RULE_ENGINE.getName() + "." + queueName + ".pipeline", new AtomicInteger(),
+                "consumer", consumerName, "statsName", statsName);
+    }
+
     public void log(TbRuleEngineProcessingResult msg, boolean finalIterationForPack) {
         int success = msg.getSuccessMap().size();
         int pending = msg.getPendingMap().size();
@@ -157,6 +181,13 @@ public class TbRuleEngineConsumerStats {
             });
             log.info("[{}] Stats: {}", queueName, stats);
         }
+        if (!inFlightMsgsGauges.isEmpty()) {
+            int inFlight = inFlightMsgsGauges.values().stream().mapToInt(AtomicInteger::get).sum();
+            int commitLag = commitLagGauges.values().stream().mapToInt(AtomicInteger::get).sum();
+            if (inFlight > 0 || commitLag > 0) {
+                log.info("[{}] Pipeline stats: {} = [{}] {} = [{}]", queueName, IN_FLIGHT_MSGS, inFlight, COMMIT_LAG, commitLag);
+            }
+        }
     }
 
     public void reset() {
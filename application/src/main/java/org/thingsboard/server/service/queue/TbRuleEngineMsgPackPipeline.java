@@ -0,0 +1,171 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.service.queue;
+
+import org.thingsboard.server.queue.TbQueueConsumer;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tracks the packs of a single rule engine consumer that are polled but not committed yet.
+ * Packs may complete in any order, the completed watermark moves only over the contiguous completed packs.
+ * If the consumer supports {@link TbQueueConsumer#getCommitPosition()}, the messages behind the watermark are committed
+ * up to the position of the last completed pack. Otherwise the consumer is committed when the watermark reaches the poll position,
+ * since {@link TbQueueConsumer#commit()} acknowledges every message returned by the previous polls.
+ * Polling stops once maxUncommittedMsgs are polled, so the pipeline drains and the commit lag stays bounded.
+ * <p>
+ * Not thread safe except the {@link Pack} methods, all the other methods are called by the consumer thread.
+ */
+class TbRuleEngineMsgPackPipeline {
+
+    private final int maxUncommittedMsgs;
+    private final AtomicInteger inFlightMsgs;
+    private final AtomicInteger commitLag;
+    private final Deque<Pack> packs = new ArrayDeque<>();
+    private int uncommittedMsgs;
+    private int completedMsgs;
+    private Pack lastCompleted;
+
+    /**
+     * @param maxUncommittedMsgs if less than one, a single pack is polled at a time
+     */
+    TbRuleEngineMsgPackPipeline(int maxUncommittedMsgs, AtomicInteger inFlightMsgs, AtomicInteger commitLag) {
+        this.maxUncommittedMsgs = Math.max(1, maxUncommittedMsgs);
+        this.inFlightMsgs = inFlightMsgs;
+        this.commitLag = commitLag;
+        inFlightMsgs.set(0);
+        commitLag.set(0);
+    }
+
+    boolean canPoll() {
+        return uncommittedMsgs < maxUncommittedMsgs;
+    }
+
+    /**
+     * @param position commit position of the consumer right after the pack is polled, or null if not supported by the consumer
+     * @param ordered  whether the pack may be processed only after the previous pack is finished
+     */
+    Pack add(int size, Object position, boolean ordered) {
+        Pack pack = new Pack(size, position, ordered ? packs.peekLast() : null);
+        packs.addLast(pack);
+        uncommittedMsgs += size;
+        inFlightMsgs.addAndGet(size);
+        commitLag.set(uncommittedMsgs);
+        return pack;
+    }
+
+    /**
+     * Moves the watermark over the completed packs. A failed pack stops the watermark, so its messages are never committed.
+     *
+     * @return true if there are completed messages behind the watermark that may be committed
+     */
+    boolean isCommitRequired() {
+        while (!packs.isEmpty() && packs.peekFirst().isCompleted()) {
+            Pack pack = packs.pollFirst();
+            completedMsgs += pack.size;
+            lastCompleted = pack;
+        }
+        return completedMsgs > 0 && (packs.isEmpty() || lastCompleted.position != null);
+    }
+
+    /**
+     * @return position to commit the messages behind the watermark, or null if all polled messages should be committed
+     */
+    Object getCommitPosition() {
+        return packs.isEmpty() ? null : lastCompleted.position;
+    }
+
+    void onCommit() {
+        uncommittedMsgs -= completedMsgs;
+        completedMsgs = 0;
+        lastCompleted = null;
+        commitLag.set(uncommittedMsgs);
+    }
+
+    /**
+     * Waits for the oldest pack in flight to finish.
+     */
+    void awaitWatermark(long timeout, TimeUnit unit) throws InterruptedException {
+        Pack head = packs.peekFirst();
+        if (head != null) {
+            head.await(timeout, unit);
+        }
+    }
+
+    int getUncommittedMsgs() {
+        return uncommittedMsgs;
+    }
+
+    class Pack {
+        private final int size;
+        private final Object position;
+        private final CompletableFuture<Void> finished = new CompletableFuture<>();
+        private Pack previous;
+
+        private Pack(int size, Object position, Pack previous) {
+            this.size = size;
+            this.position = position;
+            this.previous = previous;
+        }
+
+        /**
+         * Executes the task once the previous pack is finished if the pack is ordered, or right away otherwise.
+         * Does not block the caller, so ordered packs do not hold the executor threads while waiting.
+         */
+        void submit(Executor executor, Runnable task) {
+            Pack previous = this.previous;
+            this.previous = null;
+            if (previous == null || previous.finished.isDone()) {
+                executor.execute(task);
+            } else {
+                previous.finished.whenComplete((result, error) -> executor.execute(task));
+            }
+        }
+
+        void complete() {
+            if (finished.complete(null)) {
+                inFlightMsgs.addAndGet(-size);
+            }
+        }
+
+        /**
+         * Releases the next ordered pack, but keeps the watermark before this pack.
+         */
+        void fail(Throwable t) {
+            if (finished.completeExceptionally(t)) {
+                inFlightMsgs.addAndGet(-size);
+            }
+        }
+
+        boolean isCompleted() {
+            return finished.isDone() && !finished.isCompletedExceptionally();
+        }
+
+        private void await(long timeout, TimeUnit unit) throws InterruptedException {
+            try {
+                finished.get(timeout, unit);
+            } catch (ExecutionException | TimeoutException ignored) {
+            }
+        }
+    }
+}
@@ -41,4 +41,9 @@ public class BurstTbRuleEngineSubmitStrategy extends AbstractTbRuleEngineSubmitS
     protected void doOnSuccess(UUID id) {
 
     }
+
+    @Override
+    public boolean isPipeliningSupported() {
+        return true;
+    }
 }
@@ -36,4 +36,11 @@ public interface TbRuleEngineSubmitStrategy {
     void onSuccess(UUID id);
 
     void stop();
+
+    /**
+     * @return true if the messages of the next pack may be submitted while the previous pack is still processed
+     */
+    default boolean isPipeliningSupported() {
+        return false;
+    }
 }
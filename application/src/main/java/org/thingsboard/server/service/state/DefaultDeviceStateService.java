@@ -81,6 +81,7 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 import static org.thingsboard.server.common.data.DataConstants.ACTIVITY_EVENT;
 import static org.thingsboard.server.common.data.DataConstants.CONNECT_EVENT;
@@ -106,6 +107,8 @@ public class DefaultDeviceStateService extends TbApplicationEventListener<Partit
     public static final List<String> PERSISTENT_ATTRIBUTES = Arrays.asList(ACTIVITY_STATE, LAST_CONNECT_TIME,
             LAST_DISCONNECT_TIME, LAST_ACTIVITY_TIME, INACTIVITY_ALARM_TIME, INACTIVITY_TIMEOUT);
 
+    private static final long INACTIVITY_TIMER_TICK_MS = TimeUnit.SECONDS.toMillis(1);
+
     private final TenantService tenantService;
     private final DeviceService deviceService;
     private final AttributesService attributesService;
@@ -131,10 +134,18 @@ public class DefaultDeviceStateService extends TbApplicationEventListener<Partit
     @Getter
     private int initFetchPackSize;
 
+    @Value("${state.activityPersistIntervalInSec:0}")
+    @Getter
+    private int activityPersistIntervalInSec;
+
     private ListeningScheduledExecutorService scheduledExecutor;
     private ExecutorService deviceStateExecutor;
     private final ConcurrentMap<TopicPartitionInfo, Set<DeviceId>> partitionedDevices = new ConcurrentHashMap<>();
     final ConcurrentMap<DeviceId, DeviceStateData> deviceStates = new ConcurrentHashMap<>();
+    // The last action of each device which state is being loaded, the next actions of the device are chained to it
+    final ConcurrentMap<DeviceId, ListenableFuture<DeviceStateData>> pendingStateActions = new ConcurrentHashMap<>();
+    final InactivityTimerWheel<DeviceId> inactivityTimers = new InactivityTimerWheel<>(INACTIVITY_TIMER_TICK_MS);
+    final ConcurrentMap<DeviceId, Long> pendingActivityTimes = new ConcurrentHashMap<>();
 
     final Queue<Set<TopicPartitionInfo>> subscribeQueue = new ConcurrentLinkedQueue<>();
 
@@ -161,10 +172,14 @@ public class DefaultDeviceStateService extends TbApplicationEventListener<Partit
         // Should be always single threaded due to absence of locks.
         scheduledExecutor = MoreExecutors.listeningDecorator(Executors.newSingleThreadScheduledExecutor(ThingsBoardThreadFactory.forName("device-state-scheduled")));
         scheduledExecutor.scheduleAtFixedRate(this::updateInactivityStateIfExpired, new Random().nextInt(defaultStateCheckIntervalInSec), defaultStateCheckIntervalInSec, TimeUnit.SECONDS);
+        if (activityPersistIntervalInSec > 0) {
+            scheduledExecutor.scheduleWithFixedDelay(this::flushPendingActivityTimes, activityPersistIntervalInSec, activityPersistIntervalInSec, TimeUnit.SECONDS);
+        }
     }
 
     @PreDestroy
     public void stop() {
+        flushPendingActivityTimes();
         if (deviceStateExecutor != null) {
             deviceStateExecutor.shutdownNow();
         }
@@ -176,36 +191,43 @@ public class DefaultDeviceStateService extends TbApplicationEventListener<Partit
     @Override
     public void onDeviceConnect(TenantId tenantId, DeviceId deviceId) {
         log.trace("on Device Connect [{}]", deviceId.getId());
-        DeviceStateData stateData = getOrFetchDeviceStateData(deviceId);
         long ts = System.currentTimeMillis();
-        stateData.getState().setLastConnectTime(ts);
-        save(deviceId, LAST_CONNECT_TIME, ts);
-        pushRuleEngineMessage(stateData, CONNECT_EVENT);
-        checkAndUpdateState(deviceId, stateData);
-        cleanDeviceStateIfBelongsExternalPartition(tenantId, deviceId);
+        withDeviceStateData(tenantId, deviceId, stateData -> {
+            flushPendingActivityTime(deviceId);
+            stateData.getState().setLastConnectTime(ts);
+            save(deviceId, LAST_CONNECT_TIME, ts);
+            pushRuleEngineMessage(stateData, CONNECT_EVENT);
+            checkAndUpdateState(deviceId, stateData);
+        });
     }
 
     @Override
     public void onDeviceActivity(TenantId tenantId, DeviceId deviceId, long lastReportedActivity) {
         log.trace("on Device Activity [{}], lastReportedActivity [{}]", deviceId.getId(), lastReportedActivity);
-        final DeviceStateData stateData = getOrFetchDeviceStateData(deviceId);
-        if (lastReportedActivity > 0 && lastReportedActivity > stateData.getState().getLastActivityTime()) {
-            updateActivityState(deviceId, stateData, lastReportedActivity);
-        }
-        cleanDeviceStateIfBelongsExternalPartition(tenantId, deviceId);
+        withDeviceStateData(tenantId, deviceId, stateData -> {
+            if (lastReportedActivity > 0 && lastReportedActivity > stateData.getState().getLastActivityTime()) {
+                updateActivityState(deviceId, stateData, lastReportedActivity);
+            }
+        });
     }
 
     void updateActivityState(DeviceId deviceId, DeviceStateData stateData, long lastReportedActivity) {
         log.trace("updateActivityState - fetched state {} for device {}, lastReportedActivity {}", stateData, deviceId, lastReportedActivity);
         if (stateData != null) {
-            save(deviceId, LAST_ACTIVITY_TIME, lastReportedActivity);
             DeviceState state = stateData.getState();
             state.setLastActivityTime(lastReportedActivity);
+            if (activityPersistIntervalInSec > 0 && state.isActive()) {
+                pendingActivityTimes.merge(deviceId, lastReportedActivity, Math::max);
+            } else {
+                pendingActivityTimes.remove(deviceId);
+                save(deviceId, LAST_ACTIVITY_TIME, lastReportedActivity);
+            }
             if (!state.isActive()) {
                 state.setActive(true);
                 save(deviceId, ACTIVITY_STATE, true);
                 pushRuleEngineMessage(stateData, ACTIVITY_EVENT);
             }
+            scheduleInactivityCheck(deviceId, stateData);
         } else {
             log.debug("updateActivityState - fetched state IN NULL for device {}, lastReportedActivity {}", deviceId, lastReportedActivity);
             cleanUpDeviceStateMap(deviceId);
@@ -214,12 +236,13 @@ public class DefaultDeviceStateService extends TbApplicationEventListener<Partit
 
     @Override
     public void onDeviceDisconnect(TenantId tenantId, DeviceId deviceId) {
-        DeviceStateData stateData = getOrFetchDeviceStateData(deviceId);
         long ts = System.currentTimeMillis();
-        stateData.getState().setLastDisconnectTime(ts);
-        save(deviceId, LAST_DISCONNECT_TIME, ts);
-        pushRuleEngineMessage(stateData, DISCONNECT_EVENT);
-        cleanDeviceStateIfBelongsExternalPartition(tenantId, deviceId);
+        withDeviceStateData(tenantId, deviceId, stateData -> {
+            flushPendingActivityTime(deviceId);
+            stateData.getState().setLastDisconnectTime(ts);
+            save(deviceId, LAST_DISCONNECT_TIME, ts);
+            pushRuleEngineMessage(stateData, DISCONNECT_EVENT);
+        });
     }
 
     @Override
@@ -228,10 +251,47 @@ public class DefaultDeviceStateService extends TbApplicationEventListener<Partit
             return;
         }
         log.trace("on Device Activity Timeout Update device id {} inactivityTimeout {}", deviceId, inactivityTimeout);
-        DeviceStateData stateData = getOrFetchDeviceStateData(deviceId);
-        stateData.getState().setInactivityTimeout(inactivityTimeout);
-        checkAndUpdateState(deviceId, stateData);
-        cleanDeviceStateIfBelongsExternalPartition(tenantId, deviceId);
+        withDeviceStateData(tenantId, deviceId, stateData -> {
+            stateData.getState().setInactivityTimeout(inactivityTimeout);
+            checkAndUpdateState(deviceId, stateData);
+        });
+    }
+
+    /**
+     * Runs the action in the caller thread if the state is already loaded, otherwise loads the state asynchronously
+     * and runs the action in the device state executor. The actions of a device that arrive while its state is loading
+     * are chained to the pending load, so they run one by one in the arrival order.
+     */
+    private void withDeviceStateData(TenantId tenantId, DeviceId deviceId, Consumer<DeviceStateData> action) {
+        DeviceStateData stateData = deviceStates.get(deviceId);
+        if (stateData != null && !pendingStateActions.containsKey(deviceId)) {
+            action.accept(stateData);
+            cleanDeviceStateIfBelongsExternalPartition(tenantId, deviceId);
+            return;
+        }
+        ListenableFuture<DeviceStateData> actionFuture = pendingStateActions.compute(deviceId, (id, pending) -> {
+            ListenableFuture<DeviceStateData> previous = pending != null ? pending : getOrFetchDeviceStateDataAsync(deviceId);
+            return Futures.transform(previous, fetchedStateData -> {
+                try {
+                    action.accept(fetchedStateData);
+                    cleanDeviceStateIfBelongsExternalPartition(tenantId, deviceId);
+                } catch (Exception e) {
+                    log.warn("[{}] Failed to process device state action!", deviceId, e);
+                }
+                return fetchedStateData;
+            }, deviceStateExecutor);
+        });
+        actionFuture.addListener(() -> pendingStateActions.remove(deviceId, actionFuture), MoreExecutors.directExecutor());
+        Futures.addCallback(actionFuture, new FutureCallback<DeviceStateData>() {
+            @Override
+            public void onSuccess(DeviceStateData fetchedStateData) {
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                log.warn("[{}] Failed to fetch device state!", deviceId, t);
+            }
+        }, MoreExecutors.directExecutor());
     }
 
     @Override
@@ -268,12 +328,22 @@ public class DefaultDeviceStateService extends TbApplicationEventListener<Partit
                             }
                         }, deviceStateExecutor);
                     } else if (proto.getUpdated()) {
-                        DeviceStateData stateData = getOrFetchDeviceStateData(device.getId());
-                        TbMsgMetaData md = new TbMsgMetaData();
-                        md.putValue("deviceName", device.getName());
-                        md.putValue("deviceType", device.getType());
-                        stateData.setMetaData(md);
-                        callback.onSuccess();
+                        Futures.addCallback(getOrFetchDeviceStateDataAsync(device.getId()), new FutureCallback<DeviceStateData>() {
+                            @Override
+                            public void onSuccess(DeviceStateData stateData) {
+                                TbMsgMetaData md = new TbMsgMetaData();
+                                md.putValue("deviceName", device.getName());
+                                md.putValue("deviceType", device.getType());
+                                stateData.setMetaData(md);
+                                callback.onSuccess();
+                            }
+
+                            @Override
+                            public void onFailure(Throwable t) {
+                                log.warn("[{}] Failed to update device state metadata", deviceId, t);
+                                callback.onFailure(t);
+                            }
+                        }, deviceStateExecutor);
                     }
                 } else {
                     //Device was probably deleted while message was in queue;
@@ -430,15 +500,33 @@ public class DefaultDeviceStateService extends TbApplicationEventListener<Partit
             //trying to fix activity state
             if (isActive(System.currentTimeMillis(), state.getState())) {
                 updateActivityState(deviceId, state, state.getState().getLastActivityTime());
+            } else {
+                scheduleInactivityCheck(deviceId, state);
             }
         }
     }
 
+    /**
+     * Puts the device to the inactivity timers if the inactivity event may be pushed for the current activity,
+     * otherwise removes it from the timers until the next activity.
+     */
+    void scheduleInactivityCheck(DeviceId deviceId, DeviceStateData stateData) {
+        DeviceState state = stateData.getState();
+        if (state.getLastInactivityAlarmTime() != 0L && state.getLastInactivityAlarmTime() >= state.getLastActivityTime()) {
+            inactivityTimers.cancel(deviceId);
+        } else {
+            long deadline = Math.max(state.getLastActivityTime() + state.getInactivityTimeout(),
+                    stateData.getDeviceCreationTime() + state.getInactivityTimeout() + 1);
+            inactivityTimers.schedule(deviceId, deadline);
+        }
+    }
+
     private void addDeviceUsingState(TopicPartitionInfo tpi, DeviceStateData state) {
         Set<DeviceId> deviceIds = partitionedDevices.get(tpi);
         if (deviceIds != null) {
             deviceIds.add(state.getDeviceId());
             deviceStates.put(state.getDeviceId(), state);
+            scheduleInactivityCheck(state.getDeviceId(), state);
         } else {
             log.debug("[{}] Device belongs to external partition {}", state.getDeviceId(), tpi.getFullTopicName());
             throw new RuntimeException("Device belongs to external partition " + tpi.getFullTopicName() + "!");
@@ -447,17 +535,15 @@ public class DefaultDeviceStateService extends TbApplicationEventListener<Partit
 
     void updateInactivityStateIfExpired() {
         final long ts = System.currentTimeMillis();
-        partitionedDevices.forEach((tpi, deviceIds) -> {
-            log.debug("Calculating state updates. tpi {} for {} devices", tpi.getFullTopicName(), deviceIds.size());
-            for (DeviceId deviceId : deviceIds) {
-                updateInactivityStateIfExpired(ts, deviceId);
+        List<DeviceId> expiredDeviceIds = inactivityTimers.pollExpired(ts);
+        log.debug("Calculating state updates for {} expired devices, {} devices are waiting for inactivity timeout",
+                expiredDeviceIds.size(), inactivityTimers.size());
+        for (DeviceId deviceId : expiredDeviceIds) {
+            DeviceStateData stateData = deviceStates.get(deviceId);
+            if (stateData != null) {
+                updateInactivityStateIfExpired(ts, deviceId, stateData);
             }
-        });
-    }
-
-    void updateInactivityStateIfExpired(long ts, DeviceId deviceId) {
-        DeviceStateData stateData = getOrFetchDeviceStateData(deviceId);
-        updateInactivityStateIfExpired(ts, deviceId, stateData);
+        }
     }
 
     void updateInactivityStateIfExpired(long ts, DeviceId deviceId, DeviceStateData stateData) {
@@ -465,12 +551,14 @@ public class DefaultDeviceStateService extends TbApplicationEventListener<Partit
         if (stateData != null) {
             DeviceState state = stateData.getState();
             if (!isActive(ts, state) && (state.getLastInactivityAlarmTime() == 0L || state.getLastInactivityAlarmTime() < state.getLastActivityTime()) && stateData.getDeviceCreationTime() + state.getInactivityTimeout() < ts) {
+                flushPendingActivityTime(deviceId);
                 state.setActive(false);
                 state.setLastInactivityAlarmTime(ts);
                 save(deviceId, INACTIVITY_ALARM_TIME, ts);
                 save(deviceId, ACTIVITY_STATE, false);
                 pushRuleEngineMessage(stateData, INACTIVITY_EVENT);
             }
+            scheduleInactivityCheck(deviceId, stateData);
         } else {
             log.debug("[{}] Device that belongs to other server is detected and removed.", deviceId);
             cleanUpDeviceStateMap(deviceId);
@@ -490,6 +578,32 @@ public class DefaultDeviceStateService extends TbApplicationEventListener<Partit
         return fetchDeviceStateData(deviceId);
     }
 
+    ListenableFuture<DeviceStateData> getOrFetchDeviceStateDataAsync(DeviceId deviceId) {
+        DeviceStateData deviceStateData = deviceStates.get(deviceId);
+        if (deviceStateData != null) {
+            return Futures.immediateFuture(deviceStateData);
+        }
+        return fetchDeviceStateDataAsync(deviceId);
+    }
+
+    ListenableFuture<DeviceStateData> fetchDeviceStateDataAsync(final DeviceId deviceId) {
+        ListenableFuture<Device> deviceFuture = deviceService.findDeviceByIdAsync(TenantId.SYS_TENANT_ID, deviceId);
+        return Futures.transformAsync(deviceFuture, device -> {
+            if (device == null) {
+                log.warn("[{}] Failed to fetch device by Id!", deviceId);
+                throw new RuntimeException("Failed to fetch device by Id " + deviceId);
+            }
+            return Futures.transform(fetchDeviceState(device), deviceStateData -> {
+                DeviceStateData existing = deviceStates.putIfAbsent(deviceId, deviceStateData);
+                if (existing != null) {
+                    return existing;
+                }
+                scheduleInactivityCheck(deviceId, deviceStateData);
+                return deviceStateData;
+            }, MoreExecutors.directExecutor());
+        }, deviceStateExecutor);
+    }
+
     DeviceStateData fetchDeviceStateData(final DeviceId deviceId) {
         final Device device = deviceService.findDeviceById(TenantId.SYS_TENANT_ID, deviceId);
         if (device == null) {
@@ -498,7 +612,11 @@ public class DefaultDeviceStateService extends TbApplicationEventListener<Partit
         }
         try {
             DeviceStateData deviceStateData = fetchDeviceState(device).get();
-            deviceStates.putIfAbsent(deviceId, deviceStateData);
+            DeviceStateData existing = deviceStates.putIfAbsent(deviceId, deviceStateData);
+            if (existing != null) {
+                return existing;
+            }
+            scheduleInactivityCheck(deviceId, deviceStateData);
             return deviceStateData;
         } catch (InterruptedException | ExecutionException e) {
             log.warn("[{}] Failed to fetch device state!", deviceId, e);
@@ -516,6 +634,7 @@ public class DefaultDeviceStateService extends TbApplicationEventListener<Partit
     }
 
     private void onDeviceDeleted(TenantId tenantId, DeviceId deviceId) {
+        pendingActivityTimes.remove(deviceId);
         cleanUpDeviceStateMap(deviceId);
         TopicPartitionInfo tpi = partitionService.resolve(ServiceType.TB_CORE, tenantId, deviceId);
         Set<DeviceId> deviceIdSet = partitionedDevices.get(tpi);
@@ -523,10 +642,35 @@ public class DefaultDeviceStateService extends TbApplicationEventListener<Partit
     }
 
     private void cleanUpDeviceStateMap(DeviceId deviceId) {
+        // The device may be handed off to another node, so its last activity is persisted before the state is dropped
+        flushPendingActivityTime(deviceId);
         deviceStates.remove(deviceId);
+        inactivityTimers.cancel(deviceId);
+    }
+
+    void flushPendingActivityTimes() {
+        if (pendingActivityTimes.isEmpty()) {
+            return;
+        }
+        int count = 0;
+        for (DeviceId deviceId : pendingActivityTimes.keySet()) {
+            if (flushPendingActivityTime(deviceId)) {
+                count++;
+            }
+        }
+        log.debug("Persisted last activity time of {} devices", count);
+    }
+
+    private boolean flushPendingActivityTime(DeviceId deviceId) {
+        Long lastActivityTime = pendingActivityTimes.remove(deviceId);
+        if (lastActivityTime != null) {
+            save(deviceId, LAST_ACTIVITY_TIME, lastActivityTime);
+            return true;
+        }
+        return false;
     }
 
-    private ListenableFuture<DeviceStateData> fetchDeviceState(Device device) {
+    ListenableFuture<DeviceStateData> fetchDeviceState(Device device) {
         ListenableFuture<DeviceStateData> future;
         if (persistToTelemetry) {
             ListenableFuture<List<TsKvEntry>> tsData = tsService.findLatest(TenantId.SYS_TENANT_ID, device.getId(), PERSISTENT_ATTRIBUTES);
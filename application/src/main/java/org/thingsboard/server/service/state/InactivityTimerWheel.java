@@ -0,0 +1,119 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.service.state;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Deadline ordered index of inactivity timers. Keys are grouped into buckets of tickDurationMs by their deadline,
+ * so polling touches only the buckets that are already expired instead of scanning every tracked key.
+ * A key belongs to one bucket at a time, rescheduling within the same bucket does not take the lock.
+ */
+class InactivityTimerWheel<K> {
+
+    private final long tickDurationMs;
+    private final ConcurrentMap<K, Long> keyTicks = new ConcurrentHashMap<>();
+    private final TreeMap<Long, Set<K>> buckets = new TreeMap<>();
+    private final Lock lock = new ReentrantLock();
+
+    InactivityTimerWheel(long tickDurationMs) {
+        if (tickDurationMs <= 0) {
+            throw new IllegalArgumentException("Tick duration must be positive: " + tickDurationMs);
+        }
+        this.tickDurationMs = tickDurationMs;
+    }
+
+    void schedule(K key, long deadlineTs) {
+        // The bucket is rounded up, so a polled key is always expired
+        long tick = Math.floorDiv(deadlineTs, tickDurationMs) + (Math.floorMod(deadlineTs, tickDurationMs) == 0 ? 0 : 1);
+        Long currentTick = keyTicks.get(key);
+        if (currentTick != null && currentTick == tick) {
+            return;
+        }
+        lock.lock();
+        try {
+            Long oldTick = keyTicks.put(key, tick);
+            if (oldTick != null) {
+                if (oldTick == tick) {
+                    return;
+                }
+                removeFromBucket(oldTick, key);
+            }
+            buckets.computeIfAbsent(tick, t -> new HashSet<>()).add(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void cancel(K key) {
+        if (!keyTicks.containsKey(key)) {
+            return;
+        }
+        lock.lock();
+        try {
+            Long oldTick = keyTicks.remove(key);
+            if (oldTick != null) {
+                removeFromBucket(oldTick, key);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes and returns the keys with deadline less than or equal to the given timestamp.
+     */
+    List<K> pollExpired(long ts) {
+        long currentTick = Math.floorDiv(ts, tickDurationMs);
+        List<K> expired = new ArrayList<>();
+        lock.lock();
+        try {
+            while (!buckets.isEmpty() && buckets.firstKey() <= currentTick) {
+                Map.Entry<Long, Set<K>> bucket = buckets.pollFirstEntry();
+                for (K key : bucket.getValue()) {
+                    keyTicks.remove(key);
+                    expired.add(key);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        return expired;
+    }
+
+    int size() {
+        return keyTicks.size();
+    }
+
+    private void removeFromBucket(long tick, K key) {
+        Set<K> keys = buckets.get(tick);
+        if (keys != null) {
+            keys.remove(key);
+            if (keys.isEmpty()) {
+                buckets.remove(tick);
+            }
+        }
+    }
+}
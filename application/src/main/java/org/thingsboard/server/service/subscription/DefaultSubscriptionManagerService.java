@@ -15,8 +15,10 @@
  */
 package org.thingsboard.server.service.subscription;
 
+import io.micrometer.core.instrument.DistributionSummary;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.thingsboard.common.util.DonAsynchron;
 import org.thingsboard.common.util.ThingsBoardThreadFactory;
@@ -38,6 +40,8 @@ import org.thingsboard.server.common.data.kv.TsKvEntry;
 import org.thingsboard.server.common.msg.queue.ServiceType;
 import org.thingsboard.server.common.msg.queue.TbCallback;
 import org.thingsboard.server.common.msg.queue.TopicPartitionInfo;
+import org.thingsboard.server.common.stats.DefaultCounter;
+import org.thingsboard.server.common.stats.StatsFactory;
 import org.thingsboard.server.dao.attributes.AttributesService;
 import org.thingsboard.server.dao.timeseries.TimeseriesService;
 import org.thingsboard.common.util.JacksonUtil;
@@ -62,24 +66,28 @@ import org.thingsboard.server.service.telemetry.sub.TelemetrySubscriptionUpdate;
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.function.Function;
-import java.util.function.Predicate;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
 
 @Slf4j
 @TbCoreComponent
 @Service
 public class DefaultSubscriptionManagerService extends TbApplicationEventListener<PartitionChangeEvent> implements SubscriptionManagerService {
 
+    private static final String STATS_KEY = "subscriptionManager";
+
     @Autowired
     private AttributesService attrService;
 
@@ -104,7 +112,13 @@ public class DefaultSubscriptionManagerService extends TbApplicationEventListene
     @Autowired
     private TbClusterService clusterService;
 
-    private final Map<EntityId, Set<TbSubscription>> subscriptionsByEntityId = new ConcurrentHashMap<>();
+    @Autowired
+    private StatsFactory statsFactory;
+
+    @Value("${server.ws.notifications_pack_size:1}")
+    private int notificationsPackSize;
+
+    private final Map<EntityId, TbEntitySubscriptions> subscriptionsByEntityId = new ConcurrentHashMap<>();
     private final Map<String, Map<Integer, TbSubscription>> subscriptionsByWsSessionId = new ConcurrentHashMap<>();
     private final ConcurrentMap<TopicPartitionInfo, Set<TbSubscription>> partitionedSubscriptions = new ConcurrentHashMap<>();
     private final Set<TopicPartitionInfo> currentPartitions = ConcurrentHashMap.newKeySet();
@@ -113,11 +127,20 @@ public class DefaultSubscriptionManagerService extends TbApplicationEventListene
     private String serviceId;
     private TbQueueProducer<TbProtoQueueMsg<ToCoreNotificationMsg>> toCoreNotificationsProducer;
 
+    private AtomicInteger subscriptionsCount;
+    private AtomicInteger entitiesCount;
+    private DistributionSummary fanOutSummary;
+    private DefaultCounter remoteNotificationsCounter;
+
     @PostConstruct
     public void initExecutor() {
         tsCallBackExecutor = Executors.newSingleThreadExecutor(ThingsBoardThreadFactory.forName("ts-sub-callback"));
         serviceId = serviceInfoProvider.getServiceId();
         toCoreNotificationsProducer = producerProvider.getTbCoreNotificationsMsgProducer();
+        subscriptionsCount = statsFactory.createGauge(STATS_KEY, new AtomicInteger(), "statsName", "subscriptions");
+        entitiesCount = statsFactory.createGauge(STATS_KEY, new AtomicInteger(), "statsName", "entities");
+        fanOutSummary = statsFactory.createDistributionSummary(STATS_KEY + ".fanOut");
+        remoteNotificationsCounter = statsFactory.createDefaultCounter(STATS_KEY + ".remoteNotifications");
     }
 
     @PreDestroy
@@ -140,8 +163,7 @@ public class DefaultSubscriptionManagerService extends TbApplicationEventListene
                     , subscription.getTenantId(), subscription.getEntityId(), tpi.getFullTopicName());
             callback.onFailure(new RuntimeException("Entity belongs to external partition " + tpi.getFullTopicName() + "!"));
         }
-        boolean newSubscription = subscriptionsByEntityId
-                .computeIfAbsent(subscription.getEntityId(), k -> ConcurrentHashMap.newKeySet()).add(subscription);
+        boolean newSubscription = addSubscriptionToEntityMap(subscription);
         subscriptionsByWsSessionId.computeIfAbsent(subscription.getSessionId(), k -> new ConcurrentHashMap<>()).put(subscription.getSubscriptionId(), subscription);
         if (newSubscription) {
             switch (subscription.getType()) {
@@ -205,24 +227,7 @@ public class DefaultSubscriptionManagerService extends TbApplicationEventListene
     @Override
     public void onTimeSeriesUpdate(TenantId tenantId, EntityId entityId, List<TsKvEntry> ts, TbCallback callback) {
         onLocalTelemetrySubUpdate(entityId,
-                s -> {
-                    if (TbSubscriptionType.TIMESERIES.equals(s.getType())) {
-                        return (TbTimeseriesSubscription) s;
-                    } else {
-                        return null;
-                    }
-                }, s -> true, s -> {
-                    List<TsKvEntry> subscriptionUpdate = null;
-                    for (TsKvEntry kv : ts) {
-                        if ((s.isAllKeys() || s.getKeyStates().containsKey((kv.getKey())))) {
-                            if (subscriptionUpdate == null) {
-                                subscriptionUpdate = new ArrayList<>();
-                            }
-                            subscriptionUpdate.add(kv);
-                        }
-                    }
-                    return subscriptionUpdate;
-                }, true);
+                (subscriptions, batch) -> subscriptions.matchTimeseries(ts, batch::onTelemetryUpdate), true);
         if (entityId.getEntityType() == EntityType.DEVICE) {
             updateDeviceInactivityTimeout(tenantId, entityId, ts);
         }
@@ -237,25 +242,12 @@ public class DefaultSubscriptionManagerService extends TbApplicationEventListene
     @Override
     public void onAttributesUpdate(TenantId tenantId, EntityId entityId, String scope, List<AttributeKvEntry> attributes, boolean notifyDevice, TbCallback callback) {
         onLocalTelemetrySubUpdate(entityId,
-                s -> {
-                    if (TbSubscriptionType.ATTRIBUTES.equals(s.getType())) {
-                        return (TbAttributeSubscription) s;
-                    } else {
-                        return null;
-                    }
-                },
-                s -> (TbAttributeSubscriptionScope.ANY_SCOPE.equals(s.getScope()) || scope.equals(s.getScope().name())),
-                s -> {
-                    List<TsKvEntry> subscriptionUpdate = null;
+                (subscriptions, batch) -> {
+                    List<TsKvEntry> entries = new ArrayList<>(attributes.size());
                     for (AttributeKvEntry kv : attributes) {
-                        if (s.isAllKeys() || s.getKeyStates().containsKey(kv.getKey())) {
-                            if (subscriptionUpdate == null) {
-                                subscriptionUpdate = new ArrayList<>();
-                            }
-                            subscriptionUpdate.add(new BasicTsKvEntry(kv.getLastUpdateTs(), kv));
-                        }
+                        entries.add(new BasicTsKvEntry(kv.getLastUpdateTs(), kv));
                     }
-                    return subscriptionUpdate;
+                    subscriptions.matchAttributes(scope, entries, batch::onTelemetryUpdate);
                 }, true);
         if (entityId.getEntityType() == EntityType.DEVICE) {
             if (TbAttributeSubscriptionScope.SERVER_SCOPE.name().equalsIgnoreCase(scope)) {
@@ -279,119 +271,80 @@ public class DefaultSubscriptionManagerService extends TbApplicationEventListene
 
     @Override
     public void onAlarmUpdate(TenantId tenantId, EntityId entityId, Alarm alarm, TbCallback callback) {
-        onLocalAlarmSubUpdate(entityId,
-                s -> {
-                    if (TbSubscriptionType.ALARMS.equals(s.getType())) {
-                        return (TbAlarmsSubscription) s;
-                    } else {
-                        return null;
-                    }
-                },
-                s -> alarm.getCreatedTime() >= s.getTs(),
-                s -> alarm,
-                false
-        );
+        onLocalAlarmSubUpdate(entityId, alarm, false);
         callback.onSuccess();
     }
 
     @Override
     public void onAlarmDeleted(TenantId tenantId, EntityId entityId, Alarm alarm, TbCallback callback) {
-        onLocalAlarmSubUpdate(entityId,
-                s -> {
-                    if (TbSubscriptionType.ALARMS.equals(s.getType())) {
-                        return (TbAlarmsSubscription) s;
-                    } else {
-                        return null;
-                    }
-                },
-                s -> alarm.getCreatedTime() >= s.getTs(),
-                s -> alarm,
-                true
-        );
+        onLocalAlarmSubUpdate(entityId, alarm, true);
         callback.onSuccess();
     }
 
     @Override
     public void onAttributesDelete(TenantId tenantId, EntityId entityId, String scope, List<String> keys, TbCallback callback) {
         onLocalTelemetrySubUpdate(entityId,
-                s -> {
-                    if (TbSubscriptionType.ATTRIBUTES.equals(s.getType())) {
-                        return (TbAttributeSubscription) s;
-                    } else {
-                        return null;
-                    }
-                },
-                s -> (TbAttributeSubscriptionScope.ANY_SCOPE.equals(s.getScope()) || scope.equals(s.getScope().name())),
-                s -> {
-                    List<TsKvEntry> subscriptionUpdate = null;
+                (subscriptions, batch) -> {
+                    List<TsKvEntry> entries = new ArrayList<>(keys.size());
                     for (String key : keys) {
-                        if (s.isAllKeys() || s.getKeyStates().containsKey(key)) {
-                            if (subscriptionUpdate == null) {
-                                subscriptionUpdate = new ArrayList<>();
-                            }
-                            subscriptionUpdate.add(new BasicTsKvEntry(0, new StringDataEntry(key, null)));
-                        }
+                        entries.add(new BasicTsKvEntry(0, new StringDataEntry(key, null)));
                     }
-                    return subscriptionUpdate;
+                    subscriptions.matchAttributes(scope, entries, batch::onTelemetryUpdate);
                 }, false);
         callback.onSuccess();
     }
 
-    private <T extends TbSubscription> void onLocalTelemetrySubUpdate(EntityId entityId,
-                                                                      Function<TbSubscription, T> castFunction,
-                                                                      Predicate<T> filterFunction,
-                                                                      Function<T, List<TsKvEntry>> processFunction,
-                                                                      boolean ignoreEmptyUpdates) {
-        Set<TbSubscription> entitySubscriptions = subscriptionsByEntityId.get(entityId);
+    private void onLocalTelemetrySubUpdate(EntityId entityId,
+                                           BiConsumer<TbEntitySubscriptions, SubscriptionUpdateBatch> matchFunction,
+                                           boolean ignoreEmptyUpdates) {
+        TbEntitySubscriptions entitySubscriptions = subscriptionsByEntityId.get(entityId);
         if (entitySubscriptions != null) {
-            entitySubscriptions.stream().map(castFunction).filter(Objects::nonNull).filter(filterFunction).forEach(s -> {
-                List<TsKvEntry> subscriptionUpdate = processFunction.apply(s);
-                if (subscriptionUpdate != null && !subscriptionUpdate.isEmpty()) {
-                    if (serviceId.equals(s.getServiceId())) {
-                        TelemetrySubscriptionUpdate update = new TelemetrySubscriptionUpdate(s.getSubscriptionId(), subscriptionUpdate);
-                        localSubscriptionService.onSubscriptionUpdate(s.getSessionId(), update, TbCallback.EMPTY);
-                    } else {
-                        TopicPartitionInfo tpi = partitionService.getNotificationsTopic(ServiceType.TB_CORE, s.getServiceId());
-                        toCoreNotificationsProducer.send(tpi, toProto(s, subscriptionUpdate, ignoreEmptyUpdates), null);
-                    }
-                }
-            });
+            SubscriptionUpdateBatch batch = new SubscriptionUpdateBatch(entityId, ignoreEmptyUpdates);
+            matchFunction.accept(entitySubscriptions, batch);
+            batch.send();
         } else {
             log.debug("[{}] No device subscriptions to process!", entityId);
         }
     }
 
-    private void onLocalAlarmSubUpdate(EntityId entityId,
-                                       Function<TbSubscription, TbAlarmsSubscription> castFunction,
-                                       Predicate<TbAlarmsSubscription> filterFunction,
-                                       Function<TbAlarmsSubscription, Alarm> processFunction, boolean deleted) {
-        Set<TbSubscription> entitySubscriptions = subscriptionsByEntityId.get(entityId);
+    private void onLocalAlarmSubUpdate(EntityId entityId, Alarm alarm, boolean deleted) {
+        TbEntitySubscriptions entitySubscriptions = subscriptionsByEntityId.get(entityId);
         if (entitySubscriptions != null) {
-            entitySubscriptions.stream().map(castFunction).filter(Objects::nonNull).filter(filterFunction).forEach(s -> {
-                Alarm alarm = processFunction.apply(s);
-                if (alarm != null) {
-                    if (serviceId.equals(s.getServiceId())) {
-                        AlarmSubscriptionUpdate update = new AlarmSubscriptionUpdate(s.getSubscriptionId(), alarm, deleted);
-                        localSubscriptionService.onSubscriptionUpdate(s.getSessionId(), update, TbCallback.EMPTY);
-                    } else {
-                        TopicPartitionInfo tpi = partitionService.getNotificationsTopic(ServiceType.TB_CORE, s.getServiceId());
-                        toCoreNotificationsProducer.send(tpi, toProto(s, alarm, deleted), null);
-                    }
-                }
-            });
+            SubscriptionUpdateBatch batch = new SubscriptionUpdateBatch(entityId, false);
+            batch.onAlarmUpdate(alarm, deleted, entitySubscriptions.getAlarmSubscriptions());
+            batch.send();
         } else {
             log.debug("[{}] No device subscriptions to process!", entityId);
         }
     }
 
-    private void removeSubscriptionFromEntityMap(TbSubscription sub) {
-        Set<TbSubscription> entitySubSet = subscriptionsByEntityId.get(sub.getEntityId());
-        if (entitySubSet != null) {
-            entitySubSet.remove(sub);
-            if (entitySubSet.isEmpty()) {
-                subscriptionsByEntityId.remove(sub.getEntityId());
+    private boolean addSubscriptionToEntityMap(TbSubscription subscription) {
+        AtomicBoolean added = new AtomicBoolean();
+        subscriptionsByEntityId.compute(subscription.getEntityId(), (entityId, entitySubscriptions) -> {
+            if (entitySubscriptions == null) {
+                entitySubscriptions = new TbEntitySubscriptions();
+                entitiesCount.incrementAndGet();
             }
+            added.set(entitySubscriptions.add(subscription));
+            return entitySubscriptions;
+        });
+        if (added.get()) {
+            subscriptionsCount.incrementAndGet();
         }
+        return added.get();
+    }
+
+    private void removeSubscriptionFromEntityMap(TbSubscription sub) {
+        subscriptionsByEntityId.computeIfPresent(sub.getEntityId(), (entityId, entitySubscriptions) -> {
+            if (entitySubscriptions.remove(sub)) {
+                subscriptionsCount.decrementAndGet();
+            }
+            if (entitySubscriptions.isEmpty()) {
+                entitiesCount.decrementAndGet();
+                return null;
+            }
+            return entitySubscriptions;
+        });
     }
 
     private void removeSubscriptionFromPartitionMap(TbSubscription sub) {
@@ -472,11 +425,19 @@ public class DefaultSubscriptionManagerService extends TbApplicationEventListene
     }
 
     private TbProtoQueueMsg<ToCoreNotificationMsg> toProto(TbSubscription subscription, List<TsKvEntry> updates, boolean ignoreEmptyUpdates) {
-        TbSubscriptionUpdateProto.Builder builder = TbSubscriptionUpdateProto.newBuilder();
+        return toProto(subscription.getEntityId(), LocalSubscriptionServiceMsgProto.newBuilder()
+                .setSubUpdate(toSubUpdateProto(subscription, toDataProto(updates, ignoreEmptyUpdates))).build());
+    }
 
-        builder.setSessionId(subscription.getSessionId());
-        builder.setSubscriptionId(subscription.getSubscriptionId());
+    private TbSubscriptionUpdateProto toSubUpdateProto(TbSubscription subscription, List<TbSubscriptionUpdateValueListProto> data) {
+        return TbSubscriptionUpdateProto.newBuilder()
+                .setSessionId(subscription.getSessionId())
+                .setSubscriptionId(subscription.getSubscriptionId())
+                .addAllData(data)
+                .build();
+    }
 
+    private List<TbSubscriptionUpdateValueListProto> toDataProto(List<TsKvEntry> updates, boolean ignoreEmptyUpdates) {
         Map<String, List<Object>> data = new TreeMap<>();
         for (TsKvEntry tsEntry : updates) {
             List<Object> values = data.computeIfAbsent(tsEntry.getKey(), k -> new ArrayList<>());
@@ -486,6 +447,7 @@ public class DefaultSubscriptionManagerService extends TbApplicationEventListene
             values.add(value);
         }
 
+        List<TbSubscriptionUpdateValueListProto> result = new ArrayList<>(data.size());
         data.forEach((key, value) -> {
             TbSubscriptionUpdateValueListProto.Builder dataBuilder = TbSubscriptionUpdateValueListProto.newBuilder();
             dataBuilder.setKey(key);
@@ -502,29 +464,127 @@ public class DefaultSubscriptionManagerService extends TbApplicationEventListene
                 dataBuilder.addTsValue(tsValueBuilder.build());
             }
             if (!ignoreEmptyUpdates || hasData) {
-                builder.addData(dataBuilder.build());
+                result.add(dataBuilder.build());
             }
         });
-
-        ToCoreNotificationMsg toCoreMsg = ToCoreNotificationMsg.newBuilder().setToLocalSubscriptionServiceMsg(
-                LocalSubscriptionServiceMsgProto.newBuilder().setSubUpdate(builder.build()).build())
-                .build();
-        return new TbProtoQueueMsg<>(subscription.getEntityId().getId(), toCoreMsg);
+        return result;
     }
 
-    private TbProtoQueueMsg<ToCoreNotificationMsg> toProto(TbSubscription subscription, Alarm alarm, boolean deleted) {
+    private TbAlarmSubscriptionUpdateProto toProto(TbSubscription subscription, String alarm, boolean deleted) {
         TbAlarmSubscriptionUpdateProto.Builder builder = TbAlarmSubscriptionUpdateProto.newBuilder();
 
         builder.setSessionId(subscription.getSessionId());
         builder.setSubscriptionId(subscription.getSubscriptionId());
-        builder.setAlarm(JacksonUtil.toString(alarm));
+        builder.setAlarm(alarm);
         builder.setDeleted(deleted);
+        return builder.build();
+    }
 
-        ToCoreNotificationMsg toCoreMsg = ToCoreNotificationMsg.newBuilder().setToLocalSubscriptionServiceMsg(
-                LocalSubscriptionServiceMsgProto.newBuilder()
-                        .setAlarmSubUpdate(builder.build()).build())
-                .build();
-        return new TbProtoQueueMsg<>(subscription.getEntityId().getId(), toCoreMsg);
+    private TbProtoQueueMsg<ToCoreNotificationMsg> toProto(EntityId entityId, LocalSubscriptionServiceMsgProto msg) {
+        ToCoreNotificationMsg toCoreMsg = ToCoreNotificationMsg.newBuilder().setToLocalSubscriptionServiceMsg(msg).build();
+        return new TbProtoQueueMsg<>(entityId.getId(), toCoreMsg);
+    }
+
+    /**
+     * Notifications produced by a single entity update. The data of each group of subscriptions with the same keys
+     * is converted once, and if the pack size is greater than one, the updates for the remote subscriptions
+     * are packed into a single notification per target service.
+     */
+    private class SubscriptionUpdateBatch {
+
+        private final EntityId entityId;
+        private final boolean ignoreEmptyUpdates;
+        private Map<String, LocalSubscriptionServiceMsgProto.Builder> remoteUpdates;
+        private int fanOut;
+
+        SubscriptionUpdateBatch(EntityId entityId, boolean ignoreEmptyUpdates) {
+            this.entityId = entityId;
+            this.ignoreEmptyUpdates = ignoreEmptyUpdates;
+        }
+
+        void onTelemetryUpdate(List<TsKvEntry> data, Collection<TbSubscription> subscriptions) {
+            if (data.isEmpty()) {
+                return;
+            }
+            // local subscriptions with the same keys share the update data and its encoded form
+            TelemetrySubscriptionUpdate localUpdate = null;
+            List<TbSubscriptionUpdateValueListProto> remoteData = null;
+            for (TbSubscription s : subscriptions) {
+                fanOut++;
+                if (serviceId.equals(s.getServiceId())) {
+                    if (localUpdate == null) {
+                        localUpdate = new TelemetrySubscriptionUpdate(s.getSubscriptionId(), data);
+                    }
+                    localSubscriptionService.onSubscriptionUpdate(s.getSessionId(), localUpdate.withSubscriptionId(s.getSubscriptionId()), TbCallback.EMPTY);
+                } else {
+                    if (remoteData == null) {
+                        remoteData = toDataProto(data, ignoreEmptyUpdates);
+                    }
+                    TbSubscriptionUpdateProto update = toSubUpdateProto(s, remoteData);
+                    if (notificationsPackSize > 1) {
+                        LocalSubscriptionServiceMsgProto.Builder builder = getRemoteUpdates(s.getServiceId()).addSubUpdates(update);
+                        sendIfFull(s.getServiceId(), builder);
+                    } else {
+                        sendRemote(s.getServiceId(), LocalSubscriptionServiceMsgProto.newBuilder().setSubUpdate(update));
+                    }
+                }
+            }
+        }
+
+        void onAlarmUpdate(Alarm alarm, boolean deleted, Collection<TbAlarmsSubscription> subscriptions) {
+            String alarmJson = null;
+            for (TbAlarmsSubscription s : subscriptions) {
+                if (alarm.getCreatedTime() < s.getTs()) {
+                    continue;
+                }
+                fanOut++;
+                if (serviceId.equals(s.getServiceId())) {
+                    AlarmSubscriptionUpdate update = new AlarmSubscriptionUpdate(s.getSubscriptionId(), alarm, deleted);
+                    localSubscriptionService.onSubscriptionUpdate(s.getSessionId(), update, TbCallback.EMPTY);
+                } else {
+                    if (alarmJson == null) {
+                        alarmJson = JacksonUtil.toString(alarm);
+                    }
+                    TbAlarmSubscriptionUpdateProto update = toProto(s, alarmJson, deleted);
+                    if (notificationsPackSize > 1) {
+                        LocalSubscriptionServiceMsgProto.Builder builder = getRemoteUpdates(s.getServiceId()).addAlarmSubUpdates(update);
+                        sendIfFull(s.getServiceId(), builder);
+                    } else {
+                        sendRemote(s.getServiceId(), LocalSubscriptionServiceMsgProto.newBuilder().setAlarmSubUpdate(update));
+                    }
+                }
+            }
+        }
+
+        void send() {
+            if (remoteUpdates != null) {
+                remoteUpdates.forEach(this::sendRemote);
+                remoteUpdates = null;
+            }
+            if (fanOut > 0) {
+                fanOutSummary.record(fanOut);
+            }
+        }
+
+        private LocalSubscriptionServiceMsgProto.Builder getRemoteUpdates(String targetServiceId) {
+            if (remoteUpdates == null) {
+                remoteUpdates = new HashMap<>();
+            }
+            return remoteUpdates.computeIfAbsent(targetServiceId, id -> LocalSubscriptionServiceMsgProto.newBuilder());
+        }
+
+        private void sendIfFull(String targetServiceId, LocalSubscriptionServiceMsgProto.Builder builder) {
+            if (builder.getSubUpdatesCount() + builder.getAlarmSubUpdatesCount() >= notificationsPackSize) {
+                remoteUpdates.remove(targetServiceId);
+                sendRemote(targetServiceId, builder);
+            }
+        }
+
+        private void sendRemote(String targetServiceId, LocalSubscriptionServiceMsgProto.Builder builder) {
+            TopicPartitionInfo tpi = partitionService.getNotificationsTopic(ServiceType.TB_CORE, targetServiceId);
+            toCoreNotificationsProducer.send(tpi, toProto(entityId, builder.build()), null);
+            remoteNotificationsCounter.increment();
+        }
     }
 
 }
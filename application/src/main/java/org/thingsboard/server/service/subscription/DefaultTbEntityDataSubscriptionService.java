@@ -29,6 +29,7 @@ import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.thingsboard.common.util.ThingsBoardThreadFactory;
 import org.thingsboard.server.common.data.id.CustomerId;
+import org.thingsboard.server.common.data.id.EntityId;
 import org.thingsboard.server.common.data.id.TenantId;
 import org.thingsboard.server.common.data.kv.BaseReadTsKvQuery;
 import org.thingsboard.server.common.data.kv.ReadTsKvQuery;
@@ -129,6 +130,10 @@ public class DefaultTbEntityDataSubscriptionService implements TbEntityDataSubsc
     private long dynamicPageLinkRefreshInterval;
     @Value("${server.ws.dynamic_page_link.refresh_pool_size:1}")
     private int dynamicPageLinkRefreshPoolSize;
+    @Value("${server.ws.dynamic_page_link.cache.enabled:false}")
+    private boolean dynamicQueryCacheEnabled;
+    @Value("${server.ws.dynamic_page_link.cache.max_age:0}")
+    private long dynamicQueryCacheMaxAge;
     @Value("${server.ws.max_entities_per_data_subscription:1000}")
     private int maxEntitiesPerDataSubscription;
     @Value("${server.ws.max_entities_per_alarm_subscription:1000}")
@@ -138,6 +143,7 @@ public class DefaultTbEntityDataSubscriptionService implements TbEntityDataSubsc
     private boolean tsInSqlDB;
     private String serviceId;
     private SubscriptionServiceStatistics stats = new SubscriptionServiceStatistics();
+    private TbDynamicQueryCache dynamicQueryCache;
 
     @PostConstruct
     public void initExecutor() {
@@ -150,6 +156,11 @@ public class DefaultTbEntityDataSubscriptionService implements TbEntityDataSubsc
         } else {
             scheduler = Executors.newScheduledThreadPool(dynamicPageLinkRefreshPoolSize, tbThreadFactory);
         }
+        if (dynamicQueryCacheEnabled) {
+            long refreshIntervalMs = TimeUnit.SECONDS.toMillis(dynamicPageLinkRefreshInterval);
+            dynamicQueryCache = new TbDynamicQueryCache(entityService, refreshIntervalMs, TimeUnit.SECONDS.toMillis(dynamicQueryCacheMaxAge));
+            scheduler.scheduleWithFixedDelay(dynamicQueryCache::cleanup, refreshIntervalMs, refreshIntervalMs, TimeUnit.MILLISECONDS);
+        }
     }
 
     @PreDestroy
@@ -300,6 +311,14 @@ public class DefaultTbEntityDataSubscriptionService implements TbEntityDataSubsc
         }
     }
 
+    @Override
+    public void onEntityStateChange(TenantId tenantId, EntityId entityId) {
+        if (dynamicQueryCache != null) {
+            log.trace("[{}][{}] Dropping cached dynamic query results", tenantId, entityId);
+            dynamicQueryCache.onEntityChange(tenantId);
+        }
+    }
+
     @Scheduled(fixedDelayString = "${server.ws.dynamic_page_link.stats:10000}")
     public void printStats() {
         int alarmQueryInvocationCntValue = stats.getAlarmQueryInvocationCnt().getAndSet(0);
@@ -317,6 +336,13 @@ public class DefaultTbEntityDataSubscriptionService implements TbEntityDataSubsc
                     dynamicQueryCnt, dynamicQueryInvocationCntValue, dynamicQueryInvocationTimeValue,
                     alarmQueryInvocationCntValue, alarmQueryInvocationTimeValue);
         }
+        if (dynamicQueryCache != null) {
+            int hits = dynamicQueryCache.getHitsAndReset();
+            int misses = dynamicQueryCache.getMissesAndReset();
+            if (hits > 0 || misses > 0) {
+                log.info("Dynamic query cache stats: hits = [{}], misses = [{}]", hits, misses);
+            }
+        }
     }
 
     private TbEntityDataSubCtx createSubCtx(TelemetryWebSocketSessionRef sessionRef, EntityDataCmd cmd) {
@@ -326,6 +352,7 @@ public class DefaultTbEntityDataSubscriptionService implements TbEntityDataSubsc
         if (cmd.getQuery() != null) {
             ctx.setAndResolveQuery(cmd.getQuery());
         }
+        ctx.setDynamicQueryCache(dynamicQueryCache);
         sessionSubs.put(cmd.getCmdId(), ctx);
         return ctx;
     }
@@ -337,6 +364,7 @@ public class DefaultTbEntityDataSubscriptionService implements TbEntityDataSubsc
         if (cmd.getQuery() != null) {
             ctx.setAndResolveQuery(cmd.getQuery());
         }
+        ctx.setDynamicQueryCache(dynamicQueryCache);
         sessionSubs.put(cmd.getCmdId(), ctx);
         return ctx;
     }
@@ -73,7 +73,7 @@ public abstract class TbAbstractDataSubCtx<T extends AbstractDataQuery<? extends
 
     protected synchronized void update() {
         long start = System.currentTimeMillis();
-        PageData<EntityData> newData = findEntityData();
+        PageData<EntityData> newData = findEntityData(0L);
         long end = System.currentTimeMillis();
         stats.getRegularQueryInvocationCnt().incrementAndGet();
         stats.getRegularQueryTimeSpent().addAndGet(end - start);
@@ -83,8 +83,13 @@ public abstract class TbAbstractDataSubCtx<T extends AbstractDataQuery<? extends
         } else {
             oldDataMap = Collections.emptyMap();
         }
-        Map<EntityId, EntityData> newDataMap = newData.getData().stream().collect(Collectors.toMap(EntityData::getEntityId, Function.identity(), (a,b)-> a));
-        if (oldDataMap.size() == newDataMap.size() && oldDataMap.keySet().equals(newDataMap.keySet())) {
+        Map<EntityId, EntityData> newDataMap = toDataMap(newData);
+        if (dynamicQueryCache != null && !isSameEntities(oldDataMap, newDataMap)) {
+            // The shared result may be fetched before this refresh, the latest values are sent to the client, so fetch them again
+            newData = findEntityData(start);
+            newDataMap = toDataMap(newData);
+        }
+        if (isSameEntities(oldDataMap, newDataMap)) {
             log.trace("[{}][{}] No updates to entity data found", sessionRef.getSessionId(), cmdId);
         } else {
             this.data = newData;
@@ -92,6 +97,23 @@ public abstract class TbAbstractDataSubCtx<T extends AbstractDataQuery<? extends
         }
     }
 
+    private PageData<EntityData> findEntityData(long notBefore) {
+        EntityDataQuery query = buildEntityDataQuery();
+        if (dynamicQueryCache != null && query == getQuery()) {
+            return dynamicQueryCache.findEntityData(getTenantId(), getCustomerId(), query, dynamicValues, notBefore);
+        } else {
+            return findEntityData();
+        }
+    }
+
+    private static Map<EntityId, EntityData> toDataMap(PageData<EntityData> data) {
+        return data.getData().stream().collect(Collectors.toMap(EntityData::getEntityId, Function.identity(), (a, b) -> a));
+    }
+
+    private static boolean isSameEntities(Map<EntityId, EntityData> oldDataMap, Map<EntityId, EntityData> newDataMap) {
+        return oldDataMap.size() == newDataMap.size() && oldDataMap.keySet().equals(newDataMap.keySet());
+    }
+
     protected abstract void doUpdate(Map<EntityId, EntityData> newDataMap);
 
     protected abstract EntityDataQuery buildEntityDataQuery();
@@ -0,0 +1,229 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.service.subscription;
+
+import com.google.common.util.concurrent.SettableFuture;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.thingsboard.common.util.JacksonUtil;
+import org.thingsboard.server.common.data.EntityType;
+import org.thingsboard.server.common.data.id.CustomerId;
+import org.thingsboard.server.common.data.id.EntityId;
+import org.thingsboard.server.common.data.id.TenantId;
+import org.thingsboard.server.common.data.page.PageData;
+import org.thingsboard.server.common.data.query.DynamicValue;
+import org.thingsboard.server.common.data.query.EntityCountQuery;
+import org.thingsboard.server.common.data.query.EntityData;
+import org.thingsboard.server.common.data.query.EntityDataQuery;
+import org.thingsboard.server.common.data.query.EntityDataSortOrder;
+import org.thingsboard.server.common.data.query.EntityFilter;
+import org.thingsboard.server.common.data.query.EntityKeyType;
+import org.thingsboard.server.common.data.query.EntityListFilter;
+import org.thingsboard.server.common.data.query.EntityNameFilter;
+import org.thingsboard.server.common.data.query.EntityTypeFilter;
+import org.thingsboard.server.common.data.query.KeyFilter;
+import org.thingsboard.server.common.data.query.SingleEntityFilter;
+import org.thingsboard.server.common.data.query.TsValue;
+import org.thingsboard.server.dao.entity.EntityService;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Shares the results of the dynamic queries between the subscriptions with identical queries.
+ * <p>
+ * The query is executed once and the result is reused while it is younger than the refresh interval,
+ * the concurrent refreshes of the same query wait for the single execution. The results of the queries
+ * of the tenant users that depend only on the device fields are kept up to the max age and dropped on the lifecycle events
+ * of the tenant entities instead.
+ */
+@Slf4j
+public class TbDynamicQueryCache {
+
+    private final EntityService entityService;
+    private final long ttlMs;
+    private final long maxAgeMs;
+    private final ConcurrentMap<QueryKey, QueryResult> results = new ConcurrentHashMap<>();
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+
+    public TbDynamicQueryCache(EntityService entityService, long ttlMs, long maxAgeMs) {
+        this.entityService = entityService;
+        this.ttlMs = ttlMs;
+        this.maxAgeMs = Math.max(ttlMs, maxAgeMs);
+    }
+
+    /**
+     * Returns the result fetched after the notBefore time, executing the query if there is no such result.
+     * The returned page is a copy that the caller may modify.
+     */
+    public PageData<EntityData> findEntityData(TenantId tenantId, CustomerId customerId, EntityDataQuery query,
+                                               Map<TbAbstractSubCtx.DynamicValueKey, List<DynamicValue>> dynamicValues, long notBefore) {
+        QueryKey key = new QueryKey(tenantId, customerId, false, toKeyString(query, dynamicValues));
+        PageData<EntityData> result = get(key, isEntityFieldsQuery(customerId, query, query.getPageLink().getSortOrder()), notBefore,
+                () -> entityService.findEntityDataByQuery(tenantId, customerId, query));
+        return copyOf(result);
+    }
+
+    public long countEntities(TenantId tenantId, CustomerId customerId, EntityCountQuery query,
+                              Map<TbAbstractSubCtx.DynamicValueKey, List<DynamicValue>> dynamicValues) {
+        QueryKey key = new QueryKey(tenantId, customerId, true, toKeyString(query, dynamicValues));
+        return get(key, isEntityFieldsQuery(customerId, query, null), 0L,
+                () -> entityService.countEntitiesByQuery(tenantId, customerId, query));
+    }
+
+    /**
+     * Drops the results of the tenant that depend on the entity fields, the lifecycle events are broadcast to all nodes.
+     */
+    public void onEntityChange(TenantId tenantId) {
+        results.entrySet().removeIf(entry -> entry.getKey().getTenantId().equals(tenantId) && entry.getValue().isEntityFieldsOnly());
+    }
+
+    public void cleanup() {
+        long now = System.currentTimeMillis();
+        results.values().removeIf(result -> result.isExpired(now));
+    }
+
+    public int getHitsAndReset() {
+        return hits.getAndSet(0);
+    }
+
+    public int getMissesAndReset() {
+        return misses.getAndSet(0);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T get(QueryKey key, boolean entityFieldsOnly, long notBefore, Supplier<T> query) {
+        long now = System.currentTimeMillis();
+        QueryResult candidate = new QueryResult(now, now + (entityFieldsOnly ? maxAgeMs : ttlMs), entityFieldsOnly);
+        QueryResult result = results.compute(key, (k, existing) ->
+                existing != null && !existing.isExpired(now) && existing.getCreatedTs() >= notBefore ? existing : candidate);
+        if (result == candidate) {
+            misses.incrementAndGet();
+            try {
+                T value = query.get();
+                result.getFuture().set(value);
+                return value;
+            } catch (RuntimeException e) {
+                results.remove(key, result);
+                result.getFuture().setException(e);
+                throw e;
+            }
+        }
+        hits.incrementAndGet();
+        try {
+            return (T) result.getFuture().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : new RuntimeException(e.getCause());
+        }
+    }
+
+    private static String toKeyString(EntityCountQuery query, Map<TbAbstractSubCtx.DynamicValueKey, List<DynamicValue>> dynamicValues) {
+        String result = query.getClass().getSimpleName() + JacksonUtil.toString(query);
+        if (dynamicValues != null && !dynamicValues.isEmpty()) {
+            Map<String, Object> resolvedValues = new TreeMap<>();
+            dynamicValues.forEach((key, values) -> resolvedValues.put(key.toString(), values.isEmpty() ? null : values.get(0).getResolvedValue()));
+            result += resolvedValues;
+        }
+        return result;
+    }
+
+    /**
+     * Checks that the query result depends only on the device fields, which changes are broadcast as lifecycle events.
+     * The customer queries are excluded, since assigning a device to a customer is not broadcast as a lifecycle event.
+     */
+    static boolean isEntityFieldsQuery(CustomerId customerId, EntityCountQuery query, EntityDataSortOrder sortOrder) {
+        if (customerId != null && !customerId.isNullUid()) {
+            return false;
+        }
+        if (query.getKeyFilters() != null) {
+            for (KeyFilter keyFilter : query.getKeyFilters()) {
+                if (keyFilter.getKey().getType() != EntityKeyType.ENTITY_FIELD) {
+                    return false;
+                }
+            }
+        }
+        if (sortOrder != null && sortOrder.getKey() != null && sortOrder.getKey().getType() != EntityKeyType.ENTITY_FIELD) {
+            return false;
+        }
+        EntityFilter filter = query.getEntityFilter();
+        if (filter == null) {
+            return false;
+        }
+        switch (filter.getType()) {
+            case DEVICE_TYPE:
+                return true;
+            case ENTITY_TYPE:
+                return ((EntityTypeFilter) filter).getEntityType() == EntityType.DEVICE;
+            case ENTITY_NAME:
+                return ((EntityNameFilter) filter).getEntityType() == EntityType.DEVICE;
+            case ENTITY_LIST:
+                return ((EntityListFilter) filter).getEntityType() == EntityType.DEVICE;
+            case SINGLE_ENTITY:
+                EntityId singleEntity = ((SingleEntityFilter) filter).getSingleEntity();
+                return singleEntity != null && singleEntity.getEntityType() == EntityType.DEVICE;
+            default:
+                return false;
+        }
+    }
+
+    private static PageData<EntityData> copyOf(PageData<EntityData> page) {
+        List<EntityData> data = new ArrayList<>(page.getData().size());
+        for (EntityData entityData : page.getData()) {
+            Map<EntityKeyType, Map<String, TsValue>> latest = null;
+            if (entityData.getLatest() != null) {
+                latest = new HashMap<>();
+                for (Map.Entry<EntityKeyType, Map<String, TsValue>> entry : entityData.getLatest().entrySet()) {
+                    latest.put(entry.getKey(), new HashMap<>(entry.getValue()));
+                }
+            }
+            Map<String, TsValue[]> timeseries = entityData.getTimeseries() != null ? new HashMap<>(entityData.getTimeseries()) : null;
+            data.add(new EntityData(entityData.getEntityId(), latest, timeseries));
+        }
+        return new PageData<>(data, page.getTotalPages(), page.getTotalElements(), page.hasNext());
+    }
+
+    @Data
+    private static class QueryKey {
+        private final TenantId tenantId;
+        private final CustomerId customerId;
+        private final boolean count;
+        private final String query;
+    }
+
+    @Data
+    private static class QueryResult {
+        private final long createdTs;
+        private final long expirationTs;
+        private final boolean entityFieldsOnly;
+        private final SettableFuture<Object> future = SettableFuture.create();
+
+        boolean isExpired(long now) {
+            return now >= expirationTs;
+        }
+    }
+}
@@ -45,7 +45,9 @@ public class TbEntityCountSubCtx extends TbAbstractSubCtx<EntityCountQuery> {
 
     @Override
     protected void update() {
-        int newCount = (int) entityService.countEntitiesByQuery(getTenantId(), getCustomerId(), query);
+        int newCount = (int) (dynamicQueryCache != null ?
+                dynamicQueryCache.countEntities(getTenantId(), getCustomerId(), query, dynamicValues) :
+                entityService.countEntitiesByQuery(getTenantId(), getCustomerId(), query));
         if (newCount != result) {
             result = newCount;
             wsService.sendWsMsg(sessionRef.getSessionId(), new EntityCountUpdate(cmdId, result));
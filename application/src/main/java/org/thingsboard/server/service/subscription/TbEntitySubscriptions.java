@@ -0,0 +1,213 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.service.subscription;
+
+import org.thingsboard.server.common.data.kv.TsKvEntry;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+/**
+ * Subscriptions of a single entity.
+ * <p>
+ * Telemetry and attribute subscriptions are grouped by the set of subscribed keys and the groups are indexed by key,
+ * so an update is matched only against the groups of its keys and the data of each group is selected once.
+ * Modifications are synchronized, while the updates are matched without locking.
+ */
+class TbEntitySubscriptions {
+
+    private final Map<TbSubscription, TbSubscription> subscriptions = new ConcurrentHashMap<>();
+    private final KeyIndex timeseries = new KeyIndex();
+    private final Map<String, KeyIndex> attributesByScope = new ConcurrentHashMap<>();
+    private final Set<TbAlarmsSubscription> alarms = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Returns false if an equal subscription is already registered.
+     */
+    synchronized boolean add(TbSubscription subscription) {
+        if (subscriptions.putIfAbsent(subscription, subscription) != null) {
+            return false;
+        }
+        switch (subscription.getType()) {
+            case TIMESERIES:
+                TbTimeseriesSubscription tsSub = (TbTimeseriesSubscription) subscription;
+                timeseries.add(tsSub, tsSub.isAllKeys(), tsSub.getKeyStates().keySet());
+                break;
+            case ATTRIBUTES:
+                TbAttributeSubscription attrSub = (TbAttributeSubscription) subscription;
+                attributesByScope.computeIfAbsent(attrSub.getScope().name(), scope -> new KeyIndex())
+                        .add(attrSub, attrSub.isAllKeys(), attrSub.getKeyStates().keySet());
+                break;
+            case ALARMS:
+                alarms.add((TbAlarmsSubscription) subscription);
+                break;
+        }
+        return true;
+    }
+
+    /**
+     * Returns false if the subscription is not registered.
+     */
+    synchronized boolean remove(TbSubscription subscription) {
+        TbSubscription existing = subscriptions.remove(subscription);
+        if (existing == null) {
+            return false;
+        }
+        switch (existing.getType()) {
+            case TIMESERIES:
+                timeseries.remove(existing);
+                break;
+            case ATTRIBUTES:
+                String scope = ((TbAttributeSubscription) existing).getScope().name();
+                KeyIndex index = attributesByScope.get(scope);
+                if (index != null) {
+                    index.remove(existing);
+                    if (index.isEmpty()) {
+                        attributesByScope.remove(scope);
+                    }
+                }
+                break;
+            case ALARMS:
+                alarms.remove(existing);
+                break;
+        }
+        return true;
+    }
+
+    boolean isEmpty() {
+        return subscriptions.isEmpty();
+    }
+
+    int size() {
+        return subscriptions.size();
+    }
+
+    Collection<TbSubscription> getSubscriptions() {
+        return subscriptions.values();
+    }
+
+    Set<TbAlarmsSubscription> getAlarmSubscriptions() {
+        return alarms;
+    }
+
+    /**
+     * Passes the entries of each group of time series subscriptions that are subscribed to at least one of the keys.
+     */
+    void matchTimeseries(List<TsKvEntry> entries, BiConsumer<List<TsKvEntry>, Collection<TbSubscription>> consumer) {
+        timeseries.match(entries, consumer);
+    }
+
+    /**
+     * Same as {@link #matchTimeseries}, for the attribute subscriptions of the given scope and of any scope.
+     */
+    void matchAttributes(String scope, List<TsKvEntry> entries, BiConsumer<List<TsKvEntry>, Collection<TbSubscription>> consumer) {
+        KeyIndex anyScope = attributesByScope.get(TbAttributeSubscriptionScope.ANY_SCOPE.name());
+        if (anyScope != null) {
+            anyScope.match(entries, consumer);
+        }
+        KeyIndex index = attributesByScope.get(scope);
+        if (index != null && index != anyScope) {
+            index.match(entries, consumer);
+        }
+    }
+
+    private static class KeyGroup {
+        private final Set<String> keys;
+        private final Set<TbSubscription> subscriptions = ConcurrentHashMap.newKeySet();
+
+        KeyGroup(Set<String> keys) {
+            this.keys = keys;
+        }
+    }
+
+    private static class KeyIndex {
+        private final KeyGroup allKeys = new KeyGroup(Collections.emptySet());
+        private final Map<Set<String>, KeyGroup> groups = new ConcurrentHashMap<>();
+        private final Map<String, Set<KeyGroup>> groupsByKey = new ConcurrentHashMap<>();
+        private final Map<TbSubscription, KeyGroup> groupsBySubscription = new HashMap<>();
+
+        void add(TbSubscription subscription, boolean allKeysSubscription, Set<String> keys) {
+            KeyGroup group;
+            if (allKeysSubscription) {
+                group = allKeys;
+            } else {
+                group = groups.computeIfAbsent(new HashSet<>(keys), groupKeys -> {
+                    KeyGroup newGroup = new KeyGroup(groupKeys);
+                    groupKeys.forEach(key -> groupsByKey.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet()).add(newGroup));
+                    return newGroup;
+                });
+            }
+            group.subscriptions.add(subscription);
+            groupsBySubscription.put(subscription, group);
+        }
+
+        void remove(TbSubscription subscription) {
+            KeyGroup group = groupsBySubscription.remove(subscription);
+            if (group == null) {
+                return;
+            }
+            group.subscriptions.remove(subscription);
+            if (group != allKeys && group.subscriptions.isEmpty()) {
+                groups.remove(group.keys);
+                group.keys.forEach(key -> {
+                    Set<KeyGroup> keyGroups = groupsByKey.get(key);
+                    if (keyGroups != null) {
+                        keyGroups.remove(group);
+                        if (keyGroups.isEmpty()) {
+                            groupsByKey.remove(key);
+                        }
+                    }
+                });
+            }
+        }
+
+        boolean isEmpty() {
+            return groupsBySubscription.isEmpty();
+        }
+
+        void match(List<TsKvEntry> entries, BiConsumer<List<TsKvEntry>, Collection<TbSubscription>> consumer) {
+            if (!allKeys.subscriptions.isEmpty()) {
+                consumer.accept(entries, allKeys.subscriptions);
+            }
+            if (groupsByKey.isEmpty()) {
+                return;
+            }
+            Map<KeyGroup, List<TsKvEntry>> matched = null;
+            for (TsKvEntry entry : entries) {
+                Set<KeyGroup> keyGroups = groupsByKey.get(entry.getKey());
+                if (keyGroups != null) {
+                    if (matched == null) {
+                        matched = new HashMap<>();
+                    }
+                    for (KeyGroup group : keyGroups) {
+                        matched.computeIfAbsent(group, g -> new ArrayList<>()).add(entry);
+                    }
+                }
+            }
+            if (matched != null) {
+                matched.forEach((group, groupEntries) -> consumer.accept(groupEntries, group.subscriptions));
+            }
+        }
+    }
+}
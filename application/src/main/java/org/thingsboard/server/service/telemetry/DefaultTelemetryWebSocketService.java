@@ -92,6 +92,7 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
@@ -288,15 +289,32 @@ public class DefaultTelemetryWebSocketService implements TelemetryWebSocketServi
 
     @Override
     public void sendWsMsg(String sessionId, TelemetrySubscriptionUpdate update) {
-        sendWsMsg(sessionId, update.getSubscriptionId(), update);
+        WsSessionMetaData md = wsSessionsMap.get(sessionId);
+        if (md != null) {
+            sendWsMsg(md.getSessionRef(), update);
+        }
     }
 
     @Override
     public void sendWsMsg(String sessionId, CmdUpdate update) {
-        sendWsMsg(sessionId, update.getCmdId(), update);
+        if (update instanceof EntityDataUpdate) {
+            WsSessionMetaData md = wsSessionsMap.get(sessionId);
+            if (md != null) {
+                sendWsMsg(md.getSessionRef(), (EntityDataUpdate) update);
+            }
+        } else {
+            sendWsMsg(sessionId, update.getCmdId(), update);
+        }
+    }
+
+    private void sendWsLatestMsg(String sessionId, TelemetrySubscriptionUpdate update) {
+        WsSessionMetaData md = wsSessionsMap.get(sessionId);
+        if (md != null) {
+            sendWsMsg(md.getSessionRef(), TelemetryWebSocketUpdate.of(jsonMapper, update, true));
+        }
     }
 
-    private <T> void sendWsMsg(String sessionId, int cmdId, T update) {
+        private <T> void sendWsMsg(String sessionId, int cmdId, T update) {
         WsSessionMetaData md = wsSessionsMap.get(sessionId);
         if (md != null) {
             sendWsMsg(md.getSessionRef(), cmdId, update);
@@ -447,7 +465,7 @@ public class DefaultTelemetryWebSocketService implements TelemetryWebSocketServi
                         .allKeys(false)
                         .keyStates(subState)
                         .scope(scope)
-                        .updateConsumer(DefaultTelemetryWebSocketService.this::sendWsMsg)
+                        .updateConsumer(DefaultTelemetryWebSocketService.this::sendWsLatestMsg)
                         .build();
                 oldSubService.addSubscription(sub);
             }
@@ -545,7 +563,7 @@ public class DefaultTelemetryWebSocketService implements TelemetryWebSocketServi
                         .entityId(entityId)
                         .allKeys(true)
                         .keyStates(subState)
-                        .updateConsumer(DefaultTelemetryWebSocketService.this::sendWsMsg)
+                        .updateConsumer(DefaultTelemetryWebSocketService.this::sendWsLatestMsg)
                         .scope(scope).build();
                 oldSubService.addSubscription(sub);
             }
@@ -626,7 +644,7 @@ public class DefaultTelemetryWebSocketService implements TelemetryWebSocketServi
                         .subscriptionId(cmd.getCmdId())
                         .tenantId(sessionRef.getSecurityCtx().getTenantId())
                         .entityId(entityId)
-                        .updateConsumer(DefaultTelemetryWebSocketService.this::sendWsMsg)
+                        .updateConsumer(DefaultTelemetryWebSocketService.this::sendWsLatestMsg)
                         .allKeys(true)
                         .keyStates(subState).build();
                 oldSubService.addSubscription(sub);
@@ -657,6 +675,9 @@ public class DefaultTelemetryWebSocketService implements TelemetryWebSocketServi
                 Map<String, Long> subState = new HashMap<>(keys.size());
                 keys.forEach(key -> subState.put(key, startTs));
                 data.forEach(v -> subState.put(v.getKey(), v.getTs()));
+                // The subscription with the time window streams the history, so every point is sent to the client
+                BiConsumer<String, TelemetrySubscriptionUpdate> updateConsumer = cmd.getTimeWindow() > 0 ?
+                        DefaultTelemetryWebSocketService.this::sendWsMsg : DefaultTelemetryWebSocketService.this::sendWsLatestMsg;
 
                 TbTimeseriesSubscription sub = TbTimeseriesSubscription.builder()
                         .serviceId(serviceId)
@@ -664,7 +685,7 @@ public class DefaultTelemetryWebSocketService implements TelemetryWebSocketServi
                         .subscriptionId(cmd.getCmdId())
                         .tenantId(sessionRef.getSecurityCtx().getTenantId())
                         .entityId(entityId)
-                        .updateConsumer(DefaultTelemetryWebSocketService.this::sendWsMsg)
+                        .updateConsumer(updateConsumer)
                         .allKeys(false)
                         .keyStates(subState).build();
                 oldSubService.addSubscription(sub);
@@ -764,11 +785,26 @@ public class DefaultTelemetryWebSocketService implements TelemetryWebSocketServi
     }
 
     private void sendWsMsg(TelemetryWebSocketSessionRef sessionRef, EntityDataUpdate update) {
-        sendWsMsg(sessionRef, update.getCmdId(), update);
+        if (update.getData() == null) {
+            sendWsMsg(sessionRef, TelemetryWebSocketUpdate.of(jsonMapper, update));
+        } else {
+            // The page data is still modified by the subscription context, so it is encoded right away.
+            sendWsMsg(sessionRef, update.getCmdId(), update);
+        }
     }
 
     private void sendWsMsg(TelemetryWebSocketSessionRef sessionRef, TelemetrySubscriptionUpdate update) {
-        sendWsMsg(sessionRef, update.getSubscriptionId(), update);
+        sendWsMsg(sessionRef, TelemetryWebSocketUpdate.of(jsonMapper, update));
+    }
+
+    private void sendWsMsg(TelemetryWebSocketSessionRef sessionRef, TelemetryWebSocketUpdate update) {
+        executor.submit(() -> {
+            try {
+                msgEndpoint.send(sessionRef, update);
+            } catch (IOException e) {
+                log.warn("[{}][{}] Failed to send update", sessionRef.getSessionId(), update.getSubscriptionId(), e);
+            }
+        });
     }
 
     private void sendWsMsg(TelemetryWebSocketSessionRef sessionRef, int cmdId, Object update) {
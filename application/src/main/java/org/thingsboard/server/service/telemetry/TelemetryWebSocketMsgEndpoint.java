@@ -26,6 +26,11 @@ public interface TelemetryWebSocketMsgEndpoint {
 
     void send(TelemetryWebSocketSessionRef sessionRef, int subscriptionId, String msg) throws IOException;
 
+    /**
+     * Sends the update, which is encoded when it is sent and may be merged with the newer updates of the same subscription meanwhile.
+     */
+    void send(TelemetryWebSocketSessionRef sessionRef, TelemetryWebSocketUpdate update) throws IOException;
+
     void sendPing(TelemetryWebSocketSessionRef sessionRef, long currentTime) throws IOException;
 
     void close(TelemetryWebSocketSessionRef sessionRef, CloseStatus withReason) throws IOException;
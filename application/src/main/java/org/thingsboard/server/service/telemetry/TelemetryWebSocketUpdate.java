@@ -0,0 +1,314 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.service.telemetry;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.thingsboard.server.common.data.id.EntityId;
+import org.thingsboard.server.common.data.query.EntityData;
+import org.thingsboard.server.common.data.query.EntityKeyType;
+import org.thingsboard.server.common.data.query.TsValue;
+import org.thingsboard.server.service.telemetry.cmd.v2.EntityDataUpdate;
+import org.thingsboard.server.service.telemetry.sub.SubscriptionErrorCode;
+import org.thingsboard.server.service.telemetry.sub.TelemetrySubscriptionUpdate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Subscription update that is encoded only when it is sent to the WebSocket session.
+ * <p>
+ * While the session is busy, the pending update may be merged with a newer update of the same subscription,
+ * so the slow client gets fewer messages. The updates of the latest values keep only the newest value of each key,
+ * while the time series points of both updates are concatenated, since the history subscriptions need every point.
+ * The concatenated points are counted by {@link #getPointsCount()}, so the session may limit the size of the pending update.
+ */
+public abstract class TelemetryWebSocketUpdate {
+
+    private static final String SUBSCRIPTION_ID_PREFIX = "{\"subscriptionId\":";
+
+    protected final ObjectMapper mapper;
+
+    private TelemetryWebSocketUpdate(ObjectMapper mapper) {
+        this.mapper = mapper;
+    }
+
+    public static TelemetryWebSocketUpdate of(ObjectMapper mapper, TelemetrySubscriptionUpdate update) {
+        return of(mapper, update, false);
+    }
+
+    /**
+     * @param latestValues true if the update belongs to the subscription to the latest values, so only the newest point
+     *                     of each key is kept when the updates are merged
+     */
+    public static TelemetryWebSocketUpdate of(ObjectMapper mapper, TelemetrySubscriptionUpdate update, boolean latestValues) {
+        return new TsUpdate(mapper, update, latestValues);
+    }
+
+    public static TelemetryWebSocketUpdate of(ObjectMapper mapper, EntityDataUpdate update) {
+        return new EntityDataWsUpdate(mapper, update);
+    }
+
+    public abstract int getSubscriptionId();
+
+    /**
+     * Returns the update that contains the values of both updates, where the values of the newer update win,
+     * or null if the updates can't be merged. The time series points of the same key are concatenated in the order
+     * they were received, the older point with the same ts is replaced by the newer one.
+     */
+    public abstract TelemetryWebSocketUpdate merge(TelemetryWebSocketUpdate newer);
+
+    /**
+     * Returns the number of the time series points that are concatenated when the update is merged into the older one,
+     * or 0 if the merge keeps only the newest values.
+     */
+    public abstract int getPointsCount();
+
+    public abstract String encode() throws JsonProcessingException;
+
+    private static class TsUpdate extends TelemetryWebSocketUpdate {
+
+        private final TelemetrySubscriptionUpdate update;
+        private final boolean latestValues;
+
+        TsUpdate(ObjectMapper mapper, TelemetrySubscriptionUpdate update, boolean latestValues) {
+            super(mapper);
+            this.update = update;
+            this.latestValues = latestValues;
+        }
+
+        @Override
+        public int getSubscriptionId() {
+            return update.getSubscriptionId();
+        }
+
+        @Override
+        public TelemetryWebSocketUpdate merge(TelemetryWebSocketUpdate newer) {
+            if (!(newer instanceof TsUpdate) || ((TsUpdate) newer).latestValues != latestValues) {
+                return null;
+            }
+            TelemetrySubscriptionUpdate newerUpdate = ((TsUpdate) newer).update;
+            if (!isMergeable(update) || !isMergeable(newerUpdate)) {
+                return null;
+            }
+            Map<String, List<Object>> data = new TreeMap<>(update.getData());
+            newerUpdate.getData().forEach((key, points) -> data.merge(key, points, latestValues ? TsUpdate::newest : TsUpdate::concat));
+            return new TsUpdate(mapper, new TelemetrySubscriptionUpdate(update.getSubscriptionId(), data), latestValues);
+        }
+
+        @Override
+        public int getPointsCount() {
+            if (latestValues || update.getData() == null) {
+                return 0;
+            }
+            int count = 0;
+            for (List<Object> points : update.getData().values()) {
+                count += points.size();
+            }
+            return count;
+        }
+
+        /**
+         * The copies of the update for different subscriptions share the encoded fields that follow the subscription id.
+         */
+        @Override
+        public String encode() throws JsonProcessingException {
+            AtomicReference<String> sharedTail = update.getEncodedTail();
+            if (sharedTail == null) {
+                return mapper.writeValueAsString(update);
+            }
+            String tail = sharedTail.get();
+            if (tail == null) {
+                String result = mapper.writeValueAsString(update);
+                sharedTail.set(result.substring(result.indexOf(',') + 1));
+                return result;
+            }
+            return SUBSCRIPTION_ID_PREFIX + update.getSubscriptionId() + ',' + tail;
+        }
+
+        private static boolean isMergeable(TelemetrySubscriptionUpdate update) {
+            return update.getErrorCode() == SubscriptionErrorCode.NO_ERROR.getCode() && update.getData() != null;
+        }
+
+        private static List<Object> concat(List<Object> older, List<Object> newer) {
+            Set<Object> newerTs = new HashSet<>();
+            for (Object point : newer) {
+                newerTs.add(getTs(point));
+            }
+            List<Object> result = new ArrayList<>(older.size() + newer.size());
+            for (Object point : older) {
+                Object ts = getTs(point);
+                if (ts == null || !newerTs.contains(ts)) {
+                    result.add(point);
+                }
+            }
+            result.addAll(newer);
+            return result;
+        }
+
+        /**
+         * Keeps the point with the greatest ts, the newer point wins if the ts is the same.
+         */
+        private static List<Object> newest(List<Object> older, List<Object> newer) {
+            Object result = null;
+            long resultTs = Long.MIN_VALUE;
+            for (List<Object> points : Arrays.asList(older, newer)) {
+                for (Object point : points) {
+                    Object ts = getTs(point);
+                    long pointTs = ts instanceof Number ? ((Number) ts).longValue() : Long.MIN_VALUE;
+                    if (result == null || pointTs >= resultTs) {
+                        result = point;
+                        resultTs = pointTs;
+                    }
+                }
+            }
+            return result != null ? Collections.singletonList(result) : newer;
+        }
+
+        private static Object getTs(Object point) {
+            return point instanceof Object[] && ((Object[]) point).length > 0 ? ((Object[]) point)[0] : null;
+        }
+    }
+
+    private static class EntityDataWsUpdate extends TelemetryWebSocketUpdate {
+
+        private final EntityDataUpdate update;
+
+        /**
+         * The entity data may be shared with the subscription context, so the incremental update is copied
+         * before it is handed over to the WebSocket session.
+         */
+        EntityDataWsUpdate(ObjectMapper mapper, EntityDataUpdate update) {
+            super(mapper);
+            if (isMergeable(update)) {
+                List<EntityData> entities = new ArrayList<>(update.getUpdate().size());
+                for (EntityData entityData : update.getUpdate()) {
+                    entities.add(merge(entityData, null));
+                }
+                this.update = new EntityDataUpdate(update.getCmdId(), null, entities, update.getAllowedEntities());
+            } else {
+                this.update = update;
+            }
+        }
+
+        @Override
+        public int getSubscriptionId() {
+            return update.getCmdId();
+        }
+
+        @Override
+        public TelemetryWebSocketUpdate merge(TelemetryWebSocketUpdate newer) {
+            if (!(newer instanceof EntityDataWsUpdate)) {
+                return null;
+            }
+            EntityDataUpdate newerUpdate = ((EntityDataWsUpdate) newer).update;
+            if (!isMergeable(update) || !isMergeable(newerUpdate)) {
+                return null;
+            }
+            Map<EntityId, EntityData> entities = new LinkedHashMap<>();
+            for (EntityData entityData : update.getUpdate()) {
+                entities.merge(entityData.getEntityId(), entityData, EntityDataWsUpdate::merge);
+            }
+            for (EntityData entityData : newerUpdate.getUpdate()) {
+                entities.merge(entityData.getEntityId(), entityData, EntityDataWsUpdate::merge);
+            }
+            return new EntityDataWsUpdate(mapper, new EntityDataUpdate(update.getCmdId(), null,
+                    new ArrayList<>(entities.values()), newerUpdate.getAllowedEntities()));
+        }
+
+        @Override
+        public int getPointsCount() {
+            if (!isMergeable(update)) {
+                return 0;
+            }
+            int count = 0;
+            for (EntityData entityData : update.getUpdate()) {
+                if (entityData.getTimeseries() != null) {
+                    for (TsValue[] values : entityData.getTimeseries().values()) {
+                        count += values.length;
+                    }
+                }
+            }
+            return count;
+        }
+
+        @Override
+        public String encode() throws JsonProcessingException {
+            return mapper.writeValueAsString(update);
+        }
+
+        /**
+         * Only the incremental updates are merged, the updates with the page data replace the state of the client.
+         */
+        private static boolean isMergeable(EntityDataUpdate update) {
+            return update.getErrorCode() == SubscriptionErrorCode.NO_ERROR.getCode() && update.getData() == null && update.getUpdate() != null;
+        }
+
+        private static EntityData merge(EntityData older, EntityData newer) {
+            Map<EntityKeyType, Map<String, TsValue>> latest = null;
+            if (older.getLatest() != null || (newer != null && newer.getLatest() != null)) {
+                latest = new HashMap<>();
+                mergeLatest(latest, older.getLatest());
+                if (newer != null) {
+                    mergeLatest(latest, newer.getLatest());
+                }
+            }
+            Map<String, TsValue[]> timeseries = null;
+            if (older.getTimeseries() != null || (newer != null && newer.getTimeseries() != null)) {
+                timeseries = new HashMap<>();
+                if (older.getTimeseries() != null) {
+                    timeseries.putAll(older.getTimeseries());
+                }
+                if (newer != null && newer.getTimeseries() != null) {
+                    for (Map.Entry<String, TsValue[]> entry : newer.getTimeseries().entrySet()) {
+                        timeseries.merge(entry.getKey(), entry.getValue(), EntityDataWsUpdate::concat);
+                    }
+                }
+            }
+            return new EntityData(older.getEntityId(), latest, timeseries);
+        }
+
+        private static TsValue[] concat(TsValue[] older, TsValue[] newer) {
+            Set<Long> newerTs = new HashSet<>();
+            for (TsValue value : newer) {
+                newerTs.add(value.getTs());
+            }
+            List<TsValue> result = new ArrayList<>(older.length + newer.length);
+            for (TsValue value : older) {
+                if (!newerTs.contains(value.getTs())) {
+                    result.add(value);
+                }
+            }
+            result.addAll(Arrays.asList(newer));
+            return result.toArray(new TsValue[0]);
+        }
+
+        private static void mergeLatest(Map<EntityKeyType, Map<String, TsValue>> result, Map<EntityKeyType, Map<String, TsValue>> latest) {
+            if (latest != null) {
+                latest.forEach((keyType, values) -> result.computeIfAbsent(keyType, type -> new HashMap<>()).putAll(values));
+            }
+        }
+    }
+}
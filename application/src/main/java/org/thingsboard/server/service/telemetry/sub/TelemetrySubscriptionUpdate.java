@@ -15,6 +15,8 @@
  */
 package org.thingsboard.server.service.telemetry.sub;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
 import org.thingsboard.server.common.data.kv.TsKvEntry;
 
 import java.util.ArrayList;
@@ -22,14 +24,18 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
+@JsonPropertyOrder({"subscriptionId"})
 public class TelemetrySubscriptionUpdate {
 
     private int subscriptionId;
     private int errorCode;
     private String errorMsg;
     private Map<String, List<Object>> data;
+    // encoded fields that follow the subscription id, shared by the copies of the update for different subscriptions
+    private AtomicReference<String> encodedTail;
 
     public TelemetrySubscriptionUpdate(int subscriptionId, List<TsKvEntry> data) {
         super();
@@ -63,6 +69,26 @@ public class TelemetrySubscriptionUpdate {
         this.errorMsg = errorMsg != null ? errorMsg : errorCode.getDefaultMsg();
     }
 
+    private TelemetrySubscriptionUpdate(int subscriptionId, Map<String, List<Object>> data, AtomicReference<String> encodedTail) {
+        this(subscriptionId, data);
+        this.encodedTail = encodedTail;
+    }
+
+    /**
+     * Returns the copy of the update for another subscription, which shares the data and its encoded form with this update.
+     */
+    public TelemetrySubscriptionUpdate withSubscriptionId(int subscriptionId) {
+        if (encodedTail == null) {
+            encodedTail = new AtomicReference<>();
+        }
+        return new TelemetrySubscriptionUpdate(subscriptionId, data, encodedTail);
+    }
+
+    @JsonIgnore
+    public AtomicReference<String> getEncodedTail() {
+        return encodedTail;
+    }
+
     public int getSubscriptionId() {
         return subscriptionId;
     }
@@ -44,6 +44,7 @@ import org.thingsboard.server.common.data.query.NumericFilterPredicate;
 import org.thingsboard.server.common.data.security.Authority;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -217,6 +218,56 @@ public abstract class BaseEntityQueryControllerTest extends AbstractControllerTe
 
     }
 
+    @Test
+    public void testFindEntityDataByQueryWithKeysetPagination() throws Exception {
+        List<Device> devices = new ArrayList<>();
+        for (int i = 0; i < 23; i++) {
+            Device device = new Device();
+            device.setName("Device" + i);
+            device.setType("default");
+            devices.add(doPost("/api/device", device, Device.class));
+        }
+
+        DeviceTypeFilter filter = new DeviceTypeFilter();
+        filter.setDeviceType("default");
+        filter.setDeviceNameFilter("");
+
+        EntityDataSortOrder sortOrder = new EntityDataSortOrder(
+                new EntityKey(EntityKeyType.ENTITY_FIELD, "createdTime"), EntityDataSortOrder.Direction.ASC
+        );
+        List<EntityKey> entityFields = Arrays.asList(new EntityKey(EntityKeyType.ENTITY_FIELD, "name"),
+                new EntityKey(EntityKeyType.ENTITY_FIELD, "createdTime"));
+
+        EntityDataPageLink pageLink = new EntityDataPageLink(100, 0, null, sortOrder);
+        PageData<EntityData> allData = doPostWithTypedResponse("/api/entitiesQuery/find",
+                new EntityDataQuery(filter, pageLink, entityFields, null, null), new TypeReference<PageData<EntityData>>() {
+                });
+        Assert.assertEquals(23, allData.getTotalElements());
+
+        pageLink = new EntityDataPageLink(5, 0, null, sortOrder);
+        pageLink.setEstimateTotal(true);
+        PageData<EntityData> data = doPostWithTypedResponse("/api/entitiesQuery/find",
+                new EntityDataQuery(filter, pageLink, entityFields, null, null), new TypeReference<PageData<EntityData>>() {
+                });
+        Assert.assertEquals(5, data.getData().size());
+        Assert.assertEquals(6, data.getTotalElements());
+        Assert.assertTrue(data.hasNext());
+
+        List<EntityData> loadedEntities = new ArrayList<>(data.getData());
+        while (data.hasNext()) {
+            pageLink = pageLink.nextPageLink(data.getData().get(data.getData().size() - 1));
+            data = doPostWithTypedResponse("/api/entitiesQuery/find",
+                    new EntityDataQuery(filter, pageLink, entityFields, null, null), new TypeReference<PageData<EntityData>>() {
+                    });
+            loadedEntities.addAll(data.getData());
+        }
+        Assert.assertEquals(23, data.getTotalElements());
+
+        List<EntityId> loadedIds = loadedEntities.stream().map(EntityData::getEntityId).collect(Collectors.toList());
+        List<EntityId> expectedIds = allData.getData().stream().map(EntityData::getEntityId).collect(Collectors.toList());
+        Assert.assertEquals(expectedIds, loadedIds);
+    }
+
     @Test
     public void testFindEntityDataByQueryWithAttributes() throws Exception {
         List<Device> devices = new ArrayList<>();
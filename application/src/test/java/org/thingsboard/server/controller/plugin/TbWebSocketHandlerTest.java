@@ -0,0 +1,237 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.controller.plugin;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.security.core.Authentication;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.adapter.NativeWebSocketSession;
+import org.thingsboard.server.common.data.User;
+import org.thingsboard.server.common.data.id.TenantId;
+import org.thingsboard.server.common.data.id.UserId;
+import org.thingsboard.server.common.data.kv.BasicTsKvEntry;
+import org.thingsboard.server.common.data.kv.DoubleDataEntry;
+import org.thingsboard.server.common.data.security.Authority;
+import org.thingsboard.server.config.WebSocketConfiguration;
+import org.thingsboard.server.service.security.model.SecurityUser;
+import org.thingsboard.server.service.security.model.UserPrincipal;
+import org.thingsboard.server.service.telemetry.TelemetryWebSocketService;
+import org.thingsboard.server.service.telemetry.TelemetryWebSocketSessionRef;
+import org.thingsboard.server.service.telemetry.TelemetryWebSocketUpdate;
+import org.thingsboard.server.service.telemetry.sub.TelemetrySubscriptionUpdate;
+
+import javax.websocket.RemoteEndpoint;
+import javax.websocket.SendHandler;
+import javax.websocket.SendResult;
+import javax.websocket.Session;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.BDDMockito.willAnswer;
+import static org.mockito.BDDMockito.willReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class TbWebSocketHandlerTest {
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private final List<String> frames = new ArrayList<>();
+    private final List<SendHandler> sendHandlers = new ArrayList<>();
+
+    private TbWebSocketHandler handler;
+    private TelemetryWebSocketService webSocketService;
+    private NativeWebSocketSession session;
+    private TelemetryWebSocketSessionRef sessionRef;
+
+    @Before
+    public void setUp() {
+        handler = new TbWebSocketHandler();
+        webSocketService = mock(TelemetryWebSocketService.class);
+        ReflectionTestUtils.setField(handler, "webSocketService", webSocketService);
+        ReflectionTestUtils.setField(handler, "maxMsgQueuePerSession", 10);
+        ReflectionTestUtils.setField(handler, "maxMsgsPerFrame", 1);
+
+        RemoteEndpoint.Async asyncRemote = mock(RemoteEndpoint.Async.class);
+        willAnswer(invocation -> {
+            frames.add(invocation.getArgument(0));
+            sendHandlers.add(invocation.getArgument(1));
+            return null;
+        }).given(asyncRemote).sendText(anyString(), any(SendHandler.class));
+        Session nativeSession = mock(Session.class);
+        willReturn(asyncRemote).given(nativeSession).getAsyncRemote();
+
+        User user = new User(new UserId(UUID.randomUUID()));
+        user.setTenantId(new TenantId(UUID.randomUUID()));
+        user.setAuthority(Authority.TENANT_ADMIN);
+        Authentication authentication = mock(Authentication.class);
+        willReturn(new SecurityUser(user, true, new UserPrincipal(UserPrincipal.Type.USER_NAME, "tenant@thingsboard.org")))
+                .given(authentication).getPrincipal();
+
+        session = mock(NativeWebSocketSession.class);
+        willReturn(UUID.randomUUID().toString()).given(session).getId();
+        willReturn(URI.create("ws://localhost:8080" + WebSocketConfiguration.WS_PLUGIN_PREFIX + "telemetry")).given(session).getUri();
+        willReturn(authentication).given(session).getPrincipal();
+        willReturn(nativeSession).given(session).getNativeSession(Session.class);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        handler.afterConnectionClosed(session, CloseStatus.NORMAL);
+    }
+
+    @Test
+    public void givenPreviousFrameNotSent_whenUpdatesSent_thenQueuedAndSentInOrder() throws Exception {
+        openSession();
+        send(1, 1000L, 21.5);
+        send(1, 2000L, 22.5);
+        send(1, 3000L, 23.5);
+        assertThat(frames.size(), equalTo(1));
+
+        completeSend();
+        completeSend();
+
+        assertThat(frames.size(), equalTo(3));
+        for (int i = 0; i < 3; i++) {
+            assertThat(mapper.readTree(frames.get(i)).get("data").get("temperature").get(0).get(0).asLong(), equalTo(1000L * (i + 1)));
+        }
+    }
+
+    @Test
+    public void givenConflationEnabled_whenUpdatesOfSameSubscriptionQueued_thenMergedWithAllPoints() throws Exception {
+        ReflectionTestUtils.setField(handler, "conflationEnabled", true);
+        openSession();
+        send(1, 1000L, 21.5);
+        send(1, 2000L, 22.5);
+        send(2, 2000L, 30.0);
+        send(1, 3000L, 23.5);
+
+        completeSend();
+        completeSend();
+
+        assertThat(frames.size(), equalTo(3));
+        JsonNode merged = mapper.readTree(frames.get(1));
+        assertThat(merged.get("subscriptionId").asInt(), equalTo(1));
+        JsonNode temperature = merged.get("data").get("temperature");
+        assertThat(temperature.size(), equalTo(2));
+        assertThat(temperature.get(0).get(0).asLong(), equalTo(2000L));
+        assertThat(temperature.get(1).get(0).asLong(), equalTo(3000L));
+        assertThat(mapper.readTree(frames.get(2)).get("subscriptionId").asInt(), equalTo(2));
+    }
+
+    @Test
+    public void givenMaxMsgsPerFrame_whenUpdatesQueued_thenSentAsJsonArray() throws Exception {
+        ReflectionTestUtils.setField(handler, "maxMsgsPerFrame", 2);
+        openSession();
+        send(1, 1000L, 21.5);
+        send(1, 2000L, 22.5);
+        send(2, 2000L, 30.0);
+        send(3, 2000L, 40.0);
+
+        completeSend();
+        completeSend();
+
+        assertThat(frames.size(), equalTo(3));
+        assertThat(mapper.readTree(frames.get(0)).get("subscriptionId").asInt(), equalTo(1));
+        JsonNode batch = mapper.readTree(frames.get(1));
+        assertThat(batch.isArray(), equalTo(true));
+        assertThat(batch.size(), equalTo(2));
+        assertThat(batch.get(0).get("subscriptionId").asInt(), equalTo(1));
+        assertThat(batch.get(1).get("subscriptionId").asInt(), equalTo(2));
+        assertThat(mapper.readTree(frames.get(2)).get("subscriptionId").asInt(), equalTo(3));
+    }
+
+    @Test
+    public void givenConflationEnabled_whenLatestValuesQueued_thenOnlyNewestPointSent() throws Exception {
+        ReflectionTestUtils.setField(handler, "conflationEnabled", true);
+        ReflectionTestUtils.setField(handler, "maxMsgQueuePerSession", 2);
+        openSession();
+        for (long ts = 1000L; ts <= 10000L; ts += 1000L) {
+            sendLatest(1, ts, ts / 100.0);
+        }
+        verify(session, never()).close(any(CloseStatus.class));
+
+        completeSend();
+
+        assertThat(frames.size(), equalTo(2));
+        JsonNode temperature = mapper.readTree(frames.get(1)).get("data").get("temperature");
+        assertThat(temperature.size(), equalTo(1));
+        assertThat(temperature.get(0).get(0).asLong(), equalTo(10000L));
+    }
+
+    @Test
+    public void givenConflationEnabled_whenMergedPointsExceedQueueLimit_thenSessionClosed() throws Exception {
+        ReflectionTestUtils.setField(handler, "conflationEnabled", true);
+        ReflectionTestUtils.setField(handler, "maxMsgQueuePerSession", 3);
+        openSession();
+        send(1, 1000L, 21.5);
+        send(1, 2000L, 22.5);
+        send(1, 3000L, 23.5);
+        send(1, 4000L, 24.5);
+        verify(session, never()).close(any(CloseStatus.class));
+
+        send(1, 5000L, 25.5);
+        verify(session).close(any(CloseStatus.class));
+    }
+
+    @Test
+    public void givenQueueFull_whenUpdateSent_thenSessionClosed() throws Exception {
+        ReflectionTestUtils.setField(handler, "maxMsgQueuePerSession", 2);
+        openSession();
+        send(1, 1000L, 21.5);
+        send(1, 2000L, 22.5);
+        send(1, 3000L, 23.5);
+        verify(session, never()).close(any(CloseStatus.class));
+
+        send(1, 4000L, 24.5);
+        verify(session).close(any(CloseStatus.class));
+    }
+
+    private void openSession() throws Exception {
+        handler.afterConnectionEstablished(session);
+        ArgumentCaptor<TelemetryWebSocketSessionRef> sessionRefCaptor = ArgumentCaptor.forClass(TelemetryWebSocketSessionRef.class);
+        verify(webSocketService).handleWebSocketSessionEvent(sessionRefCaptor.capture(), any());
+        sessionRef = sessionRefCaptor.getValue();
+    }
+
+    private void send(int subscriptionId, long ts, double temperature) throws Exception {
+        handler.send(sessionRef, TelemetryWebSocketUpdate.of(mapper, new TelemetrySubscriptionUpdate(subscriptionId,
+                Collections.singletonList(new BasicTsKvEntry(ts, new DoubleDataEntry("temperature", temperature))))));
+    }
+
+    private void sendLatest(int subscriptionId, long ts, double temperature) throws Exception {
+        handler.send(sessionRef, TelemetryWebSocketUpdate.of(mapper, new TelemetrySubscriptionUpdate(subscriptionId,
+                Collections.singletonList(new BasicTsKvEntry(ts, new DoubleDataEntry("temperature", temperature)))), true));
+    }
+
+    private void completeSend() {
+        sendHandlers.get(sendHandlers.size() - 1).onResult(new SendResult());
+    }
+}
@@ -81,6 +81,7 @@ public class HashPartitionServiceTest {
         ReflectionTestUtils.setField(clusterRoutingService, "coreTopic", "tb.core");
         ReflectionTestUtils.setField(clusterRoutingService, "corePartitions", 10);
         ReflectionTestUtils.setField(clusterRoutingService, "hashFunctionName", hashFunctionName);
+        ReflectionTestUtils.setField(clusterRoutingService, "assignmentStrategyName", "round_robin");
         TransportProtos.ServiceInfo currentServer = TransportProtos.ServiceInfo.newBuilder()
                 .setServiceId("tb-core-0")
                 .setTenantIdMSB(TenantId.NULL_UUID.getMostSignificantBits())
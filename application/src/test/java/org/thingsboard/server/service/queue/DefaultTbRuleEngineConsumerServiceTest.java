@@ -0,0 +1,240 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.service.queue;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.thingsboard.server.actors.ActorSystemContext;
+import org.thingsboard.server.common.stats.DefaultStatsFactory;
+import org.thingsboard.server.common.transport.util.DataDecodingEncodingService;
+import org.thingsboard.server.dao.tenant.TbTenantProfileCache;
+import org.thingsboard.server.gen.transport.TransportProtos.ToRuleEngineMsg;
+import org.thingsboard.server.queue.TbQueueConsumer;
+import org.thingsboard.server.queue.common.TbProtoQueueMsg;
+import org.thingsboard.server.queue.provider.TbRuleEngineQueueFactory;
+import org.thingsboard.server.queue.settings.TbQueueRuleEngineSettings;
+import org.thingsboard.server.queue.settings.TbRuleEngineQueueConfiguration;
+import org.thingsboard.server.service.apiusage.TbApiUsageStateService;
+import org.thingsboard.server.service.profile.TbDeviceProfileCache;
+import org.thingsboard.server.service.queue.processing.BurstTbRuleEngineSubmitStrategy;
+import org.thingsboard.server.service.queue.processing.TbRuleEngineProcessingDecision;
+import org.thingsboard.server.service.queue.processing.TbRuleEngineProcessingResult;
+import org.thingsboard.server.service.queue.processing.TbRuleEngineProcessingStrategy;
+import org.thingsboard.server.service.queue.processing.TbRuleEngineProcessingStrategyFactory;
+import org.thingsboard.server.service.queue.processing.TbRuleEngineSubmitStrategyFactory;
+import org.thingsboard.server.service.rpc.TbRuleEngineDeviceRpcService;
+import org.thingsboard.server.service.stats.RuleEngineStatisticsService;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.BDDMockito.willAnswer;
+import static org.mockito.BDDMockito.willReturn;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+public class DefaultTbRuleEngineConsumerServiceTest {
+
+    private static final long TIMEOUT_MS = 5000;
+
+    private final BlockingQueue<List<TbProtoQueueMsg<ToRuleEngineMsg>>> packs = new LinkedBlockingQueue<>();
+    private final AtomicBoolean consumerStopped = new AtomicBoolean();
+    private volatile Function<TbRuleEngineProcessingResult, TbRuleEngineProcessingDecision> ackFunction = result -> commit();
+
+    private DefaultTbRuleEngineConsumerService service;
+    private TbQueueConsumer<TbProtoQueueMsg<ToRuleEngineMsg>> consumer;
+    private TbRuleEngineQueueConfiguration configuration;
+    private TbRuleEngineConsumerStats stats;
+    private Thread consumerThread;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() throws Exception {
+        DefaultStatsFactory statsFactory = new DefaultStatsFactory();
+        ReflectionTestUtils.setField(statsFactory, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(statsFactory, "metricsEnabled", false);
+
+        TbRuleEngineSubmitStrategyFactory submitStrategyFactory = mock(TbRuleEngineSubmitStrategyFactory.class);
+        willAnswer(invocation -> new BurstTbRuleEngineSubmitStrategy("Main")).given(submitStrategyFactory).newInstance(any(), any());
+        TbRuleEngineProcessingStrategyFactory processingStrategyFactory = mock(TbRuleEngineProcessingStrategyFactory.class);
+        willReturn((TbRuleEngineProcessingStrategy) result -> ackFunction.apply(result))
+                .given(processingStrategyFactory).newInstance(any(), any());
+
+        service = new DefaultTbRuleEngineConsumerService(processingStrategyFactory, submitStrategyFactory,
+                mock(TbQueueRuleEngineSettings.class), mock(TbRuleEngineQueueFactory.class), mock(RuleEngineStatisticsService.class),
+                mock(ActorSystemContext.class), mock(DataDecodingEncodingService.class), mock(TbRuleEngineDeviceRpcService.class),
+                statsFactory, mock(TbDeviceProfileCache.class), mock(TbTenantProfileCache.class), mock(TbApiUsageStateService.class));
+        ReflectionTestUtils.setField(service, "pollDuration", 10L);
+        service.packProcessingExecutor = Executors.newFixedThreadPool(2);
+
+        consumer = mock(TbQueueConsumer.class);
+        willAnswer(invocation -> {
+            List<TbProtoQueueMsg<ToRuleEngineMsg>> msgs = packs.poll(invocation.getArgument(0), TimeUnit.MILLISECONDS);
+            return msgs != null ? msgs : Collections.emptyList();
+        }).given(consumer).poll(anyLong());
+        willAnswer(invocation -> consumerStopped.get()).given(consumer).isStopped();
+
+        configuration = new TbRuleEngineQueueConfiguration();
+        configuration.setName("Main");
+        configuration.setPackProcessingTimeout(TIMEOUT_MS);
+        configuration.setPipelinedProcessing(true);
+        configuration.setMaxInFlightMsgs(100);
+        stats = new TbRuleEngineConsumerStats("Main", statsFactory);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        consumerStopped.set(true);
+        ReflectionTestUtils.setField(service, "stopped", true);
+        if (consumerThread != null) {
+            consumerThread.join(TIMEOUT_MS);
+        }
+        service.stop();
+    }
+
+    @Test
+    public void givenConsumerWithCommitPosition_whenLeadingPackProcessed_thenCommittedWhileNextPackIsProcessed() throws Exception {
+        willReturn(1, 2).given(consumer).getCommitPosition();
+        TbProtoQueueMsg<ToRuleEngineMsg> first = newMsg();
+        TbProtoQueueMsg<ToRuleEngineMsg> second = newMsg();
+        CountDownLatch secondReleased = new CountDownLatch(1);
+        ackFunction = result -> {
+            if (contains(result, second)) {
+                await(secondReleased);
+            }
+            return commit();
+        };
+        packs.add(Collections.singletonList(first));
+        packs.add(Collections.singletonList(second));
+        startConsumer();
+
+        verify(consumer, timeout(TIMEOUT_MS)).commit(1);
+        verify(consumer, never()).commit();
+
+        secondReleased.countDown();
+        verify(consumer, timeout(TIMEOUT_MS)).commit();
+        verify(consumer, never()).commit(2);
+    }
+
+    @Test
+    public void givenConsumerWithoutCommitPosition_whenLeadingPackProcessed_thenCommittedOnceAllPacksProcessed() throws Exception {
+        TbProtoQueueMsg<ToRuleEngineMsg> first = newMsg();
+        TbProtoQueueMsg<ToRuleEngineMsg> second = newMsg();
+        CountDownLatch firstProcessed = new CountDownLatch(1);
+        CountDownLatch secondReleased = new CountDownLatch(1);
+        ackFunction = result -> {
+            if (contains(result, second)) {
+                await(secondReleased);
+            } else {
+                firstProcessed.countDown();
+            }
+            return commit();
+        };
+        packs.add(Collections.singletonList(first));
+        packs.add(Collections.singletonList(second));
+        startConsumer();
+
+        assertTrue(firstProcessed.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        verify(consumer, after(200).never()).commit();
+
+        secondReleased.countDown();
+        verify(consumer, timeout(TIMEOUT_MS)).commit();
+        verify(consumer, never()).commit(any());
+    }
+
+    @Test
+    public void givenPackProcessingFailed_whenProcessedAgain_thenCommittedOnce() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        ackFunction = result -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw new RuntimeException("Processing failed");
+            }
+            return commit();
+        };
+        packs.add(Collections.singletonList(newMsg()));
+        startConsumer();
+
+        verify(consumer, timeout(TIMEOUT_MS)).commit();
+        assertEquals(2, attempts.get());
+    }
+
+    @Test
+    public void givenPackNotProcessed_whenServiceStopped_thenNotCommitted() throws Exception {
+        CountDownLatch failed = new CountDownLatch(1);
+        ackFunction = result -> {
+            failed.countDown();
+            throw new RuntimeException("Processing failed");
+        };
+        packs.add(Collections.singletonList(newMsg()));
+        startConsumer();
+
+        assertTrue(failed.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        ReflectionTestUtils.setField(service, "stopped", true);
+        consumerThread.join(TIMEOUT_MS);
+
+        verify(consumer, never()).commit();
+        verify(consumer, never()).commit(any());
+    }
+
+    private void startConsumer() {
+        consumerThread = new Thread(() -> service.pipelinedConsumerLoop(consumer, configuration, stats, "test"));
+        consumerThread.start();
+    }
+
+    private static boolean contains(TbRuleEngineProcessingResult result, TbProtoQueueMsg<ToRuleEngineMsg> msg) {
+        return result.getSuccessMap().containsValue(msg) || result.getPendingMap().containsValue(msg) || result.getFailedMap().containsValue(msg);
+    }
+
+    private static TbRuleEngineProcessingDecision commit() {
+        return new TbRuleEngineProcessingDecision(true, new ConcurrentHashMap<>());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static TbProtoQueueMsg<ToRuleEngineMsg> newMsg() {
+        UUID tenantId = UUID.randomUUID();
+        return new TbProtoQueueMsg<>(UUID.randomUUID(), ToRuleEngineMsg.newBuilder()
+                .setTenantIdMSB(tenantId.getMostSignificantBits())
+                .setTenantIdLSB(tenantId.getLeastSignificantBits())
+                .build());
+    }
+}
@@ -0,0 +1,156 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.service.queue;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TbRuleEngineMsgPackPipelineTest {
+
+    private final AtomicInteger inFlightMsgs = new AtomicInteger();
+    private final AtomicInteger commitLag = new AtomicInteger();
+
+    @Test
+    public void testCommitIsRequiredOnlyWhenAllPacksAreCompleted() {
+        TbRuleEngineMsgPackPipeline pipeline = new TbRuleEngineMsgPackPipeline(100, inFlightMsgs, commitLag);
+        TbRuleEngineMsgPackPipeline.Pack first = pipeline.add(10, null, false);
+        TbRuleEngineMsgPackPipeline.Pack second = pipeline.add(5, null, false);
+        assertEquals(15, inFlightMsgs.get());
+        assertEquals(15, commitLag.get());
+
+        second.complete();
+        assertFalse(pipeline.isCommitRequired());
+        assertEquals(10, inFlightMsgs.get());
+
+        first.complete();
+        assertTrue(pipeline.isCommitRequired());
+        assertEquals(0, inFlightMsgs.get());
+        assertEquals(15, commitLag.get());
+
+        pipeline.onCommit();
+        assertFalse(pipeline.isCommitRequired());
+        assertEquals(0, commitLag.get());
+    }
+
+    @Test
+    public void testPollingStopsUntilUncommittedMsgsAreCommitted() {
+        TbRuleEngineMsgPackPipeline pipeline = new TbRuleEngineMsgPackPipeline(20, inFlightMsgs, commitLag);
+        assertTrue(pipeline.canPoll());
+        TbRuleEngineMsgPackPipeline.Pack first = pipeline.add(15, null, false);
+        assertTrue(pipeline.canPoll());
+        TbRuleEngineMsgPackPipeline.Pack second = pipeline.add(15, null, false);
+        assertFalse(pipeline.canPoll());
+
+        first.complete();
+        second.complete();
+        assertFalse(pipeline.canPoll());
+        assertTrue(pipeline.isCommitRequired());
+        pipeline.onCommit();
+        assertTrue(pipeline.canPoll());
+    }
+
+    @Test
+    public void testSinglePackIsAllowedWithoutLimit() {
+        TbRuleEngineMsgPackPipeline pipeline = new TbRuleEngineMsgPackPipeline(0, inFlightMsgs, commitLag);
+        assertTrue(pipeline.canPoll());
+        pipeline.add(1, null, false);
+        assertFalse(pipeline.canPoll());
+    }
+
+    @Test
+    public void testCommitPositionFollowsWatermark() {
+        TbRuleEngineMsgPackPipeline pipeline = new TbRuleEngineMsgPackPipeline(100, inFlightMsgs, commitLag);
+        TbRuleEngineMsgPackPipeline.Pack first = pipeline.add(10, 1, false);
+        TbRuleEngineMsgPackPipeline.Pack second = pipeline.add(5, 2, false);
+        TbRuleEngineMsgPackPipeline.Pack third = pipeline.add(3, 3, false);
+
+        second.complete();
+        assertFalse(pipeline.isCommitRequired());
+
+        first.complete();
+        assertTrue(pipeline.isCommitRequired());
+        assertEquals(2, pipeline.getCommitPosition());
+        pipeline.onCommit();
+        assertEquals(3, pipeline.getUncommittedMsgs());
+        assertEquals(3, commitLag.get());
+        assertFalse(pipeline.isCommitRequired());
+
+        third.complete();
+        assertTrue(pipeline.isCommitRequired());
+        assertNull(pipeline.getCommitPosition());
+        pipeline.onCommit();
+        assertEquals(0, pipeline.getUncommittedMsgs());
+    }
+
+    @Test
+    public void testFailedPackIsNotCommitted() {
+        TbRuleEngineMsgPackPipeline pipeline = new TbRuleEngineMsgPackPipeline(100, inFlightMsgs, commitLag);
+        TbRuleEngineMsgPackPipeline.Pack first = pipeline.add(10, 1, false);
+        TbRuleEngineMsgPackPipeline.Pack second = pipeline.add(5, 2, false);
+
+        first.fail(new RuntimeException());
+        second.complete();
+        assertFalse(pipeline.isCommitRequired());
+        assertEquals(0, inFlightMsgs.get());
+        assertEquals(15, pipeline.getUncommittedMsgs());
+    }
+
+    @Test
+    public void testOrderedPackIsSubmittedAfterPreviousPackWithoutBlockingExecutor() throws InterruptedException {
+        TbRuleEngineMsgPackPipeline pipeline = new TbRuleEngineMsgPackPipeline(100, inFlightMsgs, commitLag);
+        TbRuleEngineMsgPackPipeline.Pack first = pipeline.add(1, null, false);
+        TbRuleEngineMsgPackPipeline.Pack second = pipeline.add(1, null, true);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            CountDownLatch secondStarted = new CountDownLatch(1);
+            second.submit(executor, secondStarted::countDown);
+
+            CountDownLatch otherStarted = new CountDownLatch(1);
+            executor.execute(otherStarted::countDown);
+            assertTrue(otherStarted.await(5, TimeUnit.SECONDS));
+            assertFalse(secondStarted.await(100, TimeUnit.MILLISECONDS));
+
+            first.complete();
+            assertTrue(secondStarted.await(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testOrderedPackIsSubmittedAfterPreviousPackFailed() throws InterruptedException {
+        TbRuleEngineMsgPackPipeline pipeline = new TbRuleEngineMsgPackPipeline(100, inFlightMsgs, commitLag);
+        TbRuleEngineMsgPackPipeline.Pack first = pipeline.add(1, null, false);
+        TbRuleEngineMsgPackPipeline.Pack second = pipeline.add(1, null, true);
+        CountDownLatch secondStarted = new CountDownLatch(1);
+        second.submit(Runnable::run, secondStarted::countDown);
+        assertFalse(secondStarted.await(100, TimeUnit.MILLISECONDS));
+
+        first.fail(new RuntimeException());
+        assertTrue(secondStarted.await(5, TimeUnit.SECONDS));
+    }
+
+}
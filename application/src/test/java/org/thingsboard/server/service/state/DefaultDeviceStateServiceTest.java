@@ -15,22 +15,43 @@
  */
 package org.thingsboard.server.service.state;
 
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.thingsboard.server.common.data.DataConstants;
+import org.thingsboard.server.common.data.Device;
 import org.thingsboard.server.common.data.id.DeviceId;
+import org.thingsboard.server.common.data.id.TenantId;
+import org.thingsboard.server.common.msg.TbMsg;
+import org.thingsboard.server.common.msg.TbMsgMetaData;
+import org.thingsboard.server.common.msg.queue.ServiceType;
+import org.thingsboard.server.common.msg.queue.TopicPartitionInfo;
 import org.thingsboard.server.dao.attributes.AttributesService;
 import org.thingsboard.server.dao.device.DeviceService;
 import org.thingsboard.server.dao.tenant.TenantService;
 import org.thingsboard.server.dao.timeseries.TimeseriesService;
 import org.thingsboard.server.queue.discovery.PartitionService;
 import org.thingsboard.server.cluster.TbClusterService;
+import org.thingsboard.server.service.telemetry.TelemetrySubscriptionService;
+
+import java.util.Map;
+import java.util.Set;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.willReturn;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
@@ -52,6 +73,8 @@ public class DefaultDeviceStateServiceTest {
     @Mock
     PartitionService partitionService;
     @Mock
+    TelemetrySubscriptionService tsSubService;
+    @Mock
     DeviceStateData deviceStateDataMock;
 
     DeviceId deviceId = DeviceId.fromString("00797a3b-7aeb-4b5b-b57a-c2a810d0f112");
@@ -80,4 +103,129 @@ public class DefaultDeviceStateServiceTest {
         Mockito.verify(service, times(1)).fetchDeviceStateData(deviceId);
     }
 
-}
\ No newline at end of file
+    @Test
+    public void givenExpiredActiveDevice_whenUpdateInactivityStateIfExpired_thenInactivityEventPushedOnce() {
+        service.setTsSubService(tsSubService);
+        long now = System.currentTimeMillis();
+        DeviceStateData stateData = DeviceStateData.builder()
+                .tenantId(TenantId.SYS_TENANT_ID)
+                .deviceId(deviceId)
+                .deviceCreationTime(0L)
+                .metaData(new TbMsgMetaData())
+                .state(DeviceState.builder()
+                        .active(true)
+                        .lastActivityTime(now - 2000L)
+                        .inactivityTimeout(1000L)
+                        .build())
+                .build();
+        service.deviceStates.put(deviceId, stateData);
+        service.scheduleInactivityCheck(deviceId, stateData);
+        assertThat(service.inactivityTimers.size(), is(1));
+
+        service.updateInactivityStateIfExpired();
+        service.updateInactivityStateIfExpired();
+
+        assertThat(stateData.getState().isActive(), is(false));
+        assertThat(service.inactivityTimers.size(), is(0));
+        Mockito.verify(clusterService, times(1)).pushMsgToRuleEngine(any(TenantId.class), any(), any(TbMsg.class), any());
+    }
+
+    @Test
+    public void givenActiveDevice_whenUpdateInactivityStateIfExpired_thenStaysScheduled() {
+        long now = System.currentTimeMillis();
+        DeviceStateData stateData = DeviceStateData.builder()
+                .deviceId(deviceId)
+                .state(DeviceState.builder()
+                        .active(true)
+                        .lastActivityTime(now)
+                        .inactivityTimeout(60000L)
+                        .build())
+                .build();
+        service.deviceStates.put(deviceId, stateData);
+        service.scheduleInactivityCheck(deviceId, stateData);
+
+        service.updateInactivityStateIfExpired();
+
+        assertThat(stateData.getState().isActive(), is(true));
+        assertThat(service.inactivityTimers.size(), is(1));
+        Mockito.verify(clusterService, never()).pushMsgToRuleEngine(any(TenantId.class), any(), any(TbMsg.class), any());
+    }
+
+    @Test
+    public void givenActivityPersistInterval_whenActivityReported_thenLastActivityTimePersistedOnFlush() {
+        service.setTsSubService(tsSubService);
+        ReflectionTestUtils.setField(service, "activityPersistIntervalInSec", 60);
+        long now = System.currentTimeMillis();
+        DeviceStateData stateData = DeviceStateData.builder()
+                .deviceId(deviceId)
+                .state(DeviceState.builder()
+                        .active(true)
+                        .lastActivityTime(now - 1000L)
+                        .inactivityTimeout(60000L)
+                        .build())
+                .build();
+
+        service.updateActivityState(deviceId, stateData, now - 500L);
+        service.updateActivityState(deviceId, stateData, now);
+        Mockito.verify(tsSubService, never()).saveAttrAndNotify(any(), any(), any(), anyString(), anyLong(), any());
+
+        service.flushPendingActivityTimes();
+        service.flushPendingActivityTimes();
+        Mockito.verify(tsSubService, times(1)).saveAttrAndNotify(any(), eq(deviceId), any(), eq(DefaultDeviceStateService.LAST_ACTIVITY_TIME), eq(now), any());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void givenStateNotLoaded_whenEventsReceived_thenProcessedInArrivalOrder() {
+        service.setTsSubService(tsSubService);
+        ReflectionTestUtils.setField(service, "deviceStateExecutor", MoreExecutors.newDirectExecutorService());
+        TopicPartitionInfo tpi = TopicPartitionInfo.builder().topic("tb_core").partition(0).myPartition(true).build();
+        willReturn(tpi).given(partitionService).resolve(ServiceType.TB_CORE, TenantId.SYS_TENANT_ID, deviceId);
+        Map<TopicPartitionInfo, Set<DeviceId>> partitionedDevices = (Map<TopicPartitionInfo, Set<DeviceId>>) ReflectionTestUtils.getField(service, "partitionedDevices");
+        partitionedDevices.put(tpi, Sets.newHashSet(deviceId));
+        SettableFuture<DeviceStateData> stateFuture = SettableFuture.create();
+        willReturn(stateFuture).given(service).fetchDeviceStateDataAsync(deviceId);
+
+        service.onDeviceConnect(TenantId.SYS_TENANT_ID, deviceId);
+        service.onDeviceDisconnect(TenantId.SYS_TENANT_ID, deviceId);
+        Mockito.verify(clusterService, never()).pushMsgToRuleEngine(any(TenantId.class), any(), any(TbMsg.class), any());
+
+        stateFuture.set(newStateData(System.currentTimeMillis(), 60000L));
+
+        ArgumentCaptor<TbMsg> msgCaptor = ArgumentCaptor.forClass(TbMsg.class);
+        Mockito.verify(clusterService, times(2)).pushMsgToRuleEngine(any(TenantId.class), any(), msgCaptor.capture(), any());
+        assertThat(msgCaptor.getAllValues().get(0).getType(), is(DataConstants.CONNECT_EVENT));
+        assertThat(msgCaptor.getAllValues().get(1).getType(), is(DataConstants.DISCONNECT_EVENT));
+        Mockito.verify(service, times(1)).fetchDeviceStateDataAsync(deviceId);
+        assertThat(service.pendingStateActions.isEmpty(), is(true));
+    }
+
+    @Test
+    public void givenStateNotLoaded_whenFetched_thenInactivityCheckScheduled() throws Exception {
+        ReflectionTestUtils.setField(service, "deviceStateExecutor", MoreExecutors.newDirectExecutorService());
+        Device device = new Device(deviceId);
+        DeviceStateData stateData = newStateData(System.currentTimeMillis(), 60000L);
+        willReturn(Futures.immediateFuture(device)).given(deviceService).findDeviceByIdAsync(TenantId.SYS_TENANT_ID, deviceId);
+        willReturn(Futures.immediateFuture(stateData)).given(service).fetchDeviceState(device);
+
+        assertThat(service.fetchDeviceStateDataAsync(deviceId).get(), is(stateData));
+
+        assertThat(service.deviceStates.get(deviceId), is(stateData));
+        assertThat(service.inactivityTimers.size(), is(1));
+    }
+
+    private DeviceStateData newStateData(long lastActivityTime, long inactivityTimeout) {
+        return DeviceStateData.builder()
+                .tenantId(TenantId.SYS_TENANT_ID)
+                .deviceId(deviceId)
+                .deviceCreationTime(0L)
+                .metaData(new TbMsgMetaData())
+                .state(DeviceState.builder()
+                        .active(true)
+                        .lastActivityTime(lastActivityTime)
+                        .inactivityTimeout(inactivityTimeout)
+                        .build())
+                .build();
+    }
+
+}
@@ -0,0 +1,64 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.service.state;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class InactivityTimerWheelTest {
+
+    @Test
+    public void givenScheduledKeys_whenPollExpired_thenOnlyExpiredReturned() {
+        InactivityTimerWheel<String> timers = new InactivityTimerWheel<>(1000);
+        timers.schedule("a", 1000);
+        timers.schedule("b", 1500);
+        timers.schedule("c", 5000);
+
+        assertThat(timers.pollExpired(999).isEmpty(), is(true));
+        assertThat(timers.pollExpired(1999), is(Collections.singletonList("a")));
+        assertThat(timers.pollExpired(2000), is(Collections.singletonList("b")));
+        assertThat(timers.size(), is(1));
+        assertThat(timers.pollExpired(10000), is(Collections.singletonList("c")));
+        assertThat(timers.size(), is(0));
+    }
+
+    @Test
+    public void givenRescheduledKey_whenPollExpired_thenNewDeadlineUsed() {
+        InactivityTimerWheel<String> timers = new InactivityTimerWheel<>(1000);
+        timers.schedule("a", 1000);
+        timers.schedule("a", 3000);
+
+        assertThat(timers.pollExpired(2000).isEmpty(), is(true));
+        List<String> expired = timers.pollExpired(3000);
+        assertThat(expired, is(Collections.singletonList("a")));
+    }
+
+    @Test
+    public void givenCancelledKey_whenPollExpired_thenNotReturned() {
+        InactivityTimerWheel<String> timers = new InactivityTimerWheel<>(1000);
+        timers.schedule("a", 1000);
+        timers.schedule("b", 1000);
+        timers.cancel("a");
+
+        assertThat(timers.pollExpired(1000), is(Collections.singletonList("b")));
+        assertThat(timers.size(), is(0));
+    }
+}
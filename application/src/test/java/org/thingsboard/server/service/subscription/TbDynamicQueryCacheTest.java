@@ -0,0 +1,148 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.service.subscription;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.thingsboard.server.common.data.EntityType;
+import org.thingsboard.server.common.data.id.CustomerId;
+import org.thingsboard.server.common.data.id.DeviceId;
+import org.thingsboard.server.common.data.id.EntityId;
+import org.thingsboard.server.common.data.id.TenantId;
+import org.thingsboard.server.common.data.page.PageData;
+import org.thingsboard.server.common.data.query.EntityData;
+import org.thingsboard.server.common.data.query.EntityDataPageLink;
+import org.thingsboard.server.common.data.query.EntityDataQuery;
+import org.thingsboard.server.common.data.query.EntityDataSortOrder;
+import org.thingsboard.server.common.data.query.EntityKey;
+import org.thingsboard.server.common.data.query.EntityKeyType;
+import org.thingsboard.server.common.data.query.EntityTypeFilter;
+import org.thingsboard.server.common.data.query.TsValue;
+import org.thingsboard.server.dao.entity.EntityService;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.willAnswer;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@RunWith(MockitoJUnitRunner.class)
+public class TbDynamicQueryCacheTest {
+
+    private static final long TTL = 60000;
+    private static final long MAX_AGE = 600000;
+
+    @Mock
+    EntityService entityService;
+
+    TenantId tenantId = new TenantId(UUID.randomUUID());
+
+    TbDynamicQueryCache cache;
+
+    @Before
+    public void setUp() {
+        cache = new TbDynamicQueryCache(entityService, TTL, MAX_AGE);
+        willAnswer(invocation -> {
+            Map<EntityKeyType, Map<String, TsValue>> latest = new HashMap<>();
+            latest.put(EntityKeyType.ENTITY_FIELD, new HashMap<>(Collections.singletonMap("name", new TsValue(0, "Device A"))));
+            EntityData entityData = new EntityData(new DeviceId(UUID.randomUUID()), latest, null);
+            return new PageData<>(Collections.singletonList(entityData), 1, 1, false);
+        }).given(entityService).findEntityDataByQuery(any(), any(), any());
+    }
+
+    @Test
+    public void givenIdenticalQueries_whenFindEntityData_thenQueryExecutedOnce() {
+        PageData<EntityData> first = cache.findEntityData(tenantId, null, deviceQuery(EntityKeyType.ENTITY_FIELD), null, 0L);
+        PageData<EntityData> second = cache.findEntityData(tenantId, null, deviceQuery(EntityKeyType.ENTITY_FIELD), null, 0L);
+
+        verify(entityService, times(1)).findEntityDataByQuery(any(), any(), any());
+        assertThat(second.getData().get(0).getEntityId(), is(first.getData().get(0).getEntityId()));
+        assertThat(cache.getHitsAndReset(), is(1));
+        assertThat(cache.getMissesAndReset(), is(1));
+    }
+
+    @Test
+    public void givenCachedResult_whenCallerModifiesCopy_thenCachedResultIsNotChanged() {
+        PageData<EntityData> first = cache.findEntityData(tenantId, null, deviceQuery(EntityKeyType.ENTITY_FIELD), null, 0L);
+        first.getData().get(0).getLatest().get(EntityKeyType.ENTITY_FIELD).put("name", new TsValue(1, "Device B"));
+
+        PageData<EntityData> second = cache.findEntityData(tenantId, null, deviceQuery(EntityKeyType.ENTITY_FIELD), null, 0L);
+
+        assertThat(second.getData().get(0).getLatest().get(EntityKeyType.ENTITY_FIELD).get("name").getValue(), is("Device A"));
+    }
+
+    @Test
+    public void givenNotBeforeAfterResultTime_whenFindEntityData_thenQueryExecutedAgain() {
+        cache.findEntityData(tenantId, null, deviceQuery(EntityKeyType.ENTITY_FIELD), null, 0L);
+        cache.findEntityData(tenantId, null, deviceQuery(EntityKeyType.ENTITY_FIELD), null, System.currentTimeMillis() + 1);
+
+        verify(entityService, times(2)).findEntityDataByQuery(any(), any(), any());
+    }
+
+    @Test
+    public void givenEntityChange_whenFindEntityData_thenQueryExecutedAgain() {
+        cache.findEntityData(tenantId, null, deviceQuery(EntityKeyType.ENTITY_FIELD), null, 0L);
+        cache.onEntityChange(new TenantId(UUID.randomUUID()));
+        cache.findEntityData(tenantId, null, deviceQuery(EntityKeyType.ENTITY_FIELD), null, 0L);
+        verify(entityService, times(1)).findEntityDataByQuery(any(), any(), any());
+
+        cache.onEntityChange(tenantId);
+        cache.findEntityData(tenantId, null, deviceQuery(EntityKeyType.ENTITY_FIELD), null, 0L);
+        verify(entityService, times(2)).findEntityDataByQuery(any(), any(), any());
+    }
+
+    @Test
+    public void givenQuerySortedByTimeseries_whenIsEntityFieldsQuery_thenFalse() {
+        assertThat(TbDynamicQueryCache.isEntityFieldsQuery(null, deviceQuery(EntityKeyType.ENTITY_FIELD), new EntityDataSortOrder(new EntityKey(EntityKeyType.ENTITY_FIELD, "name"))), is(true));
+        assertThat(TbDynamicQueryCache.isEntityFieldsQuery(null, deviceQuery(EntityKeyType.TIME_SERIES), new EntityDataSortOrder(new EntityKey(EntityKeyType.TIME_SERIES, "temperature"))), is(false));
+    }
+
+    @Test
+    public void givenCustomerQuery_whenIsEntityFieldsQuery_thenFalse() {
+        EntityDataSortOrder sortOrder = new EntityDataSortOrder(new EntityKey(EntityKeyType.ENTITY_FIELD, "name"));
+        assertThat(TbDynamicQueryCache.isEntityFieldsQuery(new CustomerId(EntityId.NULL_UUID), deviceQuery(EntityKeyType.ENTITY_FIELD), sortOrder), is(true));
+        assertThat(TbDynamicQueryCache.isEntityFieldsQuery(new CustomerId(UUID.randomUUID()), deviceQuery(EntityKeyType.ENTITY_FIELD), sortOrder), is(false));
+    }
+
+    @Test
+    public void givenCustomerQuery_whenTtlExpired_thenQueryExecutedAgain() throws Exception {
+        cache = new TbDynamicQueryCache(entityService, 1, MAX_AGE);
+        CustomerId customerId = new CustomerId(UUID.randomUUID());
+        cache.findEntityData(tenantId, customerId, deviceQuery(EntityKeyType.ENTITY_FIELD), null, 0L);
+        Thread.sleep(10);
+        cache.findEntityData(tenantId, customerId, deviceQuery(EntityKeyType.ENTITY_FIELD), null, 0L);
+
+        verify(entityService, times(2)).findEntityDataByQuery(any(), any(), any());
+    }
+
+    private static EntityDataQuery deviceQuery(EntityKeyType sortKeyType) {
+        EntityTypeFilter filter = new EntityTypeFilter();
+        filter.setEntityType(EntityType.DEVICE);
+        EntityDataSortOrder sortOrder = new EntityDataSortOrder(new EntityKey(sortKeyType, "name"));
+        EntityDataPageLink pageLink = new EntityDataPageLink(10, 0, null, sortOrder);
+        return new EntityDataQuery(filter, pageLink, Collections.singletonList(new EntityKey(EntityKeyType.ENTITY_FIELD, "name")),
+                Collections.emptyList(), Collections.emptyList());
+    }
+}
@@ -0,0 +1,128 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.service.subscription;
+
+import org.junit.Test;
+import org.thingsboard.server.common.data.id.DeviceId;
+import org.thingsboard.server.common.data.id.TenantId;
+import org.thingsboard.server.common.data.kv.BasicTsKvEntry;
+import org.thingsboard.server.common.data.kv.LongDataEntry;
+import org.thingsboard.server.common.data.kv.TsKvEntry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+
+public class TbEntitySubscriptionsTest {
+
+    private final TenantId tenantId = new TenantId(UUID.randomUUID());
+    private final DeviceId deviceId = new DeviceId(UUID.randomUUID());
+
+    private final TbEntitySubscriptions subscriptions = new TbEntitySubscriptions();
+
+    @Test
+    public void givenSubscriptionsWithSameKeys_whenMatched_thenDataSelectedOncePerGroup() {
+        TbSubscription first = tsSubscription(1, false, "temperature", "humidity");
+        TbSubscription second = tsSubscription(2, false, "humidity", "temperature");
+        TbSubscription third = tsSubscription(3, false, "pressure");
+        TbSubscription all = tsSubscription(4, true);
+        subscriptions.add(first);
+        subscriptions.add(second);
+        subscriptions.add(third);
+        subscriptions.add(all);
+
+        List<TsKvEntry> entries = entries("temperature", "voltage");
+        Map<Set<TbSubscription>, List<TsKvEntry>> matched = matchTimeseries(entries);
+
+        assertThat(matched.size(), is(2));
+        assertThat(matched.get(new HashSet<>(Arrays.asList(first, second))), is(entries.subList(0, 1)));
+        assertThat(matched.get(new HashSet<>(Arrays.asList(all))), is(entries));
+    }
+
+    @Test
+    public void givenRemovedSubscription_whenMatched_thenNotNotified() {
+        TbSubscription first = tsSubscription(1, false, "temperature");
+        TbSubscription second = tsSubscription(2, false, "temperature");
+        subscriptions.add(first);
+        subscriptions.add(second);
+
+        assertThat(subscriptions.remove(tsSubscription(1, false, "temperature")), is(true));
+        assertThat(subscriptions.remove(first), is(false));
+        assertThat(matchTimeseries(entries("temperature")).keySet(), containsInAnyOrder(new HashSet<>(Arrays.asList(second))));
+
+        subscriptions.remove(second);
+        assertThat(subscriptions.isEmpty(), is(true));
+        assertThat(matchTimeseries(entries("temperature")).keySet(), empty());
+    }
+
+    @Test
+    public void givenAttributeSubscriptions_whenMatched_thenScopeRespected() {
+        TbSubscription client = attrSubscription(1, TbAttributeSubscriptionScope.CLIENT_SCOPE, "version");
+        TbSubscription server = attrSubscription(2, TbAttributeSubscriptionScope.SERVER_SCOPE, "version");
+        TbSubscription any = attrSubscription(3, TbAttributeSubscriptionScope.ANY_SCOPE, "version");
+        subscriptions.add(client);
+        subscriptions.add(server);
+        subscriptions.add(any);
+
+        List<TbSubscription> matched = new ArrayList<>();
+        subscriptions.matchAttributes("CLIENT_SCOPE", entries("version"), (data, subs) -> matched.addAll(subs));
+
+        assertThat(matched, containsInAnyOrder(client, any));
+    }
+
+    private Map<Set<TbSubscription>, List<TsKvEntry>> matchTimeseries(List<TsKvEntry> entries) {
+        Map<Set<TbSubscription>, List<TsKvEntry>> result = new HashMap<>();
+        subscriptions.matchTimeseries(entries, (data, subs) -> result.put(new HashSet<>(subs), data));
+        return result;
+    }
+
+    private TbSubscription tsSubscription(int subscriptionId, boolean allKeys, String... keys) {
+        return TbTimeseriesSubscription.builder()
+                .serviceId("tb-core-0").sessionId("session").subscriptionId(subscriptionId)
+                .tenantId(tenantId).entityId(deviceId)
+                .allKeys(allKeys).keyStates(keyStates(keys))
+                .build();
+    }
+
+    private TbSubscription attrSubscription(int subscriptionId, TbAttributeSubscriptionScope scope, String... keys) {
+        return TbAttributeSubscription.builder()
+                .serviceId("tb-core-0").sessionId("session").subscriptionId(subscriptionId)
+                .tenantId(tenantId).entityId(deviceId)
+                .scope(scope).keyStates(keyStates(keys))
+                .build();
+    }
+
+    private static Map<String, Long> keyStates(String... keys) {
+        return Arrays.stream(keys).collect(Collectors.toMap(key -> key, key -> 0L));
+    }
+
+    private static List<TsKvEntry> entries(String... keys) {
+        return Arrays.stream(keys)
+                .map(key -> new BasicTsKvEntry(1000L, new LongDataEntry(key, 1L)))
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,212 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.service.telemetry;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+import org.thingsboard.server.common.data.id.DeviceId;
+import org.thingsboard.server.common.data.kv.BasicTsKvEntry;
+import org.thingsboard.server.common.data.kv.DoubleDataEntry;
+import org.thingsboard.server.common.data.kv.LongDataEntry;
+import org.thingsboard.server.common.data.kv.TsKvEntry;
+import org.thingsboard.server.common.data.page.PageData;
+import org.thingsboard.server.common.data.query.EntityData;
+import org.thingsboard.server.common.data.query.EntityKeyType;
+import org.thingsboard.server.common.data.query.TsValue;
+import org.thingsboard.server.service.telemetry.cmd.v2.EntityDataUpdate;
+import org.thingsboard.server.service.telemetry.sub.SubscriptionErrorCode;
+import org.thingsboard.server.service.telemetry.sub.TelemetrySubscriptionUpdate;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+
+public class TelemetryWebSocketUpdateTest {
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    public void givenSharedUpdate_whenEncoded_thenSameAsEncodedSeparately() throws Exception {
+        List<TsKvEntry> data = Arrays.asList(
+                new BasicTsKvEntry(1000L, new DoubleDataEntry("temperature", 21.5)),
+                new BasicTsKvEntry(1000L, new LongDataEntry("humidity", 40L)));
+        TelemetrySubscriptionUpdate template = new TelemetrySubscriptionUpdate(1, data);
+
+        for (int subscriptionId : new int[]{1, 12, 345}) {
+            TelemetrySubscriptionUpdate update = template.withSubscriptionId(subscriptionId);
+            String expected = mapper.writeValueAsString(new TelemetrySubscriptionUpdate(subscriptionId, data));
+            assertThat(TelemetryWebSocketUpdate.of(mapper, update).encode(), equalTo(expected));
+        }
+    }
+
+    @Test
+    public void givenTsUpdates_whenMerged_thenPointsConcatenatedPerKey() throws Exception {
+        TelemetryWebSocketUpdate older = TelemetryWebSocketUpdate.of(mapper, new TelemetrySubscriptionUpdate(1, Arrays.asList(
+                new BasicTsKvEntry(1000L, new DoubleDataEntry("temperature", 21.5)),
+                new BasicTsKvEntry(1000L, new LongDataEntry("humidity", 40L)))));
+        TelemetryWebSocketUpdate newer = TelemetryWebSocketUpdate.of(mapper, new TelemetrySubscriptionUpdate(1, Collections.singletonList(
+                new BasicTsKvEntry(2000L, new DoubleDataEntry("temperature", 22.5)))));
+
+        JsonNode merged = mapper.readTree(older.merge(newer).encode());
+
+        assertThat(merged.get("subscriptionId").asInt(), equalTo(1));
+        assertThat(merged.get("data").get("temperature").size(), equalTo(2));
+        assertThat(merged.get("data").get("temperature").get(0).get(0).asLong(), equalTo(1000L));
+        assertThat(merged.get("data").get("temperature").get(0).get(1).asText(), equalTo("21.5"));
+        assertThat(merged.get("data").get("temperature").get(1).get(0).asLong(), equalTo(2000L));
+        assertThat(merged.get("data").get("temperature").get(1).get(1).asText(), equalTo("22.5"));
+        assertThat(merged.get("data").get("humidity").get(0).get(1).asText(), equalTo("40"));
+    }
+
+    @Test
+    public void givenTsUpdatesWithSamePoint_whenMerged_thenNewerValueKept() throws Exception {
+        TelemetryWebSocketUpdate older = TelemetryWebSocketUpdate.of(mapper, new TelemetrySubscriptionUpdate(1, Arrays.asList(
+                new BasicTsKvEntry(1000L, new DoubleDataEntry("temperature", 21.5)),
+                new BasicTsKvEntry(2000L, new DoubleDataEntry("temperature", 22.5)))));
+        TelemetryWebSocketUpdate newer = TelemetryWebSocketUpdate.of(mapper, new TelemetrySubscriptionUpdate(1, Arrays.asList(
+                new BasicTsKvEntry(2000L, new DoubleDataEntry("temperature", 23.5)),
+                new BasicTsKvEntry(3000L, new DoubleDataEntry("temperature", 24.5)))));
+
+        JsonNode temperature = mapper.readTree(older.merge(newer).encode()).get("data").get("temperature");
+
+        assertThat(temperature.size(), equalTo(3));
+        assertThat(temperature.get(0).get(1).asText(), equalTo("21.5"));
+        assertThat(temperature.get(1).get(1).asText(), equalTo("23.5"));
+        assertThat(temperature.get(2).get(1).asText(), equalTo("24.5"));
+    }
+
+    @Test
+    public void givenLatestValuesUpdates_whenMerged_thenNewestPointKeptPerKey() throws Exception {
+        TelemetryWebSocketUpdate older = TelemetryWebSocketUpdate.of(mapper, new TelemetrySubscriptionUpdate(1, Arrays.asList(
+                new BasicTsKvEntry(2000L, new DoubleDataEntry("temperature", 22.5)),
+                new BasicTsKvEntry(1000L, new LongDataEntry("humidity", 40L)))), true);
+        TelemetryWebSocketUpdate newer = TelemetryWebSocketUpdate.of(mapper, new TelemetrySubscriptionUpdate(1, Arrays.asList(
+                new BasicTsKvEntry(1000L, new DoubleDataEntry("temperature", 21.5)),
+                new BasicTsKvEntry(3000L, new LongDataEntry("humidity", 41L)))), true);
+
+        TelemetryWebSocketUpdate merged = older.merge(newer);
+        JsonNode data = mapper.readTree(merged.encode()).get("data");
+
+        assertThat(data.get("temperature").size(), equalTo(1));
+        assertThat(data.get("temperature").get(0).get(1).asText(), equalTo("22.5"));
+        assertThat(data.get("humidity").size(), equalTo(1));
+        assertThat(data.get("humidity").get(0).get(1).asText(), equalTo("41"));
+        assertThat(merged.getPointsCount(), equalTo(0));
+    }
+
+    @Test
+    public void givenLatestValuesAndHistoryUpdates_whenMerged_thenNotMerged() {
+        TelemetryWebSocketUpdate latest = TelemetryWebSocketUpdate.of(mapper, new TelemetrySubscriptionUpdate(1, Collections.singletonList(
+                new BasicTsKvEntry(1000L, new DoubleDataEntry("temperature", 21.5)))), true);
+        TelemetryWebSocketUpdate history = TelemetryWebSocketUpdate.of(mapper, new TelemetrySubscriptionUpdate(1, Collections.singletonList(
+                new BasicTsKvEntry(2000L, new DoubleDataEntry("temperature", 22.5)))));
+
+        assertThat(latest.merge(history), nullValue());
+        assertThat(history.merge(latest), nullValue());
+    }
+
+    @Test
+    public void givenHistoryUpdates_whenMerged_thenAllPointsCounted() {
+        TelemetryWebSocketUpdate older = TelemetryWebSocketUpdate.of(mapper, new TelemetrySubscriptionUpdate(1, Arrays.asList(
+                new BasicTsKvEntry(1000L, new DoubleDataEntry("temperature", 21.5)),
+                new BasicTsKvEntry(1000L, new LongDataEntry("humidity", 40L)))));
+        TelemetryWebSocketUpdate newer = TelemetryWebSocketUpdate.of(mapper, new TelemetrySubscriptionUpdate(1, Collections.singletonList(
+                new BasicTsKvEntry(2000L, new DoubleDataEntry("temperature", 22.5)))));
+
+        assertThat(older.getPointsCount(), equalTo(2));
+        assertThat(newer.getPointsCount(), equalTo(1));
+        assertThat(older.merge(newer).getPointsCount(), equalTo(3));
+    }
+
+    @Test
+    public void givenErrorUpdate_whenMerged_thenNotMerged() {
+        TelemetryWebSocketUpdate older = TelemetryWebSocketUpdate.of(mapper, new TelemetrySubscriptionUpdate(1, Collections.singletonList(
+                new BasicTsKvEntry(1000L, new DoubleDataEntry("temperature", 21.5)))));
+        TelemetryWebSocketUpdate error = TelemetryWebSocketUpdate.of(mapper, new TelemetrySubscriptionUpdate(1, SubscriptionErrorCode.INTERNAL_ERROR));
+
+        assertThat(older.merge(error), nullValue());
+        assertThat(error.merge(older), nullValue());
+    }
+
+    @Test
+    public void givenEntityDataUpdates_whenMerged_thenLatestValuesMergedPerEntity() throws Exception {
+        DeviceId first = new DeviceId(UUID.randomUUID());
+        DeviceId second = new DeviceId(UUID.randomUUID());
+        TelemetryWebSocketUpdate older = TelemetryWebSocketUpdate.of(mapper, new EntityDataUpdate(1, null, Arrays.asList(
+                entityData(first, "temperature", 1000L, "21.5"),
+                entityData(second, "temperature", 1000L, "30")), 100));
+        TelemetryWebSocketUpdate newer = TelemetryWebSocketUpdate.of(mapper, new EntityDataUpdate(1, null, Arrays.asList(
+                entityData(first, "temperature", 2000L, "22.5"),
+                entityData(first, "humidity", 2000L, "40")), 100));
+
+        JsonNode update = mapper.readTree(older.merge(newer).encode()).get("update");
+
+        assertThat(update.size(), equalTo(2));
+        JsonNode firstLatest = update.get(0).get("latest").get("TIME_SERIES");
+        assertThat(update.get(0).get("entityId").get("id").asText(), equalTo(first.getId().toString()));
+        assertThat(firstLatest.get("temperature").get("value").asText(), equalTo("22.5"));
+        assertThat(firstLatest.get("humidity").get("value").asText(), equalTo("40"));
+        assertThat(update.get(1).get("latest").get("TIME_SERIES").get("temperature").get("value").asText(), equalTo("30"));
+    }
+
+    @Test
+    public void givenEntityDataTimeseriesUpdates_whenMerged_thenPointsConcatenated() throws Exception {
+        DeviceId deviceId = new DeviceId(UUID.randomUUID());
+        TelemetryWebSocketUpdate older = TelemetryWebSocketUpdate.of(mapper, new EntityDataUpdate(1, null, Collections.singletonList(
+                timeseriesData(deviceId, new TsValue(1000L, "21.5"), new TsValue(2000L, "22.5"))), 100));
+        TelemetryWebSocketUpdate newer = TelemetryWebSocketUpdate.of(mapper, new EntityDataUpdate(1, null, Collections.singletonList(
+                timeseriesData(deviceId, new TsValue(2000L, "23.5"), new TsValue(3000L, "24.5"))), 100));
+
+        JsonNode temperature = mapper.readTree(older.merge(newer).encode()).get("update").get(0).get("timeseries").get("temperature");
+
+        assertThat(temperature.size(), equalTo(3));
+        assertThat(temperature.get(0).get("ts").asLong(), equalTo(1000L));
+        assertThat(temperature.get(1).get("value").asText(), equalTo("23.5"));
+        assertThat(temperature.get(2).get("ts").asLong(), equalTo(3000L));
+    }
+
+    @Test
+    public void givenEntityDataPageUpdate_whenMerged_thenNotMerged() {
+        DeviceId deviceId = new DeviceId(UUID.randomUUID());
+        TelemetryWebSocketUpdate page = TelemetryWebSocketUpdate.of(mapper, new EntityDataUpdate(1,
+                new PageData<>(Collections.singletonList(entityData(deviceId, "temperature", 1000L, "21.5")), 1, 1, false), null, 100));
+        TelemetryWebSocketUpdate update = TelemetryWebSocketUpdate.of(mapper, new EntityDataUpdate(1, null,
+                Collections.singletonList(entityData(deviceId, "temperature", 2000L, "22.5")), 100));
+
+        assertThat(page.merge(update), nullValue());
+        assertThat(update.merge(page), nullValue());
+    }
+
+    private static EntityData timeseriesData(DeviceId deviceId, TsValue... values) {
+        return new EntityData(deviceId, null, Collections.singletonMap("temperature", values));
+    }
+
+    private static EntityData entityData(DeviceId deviceId, String key, long ts, String value) {
+        Map<String, TsValue> values = new HashMap<>();
+        values.put(key, new TsValue(ts, value));
+        Map<EntityKeyType, Map<String, TsValue>> latest = new HashMap<>();
+        latest.put(EntityKeyType.TIME_SERIES, values);
+        return new EntityData(deviceId, latest, null);
+    }
+}
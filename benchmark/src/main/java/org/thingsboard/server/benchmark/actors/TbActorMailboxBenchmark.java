@@ -0,0 +1,187 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.benchmark.actors;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.thingsboard.common.util.ThingsBoardExecutors;
+import org.thingsboard.server.actors.AbstractTbActor;
+import org.thingsboard.server.actors.DefaultTbActorSystem;
+import org.thingsboard.server.actors.TbActor;
+import org.thingsboard.server.actors.TbActorCreator;
+import org.thingsboard.server.actors.TbActorId;
+import org.thingsboard.server.actors.TbActorMailboxType;
+import org.thingsboard.server.actors.TbActorRef;
+import org.thingsboard.server.actors.TbActorSystem;
+import org.thingsboard.server.actors.TbActorSystemSettings;
+import org.thingsboard.server.actors.TbStringActorId;
+import org.thingsboard.server.common.msg.MsgType;
+import org.thingsboard.server.common.msg.TbActorMsg;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Measures enqueue and mailbox processing of {@link org.thingsboard.server.actors.TbActorMailbox}
+ * when several producer threads talk to the same set of actors.
+ * Each invocation sends {@link #BATCH_SIZE} messages and waits until the actors have processed all of them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Threads(4)
+public class TbActorMailboxBenchmark {
+
+    private static final String DISPATCHER_ID = "benchmark-dispatcher";
+    private static final int BATCH_SIZE = 1000;
+
+    @Param({"5", "50"})
+    private int actorThroughput;
+
+    @Param({"1", "16"})
+    private int actorCount;
+
+    @Param({"4"})
+    private int dispatcherPoolSize;
+
+    @Param({"LINKED", "ARRAY"})
+    private TbActorMailboxType mailboxType;
+
+    private TbActorSystem actorSystem;
+    private ExecutorService executor;
+    private TbActorRef[] actors;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        actorSystem = new DefaultTbActorSystem(new TbActorSystemSettings(actorThroughput, 1, 0, mailboxType, 0));
+        executor = ThingsBoardExecutors.newWorkStealingPool(dispatcherPoolSize, getClass());
+        actorSystem.createDispatcher(DISPATCHER_ID, executor);
+        actors = new TbActorRef[actorCount];
+        for (int i = 0; i < actorCount; i++) {
+            actors[i] = actorSystem.createRootActor(DISPATCHER_ID, new CountingActorCreator(new TbStringActorId("benchmark-" + i)));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        actorSystem.stop();
+        executor.shutdownNow();
+    }
+
+    @State(Scope.Thread)
+    public static class Producer {
+        private final AtomicInteger pending = new AtomicInteger();
+        private final CountDownMsg msg = new CountDownMsg(pending);
+        private int next;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void tell(Producer producer) {
+        producer.pending.addAndGet(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            nextActor(producer).tell(producer.msg);
+        }
+        awaitProcessed(producer);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void tellWithMixedPriority(Producer producer) {
+        producer.pending.addAndGet(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            if (i % 10 == 0) {
+                nextActor(producer).tellWithHighPriority(producer.msg);
+            } else {
+                nextActor(producer).tell(producer.msg);
+            }
+        }
+        awaitProcessed(producer);
+    }
+
+    private TbActorRef nextActor(Producer producer) {
+        int idx = producer.next++;
+        if (producer.next == actorCount) {
+            producer.next = 0;
+        }
+        return actors[idx];
+    }
+
+    private static void awaitProcessed(Producer producer) {
+        while (producer.pending.get() > 0) {
+            Thread.onSpinWait();
+        }
+    }
+
+    private static class CountDownMsg implements TbActorMsg {
+
+        private final AtomicInteger pending;
+
+        CountDownMsg(AtomicInteger pending) {
+            this.pending = pending;
+        }
+
+        @Override
+        public MsgType getMsgType() {
+            return MsgType.QUEUE_TO_RULE_ENGINE_MSG;
+        }
+    }
+
+    private static class CountingActor extends AbstractTbActor {
+
+        @Override
+        public boolean process(TbActorMsg msg) {
+            ((CountDownMsg) msg).pending.decrementAndGet();
+            return true;
+        }
+    }
+
+    private static class CountingActorCreator implements TbActorCreator {
+
+        private final TbActorId actorId;
+
+        CountingActorCreator(TbActorId actorId) {
+            this.actorId = actorId;
+        }
+
+        @Override
+        public TbActorId createActorId() {
+            return actorId;
+        }
+
+        @Override
+        public TbActor createActor() {
+            return new CountingActor();
+        }
+    }
+}
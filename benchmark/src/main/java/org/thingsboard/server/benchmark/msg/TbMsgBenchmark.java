@@ -0,0 +1,102 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.benchmark.msg;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.thingsboard.server.common.data.id.CustomerId;
+import org.thingsboard.server.common.data.id.DeviceId;
+import org.thingsboard.server.common.data.id.RuleChainId;
+import org.thingsboard.server.common.data.id.RuleNodeId;
+import org.thingsboard.server.common.msg.TbMsg;
+import org.thingsboard.server.common.msg.TbMsgMetaData;
+import org.thingsboard.server.common.msg.queue.ServiceQueue;
+import org.thingsboard.server.common.msg.queue.TbMsgCallback;
+import org.thingsboard.server.common.msg.session.SessionMsgType;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the queue (de)serialization of {@link TbMsg} and copying of {@link TbMsgMetaData},
+ * which happen for every message that passes a rule engine or core queue.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 3)
+public class TbMsgBenchmark {
+
+    @Param({"3", "16"})
+    private int metaDataSize;
+
+    @Param({"8", "64"})
+    private int telemetryKeys;
+
+    private TbMsg msg;
+    private TbMsgMetaData metaData;
+    private byte[] msgBytes;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        metaData = new TbMsgMetaData();
+        metaData.putValue("deviceName", "Thermostat A-1");
+        metaData.putValue("deviceType", "thermostat");
+        metaData.putValue("ts", Long.toString(System.currentTimeMillis()));
+        for (int i = 3; i < metaDataSize; i++) {
+            metaData.putValue("key" + i, "value" + i);
+        }
+        StringBuilder data = new StringBuilder("{");
+        for (int i = 0; i < telemetryKeys; i++) {
+            if (i > 0) {
+                data.append(',');
+            }
+            data.append("\"temperature").append(i).append("\":").append(20.5 + i);
+        }
+        data.append('}');
+        msg = TbMsg.newMsg(ServiceQueue.MAIN, SessionMsgType.POST_TELEMETRY_REQUEST.name(), new DeviceId(UUID.randomUUID()),
+                new CustomerId(UUID.randomUUID()), metaData, data.toString(),
+                new RuleChainId(UUID.randomUUID()), new RuleNodeId(UUID.randomUUID()));
+        msgBytes = TbMsg.toByteArray(msg);
+    }
+
+    @Benchmark
+    public byte[] toByteArray() {
+        return TbMsg.toByteArray(msg);
+    }
+
+    @Benchmark
+    public TbMsg fromBytes() {
+        return TbMsg.fromBytes(ServiceQueue.MAIN, msgBytes, TbMsgCallback.EMPTY);
+    }
+
+    @Benchmark
+    public TbMsgMetaData metaDataCopy() {
+        return metaData.copy();
+    }
+}
@@ -0,0 +1,96 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.benchmark.msg;
+
+import com.google.gson.JsonParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.thingsboard.server.common.data.id.DeviceId;
+import org.thingsboard.server.common.data.kv.DataType;
+import org.thingsboard.server.common.data.kv.KvEntry;
+import org.thingsboard.server.common.msg.TbMsg;
+import org.thingsboard.server.common.msg.TbMsgKvDataUtils;
+import org.thingsboard.server.common.msg.TbMsgMetaData;
+import org.thingsboard.server.common.msg.gen.MsgProtos;
+import org.thingsboard.server.common.msg.queue.ServiceQueue;
+import org.thingsboard.server.common.msg.queue.TbMsgCallback;
+import org.thingsboard.server.common.msg.session.SessionMsgType;
+import org.thingsboard.server.common.transport.adaptor.JsonConverter;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the JSON text and the typed key-value payload of a telemetry {@link TbMsg}
+ * on the path queue message → telemetry entries, as done by the save timeseries node.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 3)
+public class TbMsgPayloadBenchmark {
+
+    @Param({"8", "64"})
+    private int telemetryKeys;
+
+    private byte[] jsonMsgBytes;
+    private byte[] kvMsgBytes;
+    private long ts;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        ts = System.currentTimeMillis();
+        TbMsgMetaData metaData = new TbMsgMetaData();
+        metaData.putValue("deviceName", "Thermostat A-1");
+        metaData.putValue("deviceType", "thermostat");
+        metaData.putValue("ts", Long.toString(ts));
+        MsgProtos.TbMsgKvDataProto.Builder kvData = MsgProtos.TbMsgKvDataProto.newBuilder();
+        for (int i = 0; i < telemetryKeys; i++) {
+            kvData.addKv(MsgProtos.TbMsgKvProto.newBuilder().setKey("temperature" + i).setType(DataType.DOUBLE.ordinal()).setDoubleV(20.5 + i));
+        }
+        DeviceId deviceId = new DeviceId(UUID.randomUUID());
+        TbMsg kvMsg = TbMsg.newMsg(ServiceQueue.MAIN, SessionMsgType.POST_TELEMETRY_REQUEST.name(), deviceId, null, metaData, kvData.build(), null, null);
+        TbMsg jsonMsg = TbMsg.newMsg(ServiceQueue.MAIN, SessionMsgType.POST_TELEMETRY_REQUEST.name(), deviceId, null, metaData, kvMsg.getData(), null, null);
+        kvMsgBytes = TbMsg.toByteArray(kvMsg);
+        jsonMsgBytes = TbMsg.toByteArray(jsonMsg);
+    }
+
+    @Benchmark
+    public Map<Long, List<KvEntry>> jsonPayload() {
+        TbMsg msg = TbMsg.fromBytes(ServiceQueue.MAIN, jsonMsgBytes, TbMsgCallback.EMPTY);
+        return JsonConverter.convertToTelemetry(new JsonParser().parse(msg.getData()), ts);
+    }
+
+    @Benchmark
+    public List<KvEntry> kvPayload() {
+        TbMsg msg = TbMsg.fromBytes(ServiceQueue.MAIN, kvMsgBytes, TbMsgCallback.EMPTY);
+        return TbMsgKvDataUtils.toKvEntries(msg.getKvData());
+    }
+}
@@ -0,0 +1,205 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.benchmark.queue;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.ReflectionUtils;
+import org.thingsboard.server.common.data.id.DeviceId;
+import org.thingsboard.server.common.data.id.TenantId;
+import org.thingsboard.server.common.msg.queue.ServiceQueue;
+import org.thingsboard.server.common.msg.queue.ServiceType;
+import org.thingsboard.server.common.msg.queue.TopicPartitionInfo;
+import org.thingsboard.server.gen.transport.TransportProtos.QueueInfo;
+import org.thingsboard.server.gen.transport.TransportProtos.ServiceInfo;
+import org.thingsboard.server.queue.QueueService;
+import org.thingsboard.server.queue.discovery.HashPartitionService;
+import org.thingsboard.server.queue.discovery.TbServiceInfoProvider;
+import org.thingsboard.server.queue.discovery.TenantRoutingInfo;
+import org.thingsboard.server.queue.settings.TbQueueRuleEngineSettings;
+import org.thingsboard.server.queue.settings.TbRuleEngineQueueConfiguration;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures entity to partition resolution in {@link HashPartitionService}, which happens for every message
+ * pushed to the core and rule engine queues, and the partition recalculation on cluster topology changes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 3)
+public class HashPartitionServiceBenchmark {
+
+    private static final int ENTITY_COUNT = 1024;
+
+    @Param({"murmur3_128", "murmur3_32"})
+    private String hashFunctionName;
+
+    @Param({"10"})
+    private int serviceCount;
+
+    private HashPartitionService partitionService;
+    private ServiceInfo currentService;
+    private List<ServiceInfo> otherServices;
+    private TenantId tenantId;
+    private DeviceId[] entityIds;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        tenantId = new TenantId(UUID.randomUUID());
+        currentService = serviceInfo("tb-node-0");
+        otherServices = new ArrayList<>();
+        for (int i = 1; i < serviceCount; i++) {
+            otherServices.add(serviceInfo("tb-node-" + i));
+        }
+
+        TbRuleEngineQueueConfiguration mainQueue = new TbRuleEngineQueueConfiguration();
+        mainQueue.setName(ServiceQueue.MAIN);
+        mainQueue.setTopic("tb_rule_engine.main");
+        mainQueue.setPartitions(10);
+        TbQueueRuleEngineSettings ruleEngineSettings = new TbQueueRuleEngineSettings();
+        ruleEngineSettings.setTopic("tb_rule_engine");
+        ruleEngineSettings.setQueues(Collections.singletonList(mainQueue));
+
+        partitionService = new HashPartitionService(new StubServiceInfoProvider(currentService),
+                id -> new TenantRoutingInfo(id, false, false),
+                event -> {
+                },
+                ruleEngineSettings,
+                new StubQueueService());
+        setField("coreTopic", "tb_core");
+        setField("corePartitions", 10);
+        setField("hashFunctionName", hashFunctionName);
+        setField("assignmentStrategyName", "round_robin");
+        partitionService.init();
+        partitionService.recalculatePartitions(currentService, otherServices);
+
+        entityIds = new DeviceId[ENTITY_COUNT];
+        for (int i = 0; i < ENTITY_COUNT; i++) {
+            entityIds[i] = new DeviceId(UUID.randomUUID());
+        }
+    }
+
+    @Benchmark
+    public TopicPartitionInfo resolveCore() {
+        return partitionService.resolve(ServiceType.TB_CORE, tenantId, nextEntityId());
+    }
+
+    @Benchmark
+    public TopicPartitionInfo resolveRuleEngine() {
+        return partitionService.resolve(ServiceType.TB_RULE_ENGINE, ServiceQueue.MAIN, tenantId, nextEntityId());
+    }
+
+    @Benchmark
+    public int resolvePartitionIndex() {
+        return partitionService.resolvePartitionIndex(nextEntityId().getId(), 10);
+    }
+
+    @Benchmark
+    public void recalculatePartitions() {
+        partitionService.recalculatePartitions(currentService, otherServices);
+    }
+
+    private DeviceId nextEntityId() {
+        DeviceId entityId = entityIds[next];
+        next = (next + 1) & (ENTITY_COUNT - 1);
+        return entityId;
+    }
+
+    private void setField(String name, Object value) {
+        Field field = ReflectionUtils.findField(HashPartitionService.class, name);
+        ReflectionUtils.makeAccessible(field);
+        ReflectionUtils.setField(field, partitionService, value);
+    }
+
+    private static ServiceInfo serviceInfo(String serviceId) {
+        return ServiceInfo.newBuilder()
+                .setServiceId(serviceId)
+                .addServiceTypes(ServiceType.TB_CORE.name())
+                .addServiceTypes(ServiceType.TB_RULE_ENGINE.name())
+                .addRuleEngineQueues(QueueInfo.newBuilder()
+                        .setName(ServiceQueue.MAIN)
+                        .setTopic("tb_rule_engine.main")
+                        .setPartitions(10)
+                        .build())
+                .setTenantIdMSB(TenantId.NULL_UUID.getMostSignificantBits())
+                .setTenantIdLSB(TenantId.NULL_UUID.getLeastSignificantBits())
+                .build();
+    }
+
+    private static class StubServiceInfoProvider implements TbServiceInfoProvider {
+
+        private final ServiceInfo serviceInfo;
+
+        StubServiceInfoProvider(ServiceInfo serviceInfo) {
+            this.serviceInfo = serviceInfo;
+        }
+
+        @Override
+        public String getServiceId() {
+            return serviceInfo.getServiceId();
+        }
+
+        @Override
+        public ServiceInfo getServiceInfo() {
+            return serviceInfo;
+        }
+
+        @Override
+        public boolean isService(ServiceType serviceType) {
+            return serviceInfo.getServiceTypesList().contains(serviceType.name());
+        }
+
+        @Override
+        public Optional<TenantId> getIsolatedTenant() {
+            return Optional.empty();
+        }
+    }
+
+    private static class StubQueueService implements QueueService {
+
+        @Override
+        public Set<String> getQueuesByServiceType(ServiceType serviceType) {
+            return Collections.singleton(ServiceQueue.MAIN);
+        }
+
+        @Override
+        public String resolve(ServiceType serviceType, String queueName) {
+            return queueName != null ? queueName : ServiceQueue.MAIN;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.benchmark.queue;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.ReflectionUtils;
+import org.thingsboard.server.common.data.ApiUsageRecordKey;
+import org.thingsboard.server.common.data.id.CustomerId;
+import org.thingsboard.server.common.data.id.TenantId;
+import org.thingsboard.server.queue.provider.TbQueueProducerProvider;
+import org.thingsboard.server.queue.scheduler.SchedulerComponent;
+import org.thingsboard.server.queue.usagestats.DefaultTbApiUsageClient;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the per-message overhead of {@link DefaultTbApiUsageClient#report}, which is called by the transports
+ * and the rule engine for every processed message. The client is not started, so the statistics are never sent.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 3)
+public class TbApiUsageClientBenchmark {
+
+    private static final int OWNER_COUNT = 64;
+
+    @Param({"false", "true"})
+    private boolean enabledPerCustomer;
+
+    private DefaultTbApiUsageClient client;
+    private TenantId[] tenantIds;
+    private CustomerId[] customerIds;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        client = new DefaultTbApiUsageClient(null, stub(SchedulerComponent.class), stub(TbQueueProducerProvider.class));
+        setField("enabled", true);
+        setField("enabledPerCustomer", enabledPerCustomer);
+        setField("interval", 1000);
+        Method init = ReflectionUtils.findMethod(DefaultTbApiUsageClient.class, "init");
+        ReflectionUtils.makeAccessible(init);
+        ReflectionUtils.invokeMethod(init, client);
+
+        tenantIds = new TenantId[OWNER_COUNT];
+        customerIds = new CustomerId[OWNER_COUNT];
+        for (int i = 0; i < OWNER_COUNT; i++) {
+            tenantIds[i] = new TenantId(UUID.randomUUID());
+            customerIds[i] = new CustomerId(UUID.randomUUID());
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next;
+
+        int next() {
+            int result = next;
+            next = (next + 1) & (OWNER_COUNT - 1);
+            return result;
+        }
+    }
+
+    @Benchmark
+    public void report(Cursor cursor) {
+        int i = cursor.next();
+        client.report(tenantIds[i], customerIds[i], ApiUsageRecordKey.TRANSPORT_MSG_COUNT);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void reportConcurrently(Cursor cursor) {
+        int i = cursor.next();
+        client.report(tenantIds[i], customerIds[i], ApiUsageRecordKey.TRANSPORT_MSG_COUNT);
+    }
+
+    private void setField(String name, Object value) {
+        Field field = ReflectionUtils.findField(DefaultTbApiUsageClient.class, name);
+        ReflectionUtils.makeAccessible(field);
+        ReflectionUtils.setField(field, client, value);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T stub(Class<T> type) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> null);
+    }
+}
@@ -0,0 +1,144 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.benchmark.sql;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.thingsboard.server.benchmark.stats.BenchmarkStatsFactory;
+import org.thingsboard.server.dao.model.sql.AbstractTsKvEntity;
+import org.thingsboard.server.dao.model.sqlts.ts.TsKvEntity;
+import org.thingsboard.server.dao.sql.ScheduledLogExecutorComponent;
+import org.thingsboard.server.dao.sql.TbSqlBlockingQueueParams;
+import org.thingsboard.server.dao.sql.TbSqlBlockingQueueWrapper;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Measures {@link TbSqlBlockingQueueWrapper#add} with the same configuration as the time-series DAO,
+ * draining into a save function that only counts the rows, so the numbers reflect the queue overhead alone.
+ * Each invocation adds {@link #ELEMENTS_PER_INVOCATION} entities and waits for all of them to be "saved".
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Threads(4)
+public class TbSqlBlockingQueueBenchmark {
+
+    private static final int ELEMENTS_PER_INVOCATION = 1000;
+
+    @Param({"1000", "10000"})
+    private int batchSize;
+
+    @Param({"10"})
+    private long maxDelay;
+
+    @Param({"1", "3"})
+    private int batchThreads;
+
+    @Param({"false", "true"})
+    private boolean adaptiveBatching;
+
+    private ScheduledLogExecutorComponent logExecutor;
+    private TbSqlBlockingQueueWrapper<TsKvEntity> queue;
+    private final AtomicLong savedRows = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setup() {
+        TbSqlBlockingQueueParams params = TbSqlBlockingQueueParams.builder()
+                .logName("TS")
+                .batchSize(batchSize)
+                .maxDelay(maxDelay)
+                .statsPrintIntervalMs(TimeUnit.MINUTES.toMillis(10))
+                .statsNamePrefix("ts")
+                .batchSortEnabled(false)
+                .adaptiveBatching(adaptiveBatching)
+                .build();
+        logExecutor = new ScheduledLogExecutorComponent();
+        logExecutor.init();
+        Function<TsKvEntity, Integer> hashcodeFunction = entity -> entity.getEntityId().hashCode();
+        queue = new TbSqlBlockingQueueWrapper<>(params, hashcodeFunction, batchThreads, new BenchmarkStatsFactory());
+        queue.init(logExecutor, this::save,
+                Comparator.comparing((Function<TsKvEntity, UUID>) AbstractTsKvEntity::getEntityId)
+                        .thenComparing(AbstractTsKvEntity::getKey)
+                        .thenComparing(AbstractTsKvEntity::getTs));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        queue.destroy();
+        logExecutor.stop();
+    }
+
+    @State(Scope.Thread)
+    public static class Producer {
+        private final UUID[] entityIds = new UUID[100];
+        @SuppressWarnings("unchecked")
+        private final ListenableFuture<Void>[] futures = new ListenableFuture[ELEMENTS_PER_INVOCATION];
+
+        @Setup(Level.Trial)
+        public void setup() {
+            for (int i = 0; i < entityIds.length; i++) {
+                entityIds[i] = UUID.randomUUID();
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ELEMENTS_PER_INVOCATION)
+    public void add(Producer producer) throws ExecutionException, InterruptedException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long ts = System.currentTimeMillis();
+        for (int i = 0; i < ELEMENTS_PER_INVOCATION; i++) {
+            TsKvEntity entity = new TsKvEntity();
+            entity.setEntityId(producer.entityIds[random.nextInt(producer.entityIds.length)]);
+            entity.setKey(i % 16);
+            entity.setTs(ts);
+            entity.setDoubleValue(random.nextDouble());
+            producer.futures[i] = queue.add(entity);
+        }
+        for (ListenableFuture<Void> future : producer.futures) {
+            future.get();
+        }
+    }
+
+    private void save(List<TsKvEntity> entities) {
+        savedRows.addAndGet(entities.size());
+    }
+}
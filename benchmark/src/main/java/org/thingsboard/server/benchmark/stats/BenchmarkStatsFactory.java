@@ -0,0 +1,69 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.benchmark.stats;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.thingsboard.server.common.stats.DefaultCounter;
+import org.thingsboard.server.common.stats.DefaultMessagesStats;
+import org.thingsboard.server.common.stats.MessagesStats;
+import org.thingsboard.server.common.stats.StatsCounter;
+import org.thingsboard.server.common.stats.StatsFactory;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-memory {@link StatsFactory} backed by a {@link SimpleMeterRegistry}, so benchmarks pay the same
+ * counting costs as a node with metrics enabled without a Spring context.
+ */
+public class BenchmarkStatsFactory implements StatsFactory {
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Override
+    public StatsCounter createStatsCounter(String key, String statsName) {
+        return new StatsCounter(new AtomicInteger(0), meterRegistry.counter(key, "statsName", statsName), statsName);
+    }
+
+    @Override
+    public DefaultCounter createDefaultCounter(String key, String... tags) {
+        return new DefaultCounter(new AtomicInteger(0), meterRegistry.counter(key, tags));
+    }
+
+    @Override
+    public <T extends Number> T createGauge(String key, T number, String... tags) {
+        return meterRegistry.gauge(key, Tags.of(tags), number);
+    }
+
+    @Override
+    public MessagesStats createMessagesStats(String key) {
+        return new DefaultMessagesStats(createStatsCounter(key, "totalMsgs"),
+                createStatsCounter(key, "successfulMsgs"), createStatsCounter(key, "failedMsgs"));
+    }
+
+    @Override
+    public Timer createTimer(String key, String... tags) {
+        return Timer.builder(key).tags(tags).register(meterRegistry);
+    }
+
+    @Override
+    public DistributionSummary createDistributionSummary(String key, String... tags) {
+        return DistributionSummary.builder(key).tags(tags).register(meterRegistry);
+    }
+}
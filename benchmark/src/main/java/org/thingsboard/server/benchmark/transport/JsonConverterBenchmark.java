@@ -0,0 +1,136 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.benchmark.transport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.thingsboard.server.common.transport.adaptor.JsonConverter;
+import org.thingsboard.server.common.transport.adaptor.JsonStreamingConverter;
+import org.thingsboard.server.gen.transport.TransportProtos;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the conversion of MQTT/HTTP/CoAP telemetry payloads into {@link TransportProtos.PostTelemetryMsg},
+ * starting from raw bytes the way the transports receive them: through the Gson tree and with the streaming converter.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 3)
+public class JsonConverterBenchmark {
+
+    public enum Payload {
+        /**
+         * {"temperature":25.5,"humidity":60,...}
+         */
+        VALUES,
+        /**
+         * {"ts":1634712287000,"values":{"temperature":25.5,...}}
+         */
+        TS_VALUES,
+        /**
+         * [{"ts":1634712287000,"values":{...}},{"ts":1634712288000,"values":{...}},...]
+         */
+        TS_VALUES_ARRAY
+    }
+
+    @Param({"VALUES", "TS_VALUES", "TS_VALUES_ARRAY"})
+    private Payload payload;
+
+    @Param({"8", "32"})
+    private int keys;
+
+    private byte[] payloadBytes;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        String json;
+        switch (payload) {
+            case VALUES:
+                json = values(0);
+                break;
+            case TS_VALUES:
+                json = tsValues(1634712287000L, 0);
+                break;
+            case TS_VALUES_ARRAY:
+                StringBuilder array = new StringBuilder("[");
+                for (int i = 0; i < 10; i++) {
+                    if (i > 0) {
+                        array.append(',');
+                    }
+                    array.append(tsValues(1634712287000L + i * 1000L, i));
+                }
+                json = array.append(']').toString();
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported payload: " + payload);
+        }
+        payloadBytes = json.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public TransportProtos.PostTelemetryMsg convertToTelemetryProto() {
+        return JsonConverter.convertToTelemetryProto(JsonConverter.parse(new String(payloadBytes, StandardCharsets.UTF_8)));
+    }
+
+    @Benchmark
+    public TransportProtos.PostTelemetryMsg convertToTelemetryProtoStreaming() {
+        return JsonStreamingConverter.convertToTelemetryProto(ByteBuffer.wrap(payloadBytes));
+    }
+
+    private String tsValues(long ts, int seed) {
+        return "{\"ts\":" + ts + ",\"values\":" + values(seed) + "}";
+    }
+
+    private String values(int seed) {
+        StringBuilder values = new StringBuilder("{");
+        for (int i = 0; i < keys; i++) {
+            if (i > 0) {
+                values.append(',');
+            }
+            values.append("\"key").append(i).append("\":");
+            switch (i % 4) {
+                case 0:
+                    values.append(20.5 + seed + i);
+                    break;
+                case 1:
+                    values.append(seed * 100 + i);
+                    break;
+                case 2:
+                    values.append(i % 3 == 0);
+                    break;
+                default:
+                    values.append("\"value").append(seed).append('-').append(i).append('"');
+            }
+        }
+        return values.append('}').toString();
+    }
+}
@@ -0,0 +1,81 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.actors;
+
+import org.thingsboard.common.util.MpscChunkedArrayQueue;
+import org.thingsboard.server.common.msg.TbActorMsg;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+final class ArrayTbActorMsgQueue implements TbActorMsgQueue {
+
+    private static final int HIGH_PRIORITY_CHUNK_SIZE = 8;
+    private static final int NORMAL_PRIORITY_CHUNK_SIZE = 32;
+
+    private final MpscChunkedArrayQueue<TbActorMsg> highPriorityMsgs = new MpscChunkedArrayQueue<>(HIGH_PRIORITY_CHUNK_SIZE);
+    private final MpscChunkedArrayQueue<TbActorMsg> normalPriorityMsgs;
+    private final AtomicLong droppedMsgs = new AtomicLong();
+
+    ArrayTbActorMsgQueue(int capacity) {
+        this.normalPriorityMsgs = new MpscChunkedArrayQueue<>(NORMAL_PRIORITY_CHUNK_SIZE, capacity);
+    }
+
+    @Override
+    public boolean offer(TbActorMsg msg, boolean highPriority) {
+        if (highPriority) {
+            return highPriorityMsgs.offer(msg);
+        } else if (normalPriorityMsgs.offer(msg)) {
+            return true;
+        } else {
+            droppedMsgs.incrementAndGet();
+            return false;
+        }
+    }
+
+    @Override
+    public TbActorMsg poll() {
+        TbActorMsg msg = highPriorityMsgs.poll();
+        if (msg == null) {
+            msg = normalPriorityMsgs.poll();
+        }
+        return msg;
+    }
+
+    @Override
+    public int drain(Consumer<TbActorMsg> consumer, int limit) {
+        int drained = highPriorityMsgs.drain(consumer, limit);
+        if (drained < limit) {
+            drained += normalPriorityMsgs.drain(consumer, limit - drained);
+        }
+        return drained;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return highPriorityMsgs.isEmpty() && normalPriorityMsgs.isEmpty();
+    }
+
+    @Override
+    public int size() {
+        return highPriorityMsgs.size() + normalPriorityMsgs.size();
+    }
+
+    @Override
+    public long getDroppedMsgs() {
+        return droppedMsgs.get();
+    }
+}
@@ -21,8 +21,13 @@ import lombok.extern.slf4j.Slf4j;
 import org.thingsboard.common.util.ThingsBoardThreadFactory;
 import org.thingsboard.server.common.msg.TbActorMsg;
 
+import java.util.AbstractMap;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
@@ -30,6 +35,7 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Predicate;
@@ -43,6 +49,7 @@ public class DefaultTbActorSystem implements TbActorSystem {
     private final ConcurrentMap<TbActorId, TbActorMailbox> actors = new ConcurrentHashMap<>();
     private final ConcurrentMap<TbActorId, ReentrantLock> actorCreationLocks = new ConcurrentHashMap<>();
     private final ConcurrentMap<TbActorId, Set<TbActorId>> parentChildMap = new ConcurrentHashMap<>();
+    private final LongAdder droppedMsgsOfStoppedActors = new LongAdder();
 
     @Getter
     private final TbActorSystemSettings settings;
@@ -113,7 +120,7 @@ public class DefaultTbActorSystem implements TbActorSystem {
                             throw new TbActorNotRegisteredException(parent, "Parent Actor with id [" + parent + "] is not registered!");
                         }
                     }
-                    TbActorMailbox mailbox = new TbActorMailbox(this, settings, actorId, parentRef, actor, dispatcher);
+                    TbActorMailbox mailbox = new TbActorMailbox(this, settings, actorId, parentRef, actor, dispatcher, createMsgQueue());
                     actors.put(actorId, mailbox);
                     mailbox.initActor();
                     actorMailbox = mailbox;
@@ -131,6 +138,14 @@ public class DefaultTbActorSystem implements TbActorSystem {
         return actorMailbox;
     }
 
+    private TbActorMsgQueue createMsgQueue() {
+        if (settings.getMailboxType() == TbActorMailboxType.ARRAY) {
+            return new ArrayTbActorMsgQueue(settings.getMailboxCapacity());
+        } else {
+            return new LinkedTbActorMsgQueue();
+        }
+    }
+
     @Override
     public void tellWithHighPriority(TbActorId target, TbActorMsg actorMsg) {
         tell(target, actorMsg, true);
@@ -193,7 +208,44 @@ public class DefaultTbActorSystem implements TbActorSystem {
         TbActorMailbox mailbox = actors.remove(actorId);
         if (mailbox != null) {
             mailbox.destroy();
+            droppedMsgsOfStoppedActors.add(mailbox.getDroppedMsgs());
+        }
+    }
+
+    @Override
+    public TbActorMailboxStats getMailboxStats() {
+        return getMailboxStats(0);
+    }
+
+    @Override
+    public TbActorMailboxStats getMailboxStats(int topSize) {
+        int actorsCount = 0;
+        long queuedMsgs = 0;
+        long droppedMsgs = droppedMsgsOfStoppedActors.sum();
+        PriorityQueue<Map.Entry<TbActorId, Integer>> deepest = new PriorityQueue<>(Map.Entry.comparingByValue());
+        int maxQueueSize = 0;
+        TbActorId maxQueueActorId = null;
+        for (TbActorMailbox mailbox : actors.values()) {
+            int queueSize = mailbox.getQueueSize();
+            actorsCount++;
+            queuedMsgs += queueSize;
+            droppedMsgs += mailbox.getDroppedMsgs();
+            if (queueSize > maxQueueSize) {
+                maxQueueSize = queueSize;
+                maxQueueActorId = mailbox.getSelfId();
+            }
+            if (queueSize > 0 && topSize > 0) {
+                deepest.add(new AbstractMap.SimpleImmutableEntry<>(mailbox.getSelfId(), queueSize));
+                if (deepest.size() > topSize) {
+                    deepest.poll();
+                }
+            }
         }
+        List<Map.Entry<TbActorId, Integer>> deepestSizes = new ArrayList<>(deepest);
+        deepestSizes.sort(Map.Entry.<TbActorId, Integer>comparingByValue().reversed());
+        Map<TbActorId, Integer> deepestMailboxes = new LinkedHashMap<>();
+        deepestSizes.forEach(entry -> deepestMailboxes.put(entry.getKey(), entry.getValue()));
+        return new TbActorMailboxStats(actorsCount, queuedMsgs, maxQueueSize, maxQueueActorId, droppedMsgs, deepestMailboxes);
     }
 
     @Override
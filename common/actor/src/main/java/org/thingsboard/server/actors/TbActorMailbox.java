@@ -22,7 +22,6 @@ import org.thingsboard.server.common.msg.TbActorMsg;
 import org.thingsboard.server.common.msg.TbActorStopReason;
 
 import java.util.List;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Predicate;
@@ -46,8 +45,7 @@ public final class TbActorMailbox implements TbActorCtx {
     private final TbActorRef parentRef;
     private final TbActor actor;
     private final Dispatcher dispatcher;
-    private final ConcurrentLinkedQueue<TbActorMsg> highPriorityMsgs = new ConcurrentLinkedQueue<>();
-    private final ConcurrentLinkedQueue<TbActorMsg> normalPriorityMsgs = new ConcurrentLinkedQueue<>();
+    private final TbActorMsgQueue msgQueue;
     private final AtomicBoolean busy = new AtomicBoolean(FREE);
     private final AtomicBoolean ready = new AtomicBoolean(NOT_READY);
     private final AtomicBoolean destroyInProgress = new AtomicBoolean();
@@ -89,12 +87,12 @@ public final class TbActorMailbox implements TbActorCtx {
 
     private void enqueue(TbActorMsg msg, boolean highPriority) {
         if (!destroyInProgress.get()) {
-            if (highPriority) {
-                highPriorityMsgs.add(msg);
+            if (msgQueue.offer(msg, highPriority)) {
+                tryProcessQueue(true);
             } else {
-                normalPriorityMsgs.add(msg);
+                log.trace("[{}] MessageBox is full, dropping msg: {}", selfId, msg);
+                msg.onTbActorMailboxOverflow();
             }
-            tryProcessQueue(true);
         } else {
             if (highPriority && msg.getMsgType().equals(MsgType.RULE_NODE_UPDATED_MSG)) {
                 synchronized (this) {
@@ -114,7 +112,7 @@ public final class TbActorMailbox implements TbActorCtx {
 
     private void tryProcessQueue(boolean newMsg) {
         if (ready.get() == READY) {
-            if (newMsg || !highPriorityMsgs.isEmpty() || !normalPriorityMsgs.isEmpty()) {
+            if (newMsg || !msgQueue.isEmpty()) {
                 if (busy.compareAndSet(FREE, BUSY)) {
                     dispatcher.getExecutor().execute(this::processMailbox);
                 } else {
@@ -129,39 +127,71 @@ public final class TbActorMailbox implements TbActorCtx {
     }
 
     private void processMailbox() {
-        boolean noMoreElements = false;
-        for (int i = 0; i < settings.getActorThroughput(); i++) {
-            TbActorMsg msg = highPriorityMsgs.poll();
-            if (msg == null) {
-                msg = normalPriorityMsgs.poll();
-            }
-            if (msg != null) {
-                try {
-                    log.debug("[{}] Going to process message: {}", selfId, msg);
-                    actor.process(msg);
-                } catch (TbRuleNodeUpdateException updateException){
-                    stopReason = TbActorStopReason.INIT_FAILED;
-                    destroy();
-                } catch (Throwable t) {
-                    log.debug("[{}] Failed to process message: {}", selfId, msg, t);
-                    ProcessFailureStrategy strategy = actor.onProcessFailure(t);
-                    if (strategy.isStop()) {
-                        system.stop(selfId);
-                    }
-                }
-            } else {
-                noMoreElements = true;
+        int throughput = settings.getActorThroughput();
+        int processed = 0;
+        while (processed < throughput && ready.get() == READY) {
+            int drained = msgQueue.drain(this::processMsg, throughput - processed);
+            if (drained == 0) {
                 break;
             }
+            processed += drained;
         }
-        if (noMoreElements) {
+        if (processed < throughput) {
             busy.set(FREE);
-            dispatcher.getExecutor().execute(() -> tryProcessQueue(false));
+            if (destroyInProgress.get()) {
+                tryDrainStopped();
+            } else {
+                // Re-check in place, messages added after the last drain may have missed the busy flag.
+                tryProcessQueue(false);
+            }
         } else {
             dispatcher.getExecutor().execute(this::processMailbox);
         }
     }
 
+    private void processMsg(TbActorMsg msg) {
+        if (ready.get() == NOT_READY) {
+            // The actor is destroyed while the batch is processed, so the rest of the batch is stopped like the remaining messages.
+            msg.onTbActorStopped(stopReason);
+            return;
+        }
+        try {
+            log.debug("[{}] Going to process message: {}", selfId, msg);
+            actor.process(msg);
+        } catch (TbRuleNodeUpdateException updateException) {
+            stopReason = TbActorStopReason.INIT_FAILED;
+            destroy();
+        } catch (Throwable t) {
+            log.debug("[{}] Failed to process message: {}", selfId, msg, t);
+            ProcessFailureStrategy strategy = actor.onProcessFailure(t);
+            if (strategy.isStop()) {
+                system.stop(selfId);
+            }
+        }
+    }
+
+    /**
+     * Only the thread that owns the busy flag may poll the queue.
+     * If the mailbox is still processing, the remaining messages are notified once the processing loop is finished.
+     */
+    private void tryDrainStopped() {
+        if (ready.get() == NOT_READY && busy.compareAndSet(FREE, BUSY)) {
+            try {
+                msgQueue.drain(msg -> msg.onTbActorStopped(stopReason), Integer.MAX_VALUE);
+            } finally {
+                busy.set(FREE);
+            }
+        }
+    }
+
+    public int getQueueSize() {
+        return msgQueue.size();
+    }
+
+    public long getDroppedMsgs() {
+        return msgQueue.getDroppedMsgs();
+    }
+
     @Override
     public TbActorId getSelf() {
         return selfId;
@@ -211,8 +241,7 @@ public final class TbActorMailbox implements TbActorCtx {
             try {
                 ready.set(NOT_READY);
                 actor.destroy();
-                highPriorityMsgs.forEach(msg -> msg.onTbActorStopped(stopReason));
-                normalPriorityMsgs.forEach(msg -> msg.onTbActorStopped(stopReason));
+                tryDrainStopped();
             } catch (Throwable t) {
                 log.warn("[{}] Failed to destroy actor: {}", selfId, t);
             }
@@ -0,0 +1,38 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.actors;
+
+import lombok.Data;
+
+import java.util.Map;
+
+/**
+ * Snapshot of the actor mailboxes of the actor system.
+ */
+@Data
+public class TbActorMailboxStats {
+
+    private final int actors;
+    private final long queuedMsgs;
+    private final int maxQueueSize;
+    private final TbActorId maxQueueActorId;
+    private final long droppedMsgs;
+    /**
+     * Queue sizes of the deepest non-empty mailboxes, the deepest first.
+     */
+    private final Map<TbActorId, Integer> deepestMailboxes;
+
+}
@@ -0,0 +1,51 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.actors;
+
+import org.thingsboard.server.common.msg.TbActorMsg;
+
+import java.util.function.Consumer;
+
+/**
+ * Messages of the actor mailbox. Any thread may offer messages, but only the thread that owns the mailbox may poll them.
+ */
+interface TbActorMsgQueue {
+
+    /**
+     * @return false if the message is rejected because the queue is full
+     */
+    boolean offer(TbActorMsg msg, boolean highPriority);
+
+    /**
+     * @return next high priority message or next normal priority message if there are no high priority messages
+     */
+    TbActorMsg poll();
+
+    /**
+     * Passes up to the limit of messages to the consumer, the high priority messages first.
+     * High priority messages that arrive while the normal priority messages are drained are left for the next call.
+     *
+     * @return number of drained messages
+     */
+    int drain(Consumer<TbActorMsg> consumer, int limit);
+
+    boolean isEmpty();
+
+    int size();
+
+    long getDroppedMsgs();
+
+}
@@ -51,4 +51,11 @@ public interface TbActorSystem {
     void broadcastToChildren(TbActorId parent, Predicate<TbActorId> childFilter, TbActorMsg msg);
 
     List<TbActorId> filterChildren(TbActorId parent, Predicate<TbActorId> childFilter);
+
+    TbActorMailboxStats getMailboxStats();
+
+    /**
+     * @param topSize number of the deepest mailboxes to report with their queue sizes
+     */
+    TbActorMailboxStats getMailboxStats(int topSize);
 }
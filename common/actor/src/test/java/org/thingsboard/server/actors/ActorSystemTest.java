@@ -28,6 +28,7 @@ import org.thingsboard.server.common.data.id.DeviceId;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.UUID;
 import java.util.concurrent.CountDownLatch;
@@ -203,6 +204,68 @@ public class ActorSystemTest {
     }
 
 
+    @Test
+    public void testArrayMailbox10actorsAnd100KMessages() throws InterruptedException {
+        initArrayMailboxActorSystem(0);
+        executor = ThingsBoardExecutors.newWorkStealingPool(parallelism, getClass());
+        actorSystem.createDispatcher(ROOT_DISPATCHER, executor);
+        testActorsAndMessages(10, _100K, 1);
+    }
+
+    @Test
+    public void testArrayMailboxOverflow() throws InterruptedException {
+        initArrayMailboxActorSystem(10);
+        executor = ThingsBoardExecutors.newWorkStealingPool(parallelism, getClass());
+        actorSystem.createDispatcher(ROOT_DISPATCHER, executor);
+        ActorTestCtx testCtx = getActorTestCtx(10);
+        AtomicInteger overflowed = new AtomicInteger();
+
+        TbActorRef actorRef = actorSystem.createRootActor(ROOT_DISPATCHER, new SlowInitActor.SlowInitActorCreator(
+                new TbEntityActorId(new DeviceId(UUID.randomUUID())), testCtx));
+        for (int i = 0; i < 15; i++) {
+            actorRef.tell(new IntTbActorMsg(i) {
+                @Override
+                public void onTbActorMailboxOverflow() {
+                    overflowed.incrementAndGet();
+                }
+            });
+        }
+
+        Assert.assertTrue(testCtx.getLatch().await(TIMEOUT_AWAIT_MAX_SEC, TimeUnit.SECONDS));
+        Assert.assertEquals(5, overflowed.get());
+        Assert.assertEquals(45, testCtx.getActual().get());
+        Assert.assertEquals(5, actorSystem.getMailboxStats().getDroppedMsgs());
+    }
+
+    @Test
+    public void testDeepestMailboxesReported() throws InterruptedException {
+        executor = ThingsBoardExecutors.newWorkStealingPool(parallelism, getClass());
+        actorSystem.createDispatcher(ROOT_DISPATCHER, executor);
+        ActorTestCtx testCtx = getActorTestCtx(10);
+        TbActorId deepActorId = new TbEntityActorId(new DeviceId(UUID.randomUUID()));
+        TbActorRef deepActor = actorSystem.createRootActor(ROOT_DISPATCHER, new SlowInitActor.SlowInitActorCreator(deepActorId, testCtx));
+        ActorTestCtx shallowTestCtx = getActorTestCtx(1);
+        TbActorRef shallowActor = actorSystem.createRootActor(ROOT_DISPATCHER, new SlowInitActor.SlowInitActorCreator(
+                new TbEntityActorId(new DeviceId(UUID.randomUUID())), shallowTestCtx));
+        for (int i = 0; i < 10; i++) {
+            deepActor.tell(new IntTbActorMsg(i));
+        }
+        shallowActor.tell(new IntTbActorMsg(1));
+
+        Map<TbActorId, Integer> deepest = actorSystem.getMailboxStats(1).getDeepestMailboxes();
+        Assert.assertEquals(1, deepest.size());
+        Assert.assertEquals(Integer.valueOf(10), deepest.get(deepActorId));
+        Assert.assertTrue(testCtx.getLatch().await(TIMEOUT_AWAIT_MAX_SEC, TimeUnit.SECONDS));
+        Assert.assertTrue(shallowTestCtx.getLatch().await(TIMEOUT_AWAIT_MAX_SEC, TimeUnit.SECONDS));
+        Assert.assertTrue(actorSystem.getMailboxStats(1).getDeepestMailboxes().isEmpty());
+    }
+
+    private void initArrayMailboxActorSystem(int mailboxCapacity) {
+        actorSystem.stop();
+        TbActorSystemSettings settings = new TbActorSystemSettings(5, parallelism, 42, TbActorMailboxType.ARRAY, mailboxCapacity);
+        actorSystem = new DefaultTbActorSystem(settings);
+    }
+
     public void testActorsAndMessages(int actorsCount, int msgNumber, int times) throws InterruptedException {
         Random random = new Random();
         int[] randomIntegers = new int[msgNumber];
@@ -16,6 +16,7 @@
 package org.thingsboard.server.cache;
 
 import lombok.Data;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.cache.CacheManager;
@@ -28,9 +29,13 @@ import org.springframework.data.redis.cache.RedisCacheManager;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.format.support.DefaultFormattingConversionService;
 import org.springframework.util.Assert;
+import org.thingsboard.server.cache.near.TbNearCacheManager;
 import org.thingsboard.server.common.data.id.EntityId;
+import org.thingsboard.server.common.stats.StatsFactory;
 import redis.clients.jedis.JedisPoolConfig;
 
 @Configuration
@@ -72,6 +77,18 @@ public abstract class TBRedisCacheConfiguration {
     @Value("${redis.pool_config.blockWhenExhausted}")
     private boolean blockWhenExhausted;
 
+    @Value("${redis.near_cache.enabled:false}")
+    private boolean nearCacheEnabled;
+
+    @Value("${redis.near_cache.max_size:10000}")
+    private long nearCacheMaxSize;
+
+    @Value("${redis.near_cache.time_to_live_in_seconds:60}")
+    private long nearCacheTimeToLiveInSeconds;
+
+    @Value("${redis.near_cache.invalidation_channel:tb_near_cache_invalidation}")
+    private String nearCacheInvalidationChannel;
+
     @Bean
     public RedisConnectionFactory redisConnectionFactory() {
         return loadFactory();
@@ -82,16 +99,38 @@ public abstract class TBRedisCacheConfiguration {
     /**
      * Transaction aware RedisCacheManager.
      * Enable RedisCaches to synchronize cache put/evict operations with ongoing Spring-managed transactions.
+     * With the near cache enabled, the Redis caches are wrapped into the transaction aware TbNearCacheManager instead.
      */
     @Bean
-    public CacheManager cacheManager(RedisConnectionFactory cf) {
+    public CacheManager cacheManager(RedisConnectionFactory cf, ObjectProvider<StatsFactory> statsFactory) {
         DefaultFormattingConversionService redisConversionService = new DefaultFormattingConversionService();
         RedisCacheConfiguration.registerDefaultConverters(redisConversionService);
         registerDefaultConverters(redisConversionService);
         RedisCacheConfiguration configuration = RedisCacheConfiguration.defaultCacheConfig().withConversionService(redisConversionService);
-        return RedisCacheManager.builder(cf).cacheDefaults(configuration)
-                .transactionAware()
-                .build();
+        if (!nearCacheEnabled) {
+            return RedisCacheManager.builder(cf).cacheDefaults(configuration)
+                    .transactionAware()
+                    .build();
+        }
+        RedisCacheManager redisCacheManager = RedisCacheManager.builder(cf).cacheDefaults(configuration).build();
+        //RedisCacheManager is not a bean (will be wrapped), so call initializeCaches manually
+        redisCacheManager.initializeCaches();
+        TbNearCacheManager nearCacheManager = new TbNearCacheManager(redisCacheManager, cf, nearCacheInvalidationChannel,
+                nearCacheMaxSize, nearCacheTimeToLiveInSeconds, statsFactory.getObject());
+        nearCacheManager.setTransactionAware(true);
+        return nearCacheManager;
+    }
+
+    /**
+     * Delivers the near cache invalidations, published by other nodes, to the TbNearCacheManager.
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "redis.near_cache", value = "enabled", havingValue = "true")
+    public RedisMessageListenerContainer nearCacheInvalidationListenerContainer(RedisConnectionFactory cf, CacheManager cacheManager) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(cf);
+        container.addMessageListener((TbNearCacheManager) cacheManager, new ChannelTopic(nearCacheInvalidationChannel));
+        return container;
     }
 
     @Bean
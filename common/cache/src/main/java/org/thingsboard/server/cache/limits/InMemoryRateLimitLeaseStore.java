@@ -0,0 +1,49 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.cache.limits;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+@Service
+@ConditionalOnProperty(prefix = "cache", value = "type", havingValue = "caffeine", matchIfMissing = true)
+public class InMemoryRateLimitLeaseStore implements RateLimitLeaseStore {
+
+    private final ConcurrentMap<String, WindowCounter> counters = new ConcurrentHashMap<>();
+
+    @Override
+    public long lease(String key, long window, long capacity, long periodMs, long requested) {
+        WindowCounter counter = counters.compute(key, (k, existing) ->
+                existing != null && existing.window == window ? existing : new WindowCounter(window));
+        synchronized (counter) {
+            long granted = Math.max(0, Math.min(requested, capacity - counter.used));
+            counter.used += granted;
+            return granted;
+        }
+    }
+
+    private static class WindowCounter {
+        private final long window;
+        private long used;
+
+        private WindowCounter(long window) {
+            this.window = window;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.cache.limits;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Rate limits shared by all nodes of the cluster.
+ * <p>
+ * Uses the same "capacity:seconds,capacity:seconds" configuration as the local rate limits, but counts the tokens in
+ * the fixed time windows of the shared {@link RateLimitLeaseStore}. The node leases a chunk of tokens from the store
+ * and consumes it locally, so the store is called only when the chunk is used up. Once the store has no more tokens
+ * for the window, the node rejects the requests without calling the store until the next window.
+ * <p>
+ * Tokens leased but not consumed by the end of the window are lost, so the effective cluster limit is
+ * between (capacity - nodes * chunk) and capacity. If the store is not available, each node falls back to the whole
+ * capacity, the same as the local rate limits.
+ */
+@Slf4j
+public class LeasedRateLimits {
+
+    @Getter
+    private final String configuration;
+    private final Bandwidth[] bandwidths;
+
+    public LeasedRateLimits(RateLimitLeaseStore store, String key, String configuration, int leasePercent) {
+        this.configuration = configuration;
+        String[] limits = configuration.split(",");
+        this.bandwidths = new Bandwidth[limits.length];
+        for (int i = 0; i < limits.length; i++) {
+            long capacity = Long.parseLong(limits[i].split(":")[0]);
+            long duration = Long.parseLong(limits[i].split(":")[1]);
+            long leaseSize = Math.max(1, capacity * leasePercent / 100);
+            bandwidths[i] = new Bandwidth(store, key + ":" + capacity + ":" + duration, capacity, TimeUnit.SECONDS.toMillis(duration), leaseSize);
+        }
+    }
+
+    public boolean tryConsume() {
+        return tryConsume(1);
+    }
+
+    public boolean tryConsume(long number) {
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < bandwidths.length; i++) {
+            if (!bandwidths[i].tryConsume(number, now)) {
+                for (int j = 0; j < i; j++) {
+                    bandwidths[j].refund(number);
+                }
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static class Bandwidth {
+        private final RateLimitLeaseStore store;
+        private final String key;
+        private final long capacity;
+        private final long periodMs;
+        private final long leaseSize;
+        private final AtomicLong available = new AtomicLong();
+
+        private volatile long window = -1;
+        private volatile boolean exhausted;
+        private long leasedInWindow;
+
+        private Bandwidth(RateLimitLeaseStore store, String key, long capacity, long periodMs, long leaseSize) {
+            this.store = store;
+            this.key = key;
+            this.capacity = capacity;
+            this.periodMs = periodMs;
+            this.leaseSize = leaseSize;
+        }
+
+        boolean tryConsume(long number, long now) {
+            long currentWindow = now / periodMs;
+            if (currentWindow != window) {
+                startWindow(currentWindow);
+            }
+            if (consumeLocal(number)) {
+                return true;
+            }
+            if (exhausted) {
+                return false;
+            }
+            synchronized (this) {
+                if (consumeLocal(number)) {
+                    return true;
+                }
+                if (exhausted || currentWindow != window) {
+                    return false;
+                }
+                long requested = Math.max(leaseSize, number - available.get());
+                long granted;
+                try {
+                    granted = store.lease(key, currentWindow, capacity, periodMs, requested);
+                } catch (Exception e) {
+                    log.debug("[{}] Failed to lease tokens, falling back to the local limit", key, e);
+                    granted = Math.max(0, Math.min(requested, capacity - leasedInWindow));
+                }
+                if (granted < requested) {
+                    exhausted = true;
+                }
+                leasedInWindow += granted;
+                available.addAndGet(granted);
+            }
+            return consumeLocal(number);
+        }
+
+        void refund(long number) {
+            available.addAndGet(number);
+        }
+
+        private synchronized void startWindow(long newWindow) {
+            if (newWindow > window) {
+                window = newWindow;
+                available.set(0);
+                leasedInWindow = 0;
+                exhausted = false;
+            }
+        }
+
+        private boolean consumeLocal(long number) {
+            while (true) {
+                long current = available.get();
+                if (current < number) {
+                    return false;
+                }
+                if (available.compareAndSet(current, current - number)) {
+                    return true;
+                }
+            }
+        }
+    }
+}
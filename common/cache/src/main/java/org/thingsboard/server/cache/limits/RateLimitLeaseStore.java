@@ -0,0 +1,30 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.cache.limits;
+
+/**
+ * Shared counter of the tokens used by all nodes in the fixed time windows of the rate limits.
+ */
+public interface RateLimitLeaseStore {
+
+    /**
+     * Leases up to the requested number of tokens in the window of the limit.
+     *
+     * @return number of the granted tokens, from 0 to requested
+     */
+    long lease(String key, long window, long capacity, long periodMs, long requested);
+
+}
@@ -0,0 +1,56 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.cache.limits;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+
+@Service
+@ConditionalOnProperty(prefix = "cache", value = "type", havingValue = "redis")
+@RequiredArgsConstructor
+public class RedisRateLimitLeaseStore implements RateLimitLeaseStore {
+
+    private static final String KEY_PREFIX = "rateLimits::";
+    // Grants min(requested, capacity - used) tokens and keeps the counter of the window a bit longer than the window itself
+    private static final byte[] LEASE_SCRIPT = ("local used = tonumber(redis.call('GET', KEYS[1]) or '0') " +
+            "local granted = math.min(tonumber(ARGV[2]), tonumber(ARGV[1]) - used) " +
+            "if granted <= 0 then return 0 end " +
+            "redis.call('INCRBY', KEYS[1], granted) " +
+            "redis.call('PEXPIRE', KEYS[1], ARGV[3]) " +
+            "return granted").getBytes(StandardCharsets.UTF_8);
+
+    private final RedisConnectionFactory redisConnectionFactory;
+
+    @Override
+    public long lease(String key, long window, long capacity, long periodMs, long requested) {
+        byte[] redisKey = (KEY_PREFIX + key + "::" + window).getBytes(StandardCharsets.UTF_8);
+        try (RedisConnection connection = redisConnectionFactory.getConnection()) {
+            Long granted = connection.eval(LEASE_SCRIPT, ReturnType.INTEGER, 1, redisKey,
+                    toBytes(capacity), toBytes(requested), toBytes(periodMs * 2));
+            return granted != null ? granted : 0;
+        }
+    }
+
+    private static byte[] toBytes(long value) {
+        return Long.toString(value).getBytes(StandardCharsets.UTF_8);
+    }
+}
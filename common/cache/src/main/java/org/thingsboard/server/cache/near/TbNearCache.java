@@ -0,0 +1,224 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.cache.near;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.Getter;
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.NullValue;
+import org.springframework.cache.support.SimpleValueWrapper;
+import org.springframework.core.convert.ConversionService;
+import org.springframework.core.convert.TypeDescriptor;
+import org.springframework.data.redis.cache.RedisCache;
+import org.thingsboard.server.common.stats.DefaultCounter;
+import org.thingsboard.server.common.stats.StatsFactory;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Two-level cache: local Caffeine cache (L1) in front of the shared {@link RedisCache} (L2).
+ * <p>
+ * Reads are served from L1 when possible and fall back to L2, caching the result locally.
+ * Writes go to L2 and L1 and the key is invalidated in L1 of other nodes via {@link TbNearCacheManager}.
+ * The local entries are kept for a short time only, which limits the staleness if the invalidation is lost
+ * or races with a concurrent read of the old value from L2.
+ */
+public class TbNearCache implements Cache {
+
+    private static final String STATS_KEY = "cache.near";
+
+    @Getter
+    private final RedisCache redisCache;
+    private final com.github.benmanes.caffeine.cache.Cache<String, Object> localCache;
+    private final ConversionService conversionService;
+    private final TbNearCacheManager cacheManager;
+
+    private final DefaultCounter l1Hits;
+    private final DefaultCounter l2Hits;
+    private final DefaultCounter misses;
+
+    TbNearCache(RedisCache redisCache, TbNearCacheManager cacheManager, long maxSize, long timeToLiveInSeconds, StatsFactory statsFactory) {
+        this.redisCache = redisCache;
+        this.cacheManager = cacheManager;
+        this.conversionService = redisCache.getCacheConfiguration().getConversionService();
+        this.localCache = Caffeine.newBuilder()
+                .weigher((String key, Object value) -> value instanceof Collection ? ((Collection<?>) value).size() : 1)
+                .maximumWeight(maxSize)
+                .expireAfterWrite(timeToLiveInSeconds, TimeUnit.SECONDS)
+                .build();
+        String name = redisCache.getName();
+        this.l1Hits = statsFactory.createDefaultCounter(STATS_KEY, "cacheName", name, "result", "l1Hit");
+        this.l2Hits = statsFactory.createDefaultCounter(STATS_KEY, "cacheName", name, "result", "l2Hit");
+        this.misses = statsFactory.createDefaultCounter(STATS_KEY, "cacheName", name, "result", "miss");
+    }
+
+    @Override
+    public String getName() {
+        return redisCache.getName();
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return redisCache.getNativeCache();
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        String localKey = toLocalKey(key);
+        Object localValue = localCache.getIfPresent(localKey);
+        if (localValue != null) {
+            l1Hits.increment();
+            return toValueWrapper(localValue);
+        }
+        ValueWrapper result = redisCache.get(key);
+        if (result != null) {
+            l2Hits.increment();
+            localCache.put(localKey, toStoreValue(result.get()));
+        } else {
+            misses.increment();
+        }
+        return result;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Class<T> type) {
+        ValueWrapper result = get(key);
+        Object value = result != null ? result.get() : null;
+        if (value != null && type != null && !type.isInstance(value)) {
+            throw new IllegalStateException("Cached value is not of required type [" + type.getName() + "]: " + value);
+        }
+        return (T) value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        ValueWrapper result = get(key);
+        if (result != null) {
+            return (T) result.get();
+        }
+        T value = redisCache.get(key, valueLoader);
+        localCache.put(toLocalKey(key), toStoreValue(value));
+        return value;
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        String localKey = toLocalKey(key);
+        redisCache.put(key, value);
+        localCache.put(localKey, toStoreValue(value));
+        cacheManager.publishInvalidation(getName(), Collections.singletonList(localKey));
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        String localKey = toLocalKey(key);
+        ValueWrapper existing = redisCache.putIfAbsent(key, value);
+        if (existing == null) {
+            localCache.put(localKey, toStoreValue(value));
+            cacheManager.publishInvalidation(getName(), Collections.singletonList(localKey));
+        } else {
+            localCache.put(localKey, toStoreValue(existing.get()));
+        }
+        return existing;
+    }
+
+    @Override
+    public void evict(Object key) {
+        String localKey = toLocalKey(key);
+        redisCache.evict(key);
+        localCache.invalidate(localKey);
+        cacheManager.publishInvalidation(getName(), Collections.singletonList(localKey));
+    }
+
+    @Override
+    public void clear() {
+        redisCache.clear();
+        localCache.invalidateAll();
+        cacheManager.publishInvalidation(getName(), null);
+    }
+
+    /**
+     * Returns the value from the local cache only, without the lookup in Redis.
+     */
+    public ValueWrapper getLocal(Object key) {
+        Object localValue = localCache.getIfPresent(toLocalKey(key));
+        if (localValue != null) {
+            l1Hits.increment();
+            return toValueWrapper(localValue);
+        }
+        return null;
+    }
+
+    /**
+     * Puts the value that was read from or written to Redis by the caller to the local cache.
+     */
+    public void putLocal(Object key, Object value) {
+        localCache.put(toLocalKey(key), toStoreValue(value));
+    }
+
+    /**
+     * Removes the keys, already evicted from Redis by the caller, from the local cache of this and other nodes.
+     */
+    public void invalidate(Collection<?> keys) {
+        List<String> localKeys = keys.stream().map(this::toLocalKey).collect(Collectors.toList());
+        localCache.invalidateAll(localKeys);
+        cacheManager.publishInvalidation(getName(), localKeys);
+    }
+
+    public void recordL2Hits(int count) {
+        l2Hits.add(count);
+    }
+
+    public void recordMisses(int count) {
+        misses.add(count);
+    }
+
+    void invalidateLocal(Collection<String> localKeys) {
+        if (localKeys == null) {
+            localCache.invalidateAll();
+        } else {
+            localCache.invalidateAll(localKeys);
+        }
+    }
+
+    /**
+     * Same as {@link RedisCache} converts the key to string, so the local keys match the Redis ones.
+     */
+    private String toLocalKey(Object key) {
+        if (key instanceof String) {
+            return (String) key;
+        }
+        if (conversionService.canConvert(TypeDescriptor.forObject(key), TypeDescriptor.valueOf(String.class))) {
+            return conversionService.convert(key, String.class);
+        }
+        return key.toString();
+    }
+
+    private static Object toStoreValue(Object value) {
+        return value != null ? value : NullValue.INSTANCE;
+    }
+
+    private static ValueWrapper toValueWrapper(Object localValue) {
+        return new SimpleValueWrapper(localValue == NullValue.INSTANCE ? null : localValue);
+    }
+}
@@ -0,0 +1,143 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.cache.near;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.cache.transaction.AbstractTransactionSupportingCacheManager;
+import org.springframework.data.redis.cache.RedisCache;
+import org.springframework.data.redis.cache.RedisCacheManager;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.thingsboard.server.common.stats.StatsFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Cache manager that wraps each cache of the {@link RedisCacheManager} into the {@link TbNearCache}.
+ * <p>
+ * Changes of the cached entries are published to the Redis channel, so other nodes remove the changed keys
+ * from their local caches. The manager receives the messages as a {@link MessageListener} and skips the ones
+ * published by itself.
+ */
+@Slf4j
+public class TbNearCacheManager extends AbstractTransactionSupportingCacheManager implements MessageListener {
+
+    private final RedisCacheManager redisCacheManager;
+    private final RedisConnectionFactory connectionFactory;
+    private final byte[] channel;
+    private final long maxSize;
+    private final long timeToLiveInSeconds;
+    private final StatsFactory statsFactory;
+    private final String nodeId = UUID.randomUUID().toString();
+    private final Map<String, TbNearCache> nearCaches = new ConcurrentHashMap<>();
+
+    public TbNearCacheManager(RedisCacheManager redisCacheManager, RedisConnectionFactory connectionFactory, String channel,
+                              long maxSize, long timeToLiveInSeconds, StatsFactory statsFactory) {
+        this.redisCacheManager = redisCacheManager;
+        this.connectionFactory = connectionFactory;
+        this.channel = channel.getBytes(StandardCharsets.UTF_8);
+        this.maxSize = maxSize;
+        this.timeToLiveInSeconds = timeToLiveInSeconds;
+        this.statsFactory = statsFactory;
+    }
+
+    @Override
+    protected Collection<? extends Cache> loadCaches() {
+        return redisCacheManager.getCacheNames().stream()
+                .map(name -> toNearCache(redisCacheManager.getCache(name)))
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    protected Cache getMissingCache(String name) {
+        Cache redisCache = redisCacheManager.getCache(name);
+        return redisCache != null ? toNearCache(redisCache) : null;
+    }
+
+    private TbNearCache toNearCache(Cache redisCache) {
+        return nearCaches.computeIfAbsent(redisCache.getName(),
+                name -> new TbNearCache((RedisCache) redisCache, this, maxSize, timeToLiveInSeconds, statsFactory));
+    }
+
+    /**
+     * Publishes the keys, changed by this node, to other nodes. The null keys mean the whole cache is cleared.
+     */
+    void publishInvalidation(String cacheName, List<String> keys) {
+        try (RedisConnection connection = connectionFactory.getConnection()) {
+            connection.publish(channel, encode(cacheName, keys));
+        } catch (Exception e) {
+            log.warn("[{}] Failed to publish invalidation of the keys {}", cacheName, keys, e);
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(message.getBody()))) {
+            String senderId = in.readUTF();
+            if (nodeId.equals(senderId)) {
+                return;
+            }
+            String cacheName = in.readUTF();
+            int count = in.readInt();
+            List<String> keys = null;
+            if (count >= 0) {
+                keys = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    keys.add(in.readUTF());
+                }
+            }
+            TbNearCache cache = nearCaches.get(cacheName);
+            if (cache != null) {
+                log.trace("[{}] Invalidating local keys {}", cacheName, keys);
+                cache.invalidateLocal(keys);
+            }
+        } catch (IOException e) {
+            log.warn("Failed to decode the cache invalidation message", e);
+        }
+    }
+
+    private byte[] encode(String cacheName, List<String> keys) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeUTF(nodeId);
+            out.writeUTF(cacheName);
+            if (keys == null) {
+                out.writeInt(-1);
+            } else {
+                out.writeInt(keys.size());
+                for (String key : keys) {
+                    out.writeUTF(key);
+                }
+            }
+        }
+        return bytes.toByteArray();
+    }
+}
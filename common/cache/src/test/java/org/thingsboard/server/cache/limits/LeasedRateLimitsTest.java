@@ -0,0 +1,96 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.cache.limits;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.BDDMockito.willThrow;
+import static org.mockito.Mockito.mock;
+
+public class LeasedRateLimitsTest {
+
+    @Test
+    public void givenTwoNodes_whenConsumed_thenCapacityIsShared() {
+        RateLimitLeaseStore store = new InMemoryRateLimitLeaseStore();
+        LeasedRateLimits first = new LeasedRateLimits(store, "tenant", "100:3600", 10);
+        LeasedRateLimits second = new LeasedRateLimits(store, "tenant", "100:3600", 10);
+
+        int consumed = 0;
+        for (int i = 0; i < 100; i++) {
+            consumed += first.tryConsume() ? 1 : 0;
+            consumed += second.tryConsume() ? 1 : 0;
+        }
+
+        assertThat(consumed).isEqualTo(100);
+        assertThat(first.tryConsume()).isFalse();
+        assertThat(second.tryConsume()).isFalse();
+    }
+
+    @Test
+    public void givenLeasedChunk_whenConsumed_thenStoreIsCalledOncePerChunk() {
+        AtomicInteger calls = new AtomicInteger();
+        InMemoryRateLimitLeaseStore inMemoryStore = new InMemoryRateLimitLeaseStore();
+        RateLimitLeaseStore store = (key, window, capacity, periodMs, requested) -> {
+            calls.incrementAndGet();
+            return inMemoryStore.lease(key, window, capacity, periodMs, requested);
+        };
+        LeasedRateLimits limits = new LeasedRateLimits(store, "tenant", "1000:3600", 10);
+
+        for (int i = 0; i < 250; i++) {
+            assertThat(limits.tryConsume()).isTrue();
+        }
+
+        assertThat(calls.get()).isEqualTo(3);
+    }
+
+    @Test
+    public void givenSeveralBandwidths_whenOneIsExhausted_thenTokensOfOthersAreReturned() {
+        List<String> leasedKeys = new ArrayList<>();
+        InMemoryRateLimitLeaseStore inMemoryStore = new InMemoryRateLimitLeaseStore();
+        RateLimitLeaseStore store = (key, window, capacity, periodMs, requested) -> {
+            leasedKeys.add(key);
+            return inMemoryStore.lease(key, window, capacity, periodMs, requested);
+        };
+        LeasedRateLimits limits = new LeasedRateLimits(store, "tenant", "10:3600,5:3600", 100);
+
+        assertThat(limits.tryConsume(5)).isTrue();
+        assertThat(limits.tryConsume(5)).isFalse();
+        assertThat(limits.tryConsume(5)).isFalse();
+
+        assertThat(leasedKeys).containsExactly("tenant:10:3600", "tenant:5:3600", "tenant:5:3600");
+    }
+
+    @Test
+    public void givenStoreFailure_whenConsumed_thenLocalCapacityIsUsed() {
+        RateLimitLeaseStore store = mock(RateLimitLeaseStore.class);
+        willThrow(new IllegalStateException("Connection refused")).given(store).lease(anyString(), anyLong(), anyLong(), anyLong(), anyLong());
+        LeasedRateLimits limits = new LeasedRateLimits(store, "tenant", "20:3600", 10);
+
+        int consumed = 0;
+        for (int i = 0; i < 30; i++) {
+            consumed += limits.tryConsume() ? 1 : 0;
+        }
+
+        assertThat(consumed).isEqualTo(20);
+    }
+}
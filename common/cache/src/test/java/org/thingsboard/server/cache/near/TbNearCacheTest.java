@@ -0,0 +1,125 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.cache.near;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.cache.Cache;
+import org.springframework.cache.transaction.TransactionAwareCacheDecorator;
+import org.springframework.data.redis.cache.RedisCacheManager;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.thingsboard.server.common.stats.DefaultCounter;
+import org.thingsboard.server.common.stats.StatsFactory;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.willReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class TbNearCacheTest {
+
+    private static final String CHANNEL = "invalidation";
+
+    private RedisConnection connection;
+    private TbNearCacheManager cacheManager;
+    private TbNearCache cache;
+
+    @BeforeEach
+    public void before() {
+        RedisConnectionFactory connectionFactory = mock(RedisConnectionFactory.class);
+        connection = mock(RedisConnection.class);
+        willReturn(connection).given(connectionFactory).getConnection();
+        StatsFactory statsFactory = mock(StatsFactory.class);
+        willReturn(new DefaultCounter(new AtomicInteger(), mock(io.micrometer.core.instrument.Counter.class)))
+                .given(statsFactory).createDefaultCounter(any(), any(), any(), any(), any());
+        RedisCacheManager redisCacheManager = RedisCacheManager.builder(connectionFactory).build();
+        cacheManager = new TbNearCacheManager(redisCacheManager, connectionFactory, CHANNEL, 100, 60, statsFactory);
+        cacheManager.setTransactionAware(true);
+        cacheManager.afterPropertiesSet();
+        Cache decorated = cacheManager.getCache("devices");
+        assertThat(decorated).isInstanceOf(TransactionAwareCacheDecorator.class);
+        cache = (TbNearCache) ((TransactionAwareCacheDecorator) decorated).getTargetCache();
+    }
+
+    @Test
+    public void givenPutValue_whenGet_thenServedLocallyAndInvalidationPublished() {
+        cache.put("key", "value");
+
+        verify(connection).set(any(byte[].class), any(byte[].class));
+        verify(connection).publish(any(byte[].class), any(byte[].class));
+        assertThat(cache.get("key").get()).isEqualTo("value");
+        verify(connection, times(0)).get(any(byte[].class));
+    }
+
+    @Test
+    public void givenValueInRedis_whenGet_thenCachedLocally() {
+        cache.putLocal("other", "x");
+        cache.invalidate(java.util.Collections.singletonList("other"));
+        assertThat(cache.getLocal("other")).isNull();
+
+        assertThat(cache.get("key")).isNull();
+        verify(connection, times(1)).get(any(byte[].class));
+        cache.putLocal("key", null);
+        assertThat(cache.get("key").get()).isNull();
+        verify(connection, times(1)).get(any(byte[].class));
+    }
+
+    @Test
+    public void givenInvalidationFromOtherNode_whenReceived_thenLocalEntryRemoved() {
+        cache.putLocal("key", "value");
+        cache.putLocal("key2", "value2");
+        byte[] message = publishFromOtherManager("key");
+
+        cacheManager.onMessage(new DefaultMessage(CHANNEL.getBytes(), message), null);
+
+        assertThat(cache.getLocal("key")).isNull();
+        assertThat(cache.getLocal("key2").get()).isEqualTo("value2");
+    }
+
+    @Test
+    public void givenOwnInvalidation_whenReceived_thenIgnored() {
+        cache.evict("key");
+        ArgumentCaptor<byte[]> captor = ArgumentCaptor.forClass(byte[].class);
+        verify(connection).publish(any(byte[].class), captor.capture());
+        cache.putLocal("key", "value");
+
+        cacheManager.onMessage(new DefaultMessage(CHANNEL.getBytes(), captor.getValue()), null);
+
+        assertThat(cache.getLocal("key").get()).isEqualTo("value");
+    }
+
+    private byte[] publishFromOtherManager(String key) {
+        RedisConnectionFactory connectionFactory = mock(RedisConnectionFactory.class);
+        RedisConnection otherConnection = mock(RedisConnection.class);
+        willReturn(otherConnection).given(connectionFactory).getConnection();
+        StatsFactory statsFactory = mock(StatsFactory.class);
+        willReturn(new DefaultCounter(new AtomicInteger(), mock(io.micrometer.core.instrument.Counter.class)))
+                .given(statsFactory).createDefaultCounter(any(), any(), any(), any(), any());
+        TbNearCacheManager otherManager = new TbNearCacheManager(RedisCacheManager.builder(connectionFactory).build(),
+                connectionFactory, CHANNEL, 100, 60, statsFactory);
+        otherManager.getCache("devices").evict(key);
+        ArgumentCaptor<byte[]> captor = ArgumentCaptor.forClass(byte[].class);
+        verify(otherConnection).publish(any(byte[].class), captor.capture());
+        return captor.getValue();
+    }
+}
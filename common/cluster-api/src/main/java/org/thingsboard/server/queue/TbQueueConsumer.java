@@ -34,6 +34,21 @@ public interface TbQueueConsumer<T extends TbQueueMsg> {
 
     void commit();
 
+    /**
+     * Returns the position right after the messages returned by the previous polls, that may be committed later
+     * by {@link #commit(Object)}, or null if the consumer is able to commit all the polled messages only.
+     */
+    default Object getCommitPosition() {
+        return null;
+    }
+
+    /**
+     * Commits the messages up to the position returned by {@link #getCommitPosition()}.
+     */
+    default void commit(Object position) {
+        throw new UnsupportedOperationException("Commit of a position is not supported by " + getClass().getSimpleName());
+    }
+
     boolean isStopped();
 
 }
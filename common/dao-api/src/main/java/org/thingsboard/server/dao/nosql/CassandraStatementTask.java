@@ -35,6 +35,28 @@ public class CassandraStatementTask implements AsyncTask {
     private final TenantId tenantId;
     private final GuavaSession session;
     private final Statement statement;
+    /**
+     * Identifies the Cassandra partition the statement writes to, the write executor may group statements with
+     * equal batch keys into one unlogged batch. Null if the statement must be executed separately.
+     */
+    private final Object batchKey;
+    /**
+     * Identifies the row within the partition the statement writes to. All statements of a batch share one write timestamp,
+     * so the statements that write to the same row are never grouped into one batch. Null if the row is unknown.
+     */
+    private final Object rowKey;
+
+    public CassandraStatementTask(TenantId tenantId, GuavaSession session, Statement statement) {
+        this(tenantId, session, statement, null, null);
+    }
+
+    public CassandraStatementTask(TenantId tenantId, GuavaSession session, Statement statement, Object batchKey, Object rowKey) {
+        this.tenantId = tenantId;
+        this.session = session;
+        this.statement = statement;
+        this.batchKey = batchKey;
+        this.rowKey = rowKey;
+    }
 
     public ListenableFuture<TbResultSet> executeAsync(Function<Statement, TbResultSetFuture> executeAsyncFunction) {
         return Futures.transform(session.executeAsync(statement),
@@ -16,11 +16,12 @@
 package org.thingsboard.server.common.data.query;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
-import lombok.AllArgsConstructor;
 import lombok.Data;
 
+import java.util.Map;
+import java.util.UUID;
+
 @Data
-@AllArgsConstructor
 public class EntityDataPageLink {
 
     private int pageSize;
@@ -28,6 +29,16 @@ public class EntityDataPageLink {
     private String textSearch;
     private EntityDataSortOrder sortOrder;
     private boolean dynamic = false;
+    /**
+     * Sort value and id of the last entity of the previous page. If both are set and the page is sorted by the entity field
+     * that supports it, the page starts right after this entity instead of skipping the (page * pageSize) rows.
+     */
+    private String afterSortValue;
+    private UUID afterEntityId;
+    /**
+     * Skip the exact count query. The total elements and pages are then estimated from the fetched page and 'hasNext'.
+     */
+    private boolean estimateTotal;
 
     public EntityDataPageLink() {
     }
@@ -36,8 +47,37 @@ public class EntityDataPageLink {
         this(pageSize, page, textSearch, sortOrder, false);
     }
 
+    public EntityDataPageLink(int pageSize, int page, String textSearch, EntityDataSortOrder sortOrder, boolean dynamic) {
+        this.pageSize = pageSize;
+        this.page = page;
+        this.textSearch = textSearch;
+        this.sortOrder = sortOrder;
+        this.dynamic = dynamic;
+    }
+
     @JsonIgnore
     public EntityDataPageLink nextPageLink() {
-        return new EntityDataPageLink(this.pageSize, this.page + 1, this.textSearch, this.sortOrder);
+        EntityDataPageLink next = new EntityDataPageLink(this.pageSize, this.page + 1, this.textSearch, this.sortOrder);
+        next.setEstimateTotal(this.estimateTotal);
+        return next;
+    }
+
+    /**
+     * Returns the link to the page after the given last entity of the current page.
+     * The sort value is taken from the entity fields of the entity, so the sort key has to be one of the query entity fields.
+     */
+    @JsonIgnore
+    public EntityDataPageLink nextPageLink(EntityData lastEntity) {
+        EntityDataPageLink next = nextPageLink();
+        if (sortOrder != null && sortOrder.getKey() != null && sortOrder.getKey().getType() == EntityKeyType.ENTITY_FIELD
+                && lastEntity.getLatest() != null) {
+            Map<String, TsValue> entityFields = lastEntity.getLatest().get(EntityKeyType.ENTITY_FIELD);
+            TsValue sortValue = entityFields != null ? entityFields.get(sortOrder.getKey().getKey()) : null;
+            if (sortValue != null) {
+                next.setAfterSortValue(sortValue.getValue());
+                next.setAfterEntityId(lastEntity.getEntityId().getId());
+            }
+        }
+        return next;
     }
 }
@@ -30,4 +30,11 @@ public interface TbActorMsg {
     default void onTbActorStopped(TbActorStopReason reason) {
     }
 
+    /**
+     * Executed instead of processing when the mailbox of the target TbActor is full and the message is dropped.
+     * Implementation should notify the sender that the message was not processed.
+     */
+    default void onTbActorMailboxOverflow() {
+    }
+
 }
@@ -0,0 +1,99 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.common.msg;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.thingsboard.server.common.data.kv.BooleanDataEntry;
+import org.thingsboard.server.common.data.kv.DataType;
+import org.thingsboard.server.common.data.kv.DoubleDataEntry;
+import org.thingsboard.server.common.data.kv.JsonDataEntry;
+import org.thingsboard.server.common.data.kv.KvEntry;
+import org.thingsboard.server.common.data.kv.LongDataEntry;
+import org.thingsboard.server.common.data.kv.StringDataEntry;
+import org.thingsboard.server.common.msg.gen.MsgProtos.TbMsgKvDataProto;
+import org.thingsboard.server.common.msg.gen.MsgProtos.TbMsgKvProto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Conversions of the typed message data {@link TbMsgKvDataProto}.
+ */
+public final class TbMsgKvDataUtils {
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+    private static final DataType[] DATA_TYPES = DataType.values();
+
+    private TbMsgKvDataUtils() {
+    }
+
+    public static List<KvEntry> toKvEntries(TbMsgKvDataProto kvData) {
+        List<KvEntry> result = new ArrayList<>(kvData.getKvCount());
+        for (TbMsgKvProto kv : kvData.getKvList()) {
+            switch (DATA_TYPES[kv.getType()]) {
+                case BOOLEAN:
+                    result.add(new BooleanDataEntry(kv.getKey(), kv.getBoolV()));
+                    break;
+                case LONG:
+                    result.add(new LongDataEntry(kv.getKey(), kv.getLongV()));
+                    break;
+                case DOUBLE:
+                    result.add(new DoubleDataEntry(kv.getKey(), kv.getDoubleV()));
+                    break;
+                case STRING:
+                    result.add(new StringDataEntry(kv.getKey(), kv.getStringV()));
+                    break;
+                case JSON:
+                    result.add(new JsonDataEntry(kv.getKey(), kv.getJsonV()));
+                    break;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Renders the JSON object with the same structure as the transport produces for the telemetry message.
+     */
+    public static String toJson(TbMsgKvDataProto kvData) {
+        ObjectNode json = mapper.createObjectNode();
+        try {
+            for (TbMsgKvProto kv : kvData.getKvList()) {
+                switch (DATA_TYPES[kv.getType()]) {
+                    case BOOLEAN:
+                        json.put(kv.getKey(), kv.getBoolV());
+                        break;
+                    case LONG:
+                        json.put(kv.getKey(), kv.getLongV());
+                        break;
+                    case DOUBLE:
+                        json.put(kv.getKey(), kv.getDoubleV());
+                        break;
+                    case STRING:
+                        json.put(kv.getKey(), kv.getStringV());
+                        break;
+                    case JSON:
+                        json.set(kv.getKey(), mapper.readTree(kv.getJsonV()));
+                        break;
+                }
+            }
+            return mapper.writeValueAsString(json);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Failed to render message data", e);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.common.msg;
+
+import org.junit.Test;
+import org.thingsboard.server.common.data.id.DeviceId;
+import org.thingsboard.server.common.data.kv.BooleanDataEntry;
+import org.thingsboard.server.common.data.kv.DataType;
+import org.thingsboard.server.common.data.kv.DoubleDataEntry;
+import org.thingsboard.server.common.data.kv.JsonDataEntry;
+import org.thingsboard.server.common.data.kv.KvEntry;
+import org.thingsboard.server.common.data.kv.LongDataEntry;
+import org.thingsboard.server.common.data.kv.StringDataEntry;
+import org.thingsboard.server.common.msg.gen.MsgProtos;
+import org.thingsboard.server.common.msg.queue.ServiceQueue;
+import org.thingsboard.server.common.msg.queue.TbMsgCallback;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class TbMsgKvDataTest {
+
+    private static final MsgProtos.TbMsgKvDataProto KV_DATA = MsgProtos.TbMsgKvDataProto.newBuilder()
+            .addKv(MsgProtos.TbMsgKvProto.newBuilder().setKey("active").setType(DataType.BOOLEAN.ordinal()).setBoolV(true))
+            .addKv(MsgProtos.TbMsgKvProto.newBuilder().setKey("counter").setType(DataType.LONG.ordinal()).setLongV(42))
+            .addKv(MsgProtos.TbMsgKvProto.newBuilder().setKey("temperature").setType(DataType.DOUBLE.ordinal()).setDoubleV(25.5))
+            .addKv(MsgProtos.TbMsgKvProto.newBuilder().setKey("status").setType(DataType.STRING.ordinal()).setStringV("ok"))
+            .addKv(MsgProtos.TbMsgKvProto.newBuilder().setKey("config").setType(DataType.JSON.ordinal()).setJsonV("{\"a\":1}"))
+            .build();
+
+    @Test
+    public void givenKvData_whenGetData_thenJsonIsRendered() {
+        TbMsg msg = newMsg();
+
+        assertThat(msg.hasKvData(), is(true));
+        assertThat(msg.getData(), is("{\"active\":true,\"counter\":42,\"temperature\":25.5,\"status\":\"ok\",\"config\":{\"a\":1}}"));
+    }
+
+    @Test
+    public void givenKvData_whenSerialized_thenKvDataIsPreserved() {
+        TbMsg msg = newMsg();
+
+        MsgProtos.TbMsgProto proto = parse(TbMsg.toByteArray(msg));
+        assertThat(proto.hasKvData(), is(true));
+        assertThat(proto.getData(), is(""));
+
+        TbMsg restored = TbMsg.fromBytes(ServiceQueue.MAIN, TbMsg.toByteArray(msg), TbMsgCallback.EMPTY);
+        assertThat(restored.getKvData(), is(KV_DATA));
+        assertThat(restored.getData(), is(msg.getData()));
+    }
+
+    @Test
+    public void givenKvData_whenTransformedWithNewData_thenKvDataIsDropped() {
+        TbMsg msg = TbMsg.transformMsg(newMsg(), "CUSTOM", new DeviceId(UUID.randomUUID()), new TbMsgMetaData(), "{\"b\":2}");
+
+        assertThat(msg.getKvData(), is(nullValue()));
+        assertThat(msg.getData(), is("{\"b\":2}"));
+        assertThat(parse(TbMsg.toByteArray(msg)).getData(), is("{\"b\":2}"));
+    }
+
+    @Test
+    public void givenKvData_whenToKvEntries_thenTypesArePreserved() {
+        List<KvEntry> expected = Arrays.asList(new BooleanDataEntry("active", true), new LongDataEntry("counter", 42L),
+                new DoubleDataEntry("temperature", 25.5), new StringDataEntry("status", "ok"), new JsonDataEntry("config", "{\"a\":1}"));
+
+        assertThat(TbMsgKvDataUtils.toKvEntries(KV_DATA), is(expected));
+    }
+
+    private static TbMsg newMsg() {
+        return TbMsg.newMsg(ServiceQueue.MAIN, "POST_TELEMETRY_REQUEST", new DeviceId(UUID.randomUUID()), null,
+                new TbMsgMetaData(), KV_DATA, null, null);
+    }
+
+    private static MsgProtos.TbMsgProto parse(byte[] bytes) {
+        try {
+            return MsgProtos.TbMsgProto.parseFrom(bytes);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -160,6 +160,26 @@ public abstract class AbstractTbQueueConsumerTemplate<R, T extends TbQueueMsg> i
         }
     }
 
+    @Override
+    public Object getCommitPosition() {
+        consumerLock.lock();
+        try {
+            return doGetCommitPosition();
+        } finally {
+            consumerLock.unlock();
+        }
+    }
+
+    @Override
+    public void commit(Object position) {
+        consumerLock.lock();
+        try {
+            doCommit(position);
+        } finally {
+            consumerLock.unlock();
+        }
+    }
+
     @Override
     public void unsubscribe() {
         log.info("unsubscribe topic and stop consumer {}", getTopic());
@@ -187,4 +207,12 @@ public abstract class AbstractTbQueueConsumerTemplate<R, T extends TbQueueMsg> i
 
     abstract protected void doUnsubscribe();
 
+    protected Object doGetCommitPosition() {
+        return null;
+    }
+
+    protected void doCommit(Object position) {
+        throw new UnsupportedOperationException("Commit of a position is not supported by " + getClass().getSimpleName());
+    }
+
 }
@@ -47,6 +47,10 @@ public class ConsistentHashCircle<T> {
         return circle.tailMap(hash);
     }
 
+    public ConcurrentNavigableMap<Long, T> headMap(Long hash) {
+        return circle.headMap(hash);
+    }
+
     public Long firstKey() {
         return circle.firstKey();
     }
@@ -19,6 +19,7 @@ import com.google.common.hash.HashFunction;
 import com.google.common.hash.Hasher;
 import com.google.common.hash.Hashing;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
@@ -29,6 +30,8 @@ import org.thingsboard.server.common.msg.queue.ServiceQueue;
 import org.thingsboard.server.common.msg.queue.ServiceQueueKey;
 import org.thingsboard.server.common.msg.queue.ServiceType;
 import org.thingsboard.server.common.msg.queue.TopicPartitionInfo;
+import org.thingsboard.server.common.stats.DefaultCounter;
+import org.thingsboard.server.common.stats.StatsFactory;
 import org.thingsboard.server.gen.transport.TransportProtos;
 import org.thingsboard.server.gen.transport.TransportProtos.ServiceInfo;
 import org.thingsboard.server.queue.QueueService;
@@ -38,6 +41,7 @@ import org.thingsboard.server.queue.discovery.event.ServiceListChangedEvent;
 import org.thingsboard.server.queue.settings.TbQueueRuleEngineSettings;
 
 import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
@@ -55,12 +59,22 @@ import java.util.stream.Collectors;
 @Slf4j
 public class HashPartitionService implements PartitionService {
 
+    private static final String MOVED_PARTITIONS_STATS_KEY = "partitions.moved";
+    private static final double CONSISTENT_HASH_LOAD_FACTOR = 1.25;
+
     @Value("${queue.core.topic}")
     private String coreTopic;
     @Value("${queue.core.partitions:100}")
     private Integer corePartitions;
     @Value("${queue.partitions.hash_function_name:murmur3_128}")
     private String hashFunctionName;
+    @Value("${queue.partitions.assignment_strategy:round_robin}")
+    private String assignmentStrategyName;
+    @Value("${queue.partitions.virtual_nodes_size:16}")
+    private int virtualNodesSize;
+
+    @Autowired(required = false)
+    private StatsFactory statsFactory;
 
     private final ApplicationEventPublisher applicationEventPublisher;
     private final TbServiceInfoProvider serviceInfoProvider;
@@ -79,7 +93,10 @@ public class HashPartitionService implements PartitionService {
     private Map<String, List<ServiceInfo>> tbTransportServicesByType = new HashMap<>();
     private List<ServiceInfo> currentOtherServices;
 
+    private final ConcurrentMap<String, DefaultCounter> movedPartitionsCounters = new ConcurrentHashMap<>();
+
     private HashFunction hashFunction;
+    private PartitionAssignmentStrategy assignmentStrategy;
 
     public HashPartitionService(TbServiceInfoProvider serviceInfoProvider,
                                 TenantRoutingInfoService tenantRoutingInfoService,
@@ -96,6 +113,7 @@ public class HashPartitionService implements PartitionService {
     @PostConstruct
     public void init() {
         this.hashFunction = forName(hashFunctionName);
+        this.assignmentStrategy = PartitionAssignmentStrategy.valueOf(assignmentStrategyName.toUpperCase());
         partitionSizes.put(new ServiceQueue(ServiceType.TB_CORE), corePartitions);
         partitionTopics.put(new ServiceQueue(ServiceType.TB_CORE), coreTopic);
         tbQueueRuleEngineSettings.getQueues().forEach(queueConfiguration -> {
@@ -149,8 +167,9 @@ public class HashPartitionService implements PartitionService {
         myPartitions = new ConcurrentHashMap<>();
         partitionSizes.forEach((serviceQueue, size) -> {
             ServiceQueueKey myServiceQueueKey = new ServiceQueueKey(serviceQueue, myIsolatedOrSystemTenantId);
+            List<ServiceInfo> assignment = assignPartitions(serviceQueue, queueServicesMap.get(myServiceQueueKey), size);
             for (int i = 0; i < size; i++) {
-                ServiceInfo serviceInfo = resolveByPartitionIdx(queueServicesMap.get(myServiceQueueKey), i);
+                ServiceInfo serviceInfo = assignment.get(i);
                 if (currentService.equals(serviceInfo)) {
                     ServiceQueueKey serviceQueueKey = new ServiceQueueKey(serviceQueue, getSystemOrIsolatedTenantId(serviceInfo));
                     myPartitions.computeIfAbsent(serviceQueueKey, key -> new ArrayList<>()).add(i);
@@ -161,6 +180,7 @@ public class HashPartitionService implements PartitionService {
         oldPartitions.forEach((serviceQueueKey, partitions) -> {
             if (!myPartitions.containsKey(serviceQueueKey)) {
                 log.info("[{}] NO MORE PARTITIONS FOR CURRENT KEY", serviceQueueKey);
+                recordMovedPartitions(serviceQueueKey, partitions, Collections.emptyList());
                 applicationEventPublisher.publishEvent(new PartitionChangeEvent(this, serviceQueueKey, Collections.emptySet()));
             }
         });
@@ -168,6 +188,7 @@ public class HashPartitionService implements PartitionService {
         myPartitions.forEach((serviceQueueKey, partitions) -> {
             if (!partitions.equals(oldPartitions.get(serviceQueueKey))) {
                 log.info("[{}] NEW PARTITIONS: {}", serviceQueueKey, partitions);
+                recordMovedPartitions(serviceQueueKey, oldPartitions.getOrDefault(serviceQueueKey, Collections.emptyList()), partitions);
                 Set<TopicPartitionInfo> tpiList = partitions.stream()
                         .map(partition -> buildTopicPartitionInfo(serviceQueueKey, partition))
                         .collect(Collectors.toSet());
@@ -351,13 +372,115 @@ public class HashPartitionService implements PartitionService {
         }
     }
 
-    private ServiceInfo resolveByPartitionIdx(List<ServiceInfo> servers, Integer partitionIdx) {
+    /**
+     * Returns the service for each partition of the queue. The servers are sorted by the service id,
+     * so all nodes calculate the same assignment.
+     */
+    List<ServiceInfo> assignPartitions(ServiceQueue serviceQueue, List<ServiceInfo> servers, int size) {
+        List<ServiceInfo> assignment = new ArrayList<>(size);
         if (servers == null || servers.isEmpty()) {
-            return null;
+            for (int i = 0; i < size; i++) {
+                assignment.add(null);
+            }
+            return assignment;
+        }
+        switch (assignmentStrategy) {
+            case RENDEZVOUS:
+                for (int i = 0; i < size; i++) {
+                    assignment.add(resolveByRendezvousHash(serviceQueue, servers, i));
+                }
+                break;
+            case CONSISTENT_HASH:
+                assignment.addAll(resolveByConsistentHash(serviceQueue, servers, size));
+                break;
+            default:
+                for (int i = 0; i < size; i++) {
+                    assignment.add(resolveByPartitionIdx(servers, i));
+                }
         }
+        return assignment;
+    }
+
+    private ServiceInfo resolveByPartitionIdx(List<ServiceInfo> servers, Integer partitionIdx) {
         return servers.get(partitionIdx % servers.size());
     }
 
+    /**
+     * The partition goes to the server with the highest hash of (server, partition), so a new server takes only the partitions
+     * for which it wins, and the partitions of the removed server are spread among the rest.
+     */
+    private ServiceInfo resolveByRendezvousHash(ServiceQueue serviceQueue, List<ServiceInfo> servers, int partitionIdx) {
+        ServiceInfo result = null;
+        long maxHash = Long.MIN_VALUE;
+        for (ServiceInfo server : servers) {
+            long hash = hashFunction.newHasher()
+                    .putString(server.getServiceId(), StandardCharsets.UTF_8)
+                    .putString(serviceQueue.getType().name(), StandardCharsets.UTF_8)
+                    .putString(serviceQueue.getQueue(), StandardCharsets.UTF_8)
+                    .putInt(partitionIdx).hash().padToLong();
+            if (result == null || hash > maxHash) {
+                result = server;
+                maxHash = hash;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Consistent hashing with bounded loads: each server is placed on the circle as a number of virtual nodes and
+     * the partition goes to the first server clockwise that has less than the max load, which keeps the assignment balanced
+     * while a new or removed server moves about 1/N of the partitions.
+     */
+    private List<ServiceInfo> resolveByConsistentHash(ServiceQueue serviceQueue, List<ServiceInfo> servers, int size) {
+        ConsistentHashCircle<ServiceInfo> circle = new ConsistentHashCircle<>();
+        for (ServiceInfo server : servers) {
+            for (int i = 0; i < virtualNodesSize; i++) {
+                circle.put(hashFunction.newHasher().putString(server.getServiceId(), StandardCharsets.UTF_8).putInt(i).hash().padToLong(), server);
+            }
+        }
+        int maxLoad = (int) Math.ceil(size * CONSISTENT_HASH_LOAD_FACTOR / servers.size());
+        Map<String, Integer> loads = new HashMap<>();
+        List<ServiceInfo> assignment = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            long hash = hashFunction.newHasher()
+                    .putString(serviceQueue.getType().name(), StandardCharsets.UTF_8)
+                    .putString(serviceQueue.getQueue(), StandardCharsets.UTF_8)
+                    .putInt(i).hash().padToLong();
+            ServiceInfo server = null;
+            for (ServiceInfo candidate : circle.tailMap(hash).values()) {
+                if (loads.getOrDefault(candidate.getServiceId(), 0) < maxLoad) {
+                    server = candidate;
+                    break;
+                }
+            }
+            if (server == null) {
+                for (ServiceInfo candidate : circle.headMap(hash).values()) {
+                    if (loads.getOrDefault(candidate.getServiceId(), 0) < maxLoad) {
+                        server = candidate;
+                        break;
+                    }
+                }
+            }
+            loads.merge(server.getServiceId(), 1, Integer::sum);
+            assignment.add(server);
+        }
+        return assignment;
+    }
+
+    private void recordMovedPartitions(ServiceQueueKey serviceQueueKey, List<Integer> oldPartitions, List<Integer> newPartitions) {
+        int acquired = (int) newPartitions.stream().filter(partition -> !oldPartitions.contains(partition)).count();
+        int released = (int) oldPartitions.stream().filter(partition -> !newPartitions.contains(partition)).count();
+        log.info("[{}] Partitions acquired: {}, released: {}", serviceQueueKey, acquired, released);
+        if (statsFactory != null) {
+            String serviceType = serviceQueueKey.getServiceQueue().getType().name();
+            String queue = serviceQueueKey.getServiceQueue().getQueue();
+            movedPartitionsCounters.computeIfAbsent(serviceType + "." + queue + ".acquired", key -> statsFactory.createDefaultCounter(MOVED_PARTITIONS_STATS_KEY,
+                    "serviceType", serviceType, "queue", queue, "direction", "acquired")).add(acquired);
+            movedPartitionsCounters.computeIfAbsent(serviceType + "." + queue + ".released", key -> statsFactory.createDefaultCounter(MOVED_PARTITIONS_STATS_KEY,
+                    "serviceType", serviceType, "queue", queue, "direction", "released")).add(released);
+        }
+    }
+
     public static HashFunction forName(String name) {
         switch (name) {
             case "murmur3_32":
@@ -19,29 +19,28 @@ import lombok.extern.slf4j.Slf4j;
 import org.thingsboard.server.queue.TbQueueMsg;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
 
+/**
+ * Storage of the in-memory queue. Each full topic name (topic with the partition suffix) is a separate
+ * {@link InMemoryTopicPartition} with its own bounded buffer and committed offset.
+ */
 @Slf4j
 public final class InMemoryStorage {
-    private static InMemoryStorage instance;
-    private final ConcurrentHashMap<String, BlockingQueue<TbQueueMsg>> storage;
+    private static final int DEFAULT_MAX_POLL_RECORDS = 1000;
+
+    private static volatile InMemoryStorage instance;
+    private final ConcurrentMap<String, InMemoryTopicPartition> storage;
+    private volatile int maxPartitionSize;
+    private volatile int maxPollRecords = DEFAULT_MAX_POLL_RECORDS;
 
     private InMemoryStorage() {
         storage = new ConcurrentHashMap<>();
     }
 
-    public void printStats() {
-        storage.forEach((topic, queue) -> {
-            if (queue.size() > 0) {
-                log.debug("[{}] Queue Size [{}]", topic, queue.size());
-            }
-        });
-    }
-
     public static InMemoryStorage getInstance() {
         if (instance == null) {
             synchronized (InMemoryStorage.class) {
@@ -53,31 +52,73 @@ public final class InMemoryStorage {
         return instance;
     }
 
-    public boolean put(String topic, TbQueueMsg msg) {
-        return storage.computeIfAbsent(topic, (t) -> new LinkedBlockingQueue<>()).add(msg);
+    /**
+     * @param maxPartitionSize max number of not committed messages per partition, zero or negative value means unbounded.
+     *                         Applied to the partitions created after this call.
+     * @param maxPollRecords   max number of messages returned by one poll of a consumer
+     */
+    public void configure(int maxPartitionSize, int maxPollRecords) {
+        this.maxPartitionSize = maxPartitionSize;
+        this.maxPollRecords = maxPollRecords > 0 ? maxPollRecords : DEFAULT_MAX_POLL_RECORDS;
     }
 
-    public <T extends TbQueueMsg> List<T> get(String topic) throws InterruptedException {
-        if (storage.containsKey(topic)) {
-            List<T> entities;
-            @SuppressWarnings("unchecked")
-            T first = (T) storage.get(topic).poll();
-            if (first != null) {
-                entities = new ArrayList<>();
-                entities.add(first);
-                List<TbQueueMsg> otherList = new ArrayList<>();
-                storage.get(topic).drainTo(otherList, 999);
-                for (TbQueueMsg other : otherList) {
-                    @SuppressWarnings("unchecked")
-                    T entity = (T) other;
-                    entities.add(entity);
-                }
-            } else {
-                entities = Collections.emptyList();
+    public int getMaxPollRecords() {
+        return maxPollRecords;
+    }
+
+    public void printStats() {
+        storage.values().forEach(partition -> {
+            InMemoryTopicPartitionStats stats = partition.getStats();
+            if (stats.getSize() > 0 || stats.getRejected() > 0) {
+                log.debug("[{}] Queue Size [{}] In Flight [{}] Produced [{}] Committed [{}] Rejected [{}]", stats.getTopic(),
+                        stats.getSize(), stats.getInFlight(), stats.getProducedOffset(), stats.getCommittedOffset(), stats.getRejected());
             }
-            return entities;
+        });
+    }
+
+    public List<InMemoryTopicPartitionStats> getStats() {
+        List<InMemoryTopicPartitionStats> stats = new ArrayList<>(storage.size());
+        storage.values().forEach(partition -> stats.add(partition.getStats()));
+        return stats;
+    }
+
+    /**
+     * @return false if the partition is full
+     */
+    public boolean put(String topic, TbQueueMsg msg) {
+        return getPartition(topic).put(msg);
+    }
+
+    /**
+     * Polls up to maxRecords messages that are not polled yet, the messages stay in the storage until commit.
+     */
+    public <T extends TbQueueMsg> int poll(String topic, List<T> result, int maxRecords) {
+        InMemoryTopicPartition partition = storage.get(topic);
+        return partition != null ? partition.poll(result, maxRecords) : 0;
+    }
+
+    public void commit(String topic) {
+        InMemoryTopicPartition partition = storage.get(topic);
+        if (partition != null) {
+            partition.commit();
         }
-        return Collections.emptyList();
+    }
+
+    void subscribe(String topic, Semaphore consumerNotifier) {
+        InMemoryTopicPartition partition = getPartition(topic);
+        partition.rewind();
+        partition.setConsumerNotifier(consumerNotifier);
+    }
+
+    void unsubscribe(String topic, Semaphore consumerNotifier) {
+        InMemoryTopicPartition partition = storage.get(topic);
+        if (partition != null) {
+            partition.removeConsumerNotifier(consumerNotifier);
+        }
+    }
+
+    private InMemoryTopicPartition getPartition(String topic) {
+        return storage.computeIfAbsent(topic, t -> new InMemoryTopicPartition(t, maxPartitionSize));
     }
 
     /**
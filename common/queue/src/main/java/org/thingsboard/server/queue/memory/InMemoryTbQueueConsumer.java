@@ -20,17 +20,23 @@ import org.thingsboard.server.common.msg.queue.TopicPartitionInfo;
 import org.thingsboard.server.queue.TbQueueConsumer;
 import org.thingsboard.server.queue.TbQueueMsg;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 @Slf4j
 public class InMemoryTbQueueConsumer<T extends TbQueueMsg> implements TbQueueConsumer<T> {
     private final InMemoryStorage storage = InMemoryStorage.getInstance();
-    private volatile Set<TopicPartitionInfo> partitions;
+    private final Semaphore notifier = new Semaphore(0);
+    private volatile List<String> partitions = Collections.emptyList();
     private volatile boolean stopped;
     private volatile boolean subscribed;
+    private int nextPartition;
 
     public InMemoryTbQueueConsumer(String topic) {
         this.topic = topic;
@@ -46,55 +52,71 @@ public class InMemoryTbQueueConsumer<T extends TbQueueMsg> implements TbQueueCon
 
     @Override
     public void subscribe() {
-        partitions = Collections.singleton(new TopicPartitionInfo(topic, null, null, true));
-        subscribed = true;
+        subscribe(Collections.singleton(new TopicPartitionInfo(topic, null, null, true)));
     }
 
+    /**
+     * Only the newly assigned partitions are rewound to the committed offset, same as on the Kafka rebalance.
+     */
     @Override
-    public void subscribe(Set<TopicPartitionInfo> partitions) {
-        this.partitions = partitions;
+    public synchronized void subscribe(Set<TopicPartitionInfo> partitions) {
+        List<String> newPartitions = partitions.stream().map(TopicPartitionInfo::getFullTopicName).distinct().collect(Collectors.toList());
+        Set<String> oldPartitions = new HashSet<>(this.partitions);
+        oldPartitions.stream().filter(p -> !newPartitions.contains(p)).forEach(p -> storage.unsubscribe(p, notifier));
+        newPartitions.stream().filter(p -> !oldPartitions.contains(p)).forEach(p -> storage.subscribe(p, notifier));
+        this.partitions = newPartitions;
         subscribed = true;
+        notifier.release();
     }
 
     @Override
-    public void unsubscribe() {
+    public synchronized void unsubscribe() {
         stopped = true;
+        partitions.forEach(p -> storage.unsubscribe(p, notifier));
+        partitions = Collections.emptyList();
+        notifier.release();
     }
 
     @Override
     public List<T> poll(long durationInMillis) {
         if (subscribed) {
-            @SuppressWarnings("unchecked")
-            List<T> messages = partitions
-                    .stream()
-                    .map(tpi -> {
-                        try {
-                            return storage.get(tpi.getFullTopicName());
-                        } catch (InterruptedException e) {
-                            if (!stopped) {
-                                log.error("Queue was interrupted.", e);
-                            }
-                            return Collections.emptyList();
-                        }
-                    })
-                    .flatMap(List::stream)
-                    .map(msg -> (T) msg).collect(Collectors.toList());
-            if (messages.size() > 0) {
+            List<T> messages = pollPartitions();
+            if (!messages.isEmpty()) {
                 return messages;
             }
             try {
-                Thread.sleep(durationInMillis);
+                if (notifier.tryAcquire(durationInMillis, TimeUnit.MILLISECONDS)) {
+                    notifier.drainPermits();
+                    return pollPartitions();
+                }
             } catch (InterruptedException e) {
                 if (!stopped) {
-                    log.error("Failed to sleep.", e);
+                    log.error("Failed to wait for new messages.", e);
                 }
             }
         }
         return Collections.emptyList();
     }
 
+    private List<T> pollPartitions() {
+        List<String> partitions = this.partitions;
+        int size = partitions.size();
+        if (size == 0) {
+            return Collections.emptyList();
+        }
+        int maxRecords = storage.getMaxPollRecords();
+        List<T> messages = new ArrayList<>();
+        // Start from the next partition each time, so a busy partition does not starve the others
+        int start = nextPartition++ % size;
+        for (int i = 0; i < size && messages.size() < maxRecords; i++) {
+            storage.poll(partitions.get((start + i) % size), messages, maxRecords - messages.size());
+        }
+        return messages;
+    }
+
     @Override
     public void commit() {
+        partitions.forEach(storage::commit);
     }
 
     @Override
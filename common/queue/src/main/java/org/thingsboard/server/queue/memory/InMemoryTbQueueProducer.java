@@ -46,7 +46,7 @@ public class InMemoryTbQueueProducer<T extends TbQueueMsg> implements TbQueuePro
             }
         } else {
             if (callback != null) {
-                callback.onFailure(new RuntimeException("Failure add msg to InMemoryQueue"));
+                callback.onFailure(new RuntimeException("Failure add msg to InMemoryQueue, partition " + tpi.getFullTopicName() + " is full"));
             }
         }
     }
@@ -0,0 +1,156 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.queue.memory;
+
+import org.thingsboard.server.queue.TbQueueMsg;
+
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Single partition of the in-memory queue. Messages are stored in a ring buffer that grows up to maxSize
+ * and are released only on commit, so the messages polled but not committed are delivered again after rewind.
+ * Offsets: committed <= consumed <= produced.
+ */
+final class InMemoryTopicPartition {
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private final String topic;
+    private final long maxSize;
+    private final Lock lock = new ReentrantLock();
+
+    private TbQueueMsg[] ring;
+    private long produced;
+    private long consumed;
+    private long committed;
+    private long rejected;
+    private volatile Semaphore consumerNotifier;
+
+    InMemoryTopicPartition(String topic, int maxSize) {
+        this.topic = topic;
+        this.maxSize = maxSize > 0 ? maxSize : Integer.MAX_VALUE;
+        this.ring = new TbQueueMsg[(int) Math.min(INITIAL_CAPACITY, ceilingPowerOfTwo(this.maxSize))];
+    }
+
+    String getTopic() {
+        return topic;
+    }
+
+    boolean put(TbQueueMsg msg) {
+        lock.lock();
+        try {
+            long size = produced - committed;
+            if (size >= maxSize || (size == ring.length && !grow())) {
+                rejected++;
+                return false;
+            }
+            ring[index(produced)] = msg;
+            produced++;
+        } finally {
+            lock.unlock();
+        }
+        Semaphore notifier = consumerNotifier;
+        if (notifier != null && notifier.availablePermits() == 0) {
+            notifier.release();
+        }
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    <T extends TbQueueMsg> int poll(List<T> result, int maxRecords) {
+        lock.lock();
+        try {
+            int count = (int) Math.min(maxRecords, produced - consumed);
+            for (int i = 0; i < count; i++) {
+                result.add((T) ring[index(consumed + i)]);
+            }
+            consumed += count;
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Releases the messages that are polled since the last commit.
+     */
+    void commit() {
+        lock.lock();
+        try {
+            for (long offset = committed; offset < consumed; offset++) {
+                ring[index(offset)] = null;
+            }
+            committed = consumed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Moves the consumer position back to the last committed offset, so the uncommitted messages are polled again.
+     */
+    void rewind() {
+        lock.lock();
+        try {
+            consumed = committed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void setConsumerNotifier(Semaphore consumerNotifier) {
+        this.consumerNotifier = consumerNotifier;
+    }
+
+    void removeConsumerNotifier(Semaphore consumerNotifier) {
+        if (this.consumerNotifier == consumerNotifier) {
+            this.consumerNotifier = null;
+        }
+    }
+
+    InMemoryTopicPartitionStats getStats() {
+        lock.lock();
+        try {
+            return new InMemoryTopicPartitionStats(topic, produced - committed, consumed - committed, produced, committed, rejected);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean grow() {
+        int capacity = (int) Math.min((long) ring.length << 1, ceilingPowerOfTwo(maxSize));
+        if (capacity <= ring.length) {
+            return false;
+        }
+        TbQueueMsg[] newRing = new TbQueueMsg[capacity];
+        for (long offset = committed; offset < produced; offset++) {
+            newRing[(int) (offset & (capacity - 1))] = ring[index(offset)];
+        }
+        ring = newRing;
+        return true;
+    }
+
+    private int index(long offset) {
+        return (int) (offset & (ring.length - 1));
+    }
+
+    private static long ceilingPowerOfTwo(long value) {
+        return Math.min(1L << 30, Long.highestOneBit(Math.max(1, value - 1)) << 1);
+    }
+}
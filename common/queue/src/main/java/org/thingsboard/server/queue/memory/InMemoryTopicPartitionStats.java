@@ -0,0 +1,34 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.queue.memory;
+
+import lombok.Data;
+
+@Data
+public class InMemoryTopicPartitionStats {
+    private final String topic;
+    /**
+     * Number of not committed messages, including the polled ones
+     */
+    private final long size;
+    /**
+     * Number of polled messages that are not committed yet
+     */
+    private final long inFlight;
+    private final long producedOffset;
+    private final long committedOffset;
+    private final long rejected;
+}
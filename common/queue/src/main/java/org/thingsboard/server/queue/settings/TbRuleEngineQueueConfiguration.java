@@ -26,6 +26,8 @@ public class TbRuleEngineQueueConfiguration {
     private int partitions;
     private boolean consumerPerPartition;
     private long packProcessingTimeout;
+    private boolean pipelinedProcessing;
+    private int maxInFlightMsgs;
     private TbRuleEngineQueueSubmitStrategyConfiguration submitStrategy;
     private TbRuleEngineQueueAckStrategyConfiguration processingStrategy;
 
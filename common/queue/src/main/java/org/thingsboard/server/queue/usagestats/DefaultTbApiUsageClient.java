@@ -15,7 +15,7 @@
  */
 package org.thingsboard.server.queue.usagestats;
 
-import lombok.Data;
+import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
@@ -26,6 +26,7 @@ import org.thingsboard.server.common.data.id.EntityId;
 import org.thingsboard.server.common.data.id.TenantId;
 import org.thingsboard.server.common.msg.queue.ServiceType;
 import org.thingsboard.server.common.msg.queue.TopicPartitionInfo;
+import org.thingsboard.server.gen.transport.TransportProtos.EntityUsageStatsProto;
 import org.thingsboard.server.gen.transport.TransportProtos.ToUsageStatsServiceMsg;
 import org.thingsboard.server.gen.transport.TransportProtos.UsageStatsKVProto;
 import org.thingsboard.server.queue.TbQueueProducer;
@@ -35,27 +36,43 @@ import org.thingsboard.server.queue.provider.TbQueueProducerProvider;
 import org.thingsboard.server.queue.scheduler.SchedulerComponent;
 
 import javax.annotation.PostConstruct;
-import java.util.EnumMap;
-import java.util.Optional;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * Counts the API usage of the tenants and customers and periodically reports it to the core service.
+ * <p>
+ * The counters are striped {@link LongAdder}s that are never reset: the reporting thread sends the difference
+ * between the current sum and the previously reported one, so the increments made during the report are not lost.
+ * The counters of the owners without usage are removed after a few idle reports and collected for the last time on the next one.
+ */
 @Component
 @Slf4j
 public class DefaultTbApiUsageClient implements TbApiUsageClient {
 
+    private static final ApiUsageRecordKey[] RECORD_KEYS = ApiUsageRecordKey.values();
+    private static final int MAX_IDLE_REPORTS = 3;
+
     @Value("${usage.stats.report.enabled:true}")
     private boolean enabled;
     @Value("${usage.stats.report.enabled_per_customer:false}")
     private boolean enabledPerCustomer;
     @Value("${usage.stats.report.interval:10}")
     private int interval;
+    @Value("${usage.stats.report.pack_size:1}")
+    private int packSize;
 
-    private final EnumMap<ApiUsageRecordKey, ConcurrentMap<OwnerId, AtomicLong>> stats = new EnumMap<>(ApiUsageRecordKey.class);
+    private final ConcurrentMap<EntityId, OwnerStats> stats = new ConcurrentHashMap<>();
+    private final List<OwnerStats> removedStats = new ArrayList<>();
 
     private final PartitionService partitionService;
     private final SchedulerComponent scheduler;
@@ -72,9 +89,6 @@ public class DefaultTbApiUsageClient implements TbApiUsageClient {
     private void init() {
         if (enabled) {
             msgProducer = this.producerProvider.getTbUsageStatsMsgProducer();
-            for (ApiUsageRecordKey key : ApiUsageRecordKey.values()) {
-                stats.put(key, new ConcurrentHashMap<>());
-            }
             scheduler.scheduleWithFixedDelay(() -> {
                 try {
                     reportStats();
@@ -86,59 +100,88 @@ public class DefaultTbApiUsageClient implements TbApiUsageClient {
     }
 
     private void reportStats() {
-        ConcurrentMap<OwnerId, ToUsageStatsServiceMsg.Builder> report = new ConcurrentHashMap<>();
-
-        for (ApiUsageRecordKey key : ApiUsageRecordKey.values()) {
-            ConcurrentMap<OwnerId, AtomicLong> statsForKey = stats.get(key);
-            statsForKey.forEach((ownerId, statsValue) -> {
-                long value = statsValue.get();
-                if (value == 0) return;
-
-                ToUsageStatsServiceMsg.Builder statsMsgBuilder = report.computeIfAbsent(ownerId, id -> {
-                    ToUsageStatsServiceMsg.Builder newStatsMsgBuilder = ToUsageStatsServiceMsg.newBuilder();
-
-                    TenantId tenantId = ownerId.getTenantId();
-                    newStatsMsgBuilder.setTenantIdMSB(tenantId.getId().getMostSignificantBits());
-                    newStatsMsgBuilder.setTenantIdLSB(tenantId.getId().getLeastSignificantBits());
-
-                    EntityId entityId = ownerId.getEntityId();
-                    if (entityId != null && entityId.getEntityType() == EntityType.CUSTOMER) {
-                        newStatsMsgBuilder.setCustomerIdMSB(entityId.getId().getMostSignificantBits());
-                        newStatsMsgBuilder.setCustomerIdLSB(entityId.getId().getLeastSignificantBits());
-                    }
+        Map<TopicPartitionInfo, ToUsageStatsServiceMsg.Builder> packs = new HashMap<>();
+        int reported = 0;
+
+        // the removed counters are collected once more, so the increments of the threads that got them before the removal are not lost
+        for (OwnerStats ownerStats : removedStats) {
+            List<UsageStatsKVProto> values = ownerStats.collect();
+            if (!values.isEmpty()) {
+                report(ownerStats, values, packs);
+                reported++;
+            }
+        }
+        removedStats.clear();
 
-                    return newStatsMsgBuilder;
-                });
+        for (OwnerStats ownerStats : stats.values()) {
+            List<UsageStatsKVProto> values = ownerStats.collect();
+            if (values.isEmpty()) {
+                if (++ownerStats.idleReports >= MAX_IDLE_REPORTS && stats.remove(ownerStats.getEntityId(), ownerStats)) {
+                    removedStats.add(ownerStats);
+                }
+            } else {
+                ownerStats.idleReports = 0;
+                report(ownerStats, values, packs);
+                reported++;
+            }
+        }
+        packs.forEach(this::send);
 
-                statsMsgBuilder.addValues(UsageStatsKVProto.newBuilder().setKey(key.name()).setValue(value).build());
-            });
-            statsForKey.clear();
+        if (reported > 0) {
+            log.debug("Reporting API usage statistics for {} tenants and customers", reported);
         }
+    }
 
-        report.forEach(((ownerId, statsMsg) -> {
-            //TODO: figure out how to minimize messages into the queue. Maybe group by 100s of messages?
+    private void report(OwnerStats ownerStats, List<UsageStatsKVProto> values, Map<TopicPartitionInfo, ToUsageStatsServiceMsg.Builder> packs) {
+        TenantId tenantId = ownerStats.getTenantId();
+        TopicPartitionInfo tpi = partitionService.resolve(ServiceType.TB_CORE, tenantId, ownerStats.getEntityId())
+                .newByTopic(msgProducer.getDefaultTopic());
+        if (packSize > 1) {
+            ToUsageStatsServiceMsg.Builder pack = packs.computeIfAbsent(tpi, key -> ToUsageStatsServiceMsg.newBuilder());
+            pack.addEntityStats(toEntityStatsProto(ownerStats, values));
+            if (pack.getEntityStatsCount() >= packSize) {
+                send(tpi, pack);
+                packs.remove(tpi);
+            }
+        } else {
+            ToUsageStatsServiceMsg.Builder statsMsgBuilder = ToUsageStatsServiceMsg.newBuilder();
+            statsMsgBuilder.setTenantIdMSB(tenantId.getId().getMostSignificantBits());
+            statsMsgBuilder.setTenantIdLSB(tenantId.getId().getLeastSignificantBits());
+            if (ownerStats.isCustomer()) {
+                statsMsgBuilder.setCustomerIdMSB(ownerStats.getEntityId().getId().getMostSignificantBits());
+                statsMsgBuilder.setCustomerIdLSB(ownerStats.getEntityId().getId().getLeastSignificantBits());
+            }
+            statsMsgBuilder.addAllValues(values);
+            send(tpi, statsMsgBuilder);
+        }
+    }
 
-            TenantId tenantId = ownerId.getTenantId();
-            EntityId entityId = Optional.ofNullable(ownerId.getEntityId()).orElse(tenantId);
-            TopicPartitionInfo tpi = partitionService.resolve(ServiceType.TB_CORE, tenantId, entityId).newByTopic(msgProducer.getDefaultTopic());
-            msgProducer.send(tpi, new TbProtoQueueMsg<>(UUID.randomUUID(), statsMsg.build()), null);
-        }));
+    private void send(TopicPartitionInfo tpi, ToUsageStatsServiceMsg.Builder statsMsg) {
+        msgProducer.send(tpi, new TbProtoQueueMsg<>(UUID.randomUUID(), statsMsg.build()), null);
+    }
 
-        if (!report.isEmpty()) {
-            log.debug("Reporting API usage statistics for {} tenants and customers", report.size());
+    private static EntityUsageStatsProto toEntityStatsProto(OwnerStats ownerStats, List<UsageStatsKVProto> values) {
+        TenantId tenantId = ownerStats.getTenantId();
+        EntityUsageStatsProto.Builder builder = EntityUsageStatsProto.newBuilder()
+                .setTenantIdMSB(tenantId.getId().getMostSignificantBits())
+                .setTenantIdLSB(tenantId.getId().getLeastSignificantBits())
+                .addAllValues(values);
+        if (ownerStats.isCustomer()) {
+            builder.setCustomerIdMSB(ownerStats.getEntityId().getId().getMostSignificantBits());
+            builder.setCustomerIdLSB(ownerStats.getEntityId().getId().getLeastSignificantBits());
         }
+        return builder.build();
     }
 
     @Override
     public void report(TenantId tenantId, CustomerId customerId, ApiUsageRecordKey key, long value) {
         if (enabled) {
-            ConcurrentMap<OwnerId, AtomicLong> statsForKey = stats.get(key);
-
-            statsForKey.computeIfAbsent(new OwnerId(tenantId), id -> new AtomicLong()).addAndGet(value);
-            statsForKey.computeIfAbsent(new OwnerId(TenantId.SYS_TENANT_ID), id -> new AtomicLong()).addAndGet(value);
+            int index = key.ordinal();
+            getOwnerStats(tenantId, tenantId).add(index, value);
+            getOwnerStats(TenantId.SYS_TENANT_ID, TenantId.SYS_TENANT_ID).add(index, value);
 
             if (enabledPerCustomer && customerId != null && !customerId.isNullUid()) {
-                statsForKey.computeIfAbsent(new OwnerId(tenantId, customerId), id -> new AtomicLong()).addAndGet(value);
+                getOwnerStats(tenantId, customerId).add(index, value);
             }
         }
     }
@@ -148,18 +191,57 @@ public class DefaultTbApiUsageClient implements TbApiUsageClient {
         report(tenantId, customerId, key, 1);
     }
 
-    @Data
-    private static class OwnerId {
-        private TenantId tenantId;
-        private EntityId entityId;
-
-        public OwnerId(TenantId tenantId) {
-            this.tenantId = tenantId;
+    private OwnerStats getOwnerStats(TenantId tenantId, EntityId entityId) {
+        OwnerStats ownerStats = stats.get(entityId);
+        if (ownerStats == null) {
+            ownerStats = stats.computeIfAbsent(entityId, id -> new OwnerStats(tenantId, id));
         }
+        return ownerStats;
+    }
 
-        public OwnerId(TenantId tenantId, EntityId entityId) {
+    private static class OwnerStats {
+        @Getter
+        private final TenantId tenantId;
+        @Getter
+        private final EntityId entityId;
+        private final LongAdder[] values = new LongAdder[RECORD_KEYS.length];
+        // accessed by the reporting thread only
+        private final long[] reportedValues = new long[RECORD_KEYS.length];
+        private int idleReports;
+
+        OwnerStats(TenantId tenantId, EntityId entityId) {
             this.tenantId = tenantId;
             this.entityId = entityId;
+            for (int i = 0; i < values.length; i++) {
+                values[i] = new LongAdder();
+            }
+        }
+
+        boolean isCustomer() {
+            return entityId.getEntityType() == EntityType.CUSTOMER;
+        }
+
+        void add(int index, long value) {
+            values[index].add(value);
+        }
+
+        /**
+         * Returns the values added since the previous call.
+         */
+        List<UsageStatsKVProto> collect() {
+            List<UsageStatsKVProto> result = null;
+            for (int i = 0; i < values.length; i++) {
+                long sum = values[i].sum();
+                long value = sum - reportedValues[i];
+                if (value != 0) {
+                    reportedValues[i] = sum;
+                    if (result == null) {
+                        result = new ArrayList<>(values.length);
+                    }
+                    result.add(UsageStatsKVProto.newBuilder().setKey(RECORD_KEYS[i].name()).setValue(value).build());
+                }
+            }
+            return result != null ? result : Collections.emptyList();
         }
     }
 }
@@ -0,0 +1,140 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.queue.discovery;
+
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.thingsboard.server.common.data.id.TenantId;
+import org.thingsboard.server.common.msg.queue.ServiceQueue;
+import org.thingsboard.server.common.msg.queue.ServiceType;
+import org.thingsboard.server.gen.transport.TransportProtos.ServiceInfo;
+import org.thingsboard.server.queue.QueueService;
+import org.thingsboard.server.queue.settings.TbQueueRuleEngineSettings;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class HashPartitionServiceAssignmentTest {
+
+    private static final int PARTITIONS = 100;
+    private static final ServiceQueue CORE_QUEUE = new ServiceQueue(ServiceType.TB_CORE);
+
+    @Test
+    public void givenRoundRobinStrategy_whenNodeAdded_thenMostPartitionsMoved() {
+        HashPartitionService service = createService("round_robin");
+
+        int moved = countMoved(service.assignPartitions(CORE_QUEUE, servers(5), PARTITIONS),
+                service.assignPartitions(CORE_QUEUE, servers(6), PARTITIONS));
+
+        assertThat(moved, greaterThan(PARTITIONS / 2));
+    }
+
+    @Test
+    public void givenRendezvousStrategy_whenNodeAdded_thenOnlyPartitionsOfNewNodeMoved() {
+        HashPartitionService service = createService("rendezvous");
+        List<ServiceInfo> before = service.assignPartitions(CORE_QUEUE, servers(5), PARTITIONS);
+        List<ServiceInfo> after = service.assignPartitions(CORE_QUEUE, servers(6), PARTITIONS);
+
+        for (int i = 0; i < PARTITIONS; i++) {
+            if (!before.get(i).equals(after.get(i))) {
+                assertThat(after.get(i).getServiceId(), equalTo("tb-node-5"));
+            }
+        }
+        assertThat(countMoved(before, after), lessThanOrEqualTo(PARTITIONS / 3));
+    }
+
+    @Test
+    public void givenRendezvousStrategy_whenNodeRemoved_thenOnlyPartitionsOfRemovedNodeMoved() {
+        HashPartitionService service = createService("rendezvous");
+        List<ServiceInfo> before = service.assignPartitions(CORE_QUEUE, servers(6), PARTITIONS);
+        List<ServiceInfo> after = service.assignPartitions(CORE_QUEUE, servers(5), PARTITIONS);
+
+        for (int i = 0; i < PARTITIONS; i++) {
+            if (!before.get(i).equals(after.get(i))) {
+                assertThat(before.get(i).getServiceId(), equalTo("tb-node-5"));
+            }
+        }
+    }
+
+    @Test
+    public void givenConsistentHashStrategy_whenNodeAdded_thenLoadIsBoundedAndFewPartitionsMoved() {
+        HashPartitionService service = createService("consistent_hash");
+        List<ServiceInfo> before = service.assignPartitions(CORE_QUEUE, servers(5), PARTITIONS);
+        List<ServiceInfo> after = service.assignPartitions(CORE_QUEUE, servers(6), PARTITIONS);
+
+        Map<String, Integer> loads = new HashMap<>();
+        after.forEach(server -> loads.merge(server.getServiceId(), 1, Integer::sum));
+        assertThat(loads.size(), equalTo(6));
+        loads.values().forEach(load -> assertThat(load, lessThanOrEqualTo((int) Math.ceil(PARTITIONS * 1.25 / 6))));
+        assertThat(countMoved(before, after), lessThanOrEqualTo(PARTITIONS / 2));
+    }
+
+    @Test
+    public void givenConsistentHashStrategy_whenCalculatedByDifferentNodes_thenAssignmentIsTheSame() {
+        List<ServiceInfo> first = createService("consistent_hash").assignPartitions(CORE_QUEUE, servers(4), PARTITIONS);
+        List<ServiceInfo> second = createService("consistent_hash").assignPartitions(CORE_QUEUE, servers(4), PARTITIONS);
+
+        assertThat(first, equalTo(second));
+    }
+
+    private static HashPartitionService createService(String strategy) {
+        TbQueueRuleEngineSettings ruleEngineSettings = mock(TbQueueRuleEngineSettings.class);
+        when(ruleEngineSettings.getQueues()).thenReturn(Collections.emptyList());
+        HashPartitionService service = new HashPartitionService(mock(TbServiceInfoProvider.class), mock(TenantRoutingInfoService.class),
+                event -> {
+                }, ruleEngineSettings, mock(QueueService.class));
+        ReflectionTestUtils.setField(service, "coreTopic", "tb_core");
+        ReflectionTestUtils.setField(service, "corePartitions", PARTITIONS);
+        ReflectionTestUtils.setField(service, "hashFunctionName", "murmur3_128");
+        ReflectionTestUtils.setField(service, "assignmentStrategyName", strategy);
+        ReflectionTestUtils.setField(service, "virtualNodesSize", 16);
+        service.init();
+        return service;
+    }
+
+    private static List<ServiceInfo> servers(int count) {
+        List<ServiceInfo> servers = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            servers.add(ServiceInfo.newBuilder()
+                    .setServiceId("tb-node-" + i)
+                    .setTenantIdMSB(TenantId.NULL_UUID.getMostSignificantBits())
+                    .setTenantIdLSB(TenantId.NULL_UUID.getLeastSignificantBits())
+                    .addServiceTypes(ServiceType.TB_CORE.name())
+                    .build());
+        }
+        return servers;
+    }
+
+    private static int countMoved(List<ServiceInfo> before, List<ServiceInfo> after) {
+        int moved = 0;
+        for (int i = 0; i < before.size(); i++) {
+            if (!before.get(i).equals(after.get(i))) {
+                moved++;
+            }
+        }
+        return moved;
+    }
+}
@@ -0,0 +1,182 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.queue.memory;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.thingsboard.server.common.msg.queue.TopicPartitionInfo;
+import org.thingsboard.server.queue.TbQueueCallback;
+import org.thingsboard.server.queue.TbQueueMsg;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class InMemoryTbQueueConsumerTest {
+
+    private static final String TOPIC = "tb_test";
+
+    private final InMemoryStorage storage = InMemoryStorage.getInstance();
+
+    @Before
+    public void setUp() {
+        storage.cleanup();
+    }
+
+    @After
+    public void tearDown() {
+        storage.cleanup();
+        storage.configure(0, 1000);
+    }
+
+    @Test
+    public void givenPartitionIsFull_whenSend_thenProducerGetsFailure() {
+        storage.configure(2, 1000);
+        InMemoryTbQueueProducer<TbQueueMsg> producer = new InMemoryTbQueueProducer<>(TOPIC);
+        TopicPartitionInfo tpi = new TopicPartitionInfo(TOPIC, null, null, true);
+        TbQueueCallback first = mock(TbQueueCallback.class);
+        TbQueueCallback second = mock(TbQueueCallback.class);
+        TbQueueCallback third = mock(TbQueueCallback.class);
+
+        producer.send(tpi, mock(TbQueueMsg.class), first);
+        producer.send(tpi, mock(TbQueueMsg.class), second);
+        producer.send(tpi, mock(TbQueueMsg.class), third);
+
+        verify(first).onSuccess(any());
+        verify(second).onSuccess(any());
+        verify(third, never()).onSuccess(any());
+        verify(third).onFailure(any());
+        assertThat(storage.getStats().get(0).getRejected(), is(1L));
+    }
+
+    @Test
+    public void givenCommittedMessages_whenPartitionIsFull_thenSpaceIsReleased() {
+        storage.configure(2, 1000);
+        InMemoryTbQueueConsumer<TbQueueMsg> consumer = new InMemoryTbQueueConsumer<>(TOPIC);
+        consumer.subscribe();
+
+        assertThat(storage.put(TOPIC, mock(TbQueueMsg.class)), is(true));
+        assertThat(storage.put(TOPIC, mock(TbQueueMsg.class)), is(true));
+        assertThat(consumer.poll(10).size(), is(2));
+        // polled, but not committed messages still occupy the partition
+        assertThat(storage.put(TOPIC, mock(TbQueueMsg.class)), is(false));
+
+        consumer.commit();
+
+        assertThat(storage.put(TOPIC, mock(TbQueueMsg.class)), is(true));
+    }
+
+    @Test
+    public void givenNotCommittedMessages_whenPartitionIsReassigned_thenMessagesAreDeliveredAgain() {
+        TopicPartitionInfo tpi = new TopicPartitionInfo(TOPIC, null, 0, true);
+        TbQueueMsg committed = mock(TbQueueMsg.class);
+        TbQueueMsg notCommitted = mock(TbQueueMsg.class);
+        InMemoryTbQueueConsumer<TbQueueMsg> consumer = new InMemoryTbQueueConsumer<>(TOPIC);
+        consumer.subscribe(Collections.singleton(tpi));
+
+        storage.put(tpi.getFullTopicName(), committed);
+        assertThat(consumer.poll(10), contains(committed));
+        consumer.commit();
+        storage.put(tpi.getFullTopicName(), notCommitted);
+        assertThat(consumer.poll(10), contains(notCommitted));
+        consumer.unsubscribe();
+
+        InMemoryTbQueueConsumer<TbQueueMsg> newConsumer = new InMemoryTbQueueConsumer<>(TOPIC);
+        newConsumer.subscribe(Collections.singleton(tpi));
+        assertThat(newConsumer.poll(10), contains(notCommitted));
+    }
+
+    @Test
+    public void givenSamePartitions_whenResubscribe_thenPositionIsKept() {
+        TopicPartitionInfo tpi0 = new TopicPartitionInfo(TOPIC, null, 0, true);
+        TopicPartitionInfo tpi1 = new TopicPartitionInfo(TOPIC, null, 1, true);
+        InMemoryTbQueueConsumer<TbQueueMsg> consumer = new InMemoryTbQueueConsumer<>(TOPIC);
+        consumer.subscribe(Collections.singleton(tpi0));
+        storage.put(tpi0.getFullTopicName(), mock(TbQueueMsg.class));
+        assertThat(consumer.poll(10).size(), is(1));
+
+        consumer.subscribe(new HashSet<>(List.of(tpi0, tpi1)));
+
+        assertThat(consumer.poll(10), is(empty()));
+    }
+
+    @Test
+    public void givenManyMessages_whenPoll_thenBatchIsLimitedByMaxPollRecords() {
+        storage.configure(0, 100);
+        InMemoryTbQueueConsumer<TbQueueMsg> consumer = new InMemoryTbQueueConsumer<>(TOPIC);
+        consumer.subscribe();
+        List<TbQueueMsg> sent = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            TbQueueMsg msg = mock(TbQueueMsg.class);
+            sent.add(msg);
+            storage.put(TOPIC, msg);
+        }
+
+        List<TbQueueMsg> received = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            List<TbQueueMsg> batch = consumer.poll(10);
+            assertThat(batch.size(), is(100));
+            received.addAll(batch);
+            consumer.commit();
+        }
+
+        assertThat(received, equalTo(sent));
+        assertThat(consumer.poll(1), is(empty()));
+    }
+
+    @Test
+    public void givenEmptyPartition_whenMessageIsSent_thenPollReturnsWithoutWaitingFullDuration() throws InterruptedException {
+        InMemoryTbQueueConsumer<TbQueueMsg> consumer = new InMemoryTbQueueConsumer<>(TOPIC);
+        consumer.subscribe();
+        consumer.poll(1);
+        TbQueueMsg msg = mock(TbQueueMsg.class);
+        CountDownLatch started = new CountDownLatch(1);
+        Thread producer = new Thread(() -> {
+            try {
+                started.await();
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                return;
+            }
+            storage.put(TOPIC, msg);
+        });
+        producer.start();
+
+        long startTs = System.currentTimeMillis();
+        started.countDown();
+        List<TbQueueMsg> result = consumer.poll(TimeUnit.SECONDS.toMillis(10));
+
+        assertThat(result, contains(msg));
+        assertThat(System.currentTimeMillis() - startTs, lessThan(TimeUnit.SECONDS.toMillis(5)));
+        producer.join();
+    }
+
+}
@@ -0,0 +1,162 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.queue.usagestats;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.thingsboard.server.common.data.ApiUsageRecordKey;
+import org.thingsboard.server.common.data.id.CustomerId;
+import org.thingsboard.server.common.data.id.EntityId;
+import org.thingsboard.server.common.data.id.TenantId;
+import org.thingsboard.server.common.msg.queue.ServiceType;
+import org.thingsboard.server.common.msg.queue.TopicPartitionInfo;
+import org.thingsboard.server.gen.transport.TransportProtos.EntityUsageStatsProto;
+import org.thingsboard.server.gen.transport.TransportProtos.ToUsageStatsServiceMsg;
+import org.thingsboard.server.gen.transport.TransportProtos.UsageStatsKVProto;
+import org.thingsboard.server.queue.TbQueueProducer;
+import org.thingsboard.server.queue.common.TbProtoQueueMsg;
+import org.thingsboard.server.queue.discovery.PartitionService;
+import org.thingsboard.server.queue.provider.TbQueueProducerProvider;
+import org.thingsboard.server.queue.scheduler.SchedulerComponent;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class DefaultTbApiUsageClientTest {
+
+    private static final String TOPIC = "tb_usage_stats";
+
+    private final TenantId tenantId = new TenantId(UUID.randomUUID());
+    private final CustomerId customerId = new CustomerId(UUID.randomUUID());
+    private final List<TbProtoQueueMsg<ToUsageStatsServiceMsg>> sentMsgs = new CopyOnWriteArrayList<>();
+
+    private DefaultTbApiUsageClient client;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        PartitionService partitionService = mock(PartitionService.class);
+        when(partitionService.resolve(eq(ServiceType.TB_CORE), any(TenantId.class), any(EntityId.class)))
+                .thenReturn(new TopicPartitionInfo(TOPIC, null, 0, true));
+        TbQueueProducer<TbProtoQueueMsg<ToUsageStatsServiceMsg>> producer = mock(TbQueueProducer.class);
+        when(producer.getDefaultTopic()).thenReturn(TOPIC);
+        doAnswer(invocation -> sentMsgs.add(invocation.getArgument(1))).when(producer).send(any(), any(), any());
+        TbQueueProducerProvider producerProvider = mock(TbQueueProducerProvider.class);
+        when(producerProvider.getTbUsageStatsMsgProducer()).thenReturn(producer);
+
+        client = new DefaultTbApiUsageClient(partitionService, mock(SchedulerComponent.class), producerProvider);
+        ReflectionTestUtils.setField(client, "enabled", true);
+        ReflectionTestUtils.setField(client, "enabledPerCustomer", true);
+        ReflectionTestUtils.setField(client, "interval", 10);
+        ReflectionTestUtils.setField(client, "packSize", 1);
+        ReflectionTestUtils.invokeMethod(client, "init");
+    }
+
+    @Test
+    public void givenPackSizeOne_whenReported_thenMessagePerOwnerSent() {
+        client.report(tenantId, customerId, ApiUsageRecordKey.TRANSPORT_MSG_COUNT, 5);
+        client.report(tenantId, customerId, ApiUsageRecordKey.TRANSPORT_DP_COUNT, 7);
+
+        reportStats();
+
+        assertThat(sentMsgs, hasSize(3));
+        for (TbProtoQueueMsg<ToUsageStatsServiceMsg> msg : sentMsgs) {
+            assertThat(msg.getValue().getEntityStatsCount(), equalTo(0));
+            assertThat(msg.getValue().getValuesCount(), equalTo(2));
+        }
+
+        sentMsgs.clear();
+        reportStats();
+        assertThat(sentMsgs, hasSize(0));
+    }
+
+    @Test
+    public void givenPackSize_whenReported_thenOwnersPackedByPartition() {
+        ReflectionTestUtils.setField(client, "packSize", 100);
+        client.report(tenantId, customerId, ApiUsageRecordKey.TRANSPORT_MSG_COUNT, 5);
+
+        reportStats();
+
+        assertThat(sentMsgs, hasSize(1));
+        List<EntityUsageStatsProto> entityStats = sentMsgs.get(0).getValue().getEntityStatsList();
+        assertThat(entityStats, hasSize(3));
+        long customerStats = entityStats.stream()
+                .filter(stats -> stats.getCustomerIdMSB() == customerId.getId().getMostSignificantBits()
+                        && stats.getCustomerIdLSB() == customerId.getId().getLeastSignificantBits())
+                .count();
+        assertThat(customerStats, equalTo(1L));
+    }
+
+    @Test
+    public void givenConcurrentReports_whenReportedPeriodically_thenNoIncrementsLost() throws InterruptedException {
+        ReflectionTestUtils.setField(client, "packSize", 100);
+        int threads = 4;
+        int reportsPerThread = 100000;
+        CountDownLatch done = new CountDownLatch(threads);
+        AtomicBoolean failed = new AtomicBoolean();
+        for (int i = 0; i < threads; i++) {
+            new Thread(() -> {
+                try {
+                    for (int j = 0; j < reportsPerThread; j++) {
+                        client.report(tenantId, null, ApiUsageRecordKey.TRANSPORT_MSG_COUNT);
+                    }
+                } catch (Throwable e) {
+                    failed.set(true);
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+        while (!done.await(1, TimeUnit.MILLISECONDS)) {
+            reportStats();
+        }
+        reportStats();
+        reportStats();
+
+        assertThat(failed.get(), equalTo(false));
+        Map<UUID, Long> totals = new ConcurrentHashMap<>();
+        for (TbProtoQueueMsg<ToUsageStatsServiceMsg> msg : sentMsgs) {
+            for (EntityUsageStatsProto entityStats : msg.getValue().getEntityStatsList()) {
+                UUID ownerId = new UUID(entityStats.getTenantIdMSB(), entityStats.getTenantIdLSB());
+                for (UsageStatsKVProto kv : entityStats.getValuesList()) {
+                    totals.merge(ownerId, kv.getValue(), Long::sum);
+                }
+            }
+        }
+        assertThat(totals.get(tenantId.getId()), equalTo((long) threads * reportsPerThread));
+        assertThat(totals.get(TenantId.SYS_TENANT_ID.getId()), equalTo((long) threads * reportsPerThread));
+    }
+
+    private void reportStats() {
+        ReflectionTestUtils.invokeMethod(client, "reportStats");
+    }
+}
@@ -47,6 +47,7 @@ import org.thingsboard.server.common.transport.TransportContext;
 import org.thingsboard.server.common.transport.TransportService;
 import org.thingsboard.server.common.transport.TransportServiceCallback;
 import org.thingsboard.server.common.transport.adaptor.JsonConverter;
+import org.thingsboard.server.common.transport.adaptor.JsonStreamingConverter;
 import org.thingsboard.server.common.transport.auth.SessionInfoCreator;
 import org.thingsboard.server.common.transport.auth.ValidateDeviceCredentialsResponse;
 import org.thingsboard.server.gen.transport.TransportProtos;
@@ -183,7 +184,7 @@ public class DeviceApiController implements TbTransportService {
         transportContext.getTransportService().process(DeviceTransportType.DEFAULT, ValidateDeviceTokenRequestMsg.newBuilder().setToken(deviceToken).build(),
                 new DeviceAuthCallback(transportContext, responseWriter, sessionInfo -> {
                     TransportService transportService = transportContext.getTransportService();
-                    transportService.process(sessionInfo, JsonConverter.convertToAttributesProto(new JsonParser().parse(json)),
+                    transportService.process(sessionInfo, convertToAttributes(json),
                             new HttpOkCallback(responseWriter));
                 }));
         return responseWriter;
@@ -204,7 +205,7 @@ public class DeviceApiController implements TbTransportService {
         transportContext.getTransportService().process(DeviceTransportType.DEFAULT, ValidateDeviceTokenRequestMsg.newBuilder().setToken(deviceToken).build(),
                 new DeviceAuthCallback(transportContext, responseWriter, sessionInfo -> {
                     TransportService transportService = transportContext.getTransportService();
-                    transportService.process(sessionInfo, JsonConverter.convertToTelemetryProto(new JsonParser().parse(json)),
+                    transportService.process(sessionInfo, convertToTelemetry(json),
                             new HttpOkCallback(responseWriter));
                 }));
         return responseWriter;
@@ -443,6 +444,20 @@ public class DeviceApiController implements TbTransportService {
         return responseWriter;
     }
 
+    private static TransportProtos.PostTelemetryMsg convertToTelemetry(String json) {
+        if (JsonStreamingConverter.isEnabled()) {
+            return JsonStreamingConverter.convertToTelemetryProto(json);
+        }
+        return JsonConverter.convertToTelemetryProto(new JsonParser().parse(json));
+    }
+
+    private static TransportProtos.PostAttributeMsg convertToAttributes(String json) {
+        if (JsonStreamingConverter.isEnabled()) {
+            return JsonStreamingConverter.convertToAttributesProto(json);
+        }
+        return JsonConverter.convertToAttributesProto(new JsonParser().parse(json));
+    }
+
     private static class DeviceAuthCallback implements TransportServiceCallback<ValidateDeviceCredentialsResponse> {
         private final TransportContext transportContext;
         private final DeferredResult<ResponseEntity> responseWriter;
@@ -41,6 +41,7 @@ import org.thingsboard.server.common.transport.TransportService;
 import org.thingsboard.server.common.transport.TransportServiceCallback;
 import org.thingsboard.server.common.transport.adaptor.AdaptorException;
 import org.thingsboard.server.common.transport.adaptor.JsonConverter;
+import org.thingsboard.server.common.transport.adaptor.JsonStreamingConverter;
 import org.thingsboard.server.common.transport.adaptor.ProtoConverter;
 import org.thingsboard.server.common.transport.auth.GetOrCreateDeviceFromGatewayResponse;
 import org.thingsboard.server.common.transport.auth.TransportDeviceInfo;
@@ -335,6 +336,13 @@ public class GatewaySessionHandler {
     }
 
     private void onDeviceTelemetryJson(int msgId, ByteBuf payload) throws AdaptorException {
+        if (JsonStreamingConverter.isEnabled()) {
+            Map<String, TransportProtos.PostTelemetryMsg> telemetry = JsonStreamingConverter.convertToGatewayTelemetryProto(payload.nioBuffer());
+            if (telemetry != null) {
+                telemetry.forEach((deviceName, postTelemetryMsg) -> onDeviceTelemetry(msgId, deviceName, postTelemetryMsg));
+                return;
+            }
+        }
         JsonElement json = JsonMqttAdaptor.validateJsonPayload(sessionId, payload);
         if (json.isJsonObject()) {
             JsonObject jsonObj = json.getAsJsonObject();
@@ -367,6 +375,26 @@ public class GatewaySessionHandler {
         }
     }
 
+    private void onDeviceTelemetry(int msgId, String deviceName, TransportProtos.PostTelemetryMsg postTelemetryMsg) {
+        Futures.addCallback(checkDeviceConnected(deviceName),
+                new FutureCallback<>() {
+                    @Override
+                    public void onSuccess(@Nullable GatewayDeviceSessionCtx deviceCtx) {
+                        try {
+                            processPostTelemetryMsg(deviceCtx, postTelemetryMsg, deviceName, msgId);
+                        } catch (Throwable e) {
+                            log.warn("[{}][{}] Failed to process telemetry: {}", gateway.getDeviceId(), deviceName, postTelemetryMsg, e);
+                            channel.close();
+                        }
+                    }
+
+                    @Override
+                    public void onFailure(Throwable t) {
+                        log.debug("[{}] Failed to process device telemetry command: {}", sessionId, deviceName, t);
+                    }
+                }, context.getExecutor());
+    }
+
     private void onDeviceTelemetryProto(int msgId, ByteBuf payload) throws AdaptorException {
         try {
             TransportApiProtos.GatewayTelemetryMsg telemetryMsgProto = TransportApiProtos.GatewayTelemetryMsg.parseFrom(getBytes(payload));
@@ -484,6 +512,13 @@ public class GatewaySessionHandler {
     }
 
     private void onDeviceAttributesJson(int msgId, ByteBuf payload) throws AdaptorException {
+        if (JsonStreamingConverter.isEnabled()) {
+            Map<String, TransportProtos.PostAttributeMsg> attributes = JsonStreamingConverter.convertToGatewayAttributesProto(payload.nioBuffer());
+            if (attributes != null) {
+                attributes.forEach((deviceName, postAttributeMsg) -> onDeviceAttributes(msgId, deviceName, postAttributeMsg));
+                return;
+            }
+        }
         JsonElement json = JsonMqttAdaptor.validateJsonPayload(sessionId, payload);
         if (json.isJsonObject()) {
             JsonObject jsonObj = json.getAsJsonObject();
@@ -511,6 +546,21 @@ public class GatewaySessionHandler {
         }
     }
 
+    private void onDeviceAttributes(int msgId, String deviceName, TransportProtos.PostAttributeMsg postAttributeMsg) {
+        Futures.addCallback(checkDeviceConnected(deviceName),
+                new FutureCallback<GatewayDeviceSessionCtx>() {
+                    @Override
+                    public void onSuccess(@Nullable GatewayDeviceSessionCtx deviceCtx) {
+                        processPostAttributesMsg(deviceCtx, postAttributeMsg, deviceName, msgId);
+                    }
+
+                    @Override
+                    public void onFailure(Throwable t) {
+                        log.debug("[{}] Failed to process device attributes command: {}", sessionId, deviceName, t);
+                    }
+                }, context.getExecutor());
+    }
+
     private void onDeviceAttributesProto(int msgId, ByteBuf payload) throws AdaptorException {
         try {
             TransportApiProtos.GatewayAttributesMsg attributesMsgProto = TransportApiProtos.GatewayAttributesMsg.parseFrom(getBytes(payload));
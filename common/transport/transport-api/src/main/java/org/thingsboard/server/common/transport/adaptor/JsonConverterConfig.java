@@ -34,4 +34,10 @@ public class JsonConverterConfig {
         JsonConverter.setMaxStringValueLength(maxStringValueLength);
         log.info("JSON max string value length = {}", maxStringValueLength);
     }
+
+    @Value("${transport.json.streaming_enabled:false}")
+    public void setStreamingEnabled(boolean streamingEnabled) {
+        JsonStreamingConverter.setEnabled(streamingEnabled);
+        log.info("JSON streaming conversion enabled = {}", streamingEnabled);
+    }
 }
@@ -0,0 +1,436 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.common.transport.adaptor;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.StreamReadFeature;
+import com.google.gson.JsonSyntaxException;
+import lombok.extern.slf4j.Slf4j;
+import org.thingsboard.server.gen.transport.TransportProtos.KeyValueProto;
+import org.thingsboard.server.gen.transport.TransportProtos.KeyValueType;
+import org.thingsboard.server.gen.transport.TransportProtos.PostAttributeMsg;
+import org.thingsboard.server.gen.transport.TransportProtos.PostTelemetryMsg;
+import org.thingsboard.server.gen.transport.TransportProtos.TsKvListProto;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Converts telemetry and attributes JSON into transport protos token by token, reading the payload bytes directly
+ * into the proto builders without an intermediate {@link com.google.gson.JsonElement} tree.
+ * <p>
+ * The result is the same as the one of {@link JsonConverter}: both use the same value conversion rules,
+ * and payloads the strict streaming parser does not handle the same way as the lenient Gson parser
+ * (non-standard JSON, duplicate keys, a non-integer "ts" next to "values", invalid values, etc.)
+ * are passed to {@link JsonConverter}, which produces the result or the error for them.
+ */
+@Slf4j
+public class JsonStreamingConverter {
+
+    private static final JsonFactory JSON_FACTORY = JsonFactory.builder()
+            .enable(StreamReadFeature.STRICT_DUPLICATE_DETECTION)
+            .build();
+    private static final String TS = "ts";
+    private static final String VALUES = "values";
+
+    private static boolean enabled = false;
+
+    public static PostTelemetryMsg convertToTelemetryProto(ByteBuffer payload) throws JsonSyntaxException {
+        return convertToTelemetryProto(Payload.of(payload), System.currentTimeMillis());
+    }
+
+    public static PostTelemetryMsg convertToTelemetryProto(ByteBuffer payload, long ts) throws JsonSyntaxException {
+        return convertToTelemetryProto(Payload.of(payload), ts);
+    }
+
+    public static PostTelemetryMsg convertToTelemetryProto(String payload) throws JsonSyntaxException {
+        return convertToTelemetryProto(Payload.of(payload), System.currentTimeMillis());
+    }
+
+    public static PostAttributeMsg convertToAttributesProto(ByteBuffer payload) throws JsonSyntaxException {
+        return convertToAttributesProto(Payload.of(payload));
+    }
+
+    public static PostAttributeMsg convertToAttributesProto(String payload) throws JsonSyntaxException {
+        return convertToAttributesProto(Payload.of(payload));
+    }
+
+    /**
+     * Converts the gateway telemetry payload: {"Device A": [{"ts": 1, "values": {...}}, ...], "Device B": [...]}.
+     *
+     * @return telemetry messages by device name in the order of the payload,
+     * or null if the payload has to be processed by the {@link JsonConverter}
+     */
+    public static Map<String, PostTelemetryMsg> convertToGatewayTelemetryProto(ByteBuffer payload) {
+        try (JsonParser parser = Payload.of(payload).createParser()) {
+            if (parser != null && parser.nextToken() == JsonToken.START_OBJECT) {
+                Map<String, PostTelemetryMsg> result = new LinkedHashMap<>();
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String deviceName = parser.getCurrentName();
+                    if (parser.nextToken() != JsonToken.START_ARRAY) {
+                        return null;
+                    }
+                    PostTelemetryMsg.Builder builder = PostTelemetryMsg.newBuilder();
+                    parseTelemetryArray(parser, builder, System.currentTimeMillis());
+                    result.put(deviceName, builder.build());
+                }
+                if (parser.nextToken() == null) {
+                    return result;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            log.trace("Failed to convert gateway telemetry payload", e);
+        }
+        return null;
+    }
+
+    /**
+     * Converts the gateway attributes payload: {"Device A": {"attribute1": "value1", ...}, "Device B": {...}}.
+     *
+     * @return attribute messages by device name in the order of the payload,
+     * or null if the payload has to be processed by the {@link JsonConverter}
+     */
+    public static Map<String, PostAttributeMsg> convertToGatewayAttributesProto(ByteBuffer payload) {
+        try (JsonParser parser = Payload.of(payload).createParser()) {
+            if (parser != null && parser.nextToken() == JsonToken.START_OBJECT) {
+                Map<String, PostAttributeMsg> result = new LinkedHashMap<>();
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String deviceName = parser.getCurrentName();
+                    if (parser.nextToken() != JsonToken.START_OBJECT) {
+                        return null;
+                    }
+                    result.put(deviceName, PostAttributeMsg.newBuilder().addAllKv(parseValues(parser, new ArrayList<>())).build());
+                }
+                if (parser.nextToken() == null) {
+                    return result;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            log.trace("Failed to convert gateway attributes payload", e);
+        }
+        return null;
+    }
+
+    private static PostTelemetryMsg convertToTelemetryProto(Payload payload, long ts) {
+        try (JsonParser parser = payload.createParser()) {
+            if (parser != null) {
+                PostTelemetryMsg.Builder builder = PostTelemetryMsg.newBuilder();
+                JsonToken token = parser.nextToken();
+                if (token == JsonToken.START_OBJECT) {
+                    parseTelemetryObject(parser, builder, ts);
+                } else if (token == JsonToken.START_ARRAY) {
+                    parseTelemetryArray(parser, builder, ts);
+                } else {
+                    throw UnsupportedPayloadException.INSTANCE;
+                }
+                if (parser.nextToken() == null) {
+                    return builder.build();
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            log.trace("Failed to stream telemetry payload, falling back to the tree based conversion", e);
+        }
+        return JsonConverter.convertToTelemetryProto(JsonConverter.parse(payload.toString()), ts);
+    }
+
+    private static PostAttributeMsg convertToAttributesProto(Payload payload) {
+        try (JsonParser parser = payload.createParser()) {
+            if (parser != null && parser.nextToken() == JsonToken.START_OBJECT) {
+                List<KeyValueProto> kvs = parseValues(parser, new ArrayList<>());
+                if (parser.nextToken() == null) {
+                    return PostAttributeMsg.newBuilder().addAllKv(kvs).build();
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            log.trace("Failed to stream attributes payload, falling back to the tree based conversion", e);
+        }
+        return JsonConverter.convertToAttributesProto(JsonConverter.parse(payload.toString()));
+    }
+
+    private static void parseTelemetryArray(JsonParser parser, PostTelemetryMsg.Builder builder, long systemTs) throws IOException {
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (token != JsonToken.START_OBJECT) {
+                throw UnsupportedPayloadException.INSTANCE;
+            }
+            parseTelemetryObject(parser, builder, systemTs);
+        }
+    }
+
+    /**
+     * Same as {@link JsonConverter}: an object with both "ts" and "values" is a timestamped entry,
+     * otherwise all the fields, including "ts" and "values", are the values reported at the system time.
+     * Values are parsed into the timestamped entry only when "ts" comes first, which is the documented layout.
+     */
+    private static void parseTelemetryObject(JsonParser parser, PostTelemetryMsg.Builder builder, long systemTs) throws IOException {
+        List<KeyValueProto> kvs = new ArrayList<>();
+        List<KeyValueProto> values = null;
+        boolean hasTs = false;
+        boolean hasValues = false;
+        long ts = 0L;
+        boolean tsParsed = false;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String key = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            if (values != null) {
+                parser.skipChildren();
+            } else if (hasTs && VALUES.equals(key)) {
+                if (token != JsonToken.START_OBJECT) {
+                    throw UnsupportedPayloadException.INSTANCE;
+                }
+                values = parseValues(parser, new ArrayList<>());
+            } else {
+                if (TS.equals(key)) {
+                    hasTs = true;
+                    if (token == JsonToken.VALUE_NUMBER_INT) {
+                        ts = parser.getLongValue();
+                        tsParsed = true;
+                    }
+                } else if (VALUES.equals(key)) {
+                    hasValues = true;
+                }
+                addValue(parser, token, key, kvs);
+            }
+        }
+        TsKvListProto.Builder tsKvList = TsKvListProto.newBuilder();
+        if (values != null) {
+            if (!tsParsed) {
+                throw UnsupportedPayloadException.INSTANCE;
+            }
+            tsKvList.setTs(ts).addAllKv(values);
+        } else {
+            if (hasTs && hasValues) {
+                throw UnsupportedPayloadException.INSTANCE;
+            }
+            tsKvList.setTs(systemTs).addAllKv(kvs);
+        }
+        builder.addTsKvList(tsKvList);
+    }
+
+    private static List<KeyValueProto> parseValues(JsonParser parser, List<KeyValueProto> result) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String key = parser.getCurrentName();
+            addValue(parser, parser.nextToken(), key, result);
+        }
+        return result;
+    }
+
+    private static void addValue(JsonParser parser, JsonToken token, String key, List<KeyValueProto> result) throws IOException {
+        switch (token) {
+            case VALUE_STRING:
+                result.add(JsonConverter.buildStringKeyValueProto(key, parser.getText()));
+                break;
+            case VALUE_NUMBER_INT:
+            case VALUE_NUMBER_FLOAT:
+                result.add(JsonConverter.buildNumericKeyValueProto(parser.getText(), key));
+                break;
+            case VALUE_TRUE:
+            case VALUE_FALSE:
+                result.add(KeyValueProto.newBuilder().setKey(key).setType(KeyValueType.BOOLEAN_V)
+                        .setBoolV(token == JsonToken.VALUE_TRUE).build());
+                break;
+            case VALUE_NULL:
+                break;
+            case START_OBJECT:
+            case START_ARRAY:
+                result.add(KeyValueProto.newBuilder().setKey(key).setType(KeyValueType.JSON_V)
+                        .setJsonV(writeStructure(parser)).build());
+                break;
+            default:
+                throw UnsupportedPayloadException.INSTANCE;
+        }
+    }
+
+    /**
+     * Writes the current object or array the same way as {@link com.google.gson.JsonElement#toString()} does:
+     * compact, with the numbers as they are in the payload.
+     */
+    private static String writeStructure(JsonParser parser) throws IOException {
+        StringBuilder out = new StringBuilder();
+        JsonToken token = parser.currentToken();
+        int depth = 0;
+        do {
+            switch (token) {
+                case START_OBJECT:
+                    appendSeparator(out).append('{');
+                    depth++;
+                    break;
+                case START_ARRAY:
+                    appendSeparator(out).append('[');
+                    depth++;
+                    break;
+                case END_OBJECT:
+                    out.append('}');
+                    depth--;
+                    break;
+                case END_ARRAY:
+                    out.append(']');
+                    depth--;
+                    break;
+                case FIELD_NAME:
+                    appendString(appendSeparator(out), parser.getCurrentName()).append(':');
+                    break;
+                case VALUE_STRING:
+                    appendString(appendSeparator(out), parser.getText());
+                    break;
+                case VALUE_NUMBER_INT:
+                case VALUE_NUMBER_FLOAT:
+                    appendSeparator(out).append(parser.getText());
+                    break;
+                case VALUE_TRUE:
+                    appendSeparator(out).append("true");
+                    break;
+                case VALUE_FALSE:
+                    appendSeparator(out).append("false");
+                    break;
+                case VALUE_NULL:
+                    appendSeparator(out).append("null");
+                    break;
+                default:
+                    throw UnsupportedPayloadException.INSTANCE;
+            }
+        } while (depth > 0 && (token = parser.nextToken()) != null);
+        return out.toString();
+    }
+
+    private static StringBuilder appendSeparator(StringBuilder out) {
+        if (out.length() > 0) {
+            char last = out.charAt(out.length() - 1);
+            if (last != '{' && last != '[' && last != ':') {
+                out.append(',');
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Escapes the string the way the Gson JsonWriter does when it is not HTML safe.
+     */
+    private static StringBuilder appendString(StringBuilder out, String value) {
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                case '\b':
+                    out.append("\\b");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\f':
+                    out.append("\\f");
+                    break;
+                case '\u2028':
+                    out.append("\\u2028");
+                    break;
+                case '\u2029':
+                    out.append("\\u2029");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        return out.append('"');
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        JsonStreamingConverter.enabled = enabled;
+    }
+
+    private static final class Payload {
+
+        private final byte[] data;
+        private final int offset;
+        private final int length;
+        private final String text;
+
+        private Payload(byte[] data, int offset, int length, String text) {
+            this.data = data;
+            this.offset = offset;
+            this.length = length;
+            this.text = text;
+        }
+
+        static Payload of(ByteBuffer buffer) {
+            if (buffer.hasArray()) {
+                return new Payload(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining(), null);
+            } else {
+                byte[] data = new byte[buffer.remaining()];
+                buffer.duplicate().get(data);
+                return new Payload(data, 0, data.length, null);
+            }
+        }
+
+        static Payload of(String text) {
+            return new Payload(null, 0, 0, text);
+        }
+
+        /**
+         * @return the parser or null if the payload may be read differently by the streaming parser:
+         * it detects UTF-16/32 and skips the byte order mark, while the payload is decoded as UTF-8 otherwise.
+         */
+        JsonParser createParser() throws IOException {
+            if (text != null) {
+                return !text.isEmpty() && text.charAt(0) != '\uFEFF' ? JSON_FACTORY.createParser(text) : null;
+            }
+            if (length < 2 || data[offset] == 0 || data[offset + 1] == 0 || (data[offset] & 0xFF) >= 0xEF) {
+                return null;
+            }
+            return JSON_FACTORY.createParser(data, offset, length);
+        }
+
+        @Override
+        public String toString() {
+            return text != null ? text : new String(data, offset, length, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static final class UnsupportedPayloadException extends RuntimeException {
+
+        private static final UnsupportedPayloadException INSTANCE = new UnsupportedPayloadException();
+
+        private UnsupportedPayloadException() {
+            super("Payload is not supported by the streaming converter", null, false, false);
+        }
+    }
+}
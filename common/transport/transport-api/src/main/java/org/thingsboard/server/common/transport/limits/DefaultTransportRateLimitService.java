@@ -16,8 +16,10 @@
 package org.thingsboard.server.common.transport.limits;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
+import org.thingsboard.server.cache.limits.RateLimitLeaseStore;
 import org.thingsboard.server.common.data.EntityType;
 import org.thingsboard.server.common.data.TenantProfile;
 import org.thingsboard.server.common.data.id.DeviceId;
@@ -25,7 +27,6 @@ import org.thingsboard.server.common.data.id.EntityId;
 import org.thingsboard.server.common.data.id.TenantId;
 import org.thingsboard.server.common.data.tenant.profile.DefaultTenantProfileConfiguration;
 import org.thingsboard.server.common.data.tenant.profile.TenantProfileData;
-import org.thingsboard.server.common.msg.tools.TbRateLimits;
 import org.thingsboard.server.common.transport.TransportTenantProfileCache;
 import org.thingsboard.server.common.transport.profile.TenantProfileUpdateResult;
 import org.thingsboard.server.queue.util.TbTransportComponent;
@@ -49,9 +50,16 @@ public class DefaultTransportRateLimitService implements TransportRateLimitServi
     private final ConcurrentMap<DeviceId, EntityTransportRateLimits> perDeviceLimits = new ConcurrentHashMap<>();
 
     private final TransportTenantProfileCache tenantProfileCache;
+    private final RateLimitLeaseStore leaseStore;
 
-    public DefaultTransportRateLimitService(TransportTenantProfileCache tenantProfileCache) {
+    @Value("${transport.rate_limits.distributed:false}")
+    private boolean distributed;
+    @Value("${transport.rate_limits.lease_percent:10}")
+    private int leasePercent;
+
+    public DefaultTransportRateLimitService(TransportTenantProfileCache tenantProfileCache, RateLimitLeaseStore leaseStore) {
         this.tenantProfileCache = tenantProfileCache;
+        this.leaseStore = leaseStore;
     }
 
     @Override
@@ -79,23 +87,20 @@ public class DefaultTransportRateLimitService implements TransportRateLimitServi
     @Override
     public void update(TenantProfileUpdateResult update) {
         log.info("Received tenant profile update: {}", update.getProfile());
-        EntityTransportRateLimits tenantRateLimitPrototype = createRateLimits(update.getProfile(), true);
-        EntityTransportRateLimits deviceRateLimitPrototype = createRateLimits(update.getProfile(), false);
         for (TenantId tenantId : update.getAffectedTenants()) {
-            mergeLimits(tenantId, tenantRateLimitPrototype, perTenantLimits::get, perTenantLimits::put);
+            mergeLimits(tenantId, createRateLimits(update.getProfile(), tenantId), perTenantLimits::get, perTenantLimits::put);
             tenantDevices.get(tenantId).forEach(deviceId -> {
-                mergeLimits(deviceId, deviceRateLimitPrototype, perDeviceLimits::get, perDeviceLimits::put);
+                mergeLimits(deviceId, createRateLimits(update.getProfile(), null), perDeviceLimits::get, perDeviceLimits::put);
             });
         }
     }
 
     @Override
     public void update(TenantId tenantId) {
-        EntityTransportRateLimits tenantRateLimitPrototype = createRateLimits(tenantProfileCache.get(tenantId), true);
-        EntityTransportRateLimits deviceRateLimitPrototype = createRateLimits(tenantProfileCache.get(tenantId), false);
-        mergeLimits(tenantId, tenantRateLimitPrototype, perTenantLimits::get, perTenantLimits::put);
+        TenantProfile tenantProfile = tenantProfileCache.get(tenantId);
+        mergeLimits(tenantId, createRateLimits(tenantProfile, tenantId), perTenantLimits::get, perTenantLimits::put);
         tenantDevices.get(tenantId).forEach(deviceId -> {
-            mergeLimits(deviceId, deviceRateLimitPrototype, perDeviceLimits::get, perDeviceLimits::put);
+            mergeLimits(deviceId, createRateLimits(tenantProfile, null), perDeviceLimits::get, perDeviceLimits::put);
         });
     }
 
@@ -146,35 +151,49 @@ public class DefaultTransportRateLimitService implements TransportRateLimitServi
         boolean telemetryDataPointUpdate = !oldRateLimits.getTelemetryDataPointsRateLimit().getConfiguration().equals(newRateLimits.getTelemetryDataPointsRateLimit().getConfiguration());
         if (regularUpdate || telemetryMsgRateUpdate || telemetryDataPointUpdate) {
             return new EntityTransportRateLimits(
-                    regularUpdate ? newLimit(newRateLimits.getRegularMsgRateLimit().getConfiguration()) : oldRateLimits.getRegularMsgRateLimit(),
-                    telemetryMsgRateUpdate ? newLimit(newRateLimits.getTelemetryMsgRateLimit().getConfiguration()) : oldRateLimits.getTelemetryMsgRateLimit(),
-                    telemetryDataPointUpdate ? newLimit(newRateLimits.getTelemetryDataPointsRateLimit().getConfiguration()) : oldRateLimits.getTelemetryDataPointsRateLimit());
+                    regularUpdate ? newRateLimits.getRegularMsgRateLimit() : oldRateLimits.getRegularMsgRateLimit(),
+                    telemetryMsgRateUpdate ? newRateLimits.getTelemetryMsgRateLimit() : oldRateLimits.getTelemetryMsgRateLimit(),
+                    telemetryDataPointUpdate ? newRateLimits.getTelemetryDataPointsRateLimit() : oldRateLimits.getTelemetryDataPointsRateLimit());
         } else {
             return null;
         }
     }
 
-    private EntityTransportRateLimits createRateLimits(TenantProfile tenantProfile, boolean tenant) {
+    /**
+     * Creates the limits of the tenant if the tenant id is set, or of the device otherwise.
+     */
+    private EntityTransportRateLimits createRateLimits(TenantProfile tenantProfile, TenantId tenantId) {
         TenantProfileData profileData = tenantProfile.getProfileData();
         DefaultTenantProfileConfiguration profile = (DefaultTenantProfileConfiguration) profileData.getConfiguration();
+        boolean tenant = tenantId != null;
         if (profile == null) {
             return new EntityTransportRateLimits(ALLOW, ALLOW, ALLOW);
         } else {
-            TransportRateLimit regularMsgRateLimit = newLimit(tenant ? profile.getTransportTenantMsgRateLimit() : profile.getTransportDeviceMsgRateLimit());
-            TransportRateLimit telemetryMsgRateLimit = newLimit(tenant ? profile.getTransportTenantTelemetryMsgRateLimit() : profile.getTransportDeviceTelemetryMsgRateLimit());
-            TransportRateLimit telemetryDpRateLimit = newLimit(tenant ? profile.getTransportTenantTelemetryDataPointsRateLimit() : profile.getTransportTenantTelemetryDataPointsRateLimit());
+            TransportRateLimit regularMsgRateLimit = newLimit(tenantId, "regular", tenant ? profile.getTransportTenantMsgRateLimit() : profile.getTransportDeviceMsgRateLimit());
+            TransportRateLimit telemetryMsgRateLimit = newLimit(tenantId, "telemetry", tenant ? profile.getTransportTenantTelemetryMsgRateLimit() : profile.getTransportDeviceTelemetryMsgRateLimit());
+            TransportRateLimit telemetryDpRateLimit = newLimit(tenantId, "dataPoints", tenant ? profile.getTransportTenantTelemetryDataPointsRateLimit() : profile.getTransportTenantTelemetryDataPointsRateLimit());
             return new EntityTransportRateLimits(regularMsgRateLimit, telemetryMsgRateLimit, telemetryDpRateLimit);
         }
     }
 
-    private static TransportRateLimit newLimit(String config) {
-        return StringUtils.isEmpty(config) ? ALLOW : new SimpleTransportRateLimit(config);
+    /**
+     * The tenant limits are shared between the transport nodes in the distributed mode. The device limits stay local,
+     * since the device is connected to one node at a time.
+     */
+    private TransportRateLimit newLimit(TenantId tenantId, String name, String config) {
+        if (StringUtils.isEmpty(config)) {
+            return ALLOW;
+        } else if (distributed && tenantId != null) {
+            return new LeasedTransportRateLimit(leaseStore, "transport:" + tenantId.getId() + ":" + name, config, leasePercent);
+        } else {
+            return new SimpleTransportRateLimit(config);
+        }
     }
 
     private EntityTransportRateLimits getTenantRateLimits(TenantId tenantId) {
         EntityTransportRateLimits limits = perTenantLimits.get(tenantId);
         if (limits == null) {
-            limits = createRateLimits(tenantProfileCache.get(tenantId), true);
+            limits = createRateLimits(tenantProfileCache.get(tenantId), tenantId);
             perTenantLimits.put(tenantId, limits);
         }
         return limits;
@@ -183,7 +202,7 @@ public class DefaultTransportRateLimitService implements TransportRateLimitServi
     private EntityTransportRateLimits getDeviceRateLimits(TenantId tenantId, DeviceId deviceId) {
         EntityTransportRateLimits limits = perDeviceLimits.get(deviceId);
         if (limits == null) {
-            limits = createRateLimits(tenantProfileCache.get(tenantId), false);
+            limits = createRateLimits(tenantProfileCache.get(tenantId), null);
             perDeviceLimits.put(deviceId, limits);
             tenantDevices.computeIfAbsent(tenantId, id -> ConcurrentHashMap.newKeySet()).add(deviceId);
         }
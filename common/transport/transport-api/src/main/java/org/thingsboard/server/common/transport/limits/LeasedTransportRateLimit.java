@@ -0,0 +1,43 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.common.transport.limits;
+
+import org.thingsboard.server.cache.limits.LeasedRateLimits;
+import org.thingsboard.server.cache.limits.RateLimitLeaseStore;
+
+public class LeasedTransportRateLimit implements TransportRateLimit {
+
+    private final LeasedRateLimits rateLimit;
+
+    public LeasedTransportRateLimit(RateLimitLeaseStore store, String key, String configuration, int leasePercent) {
+        this.rateLimit = new LeasedRateLimits(store, key, configuration, leasePercent);
+    }
+
+    @Override
+    public String getConfiguration() {
+        return rateLimit.getConfiguration();
+    }
+
+    @Override
+    public boolean tryConsume() {
+        return rateLimit.tryConsume();
+    }
+
+    @Override
+    public boolean tryConsume(long number) {
+        return number <= 0 || rateLimit.tryConsume(number);
+    }
+}
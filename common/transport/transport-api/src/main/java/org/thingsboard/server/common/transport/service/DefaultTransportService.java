@@ -46,9 +46,11 @@ import org.thingsboard.server.common.data.id.EntityId;
 import org.thingsboard.server.common.data.id.RuleChainId;
 import org.thingsboard.server.common.data.id.TenantId;
 import org.thingsboard.server.common.data.id.TenantProfileId;
+import org.thingsboard.server.common.data.kv.DataType;
 import org.thingsboard.server.common.data.rpc.RpcStatus;
 import org.thingsboard.server.common.msg.TbMsg;
 import org.thingsboard.server.common.msg.TbMsgMetaData;
+import org.thingsboard.server.common.msg.gen.MsgProtos;
 import org.thingsboard.server.common.msg.queue.ServiceQueue;
 import org.thingsboard.server.common.msg.queue.ServiceType;
 import org.thingsboard.server.common.msg.queue.TopicPartitionInfo;
@@ -141,6 +143,8 @@ public class DefaultTransportService implements TransportService {
     private int notificationsPollDuration;
     @Value("${transport.stats.enabled:false}")
     private boolean statsEnabled;
+    @Value("${transport.binary_payload.enabled:false}")
+    private boolean binaryPayloadEnabled;
 
     private final Map<String, Number> statsMap = new LinkedHashMap<>();
 
@@ -521,8 +525,12 @@ public class DefaultTransportService implements TransportService {
                 metaData.putValue("deviceName", sessionInfo.getDeviceName());
                 metaData.putValue("deviceType", sessionInfo.getDeviceType());
                 metaData.putValue("ts", tsKv.getTs() + "");
-                JsonObject json = JsonUtils.getJsonObject(tsKv.getKvList());
-                sendToRuleEngine(tenantId, deviceId, customerId, sessionInfo, json, metaData, SessionMsgType.POST_TELEMETRY_REQUEST, packCallback);
+                if (binaryPayloadEnabled) {
+                    sendToRuleEngine(tenantId, deviceId, customerId, sessionInfo, null, toKvData(tsKv.getKvList()), metaData, SessionMsgType.POST_TELEMETRY_REQUEST, packCallback);
+                } else {
+                    JsonObject json = JsonUtils.getJsonObject(tsKv.getKvList());
+                    sendToRuleEngine(tenantId, deviceId, customerId, sessionInfo, json, metaData, SessionMsgType.POST_TELEMETRY_REQUEST, packCallback);
+                }
             }
         }
     }
@@ -1054,6 +1062,11 @@ public class DefaultTransportService implements TransportService {
 
     private void sendToRuleEngine(TenantId tenantId, DeviceId deviceId, CustomerId customerId, TransportProtos.SessionInfoProto sessionInfo, JsonObject json,
                                   TbMsgMetaData metaData, SessionMsgType sessionMsgType, TbQueueCallback callback) {
+        sendToRuleEngine(tenantId, deviceId, customerId, sessionInfo, gson.toJson(json), null, metaData, sessionMsgType, callback);
+    }
+
+    private void sendToRuleEngine(TenantId tenantId, DeviceId deviceId, CustomerId customerId, TransportProtos.SessionInfoProto sessionInfo,
+                                  String data, MsgProtos.TbMsgKvDataProto kvData, TbMsgMetaData metaData, SessionMsgType sessionMsgType, TbQueueCallback callback) {
         DeviceProfileId deviceProfileId = new DeviceProfileId(new UUID(sessionInfo.getDeviceProfileIdMSB(), sessionInfo.getDeviceProfileIdLSB()));
         DeviceProfile deviceProfile = deviceProfileCache.get(deviceProfileId);
         RuleChainId ruleChainId;
@@ -1069,10 +1082,40 @@ public class DefaultTransportService implements TransportService {
             queueName = defaultQueueName != null ? defaultQueueName : ServiceQueue.MAIN;
         }
 
-        TbMsg tbMsg = TbMsg.newMsg(queueName, sessionMsgType.name(), deviceId, customerId, metaData, gson.toJson(json), ruleChainId, null);
+        TbMsg tbMsg = kvData != null ?
+                TbMsg.newMsg(queueName, sessionMsgType.name(), deviceId, customerId, metaData, kvData, ruleChainId, null) :
+                TbMsg.newMsg(queueName, sessionMsgType.name(), deviceId, customerId, metaData, data, ruleChainId, null);
         sendToRuleEngine(tenantId, tbMsg, callback);
     }
 
+    private static MsgProtos.TbMsgKvDataProto toKvData(List<TransportProtos.KeyValueProto> kvList) {
+        MsgProtos.TbMsgKvDataProto.Builder builder = MsgProtos.TbMsgKvDataProto.newBuilder();
+        for (TransportProtos.KeyValueProto kv : kvList) {
+            MsgProtos.TbMsgKvProto.Builder kvBuilder = MsgProtos.TbMsgKvProto.newBuilder().setKey(kv.getKey());
+            switch (kv.getType()) {
+                case BOOLEAN_V:
+                    kvBuilder.setType(DataType.BOOLEAN.ordinal()).setBoolV(kv.getBoolV());
+                    break;
+                case LONG_V:
+                    kvBuilder.setType(DataType.LONG.ordinal()).setLongV(kv.getLongV());
+                    break;
+                case DOUBLE_V:
+                    kvBuilder.setType(DataType.DOUBLE.ordinal()).setDoubleV(kv.getDoubleV());
+                    break;
+                case STRING_V:
+                    kvBuilder.setType(DataType.STRING.ordinal()).setStringV(kv.getStringV());
+                    break;
+                case JSON_V:
+                    kvBuilder.setType(DataType.JSON.ordinal()).setJsonV(kv.getJsonV());
+                    break;
+                default:
+                    continue;
+            }
+            builder.addKv(kvBuilder);
+        }
+        return builder.build();
+    }
+
     private class TransportTbQueueCallback implements TbQueueCallback {
         private final TransportServiceCallback<Void> callback;
 
@@ -0,0 +1,162 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+import com.google.gson.JsonParser;
+import com.google.gson.JsonSyntaxException;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.thingsboard.server.common.transport.adaptor.JsonConverter;
+import org.thingsboard.server.common.transport.adaptor.JsonStreamingConverter;
+import org.thingsboard.server.gen.transport.TransportProtos;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.function.Supplier;
+
+public class JsonStreamingConverterTest {
+
+    private static final JsonParser JSON_PARSER = new JsonParser();
+
+    private static final String[] TELEMETRY = {
+            "{\"temperature\":25.5,\"humidity\":60,\"active\":true,\"mode\":\"auto\"}",
+            "{\"ts\":1634712287000,\"values\":{\"temperature\":25.5,\"humidity\":60}}",
+            "[{\"ts\":1634712287000,\"values\":{\"a\":1}},{\"ts\":1634712288000,\"values\":{\"a\":2}},{\"b\":3}]",
+            "{\"values\":{\"a\":1},\"ts\":1634712287000}",
+            "{\"ts\":1634712287000,\"b\":\"x\"}",
+            "{\"values\":{\"a\":1},\"b\":false}",
+            "{\"ts\":1634712287000,\"values\":{\"a\":1},\"other\":{\"x\":[1,2]}}",
+            "{\"ts\":\"1634712287000\",\"values\":{\"a\":1}}",
+            "{\"ts\":1634712287000.5,\"values\":{\"a\":1}}",
+            "{\"json\":{\"a\":[1,2.50,1E+2,\"s\\\"q\\u2028\\t\"],\"b\":null,\"c\":{}},\"array\":[]}",
+            "{\"nullValue\":null,\"str\":\"42\",\"strDouble\":\"42.10\",\"notNumber\":\"0x1F\"}",
+            "{\"big\":99701010061400066001,\"exp\":1E+1,\"frac\":101E-1,\"zero\":42.0,\"neg\":-0,\"scale\":1.12345678901234567890}",
+            "{\"a\":1,\"a\":2}",
+            "{'a':1}",
+            "{a:1}",
+            "{\"a\":NaN}",
+            "{\"a\":1} {\"b\":2}",
+            "  {\"a\":1}  ",
+            "\uFEFF{\"a\":1}",
+    };
+
+    @Before
+    public void before() {
+        JsonConverter.setTypeCastEnabled(true);
+        JsonConverter.setMaxStringValueLength(0);
+    }
+
+    @After
+    public void after() {
+        JsonConverter.setTypeCastEnabled(true);
+        JsonConverter.setMaxStringValueLength(0);
+    }
+
+    @Test
+    public void testTelemetryIsSameAsJsonConverter() {
+        for (String json : TELEMETRY) {
+            assertSameTelemetry(json);
+        }
+        JsonConverter.setTypeCastEnabled(false);
+        for (String json : TELEMETRY) {
+            assertSameTelemetry(json);
+        }
+    }
+
+    @Test
+    public void testAttributesAreSameAsJsonConverter() {
+        for (String json : TELEMETRY) {
+            assertSameAttributes(json);
+        }
+    }
+
+    @Test
+    public void testSameErrors() {
+        assertSameTelemetry("[1,2]");
+        assertSameTelemetry("\"value\"");
+        assertSameTelemetry("{\"ts\":1634712287000,\"values\":[1]}");
+        assertSameTelemetry("{\"a\":1");
+        assertSameTelemetry("");
+        JsonConverter.setTypeCastEnabled(false);
+        assertSameTelemetry("{\"big\":99701010061400066001}");
+        JsonConverter.setMaxStringValueLength(3);
+        assertSameTelemetry("{\"s\":\"long string\"}");
+        assertSameAttributes("{\"s\":\"long string\"}");
+    }
+
+    @Test
+    public void testDirectBufferAndOffset() {
+        byte[] json = "xx{\"ts\":1,\"values\":{\"a\":1}}".getBytes(StandardCharsets.UTF_8);
+        ByteBuffer heap = ByteBuffer.wrap(json);
+        heap.position(2);
+        ByteBuffer direct = ByteBuffer.allocateDirect(json.length - 2);
+        direct.put(json, 2, json.length - 2).flip();
+        TransportProtos.PostTelemetryMsg expected = JsonConverter.convertToTelemetryProto(JSON_PARSER.parse("{\"ts\":1,\"values\":{\"a\":1}}"));
+        Assert.assertEquals(expected, JsonStreamingConverter.convertToTelemetryProto(heap.slice()));
+        Assert.assertEquals(expected, JsonStreamingConverter.convertToTelemetryProto(direct));
+        Assert.assertEquals(2, heap.position());
+    }
+
+    @Test
+    public void testGatewayTelemetry() {
+        String json = "{\"Device A\":[{\"ts\":1,\"values\":{\"a\":1}},{\"ts\":2,\"values\":{\"a\":2}}],\"Device B\":[{\"ts\":3,\"values\":{\"b\":\"x\"}}]}";
+        Map<String, TransportProtos.PostTelemetryMsg> result = JsonStreamingConverter.convertToGatewayTelemetryProto(toBuffer(json));
+        Assert.assertNotNull(result);
+        Assert.assertArrayEquals(new String[]{"Device A", "Device B"}, result.keySet().toArray());
+        var tree = JSON_PARSER.parse(json).getAsJsonObject();
+        Assert.assertEquals(JsonConverter.convertToTelemetryProto(tree.get("Device A")), result.get("Device A"));
+        Assert.assertEquals(JsonConverter.convertToTelemetryProto(tree.get("Device B")), result.get("Device B"));
+
+        Assert.assertNull(JsonStreamingConverter.convertToGatewayTelemetryProto(toBuffer("{\"Device A\":{\"a\":1}}")));
+        Assert.assertNull(JsonStreamingConverter.convertToGatewayTelemetryProto(toBuffer("{\"Device A\":[{\"a\":1}],\"Device A\":[]}")));
+    }
+
+    @Test
+    public void testGatewayAttributes() {
+        String json = "{\"Device A\":{\"a\":1,\"b\":{\"c\":true}},\"Device B\":{}}";
+        Map<String, TransportProtos.PostAttributeMsg> result = JsonStreamingConverter.convertToGatewayAttributesProto(toBuffer(json));
+        Assert.assertNotNull(result);
+        var tree = JSON_PARSER.parse(json).getAsJsonObject();
+        Assert.assertEquals(JsonConverter.convertToAttributesProto(tree.get("Device A")), result.get("Device A"));
+        Assert.assertEquals(JsonConverter.convertToAttributesProto(tree.get("Device B")), result.get("Device B"));
+
+        Assert.assertNull(JsonStreamingConverter.convertToGatewayAttributesProto(toBuffer("{\"Device A\":[{\"a\":1}]}")));
+    }
+
+    private static void assertSameTelemetry(String json) {
+        Object expected = convert(() -> JsonConverter.convertToTelemetryProto(JSON_PARSER.parse(json), 0L));
+        Assert.assertEquals(json, expected, convert(() -> JsonStreamingConverter.convertToTelemetryProto(toBuffer(json), 0L)));
+    }
+
+    private static void assertSameAttributes(String json) {
+        Object expected = convert(() -> JsonConverter.convertToAttributesProto(JSON_PARSER.parse(json)));
+        Assert.assertEquals(json, expected, convert(() -> JsonStreamingConverter.convertToAttributesProto(toBuffer(json))));
+        Assert.assertEquals(json, expected, convert(() -> JsonStreamingConverter.convertToAttributesProto(json)));
+    }
+
+    private static Object convert(Supplier<Object> converter) {
+        try {
+            return converter.get();
+        } catch (JsonSyntaxException | IllegalStateException | UnsupportedOperationException e) {
+            return e.getClass().getName() + ": " + e.getMessage();
+        }
+    }
+
+    private static ByteBuffer toBuffer(String json) {
+        return ByteBuffer.wrap(json.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,185 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.common.util;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.function.Consumer;
+
+/**
+ * Lock-free multi-producer single-consumer FIFO queue backed by a linked list of fixed size array chunks.
+ * Producers claim a slot with a single CAS on the producer index and a new chunk is allocated once per chunkSize elements,
+ * so the queue does not allocate a node per element like ConcurrentLinkedQueue does.
+ * The queue holds at most capacity elements, {@link #offer(Object)} returns false when it is full.
+ * <p>
+ * Only one thread at a time may call {@link #poll()} and {@link #drain(Consumer, int)}.
+ * Both are relaxed: they return nothing if the next element is claimed by a producer that did not publish it yet.
+ * Such producer is still inside {@link #offer(Object)} and is able to notify the consumer after the offer is completed.
+ */
+public final class MpscChunkedArrayQueue<E> {
+
+    private final int chunkSize;
+    private final long capacity;
+    private final AtomicLong producerIndex = new AtomicLong();
+    private volatile long consumerIndex;
+    private volatile Chunk<E> consumerChunk;
+    private volatile Chunk<E> producerChunk;
+
+    public MpscChunkedArrayQueue(int chunkSize) {
+        this(chunkSize, 0);
+    }
+
+    /**
+     * @param chunkSize number of elements in one array chunk
+     * @param capacity  max number of elements in the queue, zero or negative value means the queue is unbounded
+     */
+    public MpscChunkedArrayQueue(int chunkSize, int capacity) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+        }
+        this.chunkSize = chunkSize;
+        this.capacity = capacity > 0 ? capacity : Long.MAX_VALUE;
+        Chunk<E> chunk = new Chunk<>(0, chunkSize);
+        this.consumerChunk = chunk;
+        this.producerChunk = chunk;
+    }
+
+    public boolean offer(E e) {
+        Objects.requireNonNull(e);
+        long index;
+        do {
+            index = producerIndex.get();
+            if (index - consumerIndex >= capacity) {
+                return false;
+            }
+        } while (!producerIndex.compareAndSet(index, index + 1));
+        Chunk<E> chunk = chunkForIndex(index);
+        chunk.slots.lazySet((int) (index - chunk.base), e);
+        return true;
+    }
+
+    public E poll() {
+        long index = consumerIndex;
+        if (index >= producerIndex.get()) {
+            return null;
+        }
+        Chunk<E> chunk = consumerChunk;
+        int offset = (int) (index - chunk.base);
+        if (offset == chunkSize) {
+            Chunk<E> next = chunk.next;
+            if (next == null) {
+                return null;
+            }
+            consumerChunk = chunk = next;
+            offset = 0;
+        }
+        E e = chunk.slots.get(offset);
+        if (e == null) {
+            return null;
+        }
+        chunk.slots.lazySet(offset, null);
+        consumerIndex = index + 1;
+        return e;
+    }
+
+    /**
+     * Polls up to the limit of elements and passes them to the consumer.
+     * The producer index is read once per call, so the elements published during the drain are left for the next call.
+     *
+     * @return number of drained elements
+     */
+    public int drain(Consumer<E> consumer, int limit) {
+        long index = consumerIndex;
+        long available = Math.min(producerIndex.get() - index, limit);
+        Chunk<E> chunk = consumerChunk;
+        int drained = 0;
+        while (drained < available) {
+            int offset = (int) (index - chunk.base);
+            if (offset == chunkSize) {
+                Chunk<E> next = chunk.next;
+                if (next == null) {
+                    break;
+                }
+                consumerChunk = chunk = next;
+                offset = 0;
+            }
+            E e = chunk.slots.get(offset);
+            if (e == null) {
+                break;
+            }
+            chunk.slots.lazySet(offset, null);
+            consumerIndex = ++index;
+            drained++;
+            consumer.accept(e);
+        }
+        return drained;
+    }
+
+    public int size() {
+        long size = producerIndex.get() - consumerIndex;
+        return (int) Math.max(0, Math.min(size, Integer.MAX_VALUE));
+    }
+
+    public boolean isEmpty() {
+        return consumerIndex >= producerIndex.get();
+    }
+
+    public int capacity() {
+        return (int) Math.min(capacity, Integer.MAX_VALUE);
+    }
+
+    private Chunk<E> chunkForIndex(long index) {
+        Chunk<E> chunk = producerChunk;
+        if (chunk.base > index) {
+            // The slot is not consumed yet, so the consumer chunk is never ahead of it.
+            chunk = consumerChunk;
+        }
+        while (index >= chunk.base + chunkSize) {
+            Chunk<E> next = chunk.next;
+            if (next == null) {
+                Chunk<E> newChunk = new Chunk<>(chunk.base + chunkSize, chunkSize);
+                next = chunk.casNext(newChunk) ? newChunk : chunk.next;
+            }
+            chunk = next;
+        }
+        if (producerChunk.base < chunk.base) {
+            producerChunk = chunk;
+        }
+        return chunk;
+    }
+
+    private static final class Chunk<E> {
+
+        @SuppressWarnings("rawtypes")
+        private static final AtomicReferenceFieldUpdater<Chunk, Chunk> NEXT_UPDATER =
+                AtomicReferenceFieldUpdater.newUpdater(Chunk.class, Chunk.class, "next");
+
+        private final long base;
+        private final AtomicReferenceArray<E> slots;
+        private volatile Chunk<E> next;
+
+        Chunk(long base, int size) {
+            this.base = base;
+            this.slots = new AtomicReferenceArray<>(size);
+        }
+
+        boolean casNext(Chunk<E> newNext) {
+            return NEXT_UPDATER.compareAndSet(this, null, newNext);
+        }
+    }
+}
@@ -15,8 +15,11 @@
  */
 package org.thingsboard.common.util;
 
+import java.lang.reflect.Method;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadFactory;
 
 public class ThingsBoardExecutors {
 
@@ -47,4 +50,41 @@ public class ThingsBoardExecutors {
     public static ExecutorService newWorkStealingPool(int parallelism, Class clazz) {
         return newWorkStealingPool(parallelism, clazz.getSimpleName());
     }
+
+    /**
+     * Checks if the running JVM provides virtual threads (JDK 21+, or JDK 19-20 with preview features enabled).
+     */
+    public static boolean isVirtualThreadSupported() {
+        try {
+            newVirtualThreadFactory("test");
+            return true;
+        } catch (Throwable e) {
+            return false;
+        }
+    }
+
+    /**
+     * Creates an executor that starts a new virtual thread for each task.
+     * The JDK methods are resolved via reflection, so the code base may still be compiled for older Java versions.
+     *
+     * @param namePrefix used to define thread name
+     * @return the newly created executor
+     * @throws UnsupportedOperationException if the running JVM does not support virtual threads
+     */
+    public static ExecutorService newVirtualThreadPerTaskExecutor(String namePrefix) {
+        try {
+            ThreadFactory threadFactory = newVirtualThreadFactory(namePrefix);
+            Method newThreadPerTaskExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            return (ExecutorService) newThreadPerTaskExecutor.invoke(null, threadFactory);
+        } catch (Throwable e) {
+            throw new UnsupportedOperationException("Virtual threads are not supported by the current JVM", e);
+        }
+    }
+
+    private static ThreadFactory newVirtualThreadFactory(String namePrefix) throws ReflectiveOperationException {
+        Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+        Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+        builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, namePrefix + "-", 0L);
+        return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+    }
 }
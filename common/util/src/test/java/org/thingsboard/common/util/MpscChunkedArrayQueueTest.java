@@ -0,0 +1,133 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.common.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class MpscChunkedArrayQueueTest {
+
+    @Test
+    public void givenElementsAcrossChunks_whenPoll_thenFifoOrder() {
+        MpscChunkedArrayQueue<Integer> queue = new MpscChunkedArrayQueue<>(4);
+        for (int i = 0; i < 100; i++) {
+            assertThat(queue.offer(i), is(true));
+        }
+        assertThat(queue.size(), is(100));
+        for (int i = 0; i < 100; i++) {
+            assertThat(queue.poll(), is(i));
+        }
+        assertThat(queue.poll(), nullValue());
+        assertThat(queue.isEmpty(), is(true));
+    }
+
+    @Test
+    public void givenFullQueue_whenOffer_thenRejectedUntilPolled() {
+        MpscChunkedArrayQueue<Integer> queue = new MpscChunkedArrayQueue<>(4, 10);
+        for (int i = 0; i < 10; i++) {
+            assertThat(queue.offer(i), is(true));
+        }
+        assertThat(queue.offer(10), is(false));
+        assertThat(queue.poll(), is(0));
+        assertThat(queue.offer(10), is(true));
+        assertThat(queue.size(), is(10));
+    }
+
+    @Test
+    public void givenLimit_whenDrain_thenDrainedUpToLimit() {
+        MpscChunkedArrayQueue<Integer> queue = new MpscChunkedArrayQueue<>(8);
+        for (int i = 0; i < 20; i++) {
+            queue.offer(i);
+        }
+        List<Integer> drained = new ArrayList<>();
+        assertThat(queue.drain(drained::add, 15), is(15));
+        assertThat(drained.get(14), is(14));
+        assertThat(queue.drain(drained::add, 15), is(5));
+        assertThat(drained.size(), is(20));
+    }
+
+    @Test
+    public void givenConcurrentProducers_whenPoll_thenNoLossAndPerProducerOrder() throws InterruptedException {
+        testConcurrentProducers(false);
+    }
+
+    @Test
+    public void givenConcurrentProducers_whenDrain_thenNoLossAndPerProducerOrder() throws InterruptedException {
+        testConcurrentProducers(true);
+    }
+
+    private void testConcurrentProducers(boolean drain) throws InterruptedException {
+        int producers = 4;
+        int perProducer = 100_000;
+        MpscChunkedArrayQueue<long[]> queue = new MpscChunkedArrayQueue<>(16, 1024);
+        ExecutorService executor = Executors.newFixedThreadPool(producers);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            for (int p = 0; p < producers; p++) {
+                long producerId = p;
+                executor.submit(() -> {
+                    start.await();
+                    for (long i = 0; i < perProducer; i++) {
+                        long[] e = new long[]{producerId, i};
+                        while (!queue.offer(e)) {
+                            Thread.yield();
+                        }
+                    }
+                    return null;
+                });
+            }
+            start.countDown();
+            long[] expected = new long[producers];
+            AtomicInteger received = new AtomicInteger();
+            Consumer<long[]> consumer = e -> {
+                assertThat(e[1], is(expected[(int) e[0]]));
+                expected[(int) e[0]]++;
+                received.incrementAndGet();
+            };
+            long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(30);
+            while (received.get() < producers * perProducer && System.currentTimeMillis() < deadline) {
+                if (drain) {
+                    if (queue.drain(consumer, 64) == 0) {
+                        Thread.yield();
+                    }
+                } else {
+                    long[] e = queue.poll();
+                    if (e == null) {
+                        Thread.yield();
+                        continue;
+                    }
+                    consumer.accept(e);
+                }
+            }
+            assertThat(received.get(), is(producers * perProducer));
+            assertThat(queue.isEmpty(), is(true));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.common.util;
+
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.startsWith;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeFalse;
+import static org.junit.Assume.assumeTrue;
+
+public class ThingsBoardExecutorsTest {
+
+    @Test
+    public void givenVirtualThreadSupport_whenNewVirtualThreadPerTaskExecutor_thenTaskExecutedOnNamedThread() throws Exception {
+        assumeTrue(ThingsBoardExecutors.isVirtualThreadSupported());
+        ExecutorService executor = ThingsBoardExecutors.newVirtualThreadPerTaskExecutor("test-dispatcher");
+        try {
+            Future<String> threadName = executor.submit(() -> Thread.currentThread().getName());
+            assertThat(threadName.get(10, TimeUnit.SECONDS), startsWith("test-dispatcher-"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void givenNoVirtualThreadSupport_whenNewVirtualThreadPerTaskExecutor_thenUnsupported() {
+        assumeFalse(ThingsBoardExecutors.isVirtualThreadSupported());
+        try {
+            ThingsBoardExecutors.newVirtualThreadPerTaskExecutor("test-dispatcher");
+            fail("UnsupportedOperationException expected");
+        } catch (UnsupportedOperationException e) {
+            assertThat(e.getMessage(), is("Virtual threads are not supported by the current JVM"));
+            assertThat(e.getCause(), instanceOf(ReflectiveOperationException.class));
+        }
+    }
+
+    @Test
+    public void whenNewWorkStealingPool_thenAsyncMode() {
+        ExecutorService executor = ThingsBoardExecutors.newWorkStealingPool(2, "test-dispatcher");
+        try {
+            assertThat(((ForkJoinPool) executor).getAsyncMode(), is(true));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -16,21 +16,34 @@
 package org.thingsboard.server.dao.attributes;
 
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
 import org.springframework.cache.Cache;
 import org.springframework.cache.CacheManager;
 import org.springframework.context.annotation.Primary;
 import org.springframework.stereotype.Service;
+import org.thingsboard.server.common.data.id.EntityId;
 import org.thingsboard.server.common.data.kv.AttributeKvEntry;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 import static org.thingsboard.server.common.data.CacheConstants.ATTRIBUTES_CACHE;
 
+/**
+ * Attributes cache on top of any Spring cache, the multi-key operations are performed key by key.
+ * Besides the values of the separate attributes it keeps the lists of all attributes of the entity in the scope,
+ * those are evicted together with the attributes.
+ *
+ * @see RedisAttributesCacheWrapper
+ */
 @Service
-@ConditionalOnProperty(prefix = "cache.attributes", value = "enabled", havingValue = "true")
+@ConditionalOnExpression("'${cache.attributes.enabled:false}'=='true' && '${cache.type:caffeine}'!='redis'")
 @Primary
 @Slf4j
 public class AttributesCacheWrapper {
-    private final Cache attributesCache;
+    protected final Cache attributesCache;
 
     public AttributesCacheWrapper(CacheManager cacheManager) {
         this.attributesCache = cacheManager.getCache(ATTRIBUTES_CACHE);
@@ -45,6 +58,35 @@ public class AttributesCacheWrapper {
         }
     }
 
+    /**
+     * @return cached values by attribute key, the attributes that are not in the cache are absent in the map
+     */
+    public Map<String, Cache.ValueWrapper> getAll(EntityId entityId, String scope, Collection<String> attributeKeys) {
+        Map<String, Cache.ValueWrapper> result = new HashMap<>();
+        for (String attributeKey : attributeKeys) {
+            Cache.ValueWrapper value = get(new AttributeCacheKey(scope, entityId, attributeKey));
+            if (value != null) {
+                result.put(attributeKey, value);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return all attributes of the entity in the scope or null if they are not in the cache
+     */
+    @SuppressWarnings("unchecked")
+    public List<AttributeKvEntry> getAllByScope(EntityId entityId, String scope) {
+        AttributesScopeCacheKey cacheKey = new AttributesScopeCacheKey(scope, entityId);
+        try {
+            Cache.ValueWrapper value = attributesCache.get(cacheKey);
+            return value != null ? (List<AttributeKvEntry>) value.get() : null;
+        } catch (Exception e) {
+            log.debug("Failed to retrieve element from cache for key {}. Reason - {}.", cacheKey, e.getMessage());
+            return null;
+        }
+    }
+
     public void put(AttributeCacheKey attributeCacheKey, AttributeKvEntry attributeKvEntry) {
         try {
             attributesCache.put(attributeCacheKey, attributeKvEntry);
@@ -53,6 +95,22 @@ public class AttributesCacheWrapper {
         }
     }
 
+    /**
+     * @param attributes values by attribute key, null values are cached as absent attributes
+     */
+    public void putAll(EntityId entityId, String scope, Map<String, AttributeKvEntry> attributes) {
+        attributes.forEach((attributeKey, attribute) -> put(new AttributeCacheKey(scope, entityId, attributeKey), attribute));
+    }
+
+    public void putAllByScope(EntityId entityId, String scope, List<AttributeKvEntry> attributes) {
+        AttributesScopeCacheKey cacheKey = new AttributesScopeCacheKey(scope, entityId);
+        try {
+            attributesCache.put(cacheKey, attributes);
+        } catch (Exception e) {
+            log.debug("Failed to put element from cache for key {}. Reason - {}.", cacheKey, e.getMessage());
+        }
+    }
+
     public void evict(AttributeCacheKey attributeCacheKey) {
         try {
             attributesCache.evict(attributeCacheKey);
@@ -60,4 +118,19 @@ public class AttributesCacheWrapper {
             log.debug("Failed to evict element from cache for key {}. Reason - {}.", attributeCacheKey, e.getMessage());
         }
     }
+
+    /**
+     * Evicts the attributes and the list of all attributes of the entity in the scope.
+     */
+    public void evictAll(EntityId entityId, String scope, Collection<String> attributeKeys) {
+        AttributesScopeCacheKey cacheKey = new AttributesScopeCacheKey(scope, entityId);
+        try {
+            attributesCache.evict(cacheKey);
+        } catch (Exception e) {
+            log.debug("Failed to evict element from cache for key {}. Reason - {}.", cacheKey, e.getMessage());
+        }
+        for (String attributeKey : attributeKeys) {
+            evict(new AttributeCacheKey(scope, entityId, attributeKey));
+        }
+    }
 }
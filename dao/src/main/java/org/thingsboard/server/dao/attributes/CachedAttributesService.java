@@ -146,28 +146,21 @@ public class CachedAttributesService implements AttributesService {
     }
 
     private Map<String, Cache.ValueWrapper> findCachedAttributes(EntityId entityId, String scope, Collection<String> attributeKeys) {
-        Map<String, Cache.ValueWrapper> cachedAttributes = new HashMap<>();
-        for (String attributeKey : attributeKeys) {
-            Cache.ValueWrapper cachedAttributeValue = cacheWrapper.get(new AttributeCacheKey(scope, entityId, attributeKey));
-            if (cachedAttributeValue != null) {
-                hitCounter.increment();
-                cachedAttributes.put(attributeKey, cachedAttributeValue);
-            } else {
-                missCounter.increment();
-            }
-        }
+        Map<String, Cache.ValueWrapper> cachedAttributes = cacheWrapper.getAll(entityId, scope, attributeKeys);
+        hitCounter.add(cachedAttributes.size());
+        missCounter.add(attributeKeys.size() - cachedAttributes.size());
         return cachedAttributes;
     }
 
     private List<AttributeKvEntry> mergeDbAndCacheAttributes(EntityId entityId, String scope, List<AttributeKvEntry> cachedAttributes, Set<String> notFoundAttributeKeys, List<AttributeKvEntry> foundInDbAttributes) {
-        for (AttributeKvEntry foundInDbAttribute : foundInDbAttributes) {
-            AttributeCacheKey attributeCacheKey = new AttributeCacheKey(scope, entityId, foundInDbAttribute.getKey());
-            cacheWrapper.put(attributeCacheKey, foundInDbAttribute);
-            notFoundAttributeKeys.remove(foundInDbAttribute.getKey());
+        Map<String, AttributeKvEntry> attributesToCache = new HashMap<>();
+        for (String key : notFoundAttributeKeys) {
+            attributesToCache.put(key, null);
         }
-        for (String key : notFoundAttributeKeys){
-            cacheWrapper.put(new AttributeCacheKey(scope, entityId, key), null);
+        for (AttributeKvEntry foundInDbAttribute : foundInDbAttributes) {
+            attributesToCache.put(foundInDbAttribute.getKey(), foundInDbAttribute);
         }
+        cacheWrapper.putAll(entityId, scope, attributesToCache);
         List<AttributeKvEntry> mergedAttributes = new ArrayList<>(cachedAttributes);
         mergedAttributes.addAll(foundInDbAttributes);
         return mergedAttributes;
@@ -176,7 +169,17 @@ public class CachedAttributesService implements AttributesService {
     @Override
     public ListenableFuture<List<AttributeKvEntry>> findAll(TenantId tenantId, EntityId entityId, String scope) {
         validate(entityId, scope);
-        return attributesDao.findAll(tenantId, entityId, scope);
+        List<AttributeKvEntry> cachedAttributes = cacheWrapper.getAllByScope(entityId, scope);
+        if (cachedAttributes != null) {
+            hitCounter.increment();
+            return Futures.immediateFuture(cachedAttributes);
+        }
+        missCounter.increment();
+        ListenableFuture<List<AttributeKvEntry>> result = attributesDao.findAll(tenantId, entityId, scope);
+        return Futures.transform(result, foundAttributes -> {
+            cacheWrapper.putAllByScope(entityId, scope, foundAttributes);
+            return foundAttributes;
+        }, cacheExecutor);
     }
 
     @Override
@@ -213,9 +216,7 @@ public class CachedAttributesService implements AttributesService {
 
     private void evictAttributesFromCache(TenantId tenantId, EntityId entityId, String scope, List<String> attributeKeys) {
         try {
-            for (String attributeKey : attributeKeys) {
-                cacheWrapper.evict(new AttributeCacheKey(scope, entityId, attributeKey));
-            }
+            cacheWrapper.evictAll(entityId, scope, attributeKeys);
         } catch (Exception e) {
             log.error("[{}][{}] Failed to remove values from cache.", tenantId, entityId, e);
         }
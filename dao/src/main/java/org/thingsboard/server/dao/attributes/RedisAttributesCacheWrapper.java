@@ -0,0 +1,244 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.dao.attributes;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.support.NullValue;
+import org.springframework.cache.support.SimpleValueWrapper;
+import org.springframework.cache.transaction.TransactionAwareCacheDecorator;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.convert.ConversionService;
+import org.springframework.core.convert.TypeDescriptor;
+import org.springframework.data.redis.cache.RedisCache;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.util.ByteUtils;
+import org.springframework.stereotype.Service;
+import org.thingsboard.server.cache.near.TbNearCache;
+import org.thingsboard.server.common.data.id.EntityId;
+import org.thingsboard.server.common.data.kv.AttributeKvEntry;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.thingsboard.server.common.data.CacheConstants.ATTRIBUTES_CACHE;
+
+/**
+ * Attributes cache that performs the multi-key operations in a single round trip to Redis: MGET, MSET (or a pipeline
+ * of SET commands when the cache has TTL) and DEL. The keys and values are serialized the same way as by the
+ * {@link RedisCache}, so the entries are shared with the single-key operations that still go through the Spring cache.
+ * <p>
+ * All attributes of the entity in the scope are kept in a hash with a field per attribute and a marker field,
+ * so the scope without attributes is cached as well. With the near cache enabled, the single attributes are looked up
+ * in the local cache first and the evicted ones are invalidated on all nodes. The multi-key operations are not synchronized
+ * with Spring-managed transactions, the service calls them from the callbacks of the DAO futures.
+ */
+@Service
+@ConditionalOnExpression("'${cache.attributes.enabled:false}'=='true' && '${cache.type:caffeine}'=='redis'")
+@Primary
+@Slf4j
+public class RedisAttributesCacheWrapper extends AttributesCacheWrapper {
+
+    private static final byte[] SCOPE_MARKER_FIELD = new byte[0];
+    private static final byte[] SCOPE_MARKER_VALUE = new byte[0];
+
+    private final RedisConnectionFactory redisConnectionFactory;
+    private final RedisCacheConfiguration cacheConfiguration;
+    private final String keyPrefix;
+    private final Expiration expiration;
+    private final TbNearCache nearCache;
+
+    public RedisAttributesCacheWrapper(CacheManager cacheManager, RedisConnectionFactory redisConnectionFactory) {
+        super(cacheManager);
+        this.redisConnectionFactory = redisConnectionFactory;
+        Cache targetCache = attributesCache instanceof TransactionAwareCacheDecorator ?
+                ((TransactionAwareCacheDecorator) attributesCache).getTargetCache() : attributesCache;
+        this.nearCache = targetCache instanceof TbNearCache ? (TbNearCache) targetCache : null;
+        if (nearCache != null) {
+            targetCache = nearCache.getRedisCache();
+        }
+        if (!(targetCache instanceof RedisCache)) {
+            throw new IllegalStateException("Cache '" + ATTRIBUTES_CACHE + "' is not a Redis cache!");
+        }
+        this.cacheConfiguration = ((RedisCache) targetCache).getCacheConfiguration();
+        this.keyPrefix = cacheConfiguration.usePrefix() ? cacheConfiguration.getKeyPrefixFor(ATTRIBUTES_CACHE) : "";
+        Duration ttl = cacheConfiguration.getTtl();
+        this.expiration = ttl != null && !ttl.isZero() && !ttl.isNegative() ? Expiration.from(ttl) : null;
+    }
+
+    @Override
+    public Map<String, Cache.ValueWrapper> getAll(EntityId entityId, String scope, Collection<String> attributeKeys) {
+        Map<String, Cache.ValueWrapper> result = new HashMap<>();
+        if (attributeKeys.isEmpty()) {
+            return result;
+        }
+        List<String> keys = new ArrayList<>(attributeKeys.size());
+        for (String attributeKey : attributeKeys) {
+            Cache.ValueWrapper localValue = nearCache != null ? nearCache.getLocal(new AttributeCacheKey(scope, entityId, attributeKey)) : null;
+            if (localValue != null) {
+                result.put(attributeKey, localValue);
+            } else {
+                keys.add(attributeKey);
+            }
+        }
+        if (keys.isEmpty()) {
+            return result;
+        }
+        byte[][] cacheKeys = new byte[keys.size()][];
+        for (int i = 0; i < keys.size(); i++) {
+            cacheKeys[i] = serializeKey(new AttributeCacheKey(scope, entityId, keys.get(i)));
+        }
+        try (RedisConnection connection = redisConnectionFactory.getConnection()) {
+            List<byte[]> values = connection.mGet(cacheKeys);
+            int found = 0;
+            if (values != null) {
+                for (int i = 0; i < keys.size() && i < values.size(); i++) {
+                    byte[] value = values.get(i);
+                    if (value != null) {
+                        Object attribute = deserializeValue(value);
+                        result.put(keys.get(i), new SimpleValueWrapper(attribute));
+                        if (nearCache != null) {
+                            nearCache.putLocal(new AttributeCacheKey(scope, entityId, keys.get(i)), attribute);
+                        }
+                        found++;
+                    }
+                }
+            }
+            if (nearCache != null) {
+                nearCache.recordL2Hits(found);
+                nearCache.recordMisses(keys.size() - found);
+            }
+        } catch (Exception e) {
+            log.debug("[{}][{}] Failed to retrieve elements from cache for keys {}. Reason - {}.", entityId, scope, attributeKeys, e.getMessage());
+        }
+        return result;
+    }
+
+    @Override
+    public List<AttributeKvEntry> getAllByScope(EntityId entityId, String scope) {
+        try (RedisConnection connection = redisConnectionFactory.getConnection()) {
+            Map<byte[], byte[]> fields = connection.hGetAll(serializeKey(new AttributesScopeCacheKey(scope, entityId)));
+            if (fields == null || fields.isEmpty()) {
+                return null;
+            }
+            List<AttributeKvEntry> result = new ArrayList<>(fields.size());
+            fields.forEach((field, value) -> {
+                if (field.length > 0) {
+                    result.add((AttributeKvEntry) deserializeValue(value));
+                }
+            });
+            return result;
+        } catch (Exception e) {
+            log.debug("[{}][{}] Failed to retrieve all attributes from cache. Reason - {}.", entityId, scope, e.getMessage());
+            return null;
+        }
+    }
+
+    @Override
+    public void putAll(EntityId entityId, String scope, Map<String, AttributeKvEntry> attributes) {
+        if (attributes.isEmpty()) {
+            return;
+        }
+        Map<byte[], byte[]> values = new LinkedHashMap<>();
+        attributes.forEach((attributeKey, attribute) ->
+                values.put(serializeKey(new AttributeCacheKey(scope, entityId, attributeKey)), serializeValue(attribute)));
+        try (RedisConnection connection = redisConnectionFactory.getConnection()) {
+            if (expiration == null) {
+                connection.mSet(values);
+            } else {
+                connection.openPipeline();
+                values.forEach((key, value) -> connection.set(key, value, expiration, RedisStringCommands.SetOption.upsert()));
+                connection.closePipeline();
+            }
+            if (nearCache != null) {
+                attributes.forEach((attributeKey, attribute) -> nearCache.putLocal(new AttributeCacheKey(scope, entityId, attributeKey), attribute));
+            }
+        } catch (Exception e) {
+            log.debug("[{}][{}] Failed to put elements to cache for keys {}. Reason - {}.", entityId, scope, attributes.keySet(), e.getMessage());
+        }
+    }
+
+    @Override
+    public void putAllByScope(EntityId entityId, String scope, List<AttributeKvEntry> attributes) {
+        Map<byte[], byte[]> fields = new LinkedHashMap<>();
+        fields.put(SCOPE_MARKER_FIELD, SCOPE_MARKER_VALUE);
+        for (AttributeKvEntry attribute : attributes) {
+            fields.put(attribute.getKey().getBytes(StandardCharsets.UTF_8), serializeValue(attribute));
+        }
+        byte[] cacheKey = serializeKey(new AttributesScopeCacheKey(scope, entityId));
+        try (RedisConnection connection = redisConnectionFactory.getConnection()) {
+            connection.openPipeline();
+            connection.hMSet(cacheKey, fields);
+            if (expiration != null) {
+                connection.pExpire(cacheKey, expiration.getExpirationTimeInMilliseconds());
+            }
+            connection.closePipeline();
+        } catch (Exception e) {
+            log.debug("[{}][{}] Failed to put all attributes to cache. Reason - {}.", entityId, scope, e.getMessage());
+        }
+    }
+
+    @Override
+    public void evictAll(EntityId entityId, String scope, Collection<String> attributeKeys) {
+        byte[][] cacheKeys = new byte[attributeKeys.size() + 1][];
+        cacheKeys[0] = serializeKey(new AttributesScopeCacheKey(scope, entityId));
+        int i = 1;
+        for (String attributeKey : attributeKeys) {
+            cacheKeys[i++] = serializeKey(new AttributeCacheKey(scope, entityId, attributeKey));
+        }
+        try (RedisConnection connection = redisConnectionFactory.getConnection()) {
+            connection.del(cacheKeys);
+        } catch (Exception e) {
+            log.debug("[{}][{}] Failed to evict elements from cache for keys {}. Reason - {}.", entityId, scope, attributeKeys, e.getMessage());
+        }
+        if (nearCache != null) {
+            nearCache.invalidate(attributeKeys.stream().map(attributeKey -> new AttributeCacheKey(scope, entityId, attributeKey)).collect(Collectors.toList()));
+        }
+    }
+
+    /**
+     * Same as {@link RedisCache} creates the cache key: converts the key to string and adds the cache prefix.
+     */
+    private byte[] serializeKey(Object key) {
+        ConversionService conversionService = cacheConfiguration.getConversionService();
+        String convertedKey = conversionService.canConvert(TypeDescriptor.forObject(key), TypeDescriptor.valueOf(String.class)) ?
+                conversionService.convert(key, String.class) : key.toString();
+        return ByteUtils.getBytes(cacheConfiguration.getKeySerializationPair().write(keyPrefix + convertedKey));
+    }
+
+    private byte[] serializeValue(AttributeKvEntry value) {
+        return ByteUtils.getBytes(cacheConfiguration.getValueSerializationPair().write(value != null ? value : NullValue.INSTANCE));
+    }
+
+    private Object deserializeValue(byte[] value) {
+        Object result = cacheConfiguration.getValueSerializationPair().read(ByteBuffer.wrap(value));
+        return result instanceof NullValue ? null : result;
+    }
+}
@@ -73,11 +73,19 @@ public abstract class CassandraAbstractDao {
     }
 
     protected TbResultSetFuture executeAsyncRead(TenantId tenantId, Statement statement) {
-        return executeAsync(tenantId, statement, defaultReadLevel, rateReadLimiter);
+        return executeAsync(tenantId, statement, defaultReadLevel, rateReadLimiter, null, null);
     }
 
     protected TbResultSetFuture executeAsyncWrite(TenantId tenantId, Statement statement) {
-        return executeAsync(tenantId, statement, defaultWriteLevel, rateWriteLimiter);
+        return executeAsync(tenantId, statement, defaultWriteLevel, rateWriteLimiter, null, null);
+    }
+
+    /**
+     * Executes the write that may be grouped with other writes to the same partition, identified by the batch key.
+     * Writes to the same row, identified by the row key, are never grouped together.
+     */
+    protected TbResultSetFuture executeAsyncWrite(TenantId tenantId, Statement statement, Object batchKey, Object rowKey) {
+        return executeAsync(tenantId, statement, defaultWriteLevel, rateWriteLimiter, batchKey, rowKey);
     }
 
     private AsyncResultSet execute(TenantId tenantId, Statement statement, ConsistencyLevel level,
@@ -85,18 +93,18 @@ public abstract class CassandraAbstractDao {
         if (log.isDebugEnabled()) {
             log.debug("Execute cassandra statement {}", statementToString(statement));
         }
-        return executeAsync(tenantId, statement, level, rateExecutor).getUninterruptibly();
+        return executeAsync(tenantId, statement, level, rateExecutor, null, null).getUninterruptibly();
     }
 
     private TbResultSetFuture executeAsync(TenantId tenantId, Statement statement, ConsistencyLevel level,
-                                           BufferedRateExecutor<CassandraStatementTask, TbResultSetFuture> rateExecutor) {
+                                           BufferedRateExecutor<CassandraStatementTask, TbResultSetFuture> rateExecutor, Object batchKey, Object rowKey) {
         if (log.isDebugEnabled()) {
             log.debug("Execute cassandra async statement {}", statementToString(statement));
         }
         if (statement.getConsistencyLevel() == null) {
             statement.setConsistencyLevel(level);
         }
-        return rateExecutor.submit(new CassandraStatementTask(tenantId, getSession(), statement));
+        return rateExecutor.submit(new CassandraStatementTask(tenantId, getSession(), statement, batchKey, rowKey));
     }
 
     private static String statementToString(Statement statement) {
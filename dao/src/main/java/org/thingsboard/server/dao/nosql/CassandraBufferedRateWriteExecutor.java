@@ -15,23 +15,47 @@
  */
 package org.thingsboard.server.dao.nosql;
 
+import com.datastax.oss.driver.api.core.cql.BatchStatement;
+import com.datastax.oss.driver.api.core.cql.BatchableStatement;
+import com.datastax.oss.driver.api.core.cql.DefaultBatchType;
+import com.datastax.oss.driver.api.core.cql.Statement;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.common.util.concurrent.SettableFuture;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
+import org.thingsboard.common.util.ThingsBoardThreadFactory;
 import org.thingsboard.server.common.stats.StatsFactory;
 import org.thingsboard.server.dao.entity.EntityService;
 import org.thingsboard.server.dao.util.AbstractBufferedRateExecutor;
 import org.thingsboard.server.dao.util.AsyncTaskContext;
 import org.thingsboard.server.dao.util.NoSqlAnyDao;
 
+import javax.annotation.Nullable;
 import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Created by ashvayka on 24.10.18.
+ * <p>
+ * With batching enabled, the statements that write to the same Cassandra partition (have equal batch keys)
+ * are buffered for up to the linger time and submitted as one unlogged batch, so the batch takes one permit
+ * and is handled by the replica coordinator as a single mutation.
+ * The statements that write to the same row are not grouped, since they would get the same write timestamp.
+ * The batches pending on stop are failed.
  */
 @Component
 @Slf4j
@@ -40,6 +64,12 @@ public class CassandraBufferedRateWriteExecutor extends AbstractBufferedRateExec
 
     static final String BUFFER_NAME = "Write";
 
+    private final boolean batchEnabled;
+    private final int batchMaxSize;
+    private final long batchLingerMs;
+    private final ConcurrentMap<Object, PendingBatch> pendingBatches = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService batchScheduler;
+
     public CassandraBufferedRateWriteExecutor(
             @Value("${cassandra.query.buffer_size}") int queueLimit,
             @Value("${cassandra.query.concurrent_limit}") int concurrencyLimit,
@@ -51,10 +81,80 @@ public class CassandraBufferedRateWriteExecutor extends AbstractBufferedRateExec
             @Value("${cassandra.query.tenant_rate_limits.configuration}") String tenantRateLimitsConfiguration,
             @Value("${cassandra.query.tenant_rate_limits.print_tenant_names}") boolean printTenantNames,
             @Value("${cassandra.query.print_queries_freq:0}") int printQueriesFreq,
+            @Value("${cassandra.query.batch.enabled:false}") boolean batchEnabled,
+            @Value("${cassandra.query.batch.max_size:20}") int batchMaxSize,
+            @Value("${cassandra.query.batch.linger_ms:5}") long batchLingerMs,
             @Autowired StatsFactory statsFactory,
             @Autowired EntityService entityService) {
         super(queueLimit, concurrencyLimit, maxWaitTime, dispatcherThreads, callbackThreads, pollMs, tenantRateLimitsEnabled, tenantRateLimitsConfiguration, printQueriesFreq, statsFactory,
                 entityService, printTenantNames);
+        this.batchEnabled = batchEnabled && batchMaxSize > 1;
+        this.batchMaxSize = batchMaxSize;
+        this.batchLingerMs = batchLingerMs;
+        this.batchScheduler = this.batchEnabled ?
+                Executors.newSingleThreadScheduledExecutor(ThingsBoardThreadFactory.forName("nosql-" + getBufferName() + "-batch")) : null;
+    }
+
+    @Override
+    public TbResultSetFuture submit(CassandraStatementTask task) {
+        if (!batchEnabled || task.getBatchKey() == null || !(task.getStatement() instanceof BatchableStatement) || batchScheduler.isShutdown()) {
+            return super.submit(task);
+        }
+        SettableFuture<TbResultSet> future = SettableFuture.create();
+        PendingBatch[] readyBatches = new PendingBatch[2];
+        pendingBatches.compute(task.getBatchKey(), (key, batch) -> {
+            if (batch != null && task.getRowKey() != null && batch.rowKeys.contains(task.getRowKey())) {
+                // the statements of a batch share the write timestamp, so the writes to the same row must not tie
+                readyBatches[0] = batch;
+                batch = null;
+            }
+            if (batch == null) {
+                batch = newBatch(key);
+            }
+            batch.tasks.add(task);
+            batch.futures.add(future);
+            if (task.getRowKey() != null) {
+                batch.rowKeys.add(task.getRowKey());
+            }
+            if (batch.tasks.size() >= batchMaxSize) {
+                readyBatches[1] = batch;
+                return null;
+            }
+            return batch;
+        });
+        for (PendingBatch batch : readyBatches) {
+            if (batch != null) {
+                submitBatch(batch);
+            }
+        }
+        return new TbResultSetFuture(future);
+    }
+
+    private PendingBatch newBatch(Object key) {
+        PendingBatch batch = new PendingBatch(key);
+        batchScheduler.schedule(() -> {
+            if (pendingBatches.remove(key, batch)) {
+                submitBatch(batch);
+            }
+        }, batchLingerMs, TimeUnit.MILLISECONDS);
+        return batch;
+    }
+
+    private void submitBatch(PendingBatch batch) {
+        CassandraStatementTask first = batch.tasks.get(0);
+        if (batch.tasks.size() == 1) {
+            Futures.addCallback(super.submit(first), new BatchCallback(batch, false), MoreExecutors.directExecutor());
+            return;
+        }
+        List<BatchableStatement<?>> statements = new ArrayList<>(batch.tasks.size());
+        for (CassandraStatementTask task : batch.tasks) {
+            statements.add((BatchableStatement<?>) task.getStatement());
+        }
+        Statement<?> batchStatement = BatchStatement.newInstance(DefaultBatchType.UNLOGGED, statements)
+                .setConsistencyLevel(first.getStatement().getConsistencyLevel());
+        stats.getBatchSize().record(statements.size());
+        Futures.addCallback(super.submit(new CassandraStatementTask(first.getTenantId(), first.getSession(), batchStatement)),
+                new BatchCallback(batch, true), MoreExecutors.directExecutor());
     }
 
     @Scheduled(fixedDelayString = "${cassandra.query.rate_limit_print_interval_ms}")
@@ -65,6 +165,15 @@ public class CassandraBufferedRateWriteExecutor extends AbstractBufferedRateExec
 
     @PreDestroy
     public void stop() {
+        if (batchScheduler != null) {
+            batchScheduler.shutdownNow();
+            for (Object key : pendingBatches.keySet()) {
+                PendingBatch batch = pendingBatches.remove(key);
+                if (batch != null) {
+                    batch.futures.forEach(future -> future.setException(new IllegalStateException("Write executor is stopped")));
+                }
+            }
+        }
         super.stop();
     }
 
@@ -92,4 +201,40 @@ public class CassandraBufferedRateWriteExecutor extends AbstractBufferedRateExec
         );
     }
 
+    private static class PendingBatch {
+        private final Object key;
+        private final List<CassandraStatementTask> tasks = new ArrayList<>();
+        private final List<SettableFuture<TbResultSet>> futures = new ArrayList<>();
+        private final Set<Object> rowKeys = new HashSet<>();
+
+        private PendingBatch(Object key) {
+            this.key = key;
+        }
+    }
+
+    private class BatchCallback implements FutureCallback<TbResultSet> {
+        private final PendingBatch batch;
+        private final boolean batched;
+        private final long startNanos = System.nanoTime();
+
+        private BatchCallback(PendingBatch batch, boolean batched) {
+            this.batch = batch;
+            this.batched = batched;
+        }
+
+        @Override
+        public void onSuccess(@Nullable TbResultSet result) {
+            if (batched) {
+                stats.getBatchLatency().record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+            }
+            batch.futures.forEach(future -> future.set(result));
+        }
+
+        @Override
+        public void onFailure(Throwable t) {
+            log.debug("[{}] Failed to execute batch of {} statements", batch.key, batch.tasks.size(), t);
+            batch.futures.forEach(future -> future.setException(t));
+        }
+    }
+
 }
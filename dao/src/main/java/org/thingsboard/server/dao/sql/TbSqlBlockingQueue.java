@@ -17,9 +17,13 @@ package org.thingsboard.server.dao.sql;
 
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.SettableFuture;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
 import org.thingsboard.common.util.ThingsBoardThreadFactory;
+import org.thingsboard.server.common.stats.DefaultCounter;
 import org.thingsboard.server.common.stats.MessagesStats;
+import org.thingsboard.server.common.stats.StatsFactory;
 
 import java.util.ArrayList;
 import java.util.Comparator;
@@ -29,6 +33,8 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -36,45 +42,79 @@ import java.util.stream.Stream;
 @Slf4j
 public class TbSqlBlockingQueue<E> implements TbSqlQueue<E> {
 
-    private final BlockingQueue<TbSqlQueueElement<E>> queue = new LinkedBlockingQueue<>();
+    private static final double EWMA_ALPHA = 0.2;
+
+    private final BlockingQueue<TbSqlQueueElement<E>> queue;
     private final TbSqlBlockingQueueParams params;
 
     private ExecutorService executor;
     private final MessagesStats stats;
+    private final StatsFactory statsFactory;
+
+    private final LongAdder arrivals = new LongAdder();
+    private AtomicInteger queueSizeGauge;
+    private DistributionSummary batchSizeSummary;
+    private Timer flushTimer;
+    private DefaultCounter overflowCounter;
+
+    // Accessed by the queue thread only
+    private long lastArrivalRateTs;
+    private double arrivalRatePerMs;
+    private double avgSaveTimeMs;
 
-    public TbSqlBlockingQueue(TbSqlBlockingQueueParams params, MessagesStats stats) {
+    public TbSqlBlockingQueue(TbSqlBlockingQueueParams params, MessagesStats stats, StatsFactory statsFactory) {
         this.params = params;
         this.stats = stats;
+        this.statsFactory = statsFactory;
+        this.queue = new LinkedBlockingQueue<>(params.getMaxQueueSize() > 0 ? params.getMaxQueueSize() : Integer.MAX_VALUE);
     }
 
     @Override
     public void init(ScheduledLogExecutorComponent logExecutor, Consumer<List<E>> saveFunction, Comparator<E> batchUpdateComparator, int index) {
+        String queueTag = Integer.toString(index);
+        queueSizeGauge = statsFactory.createGauge(params.getStatsNamePrefix() + ".queue.size", new AtomicInteger(), "queue", queueTag);
+        batchSizeSummary = statsFactory.createDistributionSummary(params.getStatsNamePrefix() + ".batch.size", "queue", queueTag);
+        flushTimer = statsFactory.createTimer(params.getStatsNamePrefix() + ".flush.latency", "queue", queueTag);
+        overflowCounter = statsFactory.createDefaultCounter(params.getStatsNamePrefix() + ".queue.overflow", "queue", queueTag);
         executor = Executors.newSingleThreadExecutor(ThingsBoardThreadFactory.forName("sql-queue-" + index + "-" + params.getLogName().toLowerCase()));
         executor.submit(() -> {
             String logName = params.getLogName();
             int batchSize = params.getBatchSize();
             long maxDelay = params.getMaxDelay();
+            boolean adaptive = params.isAdaptiveBatching();
+            lastArrivalRateTs = System.nanoTime();
             List<TbSqlQueueElement<E>> entities = new ArrayList<>(batchSize);
             while (!Thread.interrupted()) {
                 try {
                     long currentTs = System.currentTimeMillis();
                     TbSqlQueueElement<E> attr = queue.poll(maxDelay, TimeUnit.MILLISECONDS);
                     if (attr == null) {
+                        queueSizeGauge.set(0);
                         continue;
                     } else {
                         entities.add(attr);
                     }
                     queue.drainTo(entities, batchSize - 1);
+                    if (adaptive) {
+                        fillAdaptiveBatch(entities, batchSize, maxDelay);
+                    }
+                    queueSizeGauge.set(queue.size());
                     boolean fullPack = entities.size() == batchSize;
                     log.debug("[{}] Going to save {} entities", logName, entities.size());
                     Stream<E> entitiesStream = entities.stream().map(TbSqlQueueElement::getEntity);
+                    long saveStartTs = System.nanoTime();
                     saveFunction.accept(
                             (params.isBatchSortEnabled() ? entitiesStream.sorted(batchUpdateComparator) : entitiesStream)
                                     .collect(Collectors.toList())
                     );
+                    long saveTime = System.nanoTime() - saveStartTs;
+                    flushTimer.record(saveTime, TimeUnit.NANOSECONDS);
+                    batchSizeSummary.record(entities.size());
                     entities.forEach(v -> v.getFuture().set(null));
                     stats.incrementSuccessful(entities.size());
-                    if (!fullPack) {
+                    if (adaptive) {
+                        avgSaveTimeMs = ewma(avgSaveTimeMs, saveTime / 1_000_000.0);
+                    } else if (!fullPack) {
                         long remainingDelay = maxDelay - (System.currentTimeMillis() - currentTs);
                         if (remainingDelay > 0) {
                             Thread.sleep(remainingDelay);
@@ -104,6 +144,46 @@ public class TbSqlBlockingQueue<E> implements TbSqlQueue<E> {
         }, params.getStatsPrintIntervalMs(), params.getStatsPrintIntervalMs(), TimeUnit.MILLISECONDS);
     }
 
+    /**
+     * Waits for the number of entities that are expected to arrive during one save, but not longer than the average save time.
+     * Under low load the expected number is below one, so the entities are saved without any delay.
+     * Under high load the batch grows with the save latency, which amortizes the round trip to the database.
+     */
+    private void fillAdaptiveBatch(List<TbSqlQueueElement<E>> entities, int batchSize, long maxDelay) throws InterruptedException {
+        long now = System.nanoTime();
+        double elapsedMs = (now - lastArrivalRateTs) / 1_000_000.0;
+        if (elapsedMs >= 1) {
+            arrivalRatePerMs = ewma(arrivalRatePerMs, arrivals.sumThenReset() / elapsedMs);
+            lastArrivalRateTs = now;
+        }
+        int targetBatchSize = targetBatchSize(arrivalRatePerMs, avgSaveTimeMs, batchSize);
+        if (entities.size() >= targetBatchSize) {
+            return;
+        }
+        long lingerNanos = TimeUnit.MILLISECONDS.toNanos(Math.min(maxDelay, Math.max(1, Math.round(avgSaveTimeMs))));
+        long deadline = now + lingerNanos;
+        while (entities.size() < targetBatchSize) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                break;
+            }
+            TbSqlQueueElement<E> element = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (element == null) {
+                break;
+            }
+            entities.add(element);
+            queue.drainTo(entities, targetBatchSize - entities.size());
+        }
+    }
+
+    static int targetBatchSize(double arrivalRatePerMs, double avgSaveTimeMs, int batchSize) {
+        return (int) Math.min(batchSize, Math.max(1, arrivalRatePerMs * avgSaveTimeMs));
+    }
+
+    private static double ewma(double current, double sample) {
+        return current == 0 ? sample : current + EWMA_ALPHA * (sample - current);
+    }
+
     @Override
     public void destroy() {
         if (executor != null) {
@@ -114,8 +194,42 @@ public class TbSqlBlockingQueue<E> implements TbSqlQueue<E> {
     @Override
     public ListenableFuture<Void> add(E element) {
         SettableFuture<Void> future = SettableFuture.create();
-        queue.add(new TbSqlQueueElement<>(future, element));
+        TbSqlQueueElement<E> queueElement = new TbSqlQueueElement<>(future, element);
+        if (!queue.offer(queueElement)) {
+            overflowCounter.increment();
+            switch (params.getOverflowStrategy()) {
+                case FAIL:
+                    stats.incrementFailed();
+                    future.setException(new IllegalStateException("[" + params.getLogName() + "] Queue is full"));
+                    return future;
+                case SHED:
+                    do {
+                        TbSqlQueueElement<E> dropped = queue.poll();
+                        if (dropped != null) {
+                            stats.incrementFailed();
+                            dropped.getFuture().setException(new IllegalStateException("[" + params.getLogName() + "] Queue is full, entity dropped"));
+                        }
+                    } while (!queue.offer(queueElement));
+                    break;
+                default:
+                    try {
+                        long blockTimeoutMs = params.getOverflowBlockTimeoutMs();
+                        if (blockTimeoutMs <= 0) {
+                            queue.put(queueElement);
+                        } else if (!queue.offer(queueElement, blockTimeoutMs, TimeUnit.MILLISECONDS)) {
+                            stats.incrementFailed();
+                            future.setException(new IllegalStateException("[" + params.getLogName() + "] Queue is full, timed out waiting for free space"));
+                            return future;
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        future.setException(e);
+                        return future;
+                    }
+            }
+        }
         stats.incrementTotal();
+        arrivals.increment();
         return future;
     }
 }
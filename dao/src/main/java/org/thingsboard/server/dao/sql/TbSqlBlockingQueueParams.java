@@ -32,4 +32,20 @@ public class TbSqlBlockingQueueParams {
     private final long statsPrintIntervalMs;
     private final String statsNamePrefix;
     private final boolean batchSortEnabled;
+    /**
+     * Max number of pending entities in a single queue, zero means the queue is unbounded.
+     */
+    private final int maxQueueSize;
+    @Builder.Default
+    private final TbSqlQueueOverflowStrategy overflowStrategy = TbSqlQueueOverflowStrategy.BLOCK;
+    /**
+     * Max time the caller waits for free space with the BLOCK strategy, zero means the caller waits without limit.
+     * The callers are rule engine and actor threads, so an unlimited wait stalls message processing of the whole tenant.
+     */
+    private final long overflowBlockTimeoutMs;
+    /**
+     * If enabled, the batch size and the flush delay are derived from the observed save latency and arrival rate,
+     * limited by batchSize and maxDelay.
+     */
+    private final boolean adaptiveBatching;
 }
@@ -0,0 +1,35 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.dao.sql;
+
+public enum TbSqlQueueOverflowStrategy {
+
+    /**
+     * Caller waits until there is space in the queue, but not longer than the overflow block timeout.
+     * The new entity is rejected and its future fails if the timeout expires.
+     * Note that the callers are rule engine and actor threads, which do not process any other messages while waiting.
+     */
+    BLOCK,
+    /**
+     * New entity is rejected and its future fails.
+     */
+    FAIL,
+    /**
+     * Oldest pending entity is dropped and its future fails, so the new entity is accepted.
+     */
+    SHED
+
+}
@@ -36,6 +36,7 @@ import org.thingsboard.server.dao.sql.JpaAbstractDaoListeningExecutorService;
 import org.thingsboard.server.dao.sql.ScheduledLogExecutorComponent;
 import org.thingsboard.server.dao.sql.TbSqlBlockingQueueParams;
 import org.thingsboard.server.dao.sql.TbSqlBlockingQueueWrapper;
+import org.thingsboard.server.dao.sql.TbSqlQueueOverflowStrategy;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
@@ -77,6 +78,18 @@ public class JpaAttributeDao extends JpaAbstractDaoListeningExecutorService impl
     @Value("${sql.batch_sort:false}")
     private boolean batchSortEnabled;
 
+    @Value("${sql.attributes.batch_max_queue_size:0}")
+    private int maxQueueSize;
+
+    @Value("${sql.batch_overflow_strategy:BLOCK}")
+    private TbSqlQueueOverflowStrategy overflowStrategy;
+
+    @Value("${sql.batch_overflow_block_timeout_ms:1000}")
+    private long overflowBlockTimeoutMs;
+
+    @Value("${sql.batch_adaptive:false}")
+    private boolean adaptiveBatching;
+
     private TbSqlBlockingQueueWrapper<AttributeKvEntity> queue;
 
     @PostConstruct
@@ -88,6 +101,10 @@ public class JpaAttributeDao extends JpaAbstractDaoListeningExecutorService impl
                 .statsPrintIntervalMs(statsPrintIntervalMs)
                 .statsNamePrefix("attributes")
                 .batchSortEnabled(batchSortEnabled)
+                .maxQueueSize(maxQueueSize)
+                .overflowStrategy(overflowStrategy)
+                .overflowBlockTimeoutMs(overflowBlockTimeoutMs)
+                .adaptiveBatching(adaptiveBatching)
                 .build();
 
         Function<AttributeKvEntity, Integer> hashcodeFunction = entity -> entity.getId().getEntityId().hashCode();
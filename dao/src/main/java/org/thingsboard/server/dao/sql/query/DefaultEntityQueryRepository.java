@@ -41,6 +41,7 @@ import org.thingsboard.server.common.data.query.EntityDataQuery;
 import org.thingsboard.server.common.data.query.EntityDataSortOrder;
 import org.thingsboard.server.common.data.query.EntityFilter;
 import org.thingsboard.server.common.data.query.EntityFilterType;
+import org.thingsboard.server.common.data.query.EntityKey;
 import org.thingsboard.server.common.data.query.EntityKeyType;
 import org.thingsboard.server.common.data.query.EntityListFilter;
 import org.thingsboard.server.common.data.query.EntityNameFilter;
@@ -56,9 +57,11 @@ import org.thingsboard.server.common.data.relation.RelationEntityTypeFilter;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
@@ -66,6 +69,7 @@ import java.util.stream.Collectors;
 @Slf4j
 public class DefaultEntityQueryRepository implements EntityQueryRepository {
     private static final Map<EntityType, String> entityTableMap = new HashMap<>();
+    private static final Set<String> KEYSET_SORT_FIELDS = new HashSet<>(Arrays.asList(EntityKeyMapping.CREATED_TIME, EntityKeyMapping.NAME));
     private static final String SELECT_PHONE = " CASE WHEN entity.entity_type = 'TENANT' THEN (select phone from tenant where id = entity_id)" +
             " WHEN entity.entity_type = 'CUSTOMER' THEN (select phone from customer where id = entity_id) END as phone";
     private static final String SELECT_ZIP = " CASE WHEN entity.entity_type = 'TENANT' THEN (select zip from tenant where id = entity_id)" +
@@ -382,6 +386,9 @@ public class DefaultEntityQueryRepository implements EntityQueryRepository {
             String latestJoinsCnt = EntityKeyMapping.buildLatestJoins(ctx, query.getEntityFilter(), entityType, allLatestMappings, true);
             String latestJoinsData = EntityKeyMapping.buildLatestJoins(ctx, query.getEntityFilter(), entityType, allLatestMappings, false);
             String textSearchQuery = DefaultEntityQueryRepository.this.buildTextSearchQuery(ctx, selectionMapping, pageLink.getTextSearch());
+            Optional<EntityKeyMapping> sortOrderMappingOpt = pageLink.getSortOrder() != null ?
+                    mappings.stream().filter(EntityKeyMapping::isSortOrder).findFirst() : Optional.empty();
+            boolean keyset = isKeysetPagination(query.getEntityFilter(), pageLink, sortOrderMappingOpt);
             String entityFieldsSelection = EntityKeyMapping.buildSelections(entityFieldsSelectionMapping, query.getEntityFilter().getType(), entityType);
             String entityTypeStr;
             if (query.getEntityFilter().getType().equals(EntityFilterType.RELATIONS_QUERY)) {
@@ -423,22 +430,28 @@ public class DefaultEntityQueryRepository implements EntityQueryRepository {
             }
             String countQuery = String.format("select count(id) %s", fromClauseCount);
 
-            long startTs = System.currentTimeMillis();
-            int totalElements;
-            try {
-                totalElements = jdbcTemplate.queryForObject(countQuery, ctx, Integer.class);
-            } finally {
-                queryLog.logQuery(ctx, countQuery, System.currentTimeMillis() - startTs);
-            }
+            long startTs;
+            int totalElements = 0;
+            if (!pageLink.isEstimateTotal()) {
+                startTs = System.currentTimeMillis();
+                try {
+                    totalElements = jdbcTemplate.queryForObject(countQuery, ctx, Integer.class);
+                } finally {
+                    queryLog.logQuery(ctx, countQuery, System.currentTimeMillis() - startTs);
+                }
 
-            if (totalElements == 0) {
-                return new PageData<>();
+                if (totalElements == 0) {
+                    return new PageData<>();
+                }
+            }
+            if (keyset) {
+                String keysetCondition = buildKeysetCondition(ctx, pageLink, sortOrderMappingOpt.get());
+                fromClauseData = String.format("%s %s %s", fromClauseData, StringUtils.isEmpty(textSearchQuery) ? "WHERE" : "AND", keysetCondition);
             }
             String dataQuery = String.format("select * %s", fromClauseData);
 
             EntityDataSortOrder sortOrder = pageLink.getSortOrder();
             if (sortOrder != null) {
-                Optional<EntityKeyMapping> sortOrderMappingOpt = mappings.stream().filter(EntityKeyMapping::isSortOrder).findFirst();
                 if (sortOrderMappingOpt.isPresent()) {
                     EntityKeyMapping sortOrderMapping = sortOrderMappingOpt.get();
                     String direction = sortOrder.getDirection() == EntityDataSortOrder.Direction.ASC ? "asc" : "desc";
@@ -452,19 +465,45 @@ public class DefaultEntityQueryRepository implements EntityQueryRepository {
             }
             int startIndex = pageLink.getPageSize() * pageLink.getPage();
             if (pageLink.getPageSize() > 0) {
-                dataQuery = String.format("%s limit %s offset %s", dataQuery, pageLink.getPageSize(), startIndex);
+                // one more row is fetched to find out whether there is the next page without the count query
+                int limit = pageLink.isEstimateTotal() ? pageLink.getPageSize() + 1 : pageLink.getPageSize();
+                dataQuery = String.format("%s limit %s offset %s", dataQuery, limit, keyset ? 0 : startIndex);
             }
             startTs = System.currentTimeMillis();
             List<Map<String, Object>> rows;
             try {
                 rows = jdbcTemplate.queryForList(dataQuery, ctx);
             } finally {
-                queryLog.logQuery(ctx, countQuery, System.currentTimeMillis() - startTs);
+                queryLog.logQuery(ctx, dataQuery, System.currentTimeMillis() - startTs);
+            }
+            if (pageLink.isEstimateTotal()) {
+                return EntityDataAdapter.createEntityData(pageLink, selectionMapping, rows);
             }
             return EntityDataAdapter.createEntityData(pageLink, selectionMapping, rows, totalElements);
         });
     }
 
+    /**
+     * The keyset pagination is used for the entity fields which values are never null, so the page can start after
+     * the (sort value, id) of the last entity of the previous page in the same order as the offset pagination.
+     */
+    private boolean isKeysetPagination(EntityFilter entityFilter, EntityDataPageLink pageLink, Optional<EntityKeyMapping> sortOrderMappingOpt) {
+        if (pageLink.getAfterSortValue() == null || pageLink.getAfterEntityId() == null || pageLink.getPageSize() <= 0
+                || !sortOrderMappingOpt.isPresent() || entityFilter.getType() == EntityFilterType.RELATIONS_QUERY) {
+            return false;
+        }
+        EntityKey sortKey = sortOrderMappingOpt.get().getEntityKey();
+        return sortKey.getType() == EntityKeyType.ENTITY_FIELD && KEYSET_SORT_FIELDS.contains(sortKey.getKey());
+    }
+
+    private String buildKeysetCondition(QueryContext ctx, EntityDataPageLink pageLink, EntityKeyMapping sortOrderMapping) {
+        ctx.addStringParameter("afterSortValue", pageLink.getAfterSortValue());
+        ctx.addUuidParameter("afterEntityId", pageLink.getAfterEntityId());
+        String operator = pageLink.getSortOrder().getDirection() == EntityDataSortOrder.Direction.ASC ? ">" : "<";
+        String alias = sortOrderMapping.getValueAlias();
+        return String.format("(%s %s :afterSortValue OR (%s = :afterSortValue AND result.id %s :afterEntityId))", alias, operator, alias, operator);
+    }
+
     private String buildEntityWhere(QueryContext ctx, EntityFilter entityFilter, List<EntityKeyMapping> entityFieldsFilters) {
         String permissionQuery = this.buildPermissionQuery(ctx, entityFilter);
         String entityFilterQuery = this.buildEntityFilterQuery(ctx, entityFilter);
@@ -47,6 +47,24 @@ public class EntityDataAdapter {
         return new PageData<>(entitiesData, totalPages, totalElements, hasNext);
     }
 
+    /**
+     * Creates the page without the exact count. The rows contain one extra row if there is the next page,
+     * the totals are the lower bound derived from the rows.
+     */
+    public static PageData<EntityData> createEntityData(EntityDataPageLink pageLink,
+                                                        List<EntityKeyMapping> selectionMapping,
+                                                        List<Map<String, Object>> rows) {
+        boolean hasNext = pageLink.getPageSize() > 0 && rows.size() > pageLink.getPageSize();
+        if (hasNext) {
+            rows = rows.subList(0, pageLink.getPageSize());
+        }
+        int startIndex = pageLink.getPageSize() * pageLink.getPage();
+        int totalElements = startIndex + rows.size() + (hasNext ? 1 : 0);
+        int totalPages = pageLink.getPageSize() > 0 ? pageLink.getPage() + (hasNext ? 2 : 1) : 1;
+        List<EntityData> entitiesData = convertListToEntityData(rows, selectionMapping);
+        return new PageData<>(entitiesData, totalPages, totalElements, hasNext);
+    }
+
     private static List<EntityData> convertListToEntityData(List<Map<String, Object>> result, List<EntityKeyMapping> selectionMapping) {
         return result.stream().map(row -> toEntityData(row, selectionMapping)).collect(Collectors.toList());
     }
@@ -27,6 +27,7 @@ import org.thingsboard.server.common.data.kv.ReadTsKvQuery;
 import org.thingsboard.server.common.data.kv.TsKvEntry;
 import org.thingsboard.server.dao.model.ModelConstants;
 import org.thingsboard.server.dao.sql.ScheduledLogExecutorComponent;
+import org.thingsboard.server.dao.sql.TbSqlQueueOverflowStrategy;
 
 import javax.annotation.Nullable;
 import java.sql.Connection;
@@ -64,6 +65,18 @@ public abstract class AbstractSqlTimeseriesDao extends BaseAbstractSqlTimeseries
     @Value("${sql.batch_sort:false}")
     protected boolean batchSortEnabled;
 
+    @Value("${sql.ts.batch_max_queue_size:0}")
+    protected int tsMaxQueueSize;
+
+    @Value("${sql.batch_overflow_strategy:BLOCK}")
+    protected TbSqlQueueOverflowStrategy overflowStrategy;
+
+    @Value("${sql.batch_overflow_block_timeout_ms:1000}")
+    protected long overflowBlockTimeoutMs;
+
+    @Value("${sql.batch_adaptive:false}")
+    protected boolean adaptiveBatching;
+
     @Value("${sql.ttl.ts.ts_key_value_ttl:0}")
     private long systemTtl;
 
@@ -23,7 +23,9 @@ import com.google.common.util.concurrent.MoreExecutors;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
 import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
 import org.thingsboard.server.common.data.id.DeviceProfileId;
 import org.thingsboard.server.common.data.id.EntityId;
 import org.thingsboard.server.common.data.id.TenantId;
@@ -34,17 +36,24 @@ import org.thingsboard.server.common.data.kv.DeleteTsKvQuery;
 import org.thingsboard.server.common.data.kv.ReadTsKvQuery;
 import org.thingsboard.server.common.data.kv.StringDataEntry;
 import org.thingsboard.server.common.data.kv.TsKvEntry;
+import org.thingsboard.server.common.stats.DefaultCounter;
 import org.thingsboard.server.common.stats.StatsFactory;
 import org.thingsboard.server.dao.DaoUtil;
+import org.thingsboard.server.dao.cache.CacheExecutorService;
 import org.thingsboard.server.dao.model.sql.AbstractTsKvEntity;
 import org.thingsboard.server.dao.model.sqlts.latest.TsKvLatestCompositeKey;
 import org.thingsboard.server.dao.model.sqlts.latest.TsKvLatestEntity;
 import org.thingsboard.server.dao.sql.ScheduledLogExecutorComponent;
 import org.thingsboard.server.dao.sql.TbSqlBlockingQueueParams;
 import org.thingsboard.server.dao.sql.TbSqlBlockingQueueWrapper;
+import org.thingsboard.server.dao.sql.TbSqlQueueOverflowStrategy;
 import org.thingsboard.server.dao.sqlts.insert.latest.InsertLatestTsRepository;
 import org.thingsboard.server.dao.sqlts.latest.SearchTsKvLatestRepository;
 import org.thingsboard.server.dao.sqlts.latest.TsKvLatestRepository;
+import org.thingsboard.server.dao.sqlts.latest.TsLatestCacheKey;
+import org.thingsboard.server.dao.sqlts.latest.TsLatestCacheExecutor;
+import org.thingsboard.server.dao.sqlts.latest.TsLatestCacheWrapper;
+import org.thingsboard.server.dao.sqlts.latest.TsLatestPendingValues;
 import org.thingsboard.server.dao.timeseries.SimpleListenableFuture;
 import org.thingsboard.server.dao.timeseries.TimeseriesLatestDao;
 import org.thingsboard.server.dao.util.SqlTsLatestAnyDao;
@@ -53,13 +62,16 @@ import javax.annotation.Nullable;
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
@@ -69,6 +81,9 @@ import java.util.stream.Collectors;
 public class SqlTimeseriesLatestDao extends BaseAbstractSqlTimeseriesDao implements TimeseriesLatestDao {
 
     private static final String DESC_ORDER = "DESC";
+    private static final String CACHE_STATS_NAME = "ts.latest.cache";
+    private static final String LOCAL_CACHE_TYPE = "caffeine";
+    private static final int CACHE_LANES_COUNT = 16;
 
     @Autowired
     private TsKvLatestRepository tsKvLatestRepository;
@@ -96,17 +111,55 @@ public class SqlTimeseriesLatestDao extends BaseAbstractSqlTimeseriesDao impleme
     @Value("${sql.ts_latest.batch_threads:4}")
     private int tsLatestBatchThreads;
 
+    @Value("${sql.ts_latest.batch_max_queue_size:0}")
+    private int tsLatestMaxQueueSize;
+
+    @Value("${sql.batch_overflow_strategy:BLOCK}")
+    private TbSqlQueueOverflowStrategy overflowStrategy;
+
+    @Value("${sql.batch_overflow_block_timeout_ms:1000}")
+    private long overflowBlockTimeoutMs;
+
+    @Value("${sql.batch_adaptive:false}")
+    private boolean adaptiveBatching;
+
     @Value("${sql.batch_sort:false}")
     protected boolean batchSortEnabled;
 
+    @Value("${sql.ts_latest.update_by_latest_ts:true}")
+    private boolean updateByLatestTs;
+
     @Autowired
     protected ScheduledLogExecutorComponent logExecutor;
 
     @Autowired
     private StatsFactory statsFactory;
 
+    @Autowired(required = false)
+    private TsLatestCacheWrapper cacheWrapper;
+
+    @Autowired
+    private CacheExecutorService cacheExecutorService;
+
+    @Value("${cache.type:caffeine}")
+    private String cacheType;
+
+    private final TsLatestPendingValues pendingValues = new TsLatestPendingValues();
+    private TsLatestCacheExecutor cacheExecutor;
+    private DefaultCounter hitCounter;
+    private DefaultCounter missCounter;
+
     @PostConstruct
     protected void init() {
+        if (cacheWrapper != null) {
+            Executor executor = StringUtils.isEmpty(cacheType) || LOCAL_CACHE_TYPE.equals(cacheType) ?
+                    MoreExecutors.directExecutor() : cacheExecutorService;
+            cacheExecutor = new TsLatestCacheExecutor(executor, CACHE_LANES_COUNT);
+            log.info("Latest timeseries cache is enabled, cache type: {}", cacheType);
+        }
+        hitCounter = statsFactory.createDefaultCounter(CACHE_STATS_NAME, "result", "hit");
+        missCounter = statsFactory.createDefaultCounter(CACHE_STATS_NAME, "result", "miss");
+
         TbSqlBlockingQueueParams tsLatestParams = TbSqlBlockingQueueParams.builder()
                 .logName("TS Latest")
                 .batchSize(tsLatestBatchSize)
@@ -114,6 +167,10 @@ public class SqlTimeseriesLatestDao extends BaseAbstractSqlTimeseriesDao impleme
                 .statsPrintIntervalMs(tsLatestStatsPrintIntervalMs)
                 .statsNamePrefix("ts.latest")
                 .batchSortEnabled(false)
+                .maxQueueSize(tsLatestMaxQueueSize)
+                .overflowStrategy(overflowStrategy)
+                .overflowBlockTimeoutMs(overflowBlockTimeoutMs)
+                .adaptiveBatching(adaptiveBatching)
                 .build();
 
         java.util.function.Function<TsKvLatestEntity, Integer> hashcodeFunction = entity -> entity.getEntityId().hashCode();
@@ -196,6 +253,21 @@ public class SqlTimeseriesLatestDao extends BaseAbstractSqlTimeseriesDao impleme
     }
 
     protected ListenableFuture<TsKvEntry> getFindLatestFuture(EntityId entityId, String key) {
+        TsKvEntry pendingEntry = pendingValues.get(entityId, key);
+        if (pendingEntry != null) {
+            hitCounter.increment();
+            return Futures.immediateFuture(pendingEntry);
+        }
+        TsLatestCacheKey cacheKey = new TsLatestCacheKey(entityId, key);
+        if (cacheWrapper != null) {
+            Cache.ValueWrapper cachedEntry = cacheWrapper.get(cacheKey);
+            if (cachedEntry != null) {
+                hitCounter.increment();
+                TsKvEntry cachedTsKvEntry = (TsKvEntry) cachedEntry.get();
+                return Futures.immediateFuture(cachedTsKvEntry != null ? cachedTsKvEntry : newEmptyEntry(key));
+            }
+        }
+        missCounter.increment();
         TsKvLatestCompositeKey compositeKey =
                 new TsKvLatestCompositeKey(
                         entityId.getId(),
@@ -207,11 +279,19 @@ public class SqlTimeseriesLatestDao extends BaseAbstractSqlTimeseriesDao impleme
             tsKvLatestEntity.setStrKey(key);
             result = DaoUtil.getData(tsKvLatestEntity);
         } else {
-            result = new BasicTsKvEntry(System.currentTimeMillis(), new StringDataEntry(key, null));
+            result = newEmptyEntry(key);
+        }
+        if (cacheWrapper != null) {
+            TsKvEntry cachedEntry = entry.isPresent() ? result : null;
+            cacheExecutor.execute(cacheKey, () -> cacheWrapper.putIfAbsent(cacheKey, cachedEntry));
         }
         return Futures.immediateFuture(result);
     }
 
+    private static TsKvEntry newEmptyEntry(String key) {
+        return new BasicTsKvEntry(System.currentTimeMillis(), new StringDataEntry(key, null));
+    }
+
     protected ListenableFuture<Void> getRemoveLatestFuture(TenantId tenantId, EntityId entityId, DeleteTsKvQuery query) {
         ListenableFuture<TsKvEntry> latestFuture = getFindLatestFuture(entityId, query.getKey());
 
@@ -227,6 +307,7 @@ public class SqlTimeseriesLatestDao extends BaseAbstractSqlTimeseriesDao impleme
                 latestEntity.setKey(getOrSaveKeyId(query.getKey()));
                 return service.submit(() -> {
                     tsKvLatestRepository.delete(latestEntity);
+                    evictFromCache(new TsLatestCacheKey(entityId, query.getKey()));
                     return null;
                 });
             }
@@ -264,9 +345,22 @@ public class SqlTimeseriesLatestDao extends BaseAbstractSqlTimeseriesDao impleme
     }
 
     protected ListenableFuture<List<TsKvEntry>> getFindAllLatestFuture(EntityId entityId) {
-        return Futures.immediateFuture(
-                DaoUtil.convertDataList(Lists.newArrayList(
-                        searchTsKvLatestRepository.findAllByEntityId(entityId.getId()))));
+        List<TsKvEntry> entries = DaoUtil.convertDataList(Lists.newArrayList(
+                searchTsKvLatestRepository.findAllByEntityId(entityId.getId())));
+        if (cacheWrapper != null && !entries.isEmpty()) {
+            entries.forEach(entry -> {
+                TsLatestCacheKey cacheKey = new TsLatestCacheKey(entityId, entry.getKey());
+                cacheExecutor.execute(cacheKey, () -> cacheWrapper.putIfAbsent(cacheKey, entry));
+            });
+        }
+        Collection<TsKvEntry> pendingEntries = pendingValues.getAll(entityId);
+        if (pendingEntries.isEmpty()) {
+            return Futures.immediateFuture(entries);
+        }
+        Map<String, TsKvEntry> mergedEntries = new LinkedHashMap<>();
+        entries.forEach(entry -> mergedEntries.put(entry.getKey(), entry));
+        pendingEntries.forEach(entry -> mergedEntries.put(entry.getKey(), entry));
+        return Futures.immediateFuture(new ArrayList<>(mergedEntries.values()));
     }
 
     protected ListenableFuture<Void> getSaveLatestFuture(EntityId entityId, TsKvEntry tsKvEntry) {
@@ -280,7 +374,40 @@ public class SqlTimeseriesLatestDao extends BaseAbstractSqlTimeseriesDao impleme
         latestEntity.setBooleanValue(tsKvEntry.getBooleanValue().orElse(null));
         latestEntity.setJsonValue(tsKvEntry.getJsonValue().orElse(null));
 
-        return tsLatestQueue.add(latestEntity);
+        pendingValues.put(entityId, tsKvEntry, updateByLatestTs);
+        TsLatestCacheKey cacheKey = new TsLatestCacheKey(entityId, tsKvEntry.getKey());
+        if (cacheWrapper != null) {
+            cacheExecutor.execute(cacheKey, () -> {
+                // The newest pending value wins if the concurrent saves of the same key submit their cache puts in the reverse order
+                TsKvEntry pendingEntry = pendingValues.get(entityId, tsKvEntry.getKey());
+                TsKvEntry cachedEntry = pendingEntry != null ? pendingEntry : tsKvEntry;
+                if (updateByLatestTs) {
+                    cacheWrapper.putIfNotOlder(cacheKey, cachedEntry);
+                } else {
+                    cacheWrapper.put(cacheKey, cachedEntry);
+                }
+            });
+        }
+        ListenableFuture<Void> future = tsLatestQueue.add(latestEntity);
+        Futures.addCallback(future, new FutureCallback<Void>() {
+            @Override
+            public void onSuccess(@Nullable Void result) {
+                pendingValues.remove(entityId, tsKvEntry);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                pendingValues.remove(entityId, tsKvEntry);
+                evictFromCache(cacheKey);
+            }
+        }, MoreExecutors.directExecutor());
+        return future;
+    }
+
+    private void evictFromCache(TsLatestCacheKey cacheKey) {
+        if (cacheWrapper != null) {
+            cacheExecutor.execute(cacheKey, () -> cacheWrapper.evict(cacheKey));
+        }
     }
 
 }
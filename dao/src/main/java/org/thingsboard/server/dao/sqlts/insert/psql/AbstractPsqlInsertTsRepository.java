@@ -0,0 +1,221 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.dao.sqlts.insert.psql;
+
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.PGCopyOutputStream;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.transaction.annotation.Transactional;
+import org.thingsboard.server.dao.model.sql.AbstractTsKvEntity;
+import org.thingsboard.server.dao.sqlts.insert.AbstractInsertRepository;
+import org.thingsboard.server.dao.sqlts.insert.InsertTsRepository;
+import org.thingsboard.server.dao.sqlts.insert.TsInsertStrategy;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Saves ts_kv entities either with a JDBC batch of upserts or with the PostgreSQL binary COPY protocol.
+ * <p>
+ * The COPY strategy streams the batch into a temporary staging table, which is not WAL-logged and is private to the connection,
+ * and merges it into ts_kv with a single set-based upsert. The staging rows are deleted on commit of the repository transaction. Every value is sent once instead of twice
+ * and the server plans one statement per batch instead of one per row.
+ */
+@Slf4j
+public abstract class AbstractPsqlInsertTsRepository<T extends AbstractTsKvEntity> extends AbstractInsertRepository implements InsertTsRepository<T> {
+
+    private static final String INSERT_ON_CONFLICT_DO_UPDATE = "INSERT INTO ts_kv (entity_id, key, ts, bool_v, str_v, long_v, dbl_v, json_v) VALUES (?, ?, ?, ?, ?, ?, ?, cast(? AS json)) " +
+            "ON CONFLICT (entity_id, key, ts) DO UPDATE SET bool_v = ?, str_v = ?, long_v = ?, dbl_v = ?, json_v = cast(? AS json);";
+
+    private static final String CREATE_STAGING_TABLE = "CREATE TEMP TABLE IF NOT EXISTS ts_kv_staging " +
+            "(seq int, entity_id uuid, key int, ts bigint, bool_v boolean, str_v varchar, long_v bigint, dbl_v double precision, json_v text) " +
+            "ON COMMIT DELETE ROWS;";
+
+    private static final String COPY_TO_STAGING_TABLE = "COPY ts_kv_staging (seq, entity_id, key, ts, bool_v, str_v, long_v, dbl_v, json_v) FROM STDIN (FORMAT binary)";
+
+    // DISTINCT ON keeps the last value of the same (entity_id, key, ts), since one upsert can not update the same row twice.
+    private static final String MERGE_FROM_STAGING_TABLE = "INSERT INTO ts_kv (entity_id, key, ts, bool_v, str_v, long_v, dbl_v, json_v) " +
+            "SELECT DISTINCT ON (entity_id, key, ts) entity_id, key, ts, bool_v, str_v, long_v, dbl_v, cast(json_v AS json) FROM ts_kv_staging " +
+            "ORDER BY entity_id, key, ts, seq DESC " +
+            "ON CONFLICT (entity_id, key, ts) DO UPDATE SET bool_v = EXCLUDED.bool_v, str_v = EXCLUDED.str_v, long_v = EXCLUDED.long_v, " +
+            "dbl_v = EXCLUDED.dbl_v, json_v = EXCLUDED.json_v;";
+
+    private static final byte[] COPY_SIGNATURE = {'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0};
+    private static final short COPY_FIELDS_COUNT = 9;
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    @Value("${sql.ts.insert_strategy:BATCH}")
+    private TsInsertStrategy insertStrategy;
+
+    private volatile boolean copySupported = true;
+
+    // Subclass level @Transactional does not cover methods declared here, the staging table relies on this transaction
+    @Override
+    @Transactional
+    public void saveOrUpdate(List<T> entities) {
+        if (insertStrategy == TsInsertStrategy.COPY && copySupported) {
+            jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+                PGConnection pgConnection = unwrap(connection);
+                if (pgConnection != null) {
+                    copyAndMerge(connection, pgConnection, entities);
+                } else {
+                    batchUpdate(entities);
+                }
+                return null;
+            });
+        } else {
+            batchUpdate(entities);
+        }
+    }
+
+    private PGConnection unwrap(Connection connection) {
+        try {
+            return connection.unwrap(PGConnection.class);
+        } catch (SQLException e) {
+            log.warn("COPY insert strategy is not supported by the JDBC driver, going to use batch insert", e);
+            copySupported = false;
+            return null;
+        }
+    }
+
+    private void copyAndMerge(Connection connection, PGConnection pgConnection, List<T> entities) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(CREATE_STAGING_TABLE);
+        }
+        try (DataOutputStream out = new DataOutputStream(new PGCopyOutputStream(pgConnection, COPY_TO_STAGING_TABLE, COPY_BUFFER_SIZE))) {
+            writeCopyHeader(out);
+            for (int i = 0; i < entities.size(); i++) {
+                writeCopyRow(out, i, entities.get(i));
+            }
+            out.writeShort(-1);
+        } catch (IOException e) {
+            throw new SQLException("Failed to copy ts_kv entities to staging table", e);
+        }
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate(MERGE_FROM_STAGING_TABLE);
+        }
+    }
+
+    private static void writeCopyHeader(DataOutputStream out) throws IOException {
+        out.write(COPY_SIGNATURE);
+        out.writeInt(0);
+        out.writeInt(0);
+    }
+
+    private void writeCopyRow(DataOutputStream out, int seq, T entity) throws IOException {
+        out.writeShort(COPY_FIELDS_COUNT);
+        out.writeInt(4);
+        out.writeInt(seq);
+        UUID entityId = entity.getEntityId();
+        out.writeInt(16);
+        out.writeLong(entityId.getMostSignificantBits());
+        out.writeLong(entityId.getLeastSignificantBits());
+        out.writeInt(4);
+        out.writeInt(entity.getKey());
+        out.writeInt(8);
+        out.writeLong(entity.getTs());
+        if (entity.getBooleanValue() != null) {
+            out.writeInt(1);
+            out.writeByte(entity.getBooleanValue() ? 1 : 0);
+        } else {
+            out.writeInt(-1);
+        }
+        writeCopyString(out, replaceNullChars(entity.getStrValue()));
+        if (entity.getLongValue() != null) {
+            out.writeInt(8);
+            out.writeLong(entity.getLongValue());
+        } else {
+            out.writeInt(-1);
+        }
+        if (entity.getDoubleValue() != null) {
+            out.writeInt(8);
+            out.writeDouble(entity.getDoubleValue());
+        } else {
+            out.writeInt(-1);
+        }
+        writeCopyString(out, replaceNullChars(entity.getJsonValue()));
+    }
+
+    private static void writeCopyString(DataOutputStream out, String value) throws IOException {
+        if (value != null) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        } else {
+            out.writeInt(-1);
+        }
+    }
+
+    private void batchUpdate(List<T> entities) {
+        jdbcTemplate.batchUpdate(INSERT_ON_CONFLICT_DO_UPDATE, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                T tsKvEntity = entities.get(i);
+                ps.setObject(1, tsKvEntity.getEntityId());
+                ps.setInt(2, tsKvEntity.getKey());
+                ps.setLong(3, tsKvEntity.getTs());
+
+                if (tsKvEntity.getBooleanValue() != null) {
+                    ps.setBoolean(4, tsKvEntity.getBooleanValue());
+                    ps.setBoolean(9, tsKvEntity.getBooleanValue());
+                } else {
+                    ps.setNull(4, Types.BOOLEAN);
+                    ps.setNull(9, Types.BOOLEAN);
+                }
+
+                ps.setString(5, replaceNullChars(tsKvEntity.getStrValue()));
+                ps.setString(10, replaceNullChars(tsKvEntity.getStrValue()));
+
+
+                if (tsKvEntity.getLongValue() != null) {
+                    ps.setLong(6, tsKvEntity.getLongValue());
+                    ps.setLong(11, tsKvEntity.getLongValue());
+                } else {
+                    ps.setNull(6, Types.BIGINT);
+                    ps.setNull(11, Types.BIGINT);
+                }
+
+                if (tsKvEntity.getDoubleValue() != null) {
+                    ps.setDouble(7, tsKvEntity.getDoubleValue());
+                    ps.setDouble(12, tsKvEntity.getDoubleValue());
+                } else {
+                    ps.setNull(7, Types.DOUBLE);
+                    ps.setNull(12, Types.DOUBLE);
+                }
+
+                ps.setString(8, replaceNullChars(tsKvEntity.getJsonValue()));
+                ps.setString(13, replaceNullChars(tsKvEntity.getJsonValue()));
+            }
+
+            @Override
+            public int getBatchSize() {
+                return entities.size();
+            }
+        });
+    }
+
+}
@@ -15,76 +15,16 @@
  */
 package org.thingsboard.server.dao.sqlts.insert.timescale;
 
-import org.springframework.jdbc.core.BatchPreparedStatementSetter;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 import org.thingsboard.server.dao.model.sqlts.timescale.ts.TimescaleTsKvEntity;
-import org.thingsboard.server.dao.sqlts.insert.AbstractInsertRepository;
-import org.thingsboard.server.dao.sqlts.insert.InsertTsRepository;
+import org.thingsboard.server.dao.sqlts.insert.psql.AbstractPsqlInsertTsRepository;
 import org.thingsboard.server.dao.util.PsqlDao;
 import org.thingsboard.server.dao.util.TimescaleDBTsDao;
 
-import java.sql.PreparedStatement;
-import java.sql.SQLException;
-import java.sql.Types;
-import java.util.List;
-
 @TimescaleDBTsDao
 @PsqlDao
 @Repository
 @Transactional
-public class TimescaleInsertTsRepository extends AbstractInsertRepository implements InsertTsRepository<TimescaleTsKvEntity> {
-
-    private static final String INSERT_OR_UPDATE =
-            "INSERT INTO ts_kv (entity_id, key, ts, bool_v, str_v, long_v, dbl_v, json_v) VALUES(?, ?, ?, ?, ?, ?, ?, cast(? AS json)) " +
-                    "ON CONFLICT (entity_id, key, ts) DO UPDATE SET bool_v = ?, str_v = ?, long_v = ?, dbl_v = ?, json_v = cast(? AS json);";
-
-    @Override
-    public void saveOrUpdate(List<TimescaleTsKvEntity> entities) {
-        jdbcTemplate.batchUpdate(INSERT_OR_UPDATE, new BatchPreparedStatementSetter() {
-            @Override
-            public void setValues(PreparedStatement ps, int i) throws SQLException {
-                TimescaleTsKvEntity tsKvEntity = entities.get(i);
-                ps.setObject(1, tsKvEntity.getEntityId());
-                ps.setInt(2, tsKvEntity.getKey());
-                ps.setLong(3, tsKvEntity.getTs());
-
-                if (tsKvEntity.getBooleanValue() != null) {
-                    ps.setBoolean(4, tsKvEntity.getBooleanValue());
-                    ps.setBoolean(9, tsKvEntity.getBooleanValue());
-                } else {
-                    ps.setNull(4, Types.BOOLEAN);
-                    ps.setNull(9, Types.BOOLEAN);
-                }
-
-                ps.setString(5, replaceNullChars(tsKvEntity.getStrValue()));
-                ps.setString(10, replaceNullChars(tsKvEntity.getStrValue()));
-
-
-                if (tsKvEntity.getLongValue() != null) {
-                    ps.setLong(6, tsKvEntity.getLongValue());
-                    ps.setLong(11, tsKvEntity.getLongValue());
-                } else {
-                    ps.setNull(6, Types.BIGINT);
-                    ps.setNull(11, Types.BIGINT);
-                }
-
-                if (tsKvEntity.getDoubleValue() != null) {
-                    ps.setDouble(7, tsKvEntity.getDoubleValue());
-                    ps.setDouble(12, tsKvEntity.getDoubleValue());
-                } else {
-                    ps.setNull(7, Types.DOUBLE);
-                    ps.setNull(12, Types.DOUBLE);
-                }
-
-                ps.setString(8, replaceNullChars(tsKvEntity.getJsonValue()));
-                ps.setString(13, replaceNullChars(tsKvEntity.getJsonValue()));
-            }
-
-            @Override
-            public int getBatchSize() {
-                return entities.size();
-            }
-        });
-    }
+public class TimescaleInsertTsRepository extends AbstractPsqlInsertTsRepository<TimescaleTsKvEntity> {
 }
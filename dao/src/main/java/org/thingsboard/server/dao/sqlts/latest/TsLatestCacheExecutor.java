@@ -0,0 +1,43 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.dao.sqlts.latest;
+
+import com.google.common.util.concurrent.MoreExecutors;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Runs the cache updates of the same latest value key one by one in the submission order, while the updates of
+ * the different keys run in parallel on the delegate executor. So a put and an evict of the key are never reordered.
+ */
+public class TsLatestCacheExecutor {
+
+    private final Executor[] lanes;
+
+    public TsLatestCacheExecutor(Executor delegate, int lanesCount) {
+        if (lanesCount <= 0) {
+            throw new IllegalArgumentException("Lanes count must be positive: " + lanesCount);
+        }
+        this.lanes = new Executor[lanesCount];
+        for (int i = 0; i < lanesCount; i++) {
+            lanes[i] = MoreExecutors.newSequentialExecutor(delegate);
+        }
+    }
+
+    public void execute(TsLatestCacheKey cacheKey, Runnable task) {
+        lanes[Math.floorMod(cacheKey.hashCode(), lanes.length)].execute(task);
+    }
+}
@@ -0,0 +1,104 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.dao.sqlts.latest;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Service;
+import org.thingsboard.server.common.data.kv.TsKvEntry;
+
+import java.util.concurrent.ConcurrentMap;
+
+import static org.thingsboard.server.common.data.CacheConstants.TS_LATEST_CACHE;
+
+@Service
+@ConditionalOnProperty(prefix = "cache.ts_latest", value = "enabled", havingValue = "true")
+@Slf4j
+public class TsLatestCacheWrapper {
+    private final Cache tsLatestCache;
+
+    public TsLatestCacheWrapper(CacheManager cacheManager) {
+        this.tsLatestCache = cacheManager.getCache(TS_LATEST_CACHE);
+        if (tsLatestCache == null) {
+            throw new IllegalStateException("Cache '" + TS_LATEST_CACHE + "' is not configured!");
+        }
+    }
+
+    public Cache.ValueWrapper get(TsLatestCacheKey cacheKey) {
+        try {
+            return tsLatestCache.get(cacheKey);
+        } catch (Exception e) {
+            log.debug("Failed to retrieve element from cache for key {}. Reason - {}.", cacheKey, e.getMessage());
+            return null;
+        }
+    }
+
+    public void put(TsLatestCacheKey cacheKey, TsKvEntry tsKvEntry) {
+        try {
+            tsLatestCache.put(cacheKey, tsKvEntry);
+        } catch (Exception e) {
+            log.debug("Failed to put element to cache for key {}. Reason - {}.", cacheKey, e.getMessage());
+        }
+    }
+
+    /**
+     * Does not replace a cached value with a greater ts. The check and the put are atomic for the local caches,
+     * the puts of the same key to the remote cache should be serialized by the caller.
+     */
+    @SuppressWarnings("unchecked")
+    public void putIfNotOlder(TsLatestCacheKey cacheKey, TsKvEntry tsKvEntry) {
+        Object nativeCache = tsLatestCache.getNativeCache();
+        ConcurrentMap<Object, Object> localCache = null;
+        if (nativeCache instanceof com.github.benmanes.caffeine.cache.Cache) {
+            localCache = ((com.github.benmanes.caffeine.cache.Cache<Object, Object>) nativeCache).asMap();
+        } else if (nativeCache instanceof ConcurrentMap) {
+            localCache = (ConcurrentMap<Object, Object>) nativeCache;
+        }
+        if (localCache != null) {
+            localCache.compute(cacheKey, (key, cachedValue) -> isOlder(tsKvEntry, cachedValue) ? cachedValue : tsKvEntry);
+            return;
+        }
+        Cache.ValueWrapper cachedEntry = get(cacheKey);
+        if (cachedEntry == null || !isOlder(tsKvEntry, cachedEntry.get())) {
+            put(cacheKey, tsKvEntry);
+        }
+    }
+
+    private static boolean isOlder(TsKvEntry tsKvEntry, Object cachedValue) {
+        return cachedValue instanceof TsKvEntry && tsKvEntry.getTs() < ((TsKvEntry) cachedValue).getTs();
+    }
+
+    /**
+     * Used for the values loaded from the database, so they never overwrite a value put by a concurrent save.
+     */
+    public void putIfAbsent(TsLatestCacheKey cacheKey, TsKvEntry tsKvEntry) {
+        try {
+            tsLatestCache.putIfAbsent(cacheKey, tsKvEntry);
+        } catch (Exception e) {
+            log.debug("Failed to put element to cache for key {}. Reason - {}.", cacheKey, e.getMessage());
+        }
+    }
+
+    public void evict(TsLatestCacheKey cacheKey) {
+        try {
+            tsLatestCache.evict(cacheKey);
+        } catch (Exception e) {
+            log.debug("Failed to evict element from cache for key {}. Reason - {}.", cacheKey, e.getMessage());
+        }
+    }
+}
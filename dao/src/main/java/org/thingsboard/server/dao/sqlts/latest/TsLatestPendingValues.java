@@ -0,0 +1,76 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.dao.sqlts.latest;
+
+import org.thingsboard.server.common.data.id.EntityId;
+import org.thingsboard.server.common.data.kv.TsKvEntry;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Latest values that are added to the batch insert queue but are not persisted yet.
+ * Reads check these values first, so a value saved a moment ago is visible before the queue is flushed.
+ */
+public class TsLatestPendingValues {
+
+    private final ConcurrentMap<EntityId, ConcurrentMap<String, TsKvEntry>> values = new ConcurrentHashMap<>();
+
+    public void put(EntityId entityId, TsKvEntry tsKvEntry) {
+        put(entityId, tsKvEntry, false);
+    }
+
+    /**
+     * If updateByLatestTs is set, the value does not replace a pending value with a greater ts,
+     * the same way the database keeps the value with the greatest ts.
+     */
+    public void put(EntityId entityId, TsKvEntry tsKvEntry, boolean updateByLatestTs) {
+        values.compute(entityId, (id, entityValues) -> {
+            if (entityValues == null) {
+                entityValues = new ConcurrentHashMap<>();
+            }
+            if (updateByLatestTs) {
+                entityValues.merge(tsKvEntry.getKey(), tsKvEntry, (existing, value) -> value.getTs() >= existing.getTs() ? value : existing);
+            } else {
+                entityValues.put(tsKvEntry.getKey(), tsKvEntry);
+            }
+            return entityValues;
+        });
+    }
+
+    /**
+     * Removes the value only if it was not replaced by a newer one that is still waiting in the queue.
+     */
+    public void remove(EntityId entityId, TsKvEntry tsKvEntry) {
+        values.computeIfPresent(entityId, (id, entityValues) -> {
+            entityValues.remove(tsKvEntry.getKey(), tsKvEntry);
+            return entityValues.isEmpty() ? null : entityValues;
+        });
+    }
+
+    public TsKvEntry get(EntityId entityId, String key) {
+        Map<String, TsKvEntry> entityValues = values.get(entityId);
+        return entityValues != null ? entityValues.get(key) : null;
+    }
+
+    public Collection<TsKvEntry> getAll(EntityId entityId) {
+        Map<String, TsKvEntry> entityValues = values.get(entityId);
+        return entityValues != null ? entityValues.values() : Collections.emptyList();
+    }
+}
@@ -26,6 +26,8 @@ import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Component;
 import org.thingsboard.server.common.data.id.EntityId;
 import org.thingsboard.server.common.data.id.TenantId;
+import org.thingsboard.server.common.data.kv.Aggregation;
+import org.thingsboard.server.common.data.kv.ReadTsKvQuery;
 import org.thingsboard.server.common.data.kv.TsKvEntry;
 import org.thingsboard.server.dao.model.sqlts.ts.TsKvEntity;
 import org.thingsboard.server.dao.sqlts.AbstractChunkedAggregationTimeseriesDao;
@@ -44,11 +46,15 @@ import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
 
 @Component
 @Slf4j
@@ -64,9 +70,15 @@ public class JpaPsqlTimeseriesDao extends AbstractChunkedAggregationTimeseriesDa
 
     private SqlTsPartitionDate tsFormat;
 
+    @Autowired
+    private PsqlAggregationRepository aggregationRepository;
+
     @Value("${sql.postgres.ts_key_value_partitioning:MONTHS}")
     private String partitioning;
 
+    @Value("${sql.ts.bucketed_aggregation:false}")
+    private boolean bucketedAggregation;
+
 
     @Override
     protected void init() {
@@ -80,6 +92,59 @@ public class JpaPsqlTimeseriesDao extends AbstractChunkedAggregationTimeseriesDa
         }
     }
 
+    @Override
+    public ListenableFuture<List<TsKvEntry>> findAllAsync(TenantId tenantId, EntityId entityId, List<ReadTsKvQuery> queries) {
+        if (!bucketedAggregation) {
+            return super.findAllAsync(tenantId, entityId, queries);
+        }
+        List<ListenableFuture<List<TsKvEntry>>> futures = new ArrayList<>(queries.size());
+        List<ReadTsKvQuery> aggregationQueries = new ArrayList<>();
+        List<Integer> aggregationQueryIndexes = new ArrayList<>();
+        for (ReadTsKvQuery query : queries) {
+            if (query.getAggregation() == Aggregation.NONE || query.getInterval() <= 0) {
+                futures.add(findAllAsync(tenantId, entityId, query));
+            } else {
+                aggregationQueryIndexes.add(futures.size());
+                aggregationQueries.add(query);
+                futures.add(null);
+            }
+        }
+        if (!aggregationQueries.isEmpty()) {
+            ListenableFuture<List<List<TsKvEntry>>> aggregated = findAllAndAggregateAsync(entityId, aggregationQueries);
+            // Keeps the results in the order of the queries, same as the per-interval path
+            for (int i = 0; i < aggregationQueryIndexes.size(); i++) {
+                int resultIndex = i;
+                futures.set(aggregationQueryIndexes.get(i), Futures.transform(aggregated, results -> results.get(resultIndex), MoreExecutors.directExecutor()));
+            }
+        }
+        return Futures.transform(Futures.allAsList(futures), results -> results.stream()
+                .filter(Objects::nonNull)
+                .flatMap(List::stream)
+                .collect(Collectors.toList()), MoreExecutors.directExecutor());
+    }
+
+    private ListenableFuture<List<List<TsKvEntry>>> findAllAndAggregateAsync(EntityId entityId, List<ReadTsKvQuery> queries) {
+        return service.submit(() -> {
+            List<PsqlAggregationRepository.AggregationQuery> aggregationQueries = queries.stream()
+                    .map(query -> new PsqlAggregationRepository.AggregationQuery(getOrSaveKeyId(query.getKey()),
+                            query.getStartTs(), query.getEndTs(), query.getInterval(), query.getAggregation()))
+                    .collect(Collectors.toList());
+            List<List<TsKvEntity>> results = aggregationRepository.findAggregated(entityId.getId(), aggregationQueries);
+            List<List<TsKvEntry>> entries = new ArrayList<>(queries.size());
+            for (int i = 0; i < queries.size(); i++) {
+                String key = queries.get(i).getKey();
+                List<TsKvEntry> queryEntries = new ArrayList<>(results.get(i).size());
+                for (TsKvEntity entity : results.get(i)) {
+                    entity.setEntityId(entityId.getId());
+                    entity.setStrKey(key);
+                    queryEntries.add(entity.toData());
+                }
+                entries.add(queryEntries);
+            }
+            return entries;
+        });
+    }
+
     @Override
     public ListenableFuture<Integer> save(TenantId tenantId, EntityId entityId, TsKvEntry tsKvEntry, long ttl) {
         int dataPointDays = getDataPointDays(tsKvEntry, computeTtl(ttl));
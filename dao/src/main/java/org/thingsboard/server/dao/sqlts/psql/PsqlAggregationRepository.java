@@ -0,0 +1,161 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.dao.sqlts.psql;
+
+import lombok.Data;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.thingsboard.server.common.data.kv.Aggregation;
+import org.thingsboard.server.dao.model.sqlts.ts.TsKvEntity;
+import org.thingsboard.server.dao.util.PsqlDao;
+import org.thingsboard.server.dao.util.SqlTsDao;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Computes aggregated time series of several keys of one entity in a single round trip.
+ * Every query is a branch of one UNION ALL statement that groups its rows by the integer bucket number
+ * (ts - startTs) / interval, so the database scans each key range once instead of once per interval.
+ */
+@Repository
+@PsqlDao
+@SqlTsDao
+public class PsqlAggregationRepository {
+
+    private static final String SUM_COLUMNS = "SUM(COALESCE(long_v, 0)), SUM(COALESCE(dbl_v, 0.0)), NULL::varchar, ";
+    private static final String MIN_COLUMNS = "MIN(COALESCE(long_v, 9223372036854775807)), MIN(COALESCE(dbl_v, 1.79769E+308)), MIN(str_v), ";
+    private static final String MAX_COLUMNS = "MAX(COALESCE(long_v, -9223372036854775807)), MAX(COALESCE(dbl_v, -1.79769E+308)), MAX(str_v), ";
+    private static final String COUNT_COLUMNS = "NULL::bigint, NULL::double precision, NULL::varchar, ";
+
+    private static final String COUNTERS = "SUM(CASE WHEN long_v IS NULL THEN 0 ELSE 1 END), " +
+            "SUM(CASE WHEN dbl_v IS NULL THEN 0 ELSE 1 END), " +
+            "SUM(CASE WHEN bool_v IS NULL THEN 0 ELSE 1 END), " +
+            "SUM(CASE WHEN str_v IS NULL THEN 0 ELSE 1 END), " +
+            "SUM(CASE WHEN json_v IS NULL THEN 0 ELSE 1 END) ";
+
+    private static final String FROM_WHERE_CLAUSE = "FROM ts_kv WHERE entity_id = ? AND key = ? AND ts >= ? AND ts < ? GROUP BY bucket";
+
+    @Autowired
+    protected JdbcTemplate jdbcTemplate;
+
+    /**
+     * @return aggregated entities of every query in the order of the queries, each list is ordered by bucket
+     */
+    public List<List<TsKvEntity>> findAggregated(UUID entityId, List<AggregationQuery> queries) {
+        List<List<TsKvEntity>> result = new ArrayList<>(queries.size());
+        if (queries.isEmpty()) {
+            return result;
+        }
+        StringBuilder sql = new StringBuilder();
+        List<Object> args = new ArrayList<>(queries.size() * 7);
+        for (int i = 0; i < queries.size(); i++) {
+            AggregationQuery query = queries.get(i);
+            result.add(new ArrayList<>());
+            if (i > 0) {
+                sql.append(" UNION ALL ");
+            }
+            sql.append("(SELECT ").append(i).append(" AS query_idx, (ts - ?) / ? AS bucket, ")
+                    .append(getAggregationColumns(query.getAggregation()))
+                    .append(COUNTERS)
+                    .append(FROM_WHERE_CLAUSE)
+                    .append(")");
+            args.add(query.getStartTs());
+            args.add(query.getInterval());
+            args.add(entityId);
+            args.add(query.getKeyId());
+            args.add(query.getStartTs());
+            args.add(query.getAlignedEndTs());
+        }
+        sql.append(" ORDER BY query_idx, bucket");
+        jdbcTemplate.query(sql.toString(), rs -> {
+            int idx = rs.getInt(1);
+            AggregationQuery query = queries.get(idx);
+            TsKvEntity entity = toEntity(query.getAggregation(), rs);
+            if (entity.isNotEmpty()) {
+                long bucket = rs.getLong(2);
+                entity.setTs(query.getStartTs() + bucket * query.getInterval() + query.getInterval() / 2);
+                result.get(idx).add(entity);
+            }
+        }, args.toArray());
+        return result;
+    }
+
+    private static String getAggregationColumns(Aggregation aggregation) {
+        switch (aggregation) {
+            case AVG:
+            case SUM:
+                return SUM_COLUMNS;
+            case MIN:
+                return MIN_COLUMNS;
+            case MAX:
+                return MAX_COLUMNS;
+            case COUNT:
+                return COUNT_COLUMNS;
+            default:
+                throw new IllegalArgumentException("Not supported aggregation type: " + aggregation);
+        }
+    }
+
+    private static TsKvEntity toEntity(Aggregation aggregation, ResultSet rs) throws SQLException {
+        Long longCount = getLong(rs, 6);
+        Long doubleCount = getLong(rs, 7);
+        switch (aggregation) {
+            case COUNT:
+                return new TsKvEntity(getLong(rs, 8), getLong(rs, 9), longCount, doubleCount, getLong(rs, 10));
+            case MIN:
+            case MAX:
+                String strValue = rs.getString(5);
+                if (strValue != null) {
+                    return new TsKvEntity(strValue);
+                }
+                return new TsKvEntity(getLong(rs, 3), getDouble(rs, 4), longCount, doubleCount, aggregation.name());
+            default:
+                return new TsKvEntity(getLong(rs, 3), getDouble(rs, 4), longCount, doubleCount, aggregation.name());
+        }
+    }
+
+    private static Long getLong(ResultSet rs, int column) throws SQLException {
+        Number value = (Number) rs.getObject(column);
+        return value != null ? value.longValue() : null;
+    }
+
+    private static Double getDouble(ResultSet rs, int column) throws SQLException {
+        Number value = (Number) rs.getObject(column);
+        return value != null ? value.doubleValue() : null;
+    }
+
+    @Data
+    public static class AggregationQuery {
+        private final int keyId;
+        private final long startTs;
+        private final long endTs;
+        private final long interval;
+        private final Aggregation aggregation;
+
+        /**
+         * The last interval is not truncated by the query end, same as for the chunked aggregation.
+         */
+        long getAlignedEndTs() {
+            long intervals = (endTs - startTs + interval - 1) / interval;
+            return startTs + intervals * interval;
+        }
+    }
+}
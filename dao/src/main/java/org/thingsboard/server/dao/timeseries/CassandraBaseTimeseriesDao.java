@@ -176,7 +176,7 @@ public class CassandraBaseTimeseriesDao extends AbstractCassandraBaseTimeseriesD
             stmtBuilder.setInt(6, (int) ttl);
         }
         BoundStatement stmt = stmtBuilder.build();
-        futures.add(getFuture(executeAsyncWrite(tenantId, stmt), rs -> null));
+        futures.add(getFuture(executeAsyncWrite(tenantId, stmt, new CassandraPartitionCacheKey(entityId, tsKvEntry.getKey(), partition), tsKvEntry.getTs()), rs -> null));
         return Futures.transform(Futures.allAsList(futures), result -> dataPointDays, MoreExecutors.directExecutor());
     }
 
@@ -479,7 +479,7 @@ public class CassandraBaseTimeseriesDao extends AbstractCassandraBaseTimeseriesD
             stmtBuilder.setInt(6, (int) ttl);
         }
         BoundStatement stmt = stmtBuilder.build();
-        return getFuture(executeAsyncWrite(tenantId, stmt), rs -> null);
+        return getFuture(executeAsyncWrite(tenantId, stmt, new CassandraPartitionCacheKey(entityId, tsKvEntry.getKey(), partition), tsKvEntry.getTs()), rs -> null);
     }
 
     private ListenableFuture<Integer> doSavePartition(TenantId tenantId, EntityId entityId, String key, long ttl, long partition) {
@@ -15,6 +15,8 @@
  */
 package org.thingsboard.server.dao.util;
 
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Timer;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.thingsboard.server.common.data.id.TenantId;
@@ -41,6 +43,8 @@ public class BufferedRateExecutorStats {
     private static final String TOTAL_EXPIRED = "totalExpired";
     private static final String TOTAL_REJECTED = "totalRejected";
     private static final String TOTAL_RATE_LIMITED = "totalRateLimited";
+    private static final String BATCH_SIZE = "batchSize";
+    private static final String BATCH_LATENCY = "batchLatency";
 
     private final StatsFactory statsFactory;
 
@@ -56,6 +60,9 @@ public class BufferedRateExecutorStats {
     private final StatsCounter totalRejected;
     private final StatsCounter totalRateLimited;
 
+    private final DistributionSummary batchSize;
+    private final Timer batchLatency;
+
     public BufferedRateExecutorStats(StatsFactory statsFactory) {
         this.statsFactory = statsFactory;
 
@@ -76,6 +83,9 @@ public class BufferedRateExecutorStats {
         this.statsCounters.add(totalExpired);
         this.statsCounters.add(totalRejected);
         this.statsCounters.add(totalRateLimited);
+
+        this.batchSize = statsFactory.createDistributionSummary(key + "." + BATCH_SIZE);
+        this.batchLatency = statsFactory.createTimer(key + "." + BATCH_LATENCY);
     }
 
     public void incrementRateLimitedTenant(TenantId tenantId){
@@ -0,0 +1,136 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.dao.attributes;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.redis.cache.RedisCacheManager;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.thingsboard.server.common.data.DataConstants;
+import org.thingsboard.server.common.data.id.DeviceId;
+import org.thingsboard.server.common.data.kv.AttributeKvEntry;
+import org.thingsboard.server.common.data.kv.BaseAttributeKvEntry;
+import org.thingsboard.server.common.data.kv.LongDataEntry;
+import org.thingsboard.server.common.data.kv.StringDataEntry;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.willReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+public class RedisAttributesCacheWrapperTest {
+
+    private static final String SCOPE = DataConstants.SERVER_SCOPE;
+
+    private final DeviceId deviceId = new DeviceId(UUID.randomUUID());
+    private RedisConnection connection;
+    private RedisAttributesCacheWrapper cacheWrapper;
+
+    @Before
+    public void before() {
+        RedisConnectionFactory connectionFactory = mock(RedisConnectionFactory.class);
+        connection = mock(RedisConnection.class);
+        willReturn(connection).given(connectionFactory).getConnection();
+        CacheManager cacheManager = RedisCacheManager.builder(connectionFactory).transactionAware().build();
+        cacheWrapper = new RedisAttributesCacheWrapper(cacheManager, connectionFactory);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void givenAttributes_whenPutAll_thenGetAllReadsThemInOneCall() {
+        AttributeKvEntry temperature = new BaseAttributeKvEntry(new LongDataEntry("temperature", 42L), 1L);
+        Map<String, AttributeKvEntry> attributes = new LinkedHashMap<>();
+        attributes.put("temperature", temperature);
+        attributes.put("missing", null);
+        cacheWrapper.putAll(deviceId, SCOPE, attributes);
+
+        ArgumentCaptor<Map<byte[], byte[]>> captor = ArgumentCaptor.forClass(Map.class);
+        verify(connection).mSet(captor.capture());
+        List<byte[]> keys = new ArrayList<>(captor.getValue().keySet());
+        assertThat(new String(keys.get(0), StandardCharsets.UTF_8), is("attributes::" + deviceId + "_" + SCOPE + "_temperature"));
+
+        List<byte[]> values = new ArrayList<>(captor.getValue().values());
+        values.add(null);
+        willReturn(values).given(connection).mGet(any(), any(), any());
+
+        Map<String, Cache.ValueWrapper> result = cacheWrapper.getAll(deviceId, SCOPE, Arrays.asList("temperature", "missing", "notCached"));
+        assertThat(result.size(), is(2));
+        assertThat(result.get("temperature").get(), is(temperature));
+        assertThat(result.get("missing").get(), nullValue());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void givenScopeAttributes_whenPutAllByScope_thenGetAllByScopeReturnsThem() {
+        AttributeKvEntry name = new BaseAttributeKvEntry(new StringDataEntry("name", "test"), 1L);
+        cacheWrapper.putAllByScope(deviceId, SCOPE, Collections.singletonList(name));
+
+        ArgumentCaptor<Map<byte[], byte[]>> captor = ArgumentCaptor.forClass(Map.class);
+        verify(connection).hMSet(any(byte[].class), captor.capture());
+        assertThat(captor.getValue().size(), is(2));
+
+        willReturn(new HashMap<>(captor.getValue())).given(connection).hGetAll(any(byte[].class));
+        assertThat(cacheWrapper.getAllByScope(deviceId, SCOPE), is(Collections.singletonList(name)));
+
+        willReturn(Collections.emptyMap()).given(connection).hGetAll(any(byte[].class));
+        assertThat(cacheWrapper.getAllByScope(deviceId, SCOPE), nullValue());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void givenEmptyScope_whenPutAllByScope_thenCachedAsEmptyList() {
+        cacheWrapper.putAllByScope(deviceId, SCOPE, Collections.emptyList());
+
+        ArgumentCaptor<Map<byte[], byte[]>> captor = ArgumentCaptor.forClass(Map.class);
+        verify(connection).hMSet(any(byte[].class), captor.capture());
+        willReturn(new HashMap<>(captor.getValue())).given(connection).hGetAll(any(byte[].class));
+
+        assertThat(cacheWrapper.getAllByScope(deviceId, SCOPE), is(Collections.emptyList()));
+    }
+
+    @Test
+    public void givenAttributeKeys_whenEvictAll_thenScopeAndAttributesDeletedInOneCall() {
+        cacheWrapper.evictAll(deviceId, SCOPE, Arrays.asList("a", "b"));
+
+        ArgumentCaptor<byte[]> captor = ArgumentCaptor.forClass(byte[].class);
+        verify(connection).del(captor.capture(), captor.capture(), captor.capture());
+        assertThat(new String(captor.getAllValues().get(0), StandardCharsets.UTF_8), is("attributes::" + deviceId + "_" + SCOPE));
+        assertThat(new String(captor.getAllValues().get(2), StandardCharsets.UTF_8), is("attributes::" + deviceId + "_" + SCOPE + "_b"));
+    }
+
+    @Test
+    public void givenRedisFailure_whenGetAll_thenNothingCached() {
+        willReturn(null).given(connection).mGet(any());
+        assertThat(cacheWrapper.getAll(deviceId, SCOPE, Collections.singletonList("a")).isEmpty(), is(true));
+    }
+}
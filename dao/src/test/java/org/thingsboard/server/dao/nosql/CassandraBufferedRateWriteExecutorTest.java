@@ -0,0 +1,131 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.dao.nosql;
+
+import com.datastax.oss.driver.api.core.cql.AsyncResultSet;
+import com.datastax.oss.driver.api.core.cql.BatchStatement;
+import com.datastax.oss.driver.api.core.cql.SimpleStatement;
+import com.datastax.oss.driver.api.core.cql.Statement;
+import com.google.common.util.concurrent.Futures;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Timer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.thingsboard.server.common.data.id.TenantId;
+import org.thingsboard.server.common.stats.StatsCounter;
+import org.thingsboard.server.common.stats.StatsFactory;
+import org.thingsboard.server.dao.cassandra.guava.GuavaSession;
+import org.thingsboard.server.dao.entity.EntityService;
+
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.BDDMockito.willAnswer;
+import static org.mockito.BDDMockito.willReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class CassandraBufferedRateWriteExecutorTest {
+
+    private final TenantId tenantId = new TenantId(UUID.randomUUID());
+    private GuavaSession session;
+    private CassandraBufferedRateWriteExecutor executor;
+
+    @Before
+    public void before() {
+        session = mock(GuavaSession.class);
+        willReturn(Futures.immediateFuture(mock(AsyncResultSet.class))).given(session).executeAsync(any(Statement.class));
+        StatsFactory statsFactory = mock(StatsFactory.class);
+        willReturn(mock(StatsCounter.class)).given(statsFactory).createStatsCounter(anyString(), anyString());
+        willAnswer(invocation -> invocation.getArgument(1)).given(statsFactory).createGauge(anyString(), any());
+        willReturn(mock(DistributionSummary.class)).given(statsFactory).createDistributionSummary(anyString());
+        willReturn(mock(Timer.class)).given(statsFactory).createTimer(anyString());
+        executor = new CassandraBufferedRateWriteExecutor(1000, 10, 60000, 1, 1, 10,
+                false, "", false, 0, true, 3, 10000, statsFactory, mock(EntityService.class));
+    }
+
+    @After
+    public void after() {
+        executor.stop();
+    }
+
+    @Test
+    public void givenWritesToSamePartition_whenMaxSizeReached_thenExecutedAsOneBatch() throws Exception {
+        TbResultSetFuture first = executor.submit(task("a", "partition1"));
+        TbResultSetFuture other = executor.submit(task("b", "partition2"));
+        executor.submit(task("c", "partition1"));
+        TbResultSetFuture last = executor.submit(task("d", "partition1"));
+
+        ArgumentCaptor<Statement> captor = ArgumentCaptor.forClass(Statement.class);
+        verify(session, timeout(5000)).executeAsync(captor.capture());
+        assertThat(captor.getValue(), instanceOf(BatchStatement.class));
+        assertThat(((BatchStatement) captor.getValue()).size(), is(3));
+        first.get(5, TimeUnit.SECONDS);
+        last.get(5, TimeUnit.SECONDS);
+        assertThat(other.isDone(), is(false));
+    }
+
+    @Test
+    public void givenWriteWithoutBatchKey_whenSubmitted_thenExecutedSeparately() throws Exception {
+        executor.submit(new CassandraStatementTask(tenantId, session, SimpleStatement.newInstance("a"))).get(5, TimeUnit.SECONDS);
+        verify(session, times(1)).executeAsync(any(SimpleStatement.class));
+    }
+
+    @Test
+    public void givenWriteToRowAlreadyInBatch_whenSubmitted_thenPendingBatchExecutedFirst() throws Exception {
+        SimpleStatement value = SimpleStatement.newInstance("value");
+        TbResultSetFuture first = executor.submit(new CassandraStatementTask(tenantId, session, value, "partition1", 1L));
+        TbResultSetFuture second = executor.submit(task("null", "partition1", 1L));
+
+        verify(session, timeout(5000)).executeAsync(value);
+        first.get(5, TimeUnit.SECONDS);
+        assertThat(second.isDone(), is(false));
+    }
+
+    @Test
+    public void givenPendingBatch_whenStopped_thenWritesFailed() throws Exception {
+        TbResultSetFuture future = executor.submit(task("a", "partition1", 1L));
+        executor.stop();
+
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail("Pending write should fail");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(IllegalStateException.class));
+        }
+        verify(session, never()).executeAsync(any(Statement.class));
+    }
+
+    private CassandraStatementTask task(String query, Object partition) {
+        return task(query, partition, null);
+    }
+
+    private CassandraStatementTask task(String query, Object partition, Object row) {
+        return new CassandraStatementTask(tenantId, session, SimpleStatement.newInstance(query), partition, row);
+    }
+}
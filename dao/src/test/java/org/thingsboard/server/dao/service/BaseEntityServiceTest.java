@@ -765,6 +765,59 @@ public abstract class BaseEntityServiceTest extends AbstractServiceTest {
         deviceService.deleteDevicesByTenantId(tenantId);
     }
 
+    @Test
+    public void testFindEntityDataByQueryWithKeysetPagination() throws InterruptedException {
+        List<Device> devices = new ArrayList<>();
+        for (int i = 0; i < 23; i++) {
+            Device device = new Device();
+            device.setTenantId(tenantId);
+            device.setName("Device" + i);
+            device.setType("default");
+            devices.add(deviceService.saveDevice(device));
+        }
+
+        DeviceTypeFilter filter = new DeviceTypeFilter();
+        filter.setDeviceType("default");
+        filter.setDeviceNameFilter("");
+
+        EntityDataSortOrder sortOrder = new EntityDataSortOrder(
+                new EntityKey(EntityKeyType.ENTITY_FIELD, "name"), EntityDataSortOrder.Direction.DESC
+        );
+        List<EntityKey> entityFields = Collections.singletonList(new EntityKey(EntityKeyType.ENTITY_FIELD, "name"));
+
+        EntityDataPageLink pageLink = new EntityDataPageLink(100, 0, null, sortOrder);
+        PageData<EntityData> allData = entityService.findEntityDataByQuery(tenantId, new CustomerId(CustomerId.NULL_UUID),
+                new EntityDataQuery(filter, pageLink, entityFields, null, null));
+        Assert.assertEquals(23, allData.getTotalElements());
+
+        pageLink = new EntityDataPageLink(5, 0, null, sortOrder);
+        pageLink.setEstimateTotal(true);
+        PageData<EntityData> data = entityService.findEntityDataByQuery(tenantId, new CustomerId(CustomerId.NULL_UUID),
+                new EntityDataQuery(filter, pageLink, entityFields, null, null));
+        Assert.assertEquals(5, data.getData().size());
+        Assert.assertEquals(6, data.getTotalElements());
+        Assert.assertEquals(2, data.getTotalPages());
+        Assert.assertTrue(data.hasNext());
+
+        List<EntityData> loadedEntities = new ArrayList<>(data.getData());
+        while (data.hasNext()) {
+            pageLink = pageLink.nextPageLink(data.getData().get(data.getData().size() - 1));
+            Assert.assertNotNull(pageLink.getAfterEntityId());
+            data = entityService.findEntityDataByQuery(tenantId, new CustomerId(CustomerId.NULL_UUID),
+                    new EntityDataQuery(filter, pageLink, entityFields, null, null));
+            loadedEntities.addAll(data.getData());
+        }
+        Assert.assertEquals(3, data.getData().size());
+        Assert.assertEquals(23, data.getTotalElements());
+        Assert.assertEquals(5, data.getTotalPages());
+
+        List<EntityId> loadedIds = loadedEntities.stream().map(EntityData::getEntityId).collect(Collectors.toList());
+        List<EntityId> expectedIds = allData.getData().stream().map(EntityData::getEntityId).collect(Collectors.toList());
+        Assert.assertEquals(expectedIds, loadedIds);
+
+        deviceService.deleteDevicesByTenantId(tenantId);
+    }
+
     @Test
     public void testFindEntityDataByQuery_operationEqual_emptySearchQuery() {
         List<Device> devices = createMockDevices(10);
@@ -16,6 +16,8 @@
 package org.thingsboard.server.dao.service.timeseries;
 
 import com.datastax.oss.driver.api.core.uuid.Uuids;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import lombok.extern.slf4j.Slf4j;
 import org.junit.*;
 import org.thingsboard.server.common.data.EntityView;
@@ -66,7 +68,7 @@ public abstract class BaseTimeseriesServiceTest extends AbstractServiceTest {
     KvEntry doubleKvEntry = new DoubleDataEntry(DOUBLE_KEY, Double.MAX_VALUE);
     KvEntry booleanKvEntry = new BooleanDataEntry(BOOLEAN_KEY, Boolean.TRUE);
 
-    private TenantId tenantId;
+    protected TenantId tenantId;
 
     @Before
     public void before() {
@@ -453,6 +455,26 @@ public abstract class BaseTimeseriesServiceTest extends AbstractServiceTest {
         assertEquals(java.util.Optional.of(2L), list.get(2).getLongValue());
     }
 
+    @Test
+    public void testSaveBatchAndReadBack() throws Exception {
+        DeviceId deviceId = new DeviceId(Uuids.timeBased());
+        List<ListenableFuture<Integer>> futures = new ArrayList<>();
+        List<TsKvEntry> expected = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            TsKvEntry entry = new BasicTsKvEntry(i * 1000L, i % 2 == 0 ? new LongDataEntry(LONG_KEY, (long) i) : new StringDataEntry(LONG_KEY, "value" + i));
+            futures.add(tsService.save(tenantId, deviceId, entry));
+            expected.add(entry);
+        }
+        TsKvEntry overwritten = new BasicTsKvEntry(0L, new LongDataEntry(LONG_KEY, -1L));
+        futures.add(tsService.save(tenantId, deviceId, overwritten));
+        expected.set(0, overwritten);
+        Futures.allAsList(futures).get();
+
+        List<TsKvEntry> list = tsService.findAll(tenantId, deviceId, Collections.singletonList(new BaseReadTsKvQuery(LONG_KEY, 0,
+                100000, 1000, 1000, Aggregation.NONE, "ASC"))).get();
+        assertEquals(expected, list);
+    }
+
     private TsKvEntry save(DeviceId deviceId, long ts, long value) throws Exception {
         TsKvEntry entry = new BasicTsKvEntry(ts, new LongDataEntry(LONG_KEY, value));
         tsService.save(tenantId, deviceId, entry).get();
@@ -0,0 +1,99 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.dao.service.timeseries.psql;
+
+import com.datastax.oss.driver.api.core.uuid.Uuids;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.util.AopTestUtils;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.thingsboard.server.common.data.Tenant;
+import org.thingsboard.server.common.data.id.DeviceId;
+import org.thingsboard.server.common.data.id.TenantId;
+import org.thingsboard.server.common.data.kv.Aggregation;
+import org.thingsboard.server.common.data.kv.BaseReadTsKvQuery;
+import org.thingsboard.server.common.data.kv.BasicTsKvEntry;
+import org.thingsboard.server.common.data.kv.DoubleDataEntry;
+import org.thingsboard.server.common.data.kv.LongDataEntry;
+import org.thingsboard.server.common.data.kv.ReadTsKvQuery;
+import org.thingsboard.server.common.data.kv.TsKvEntry;
+import org.thingsboard.server.dao.service.AbstractServiceTest;
+import org.thingsboard.server.dao.service.DaoPostgreSqlTest;
+import org.thingsboard.server.dao.timeseries.TimeseriesDao;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+@DaoPostgreSqlTest
+public class TimeseriesBucketedAggregationPostgreSqlTest extends AbstractServiceTest {
+
+    private static final String LONG_KEY = "longKey";
+    private static final String DOUBLE_KEY = "doubleKey";
+
+    @Autowired
+    private TimeseriesDao timeseriesDao;
+
+    private TenantId tenantId;
+
+    @Before
+    public void before() {
+        Tenant tenant = new Tenant();
+        tenant.setTitle("My tenant");
+        tenantId = tenantService.saveTenant(tenant).getId();
+    }
+
+    @After
+    public void after() {
+        setBucketedAggregation(false);
+        tenantService.deleteTenant(tenantId);
+    }
+
+    @Test
+    public void testBucketedAggregationMatchesPerIntervalAggregation() throws Exception {
+        DeviceId deviceId = new DeviceId(Uuids.timeBased());
+        for (int i = 0; i < 60; i++) {
+            long ts = i * 1000L + 500;
+            tsService.save(tenantId, deviceId, new BasicTsKvEntry(ts, new LongDataEntry(LONG_KEY, (long) i))).get();
+            tsService.save(tenantId, deviceId, new BasicTsKvEntry(ts, new DoubleDataEntry(DOUBLE_KEY, i * 0.5))).get();
+        }
+
+        List<ReadTsKvQuery> queries = Arrays.asList(
+                new BaseReadTsKvQuery(LONG_KEY, 0, 60000, 20000, 100, Aggregation.AVG),
+                new BaseReadTsKvQuery(LONG_KEY, 0, 60000, 60000, 10, Aggregation.NONE),
+                new BaseReadTsKvQuery(DOUBLE_KEY, 0, 60000, 15000, 100, Aggregation.MAX),
+                new BaseReadTsKvQuery(LONG_KEY, 10000, 50000, 7000, 100, Aggregation.COUNT),
+                new BaseReadTsKvQuery(DOUBLE_KEY, 0, 60000, 60000, 5, Aggregation.NONE),
+                new BaseReadTsKvQuery(DOUBLE_KEY, 0, 60000, 30000, 100, Aggregation.SUM),
+                new BaseReadTsKvQuery(LONG_KEY, 0, 60000, 25000, 100, Aggregation.MIN));
+
+        setBucketedAggregation(false);
+        List<TsKvEntry> perInterval = tsService.findAll(tenantId, deviceId, queries).get();
+        setBucketedAggregation(true);
+        List<TsKvEntry> bucketed = tsService.findAll(tenantId, deviceId, queries).get();
+
+        assertFalse(perInterval.isEmpty());
+        assertEquals(perInterval, bucketed);
+    }
+
+    private void setBucketedAggregation(boolean bucketedAggregation) {
+        ReflectionTestUtils.setField(AopTestUtils.getUltimateTargetObject(timeseriesDao), "bucketedAggregation", bucketedAggregation);
+    }
+}
@@ -0,0 +1,47 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.dao.service.timeseries.psql;
+
+import com.datastax.oss.driver.api.core.uuid.Uuids;
+import com.google.common.util.concurrent.Futures;
+import org.junit.Test;
+import org.thingsboard.server.common.data.id.DeviceId;
+import org.thingsboard.server.common.data.kv.BasicTsKvEntry;
+import org.thingsboard.server.common.data.kv.LongDataEntry;
+import org.thingsboard.server.common.data.kv.TsKvEntry;
+import org.thingsboard.server.dao.service.DaoPostgreSqlTest;
+import org.thingsboard.server.dao.service.timeseries.BaseTimeseriesServiceTest;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+@DaoPostgreSqlTest
+public class TimeseriesServicePostgreSqlTest extends BaseTimeseriesServiceTest {
+
+    @Test
+    public void testFindLatestAfterOutOfOrderSaves() throws Exception {
+        DeviceId deviceId = new DeviceId(Uuids.timeBased());
+        TsKvEntry newer = new BasicTsKvEntry(2000L, new LongDataEntry("latestKey", 2L));
+        TsKvEntry older = new BasicTsKvEntry(1000L, new LongDataEntry("latestKey", 1L));
+
+        Futures.allAsList(tsService.save(tenantId, deviceId, newer), tsService.save(tenantId, deviceId, older)).get();
+
+        List<TsKvEntry> latest = tsService.findLatest(tenantId, deviceId, Collections.singletonList("latestKey")).get();
+        assertEquals(Collections.singletonList(newer), latest);
+    }
+}
@@ -0,0 +1,261 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.dao.sql;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.thingsboard.server.common.stats.DefaultStatsFactory;
+import org.thingsboard.server.common.stats.StatsFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.everyItem;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TbSqlBlockingQueueTest {
+
+    private static final long TIMEOUT_MS = 5000;
+
+    private final List<List<String>> savedBatches = Collections.synchronizedList(new ArrayList<>());
+    private final CountDownLatch saveStarted = new CountDownLatch(1);
+    private final CountDownLatch saveReleased = new CountDownLatch(1);
+    private volatile long saveTimeMs;
+
+    private StatsFactory statsFactory;
+    private ScheduledLogExecutorComponent logExecutor;
+    private ExecutorService callerExecutor;
+    private TbSqlBlockingQueue<String> queue;
+
+    @Before
+    public void setUp() {
+        DefaultStatsFactory defaultStatsFactory = new DefaultStatsFactory();
+        ReflectionTestUtils.setField(defaultStatsFactory, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(defaultStatsFactory, "metricsEnabled", false);
+        statsFactory = defaultStatsFactory;
+        logExecutor = new ScheduledLogExecutorComponent();
+        logExecutor.init();
+        callerExecutor = Executors.newSingleThreadExecutor();
+    }
+
+    @After
+    public void tearDown() {
+        saveReleased.countDown();
+        if (queue != null) {
+            queue.destroy();
+        }
+        callerExecutor.shutdownNow();
+        logExecutor.stop();
+    }
+
+    @Test
+    public void givenBlockStrategy_whenQueueIsFull_thenCallerWaitsForFreeSpace() throws Exception {
+        initQueue(TbSqlQueueOverflowStrategy.BLOCK, 0, false, 10);
+        ListenableFuture<Void> first = queue.add("e1");
+        awaitSaveStarted();
+        ListenableFuture<Void> second = queue.add("e2");
+
+        Future<ListenableFuture<Void>> blockedAdd = callerExecutor.submit(() -> queue.add("e3"));
+        Thread.sleep(200);
+        assertFalse(blockedAdd.isDone());
+
+        saveReleased.countDown();
+        ListenableFuture<Void> third = blockedAdd.get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        getAll(first, second, third);
+        assertThat(savedEntities(), contains("e1", "e2", "e3"));
+    }
+
+    @Test
+    public void givenBlockStrategyWithTimeout_whenQueueStaysFull_thenNewEntityRejected() throws Exception {
+        initQueue(TbSqlQueueOverflowStrategy.BLOCK, 100, false, 10);
+        ListenableFuture<Void> first = queue.add("e1");
+        awaitSaveStarted();
+        ListenableFuture<Void> second = queue.add("e2");
+
+        long startTs = System.currentTimeMillis();
+        ListenableFuture<Void> third = queue.add("e3");
+        assertThat(System.currentTimeMillis() - startTs, greaterThan(90L));
+        assertTrue(third.isDone());
+        assertRejected(third);
+
+        saveReleased.countDown();
+        getAll(first, second);
+        assertThat(savedEntities(), contains("e1", "e2"));
+    }
+
+    @Test
+    public void givenFailStrategy_whenQueueIsFull_thenNewEntityRejected() throws Exception {
+        initQueue(TbSqlQueueOverflowStrategy.FAIL, 0, false, 10);
+        ListenableFuture<Void> first = queue.add("e1");
+        awaitSaveStarted();
+        ListenableFuture<Void> second = queue.add("e2");
+
+        ListenableFuture<Void> third = queue.add("e3");
+        assertTrue(third.isDone());
+        assertRejected(third);
+
+        saveReleased.countDown();
+        getAll(first, second);
+        assertThat(savedEntities(), contains("e1", "e2"));
+    }
+
+    @Test
+    public void givenShedStrategy_whenQueueIsFull_thenOldestPendingEntityDropped() throws Exception {
+        initQueue(TbSqlQueueOverflowStrategy.SHED, 0, false, 10);
+        ListenableFuture<Void> first = queue.add("e1");
+        awaitSaveStarted();
+        ListenableFuture<Void> second = queue.add("e2");
+
+        ListenableFuture<Void> third = queue.add("e3");
+        assertTrue(second.isDone());
+        assertRejected(second);
+
+        saveReleased.countDown();
+        getAll(first, third);
+        assertThat(savedEntities(), contains("e1", "e3"));
+    }
+
+    @Test
+    public void givenAdaptiveBatching_whenLoadIsLow_thenEntitiesSavedWithoutDelay() throws Exception {
+        saveReleased.countDown();
+        initQueue(TbSqlQueueOverflowStrategy.BLOCK, 0, true, 1000, 100, 0);
+        queue.add("e1").get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+
+        long startTs = System.currentTimeMillis();
+        queue.add("e2").get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        assertThat(System.currentTimeMillis() - startTs, lessThan(500L));
+        assertThat(savedBatches, contains(Collections.singletonList("e1"), Collections.singletonList("e2")));
+    }
+
+    @Test
+    public void givenAdaptiveBatching_whenLoadGrows_thenBatchSizeGrowsUpToLimit() throws Exception {
+        saveReleased.countDown();
+        saveTimeMs = 20;
+        int batchSize = 50;
+        initQueue(TbSqlQueueOverflowStrategy.BLOCK, 0, true, 1000, batchSize, 0);
+
+        List<ListenableFuture<Void>> futures = new ArrayList<>();
+        futures.add(queue.add("e0"));
+        futures.get(0).get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        for (int i = 1; i <= 1000; i++) {
+            futures.add(queue.add("e" + i));
+            if (i % 5 == 0) {
+                Thread.sleep(1);
+            }
+        }
+        Futures.allAsList(futures).get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+
+        List<Integer> batchSizes = savedBatches.stream().map(List::size).collect(Collectors.toList());
+        assertThat(batchSizes.get(0), is(1));
+        assertThat(batchSizes.stream().mapToInt(Integer::intValue).max().getAsInt(), greaterThan(1));
+        assertThat(batchSizes, everyItem(lessThanOrEqualTo(batchSize)));
+        assertThat(savedEntities().size(), is(1001));
+    }
+
+    @Test
+    public void givenArrivalRateAndSaveTime_whenTargetBatchSizeCalculated_thenBatchCoversArrivalsDuringOneSave() {
+        assertThat(TbSqlBlockingQueue.targetBatchSize(0, 0, 100), is(1));
+        assertThat(TbSqlBlockingQueue.targetBatchSize(0.1, 5, 100), is(1));
+        assertThat(TbSqlBlockingQueue.targetBatchSize(2, 10, 100), is(20));
+        assertThat(TbSqlBlockingQueue.targetBatchSize(2, 20, 100), is(40));
+        assertThat(TbSqlBlockingQueue.targetBatchSize(10, 50, 100), is(100));
+    }
+
+    private void initQueue(TbSqlQueueOverflowStrategy overflowStrategy, long blockTimeoutMs, boolean adaptive, long maxDelay) {
+        initQueue(overflowStrategy, blockTimeoutMs, adaptive, maxDelay, 1, 1);
+    }
+
+    private void initQueue(TbSqlQueueOverflowStrategy overflowStrategy, long blockTimeoutMs, boolean adaptive, long maxDelay, int batchSize, int maxQueueSize) {
+        TbSqlBlockingQueueParams params = TbSqlBlockingQueueParams.builder()
+                .logName("Test")
+                .batchSize(batchSize)
+                .maxDelay(maxDelay)
+                .statsPrintIntervalMs(60000)
+                .statsNamePrefix("test")
+                .maxQueueSize(maxQueueSize)
+                .overflowStrategy(overflowStrategy)
+                .overflowBlockTimeoutMs(blockTimeoutMs)
+                .adaptiveBatching(adaptive)
+                .build();
+        queue = new TbSqlBlockingQueue<>(params, statsFactory.createMessagesStats("test"), statsFactory);
+        queue.init(logExecutor, this::save, Comparator.naturalOrder(), 0);
+    }
+
+    private void save(List<String> entities) {
+        saveStarted.countDown();
+        try {
+            if (!saveReleased.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                throw new IllegalStateException("Save was not released");
+            }
+            if (saveTimeMs > 0) {
+                Thread.sleep(saveTimeMs);
+            }
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+        savedBatches.add(new ArrayList<>(entities));
+    }
+
+    private void awaitSaveStarted() throws InterruptedException {
+        assertTrue(saveStarted.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+    }
+
+    private List<String> savedEntities() {
+        synchronized (savedBatches) {
+            return savedBatches.stream().flatMap(List::stream).collect(Collectors.toList());
+        }
+    }
+
+    @SafeVarargs
+    private static void getAll(ListenableFuture<Void>... futures) throws Exception {
+        for (ListenableFuture<Void> future : Arrays.asList(futures)) {
+            future.get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static void assertRejected(ListenableFuture<Void> future) throws Exception {
+        try {
+            future.get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            fail("Entity should be rejected");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(IllegalStateException.class));
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.dao.sqlts.latest;
+
+import org.junit.After;
+import org.junit.Test;
+import org.thingsboard.server.common.data.id.DeviceId;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class TsLatestCacheExecutorTest {
+
+    private final ExecutorService delegate = Executors.newFixedThreadPool(4);
+
+    @After
+    public void tearDown() {
+        delegate.shutdownNow();
+    }
+
+    @Test
+    public void givenTasksOfSameKey_whenExecuted_thenRunInSubmissionOrder() throws Exception {
+        TsLatestCacheExecutor executor = new TsLatestCacheExecutor(delegate, 4);
+        TsLatestCacheKey cacheKey = new TsLatestCacheKey(new DeviceId(UUID.randomUUID()), "temperature");
+        List<Integer> executed = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch latch = new CountDownLatch(1000);
+
+        for (int i = 0; i < 1000; i++) {
+            int task = i;
+            executor.execute(cacheKey, () -> {
+                executed.add(task);
+                latch.countDown();
+            });
+        }
+
+        assertThat(latch.await(10, TimeUnit.SECONDS), is(true));
+        for (int i = 0; i < 1000; i++) {
+            assertThat(executed.get(i), is(i));
+        }
+    }
+
+    @Test
+    public void givenBlockedKey_whenTaskOfOtherKeyExecuted_thenNotBlocked() throws Exception {
+        TsLatestCacheExecutor executor = new TsLatestCacheExecutor(delegate, 2);
+        TsLatestCacheKey blockedKey = new TsLatestCacheKey(new DeviceId(UUID.randomUUID()), "temperature");
+        TsLatestCacheKey otherKey = blockedKey;
+        while (Math.floorMod(otherKey.hashCode(), 2) == Math.floorMod(blockedKey.hashCode(), 2)) {
+            otherKey = new TsLatestCacheKey(new DeviceId(UUID.randomUUID()), "temperature");
+        }
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch otherExecuted = new CountDownLatch(1);
+
+        executor.execute(blockedKey, () -> {
+            try {
+                blocked.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        executor.execute(otherKey, otherExecuted::countDown);
+
+        assertThat(otherExecuted.await(10, TimeUnit.SECONDS), is(true));
+        blocked.countDown();
+    }
+}
@@ -0,0 +1,86 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.dao.sqlts.latest;
+
+import org.junit.Test;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.thingsboard.server.common.data.id.DeviceId;
+import org.thingsboard.server.common.data.kv.BasicTsKvEntry;
+import org.thingsboard.server.common.data.kv.LongDataEntry;
+import org.thingsboard.server.common.data.kv.TsKvEntry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.thingsboard.server.common.data.CacheConstants.TS_LATEST_CACHE;
+
+public class TsLatestCacheWrapperTest {
+
+    private final TsLatestCacheWrapper cacheWrapper = new TsLatestCacheWrapper(new ConcurrentMapCacheManager(TS_LATEST_CACHE));
+    private final TsLatestCacheKey cacheKey = new TsLatestCacheKey(new DeviceId(UUID.randomUUID()), "temperature");
+
+    @Test
+    public void givenOutOfOrderValues_whenPutIfNotOlder_thenValueWithGreatestTsKept() {
+        TsKvEntry newer = entry(2L, 21L);
+        TsKvEntry older = entry(1L, 20L);
+        TsKvEntry sameTs = entry(2L, 22L);
+
+        cacheWrapper.putIfNotOlder(cacheKey, newer);
+        cacheWrapper.putIfNotOlder(cacheKey, older);
+        assertThat(cacheWrapper.get(cacheKey).get(), is(newer));
+
+        cacheWrapper.putIfNotOlder(cacheKey, sameTs);
+        assertThat(cacheWrapper.get(cacheKey).get(), is(sameTs));
+    }
+
+    @Test
+    public void givenCachedMissingValue_whenPutIfNotOlder_thenReplaced() {
+        TsKvEntry entry = entry(1L, 20L);
+        cacheWrapper.putIfAbsent(cacheKey, null);
+
+        cacheWrapper.putIfNotOlder(cacheKey, entry);
+        assertThat(cacheWrapper.get(cacheKey).get(), is(entry));
+    }
+
+    @Test
+    public void givenConcurrentPuts_whenPutIfNotOlder_thenValueWithGreatestTsKept() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (long ts = 1000L; ts > 0L; ts--) {
+                TsKvEntry entry = entry(ts, ts);
+                futures.add(executor.submit(() -> cacheWrapper.putIfNotOlder(cacheKey, entry)));
+            }
+            for (Future<?> future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertThat(((TsKvEntry) cacheWrapper.get(cacheKey).get()).getTs(), is(1000L));
+    }
+
+    private static TsKvEntry entry(long ts, long value) {
+        return new BasicTsKvEntry(ts, new LongDataEntry("temperature", value));
+    }
+}
@@ -0,0 +1,93 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.server.dao.sqlts.latest;
+
+import org.junit.Test;
+import org.thingsboard.server.common.data.id.DeviceId;
+import org.thingsboard.server.common.data.kv.BasicTsKvEntry;
+import org.thingsboard.server.common.data.kv.LongDataEntry;
+import org.thingsboard.server.common.data.kv.TsKvEntry;
+
+import java.util.UUID;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class TsLatestPendingValuesTest {
+
+    private final DeviceId deviceId = new DeviceId(UUID.randomUUID());
+
+    @Test
+    public void givenPendingValue_whenGet_thenReturned() {
+        TsLatestPendingValues pendingValues = new TsLatestPendingValues();
+        TsKvEntry entry = entry("temperature", 1L, 20L);
+        pendingValues.put(deviceId, entry);
+
+        assertThat(pendingValues.get(deviceId, "temperature"), is(entry));
+        assertThat(pendingValues.get(deviceId, "humidity"), nullValue());
+        assertThat(pendingValues.get(new DeviceId(UUID.randomUUID()), "temperature"), nullValue());
+        assertThat(pendingValues.getAll(deviceId).size(), is(1));
+    }
+
+    @Test
+    public void givenNewerPendingValue_whenOlderPersisted_thenNewerKept() {
+        TsLatestPendingValues pendingValues = new TsLatestPendingValues();
+        TsKvEntry older = entry("temperature", 1L, 20L);
+        TsKvEntry newer = entry("temperature", 2L, 21L);
+        pendingValues.put(deviceId, older);
+        pendingValues.put(deviceId, newer);
+
+        pendingValues.remove(deviceId, older);
+        assertThat(pendingValues.get(deviceId, "temperature"), is(newer));
+
+        pendingValues.remove(deviceId, newer);
+        assertThat(pendingValues.get(deviceId, "temperature"), nullValue());
+        assertThat(pendingValues.getAll(deviceId).isEmpty(), is(true));
+    }
+
+    @Test
+    public void givenOutOfOrderValues_whenPutByLatestTs_thenValueWithGreatestTsKept() {
+        TsLatestPendingValues pendingValues = new TsLatestPendingValues();
+        TsKvEntry newer = entry("temperature", 2L, 21L);
+        TsKvEntry older = entry("temperature", 1L, 20L);
+        TsKvEntry sameTs = entry("temperature", 2L, 22L);
+        pendingValues.put(deviceId, newer, true);
+        pendingValues.put(deviceId, older, true);
+        assertThat(pendingValues.get(deviceId, "temperature"), is(newer));
+
+        pendingValues.remove(deviceId, older);
+        assertThat(pendingValues.get(deviceId, "temperature"), is(newer));
+
+        pendingValues.put(deviceId, sameTs, true);
+        assertThat(pendingValues.get(deviceId, "temperature"), is(sameTs));
+    }
+
+    @Test
+    public void givenOutOfOrderValues_whenPutWithoutLatestTs_thenLastValueKept() {
+        TsLatestPendingValues pendingValues = new TsLatestPendingValues();
+        TsKvEntry newer = entry("temperature", 2L, 21L);
+        TsKvEntry older = entry("temperature", 1L, 20L);
+        pendingValues.put(deviceId, newer, false);
+        pendingValues.put(deviceId, older, false);
+
+        assertThat(pendingValues.get(deviceId, "temperature"), is(older));
+    }
+
+    private static TsKvEntry entry(String key, long ts, long value) {
+        return new BasicTsKvEntry(ts, new LongDataEntry(key, value));
+    }
+}
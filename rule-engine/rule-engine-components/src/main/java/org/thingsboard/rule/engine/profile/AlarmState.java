@@ -136,6 +136,15 @@ class AlarmState {
         return stateUpdate;
     }
 
+    public boolean hasPendingTimers() {
+        for (AlarmRuleState state : createRulesSortedBySeverityDesc) {
+            if (state.hasPendingTimer()) {
+                return true;
+            }
+        }
+        return clearState != null && clearState.hasPendingTimer();
+    }
+
     public boolean clearAlarmState(boolean stateUpdate, AlarmRuleState state) {
         if (state != null) {
             state.clear();
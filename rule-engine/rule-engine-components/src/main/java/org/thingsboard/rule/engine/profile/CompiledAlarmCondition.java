@@ -0,0 +1,431 @@
+/**
+ * Copyright © 2016-2021 The Thingsboard Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.thingsboard.rule.engine.profile;
+
+import lombok.extern.slf4j.Slf4j;
+import org.thingsboard.server.common.data.device.profile.AlarmCondition;
+import org.thingsboard.server.common.data.device.profile.AlarmConditionFilter;
+import org.thingsboard.server.common.data.device.profile.AlarmConditionFilterKey;
+import org.thingsboard.server.common.data.device.profile.AlarmConditionKeyType;
+import org.thingsboard.server.common.data.query.BooleanFilterPredicate;
+import org.thingsboard.server.common.data.query.ComplexFilterPredicate;
+import org.thingsboard.server.common.data.query.DynamicValue;
+import org.thingsboard.server.common.data.query.DynamicValueSourceType;
+import org.thingsboard.server.common.data.query.FilterPredicateValue;
+import org.thingsboard.server.common.data.query.KeyFilterPredicate;
+import org.thingsboard.server.common.data.query.NumericFilterPredicate;
+import org.thingsboard.server.common.data.query.StringFilterPredicate;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Alarm condition compiled to the tree of evaluators.
+ * <p>
+ * The keys, operations, constants and default values of the condition are resolved once, so the evaluation does
+ * a lookup of the snapshot value per filter and compares the primitive values. The compiled conditions are cached
+ * by the condition, so the devices of the same profile version share them. The cache holds the conditions weakly
+ * and drops them once the profile version is not used anymore.
+ */
+@Slf4j
+class CompiledAlarmCondition {
+
+    private static final Map<AlarmCondition, CompiledAlarmCondition> CACHE = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private final FilterEvaluator[] filters;
+
+    private CompiledAlarmCondition(AlarmCondition condition) {
+        List<AlarmConditionFilter> conditionFilters = condition.getCondition() != null ? condition.getCondition() : Collections.emptyList();
+        this.filters = new FilterEvaluator[conditionFilters.size()];
+        for (int i = 0; i < filters.length; i++) {
+            filters[i] = new FilterEvaluator(conditionFilters.get(i));
+        }
+    }
+
+    static CompiledAlarmCondition compile(AlarmCondition condition) {
+        return CACHE.computeIfAbsent(condition, CompiledAlarmCondition::new);
+    }
+
+    boolean eval(DataSnapshot data, DynamicPredicateValueCtx ctx) {
+        for (FilterEvaluator filter : filters) {
+            if (!filter.eval(data, ctx)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private interface PredicateEvaluator {
+        boolean eval(EntityKeyValue value, DataSnapshot data, DynamicPredicateValueCtx ctx);
+    }
+
+    private static class FilterEvaluator {
+        private final AlarmConditionFilterKey key;
+        private final boolean constant;
+        private final EntityKeyValue constantValue;
+        private final PredicateEvaluator predicate;
+
+        FilterEvaluator(AlarmConditionFilter filter) {
+            this.key = filter.getKey();
+            this.constant = key.getType() == AlarmConditionKeyType.CONSTANT;
+            EntityKeyValue value = null;
+            if (constant) {
+                try {
+                    value = toConstantValue(filter);
+                } catch (RuntimeException e) {
+                    log.warn("Failed to parse constant value from filter: {}", filter, e);
+                }
+            }
+            this.constantValue = value;
+            this.predicate = compilePredicate(filter.getPredicate(), constant);
+        }
+
+        boolean eval(DataSnapshot data, DynamicPredicateValueCtx ctx) {
+            EntityKeyValue value = constant ? constantValue : data.getValue(key);
+            return value != null && predicate.eval(value, data, ctx);
+        }
+    }
+
+    private static PredicateEvaluator compilePredicate(KeyFilterPredicate predicate, boolean constantKey) {
+        switch (predicate.getType()) {
+            case STRING:
+                return new StringEvaluator((StringFilterPredicate) predicate, constantKey);
+            case NUMERIC:
+                return new NumericEvaluator((NumericFilterPredicate) predicate, constantKey);
+            case BOOLEAN:
+                return new BooleanEvaluator((BooleanFilterPredicate) predicate, constantKey);
+            case COMPLEX:
+                return new ComplexEvaluator((ComplexFilterPredicate) predicate, constantKey);
+            default:
+                return (value, data, ctx) -> false;
+        }
+    }
+
+    private static class ComplexEvaluator implements PredicateEvaluator {
+        private final boolean or;
+        private final PredicateEvaluator[] predicates;
+
+        ComplexEvaluator(ComplexFilterPredicate predicate, boolean constantKey) {
+            switch (predicate.getOperation()) {
+                case OR:
+                    this.or = true;
+                    break;
+                case AND:
+                    this.or = false;
+                    break;
+                default:
+                    throw new RuntimeException("Operation not supported: " + predicate.getOperation());
+            }
+            this.predicates = new PredicateEvaluator[predicate.getPredicates().size()];
+            for (int i = 0; i < predicates.length; i++) {
+                predicates[i] = compilePredicate(predicate.getPredicates().get(i), constantKey);
+            }
+        }
+
+        @Override
+        public boolean eval(EntityKeyValue value, DataSnapshot data, DynamicPredicateValueCtx ctx) {
+            for (PredicateEvaluator predicate : predicates) {
+                if (predicate.eval(value, data, ctx) == or) {
+                    return or;
+                }
+            }
+            return !or;
+        }
+    }
+
+    private static class NumericEvaluator implements PredicateEvaluator {
+        private final NumericFilterPredicate.NumericOperation operation;
+        private final DynamicValueResolver dynamicValue;
+        private final double defaultValue;
+
+        NumericEvaluator(NumericFilterPredicate predicate, boolean constantKey) {
+            this.operation = predicate.getOperation();
+            this.dynamicValue = DynamicValueResolver.of(predicate.getValue());
+            Double value = constantKey ? null : predicate.getValue().getDefaultValue();
+            this.defaultValue = value != null ? value : Double.NaN;
+        }
+
+        @Override
+        public boolean eval(EntityKeyValue ekv, DataSnapshot data, DynamicPredicateValueCtx ctx) {
+            double val = toDouble(ekv);
+            if (Double.isNaN(val)) {
+                return false;
+            }
+            double predicateValue = Double.NaN;
+            if (dynamicValue != null) {
+                EntityKeyValue dynamic = dynamicValue.resolve(data, ctx);
+                if (dynamic != null) {
+                    predicateValue = toDouble(dynamic);
+                }
+            }
+            if (Double.isNaN(predicateValue)) {
+                predicateValue = defaultValue;
+                if (Double.isNaN(predicateValue)) {
+                    return false;
+                }
+            }
+            switch (operation) {
+                case NOT_EQUAL:
+                    return Double.compare(val, predicateValue) != 0;
+                case EQUAL:
+                    return Double.compare(val, predicateValue) == 0;
+                case GREATER:
+                    return val > predicateValue;
+                case GREATER_OR_EQUAL:
+                    return val >= predicateValue;
+                case LESS:
+                    return val < predicateValue;
+                case LESS_OR_EQUAL:
+                    return val <= predicateValue;
+                default:
+                    throw new RuntimeException("Operation not supported: " + operation);
+            }
+        }
+    }
+
+    private static class StringEvaluator implements PredicateEvaluator {
+        private final StringFilterPredicate.StringOperation operation;
+        private final boolean ignoreCase;
+        private final DynamicValueResolver dynamicValue;
+        private final String defaultValue;
+
+        StringEvaluator(StringFilterPredicate predicate, boolean constantKey) {
+            this.operation = predicate.getOperation();
+            this.ignoreCase = predicate.isIgnoreCase();
+            this.dynamicValue = DynamicValueResolver.of(predicate.getValue());
+            String value = constantKey ? null : predicate.getValue().getDefaultValue();
+            this.defaultValue = value != null && ignoreCase ? value.toLowerCase() : value;
+        }
+
+        @Override
+        public boolean eval(EntityKeyValue ekv, DataSnapshot data, DynamicPredicateValueCtx ctx) {
+            String val = toStr(ekv);
+            if (val == null) {
+                return false;
+            }
+            String predicateValue = null;
+            if (dynamicValue != null) {
+                EntityKeyValue dynamic = dynamicValue.resolve(data, ctx);
+                if (dynamic != null) {
+                    predicateValue = toStr(dynamic);
+                    if (predicateValue != null && ignoreCase) {
+                        predicateValue = predicateValue.toLowerCase();
+                    }
+                }
+            }
+            if (predicateValue == null) {
+                predicateValue = defaultValue;
+                if (predicateValue == null) {
+                    return false;
+                }
+            }
+            if (ignoreCase) {
+                val = val.toLowerCase();
+            }
+            switch (operation) {
+                case CONTAINS:
+                    return val.contains(predicateValue);
+                case EQUAL:
+                    return val.equals(predicateValue);
+                case STARTS_WITH:
+                    return val.startsWith(predicateValue);
+                case ENDS_WITH:
+                    return val.endsWith(predicateValue);
+                case NOT_EQUAL:
+                    return !val.equals(predicateValue);
+                case NOT_CONTAINS:
+                    return !val.contains(predicateValue);
+                default:
+                    throw new RuntimeException("Operation not supported: " + operation);
+            }
+        }
+    }
+
+    private static class BooleanEvaluator implements PredicateEvaluator {
+        private static final byte NONE = -1;
+        private static final byte FALSE = 0;
+        private static final byte TRUE = 1;
+
+        private final BooleanFilterPredicate.BooleanOperation operation;
+        private final DynamicValueResolver dynamicValue;
+        private final byte defaultValue;
+
+        BooleanEvaluator(BooleanFilterPredicate predicate, boolean constantKey) {
+            this.operation = predicate.getOperation();
+            this.dynamicValue = DynamicValueResolver.of(predicate.getValue());
+            Boolean value = constantKey ? null : predicate.getValue().getDefaultValue();
+            this.defaultValue = value == null ? NONE : (value ? TRUE : FALSE);
+        }
+
+        @Override
+        public boolean eval(EntityKeyValue ekv, DataSnapshot data, DynamicPredicateValueCtx ctx) {
+            byte val = toBool(ekv);
+            if (val == NONE) {
+                return false;
+            }
+            byte predicateValue = NONE;
+            if (dynamicValue != null) {
+                EntityKeyValue dynamic = dynamicValue.resolve(data, ctx);
+                if (dynamic != null) {
+                    predicateValue = toBool(dynamic);
+                }
+            }
+            if (predicateValue == NONE) {
+                predicateValue = defaultValue;
+                if (predicateValue == NONE) {
+                    return false;
+                }
+            }
+            switch (operation) {
+                case EQUAL:
+                    return val == predicateValue;
+                case NOT_EQUAL:
+                    return val != predicateValue;
+                default:
+                    throw new RuntimeException("Operation not supported: " + operation);
+            }
+        }
+
+        private static byte toBool(EntityKeyValue ekv) {
+            switch (ekv.getDataType()) {
+                case LONG:
+                    return ekv.getLngValue() != null ? (ekv.getLngValue() > 0 ? TRUE : FALSE) : NONE;
+                case DOUBLE:
+                    return ekv.getDblValue() != null ? (ekv.getDblValue() > 0 ? TRUE : FALSE) : NONE;
+                case BOOLEAN:
+                    return ekv.getBoolValue() != null ? (ekv.getBoolValue() ? TRUE : FALSE) : NONE;
+                case STRING:
+                    return Boolean.parseBoolean(ekv.getStrValue()) ? TRUE : FALSE;
+                case JSON:
+                    return Boolean.parseBoolean(ekv.getJsonValue()) ? TRUE : FALSE;
+                default:
+                    return NONE;
+            }
+        }
+    }
+
+    /**
+     * Resolves the dynamic value of the predicate: the device attribute, the customer or the tenant attribute,
+     * falling back to the next source if the value is inherited.
+     */
+    static class DynamicValueResolver {
+        private final DynamicValueSourceType sourceType;
+        private final String sourceAttribute;
+        private final AlarmConditionFilterKey deviceKey;
+        private final boolean inherit;
+
+        private DynamicValueResolver(DynamicValue<?> value) {
+            this.sourceType = value.getSourceType();
+            this.sourceAttribute = value.getSourceAttribute();
+            this.deviceKey = new AlarmConditionFilterKey(AlarmConditionKeyType.ATTRIBUTE, sourceAttribute);
+            this.inherit = value.isInherit();
+        }
+
+        static DynamicValueResolver of(FilterPredicateValue<?> value) {
+            return value.getDynamicValue() != null ? of(value.getDynamicValue()) : null;
+        }
+
+        static DynamicValueResolver of(DynamicValue<?> value) {
+            return value != null && value.getSourceType() != null ? new DynamicValueResolver(value) : null;
+        }
+
+        EntityKeyValue resolve(DataSnapshot data, DynamicPredicateValueCtx ctx) {
+            EntityKeyValue ekv = null;
+            switch (sourceType) {
+                case CURRENT_DEVICE:
+                    ekv = data.getValue(deviceKey);
+                    if (ekv != null || !inherit) {
+                        break;
+                    }
+                case CURRENT_CUSTOMER:
+                    ekv = ctx.getCustomerValue(sourceAttribute);
+                    if (ekv != null || !inherit) {
+                        break;
+                    }
+                case CURRENT_TENANT:
+                    ekv = ctx.getTenantValue(sourceAttribute);
+            }
+            return ekv;
+        }
+    }
+
+    private static EntityKeyValue toConstantValue(AlarmConditionFilter filter) {
+        EntityKeyValue value = new EntityKeyValue();
+        String valueStr = filter.getValue().toString();
+        switch (filter.getValueType()) {
+            case STRING:
+                value.setStrValue(valueStr);
+                break;
+            case DATE_TIME:
+                value.setLngValue(Long.valueOf(valueStr));
+                break;
+            case NUMERIC:
+                value.setDblValue(Double.valueOf(valueStr));
+                break;
+            case BOOLEAN:
+                value.setBoolValue(Boolean.valueOf(valueStr));
+                break;
+        }
+        return value;
+    }
+
+    private static String toStr(EntityKeyValue ekv) {
+        switch (ekv.getDataType()) {
+            case LONG:
+                return ekv.getLngValue() != null ? ekv.getLngValue().toString() : null;
+            case DOUBLE:
+                return ekv.getDblValue() != null ? ekv.getDblValue().toString() : null;
+            case BOOLEAN:
+                return ekv.getBoolValue() != null ? ekv.getBoolValue().toString() : null;
+            case STRING:
+                return ekv.getStrValue();
+            case JSON:
+                return ekv.getJsonValue();
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Returns NaN if the value is missing or is not a number.
+     */
+    static double toDouble(EntityKeyValue ekv) {
+        switch (ekv.getDataType()) {
+            case LONG:
+                return ekv.getLngValue() != null ? ekv.getLngValue() : Double.NaN;
+            case DOUBLE:
+                return ekv.getDblValue() != null ? ekv.getDblValue() : Double.NaN;
+            case BOOLEAN:
+                return ekv.getBoolValue() != null ? (ekv.getBoolValue() ? 1.0 : 0.0) : Double.NaN;
+            case STRING:
+                return parseDouble(ekv.getStrValue());
+            case JSON:
+                return parseDouble(ekv.getJsonValue());
+            default:
+                return Double.NaN;
+        }
+    }
+
+    private static double parseDouble(String value) {
+        try {
+            return Double.parseDouble(value);
+        } catch (RuntimeException e) {
+            return Double.NaN;
+        }
+    }
+}
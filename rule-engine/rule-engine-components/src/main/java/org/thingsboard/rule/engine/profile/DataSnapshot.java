@@ -80,6 +80,13 @@ class DataSnapshot {
         }
     }
 
+    /**
+     * Copies the values of the other snapshot, which keys are present in this snapshot.
+     */
+    void putAll(DataSnapshot other) {
+        other.values.forEach((key, value) -> putIfKeyExists(key, value, false));
+    }
+
     EntityKeyValue getValue(AlarmConditionFilterKey key) {
         return values.get(key);
     }
@@ -15,6 +15,9 @@
  */
 package org.thingsboard.rule.engine.profile;
 
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.gson.JsonParser;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.util.StringUtils;
@@ -45,69 +48,87 @@ import org.thingsboard.server.common.transport.adaptor.JsonConverter;
 import org.thingsboard.server.dao.sql.query.EntityKeyMapping;
 import org.thingsboard.common.util.JacksonUtil;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
+/**
+ * Alarm rules state of the device. All methods are called by the rule node actor only.
+ * <p>
+ * The latest values snapshot and the persisted state are loaded asynchronously. Messages received while the data
+ * is loading are queued and processed in the same order once the rule node receives the notification
+ * about the loaded data. The persisted state is not saved on each change, the state change listener is notified
+ * instead and the rule node saves the latest state in batches.
+ */
 @Slf4j
 class DeviceState {
 
     private final boolean persistState;
     private final DeviceId deviceId;
     private final ProfileState deviceProfile;
-    private RuleNodeState state;
+    private final Consumer<DeviceId> stateChangeListener;
+    private volatile RuleNodeState state;
     private PersistedDeviceState pds;
     private DataSnapshot latestValues;
     private final ConcurrentMap<String, AlarmState> alarmStates = new ConcurrentHashMap<>();
     private final DynamicPredicateValueCtx dynamicPredicateValueCtx;
 
-    DeviceState(TbContext ctx, TbDeviceProfileNodeConfiguration config, DeviceId deviceId, ProfileState deviceProfile, RuleNodeState state) {
+    private Set<AlarmConditionFilterKey> fetchedKeys;
+    private Set<AlarmConditionFilterKey> loadingKeys;
+    private ListenableFuture<DataSnapshot> snapshotFuture;
+    private ListenableFuture<RuleNodeState> stateFuture;
+    private final Queue<TbMsg> pendingMsgs = new ArrayDeque<>();
+
+    DeviceState(TbContext ctx, TbDeviceProfileNodeConfiguration config, DeviceId deviceId, ProfileState deviceProfile,
+                RuleNodeState state, Consumer<DeviceId> stateChangeListener) {
         this.persistState = config.isPersistAlarmRulesState();
         this.deviceId = deviceId;
         this.deviceProfile = deviceProfile;
+        this.stateChangeListener = stateChangeListener;
 
         this.dynamicPredicateValueCtx = new DynamicPredicateValueCtxImpl(ctx.getTenantId(), deviceId, ctx);
 
-        if (config.isPersistAlarmRulesState()) {
-            if (state != null) {
-                this.state = state;
-            } else {
-                this.state = ctx.findRuleNodeStateForEntity(deviceId);
-            }
-            if (this.state != null) {
-                pds = JacksonUtil.fromString(this.state.getStateData(), PersistedDeviceState.class);
-            } else {
-                this.state = new RuleNodeState();
-                this.state.setRuleNodeId(ctx.getSelfId());
-                this.state.setEntityId(deviceId);
-                pds = new PersistedDeviceState();
-                pds.setAlarmStates(new HashMap<>());
-            }
+        if (persistState && state != null) {
+            initPersistedState(ctx, state);
         }
-        if (pds != null) {
-            for (DeviceProfileAlarm alarm : deviceProfile.getAlarmSettings()) {
-                alarmStates.computeIfAbsent(alarm.getId(),
-                        a -> new AlarmState(deviceProfile, deviceId, alarm, getOrInitPersistedAlarmState(alarm), dynamicPredicateValueCtx));
-            }
+    }
+
+    private void initPersistedState(TbContext ctx, RuleNodeState state) {
+        if (state != null) {
+            this.state = state;
+            pds = JacksonUtil.fromString(state.getStateData(), PersistedDeviceState.class);
+        } else {
+            RuleNodeState newState = new RuleNodeState();
+            newState.setRuleNodeId(ctx.getSelfId());
+            newState.setEntityId(deviceId);
+            this.state = newState;
+            pds = new PersistedDeviceState();
+            pds.setAlarmStates(new HashMap<>());
+        }
+        for (DeviceProfileAlarm alarm : deviceProfile.getAlarmSettings()) {
+            alarmStates.computeIfAbsent(alarm.getId(),
+                    a -> new AlarmState(deviceProfile, deviceId, alarm, getOrInitPersistedAlarmState(alarm), dynamicPredicateValueCtx));
         }
     }
 
-    public void updateProfile(TbContext ctx, DeviceProfile deviceProfile) throws ExecutionException, InterruptedException {
-        Set<AlarmConditionFilterKey> oldKeys = Set.copyOf(this.deviceProfile.getEntityKeys());
+    public void updateProfile(TbContext ctx, DeviceProfile deviceProfile) throws ExecutionException {
         this.deviceProfile.updateDeviceProfile(deviceProfile);
-        if (latestValues != null) {
-            Set<AlarmConditionFilterKey> keysToFetch = new HashSet<>(this.deviceProfile.getEntityKeys());
-            keysToFetch.removeAll(oldKeys);
-            if (!keysToFetch.isEmpty()) {
-                addEntityKeysToSnapshot(ctx, deviceId, keysToFetch, latestValues);
-            }
+        if (latestValues != null && !isLoading()) {
+            loadMissingData(ctx);
+        }
+        if (persistState && pds == null) {
+            // alarm states are created once the persisted state is loaded
+            return;
         }
         Set<String> newAlarmStateIds = this.deviceProfile.getAlarmSettings().stream().map(DeviceProfileAlarm::getId).collect(Collectors.toSet());
         alarmStates.keySet().removeIf(id -> !newAlarmStateIds.contains(id));
@@ -127,15 +148,145 @@ class DeviceState {
             stateChanged |= state.process(ctx, ts);
         }
         if (persistState && stateChanged) {
-            state.setStateData(JacksonUtil.toString(pds));
-            state = ctx.saveRuleNodeState(state);
+            stateChangeListener.accept(deviceId);
+        }
+    }
+
+    /**
+     * Checks that the duration of some alarm condition is being counted, so the alarms must be harvested periodically.
+     */
+    public boolean hasPendingTimers() {
+        for (AlarmState alarmState : alarmStates.values()) {
+            if (alarmState.hasPendingTimers()) {
+                return true;
+            }
         }
+        return false;
     }
 
     public void process(TbContext ctx, TbMsg msg) throws ExecutionException, InterruptedException {
+        if (!isLoading() && (isReady() || loadMissingData(ctx))) {
+            doProcess(ctx, msg);
+        } else {
+            pendingMsgs.add(msg);
+        }
+    }
+
+    /**
+     * Applies the loaded data and processes the queued messages. Called once the rule node is notified that
+     * the loading is done.
+     */
+    public void onDataLoaded(TbContext ctx) {
+        if (!isLoading() || !snapshotFuture.isDone() || !stateFuture.isDone()) {
+            return;
+        }
+        try {
+            applyLoadedData(ctx);
+            if (!loadMissingData(ctx)) {
+                // the profile was updated while loading
+                return;
+            }
+        } catch (Exception e) {
+            log.debug("[{}] Failed to load the alarm rules state", deviceId, e);
+            Throwable cause = e instanceof ExecutionException && e.getCause() != null ? e.getCause() : e;
+            TbMsg msg;
+            while ((msg = pendingMsgs.poll()) != null) {
+                ctx.tellFailure(msg, cause);
+            }
+            return;
+        }
+        TbMsg msg;
+        while (!isLoading() && (msg = pendingMsgs.poll()) != null) {
+            try {
+                doProcess(ctx, msg);
+            } catch (Exception e) {
+                ctx.tellFailure(msg, e);
+            }
+        }
+    }
+
+    /**
+     * Returns the messages that were not processed yet, since the device state is removed.
+     */
+    public List<TbMsg> removePendingMsgs() {
+        List<TbMsg> result = new ArrayList<>(pendingMsgs);
+        pendingMsgs.clear();
+        return result;
+    }
+
+    /**
+     * Returns the copy of the latest persisted state to save.
+     */
+    public RuleNodeState getStateToPersist() {
+        RuleNodeState result = new RuleNodeState(state);
+        result.setRuleNodeId(state.getRuleNodeId());
+        result.setEntityId(state.getEntityId());
+        result.setStateData(JacksonUtil.toString(pds));
+        return result;
+    }
+
+    /**
+     * Called by the state writer thread, so the next save updates the same record.
+     */
+    public void onStatePersisted(RuleNodeState savedState) {
+        if (savedState != null) {
+            this.state = savedState;
+        }
+    }
+
+    private boolean isLoading() {
+        return snapshotFuture != null;
+    }
+
+    private boolean isReady() {
+        return latestValues != null && (!persistState || pds != null);
+    }
+
+    /**
+     * Starts loading of the snapshot values and the persisted state that are not loaded yet.
+     * Returns true if all the data is available and the messages may be processed.
+     */
+    private boolean loadMissingData(TbContext ctx) throws ExecutionException {
+        Set<AlarmConditionFilterKey> keysToFetch = new HashSet<>(deviceProfile.getEntityKeys());
+        if (latestValues != null) {
+            keysToFetch.removeAll(fetchedKeys);
+        }
+        boolean fetchState = persistState && pds == null;
+        if (latestValues != null && keysToFetch.isEmpty() && !fetchState) {
+            fetchedKeys = Set.copyOf(deviceProfile.getEntityKeys());
+            return true;
+        }
+        loadingKeys = Set.copyOf(deviceProfile.getEntityKeys());
+        snapshotFuture = fetchSnapshot(ctx, deviceId, keysToFetch);
+        stateFuture = fetchState ? ctx.getDbCallbackExecutor().executeAsync(() -> ctx.findRuleNodeStateForEntity(deviceId))
+                : Futures.immediateFuture(null);
+        if (snapshotFuture.isDone() && stateFuture.isDone()) {
+            applyLoadedData(ctx);
+            return true;
+        }
+        Futures.whenAllComplete(snapshotFuture, stateFuture)
+                .run(() -> ctx.tellSelf(TbDeviceProfileNode.newDataLoadedMsg(deviceId), 0L), MoreExecutors.directExecutor());
+        return false;
+    }
+
+    private void applyLoadedData(TbContext ctx) throws ExecutionException {
+        ListenableFuture<DataSnapshot> snapshotFuture = this.snapshotFuture;
+        ListenableFuture<RuleNodeState> stateFuture = this.stateFuture;
+        this.snapshotFuture = null;
+        this.stateFuture = null;
+        DataSnapshot snapshot = Futures.getDone(snapshotFuture);
+        RuleNodeState loadedState = Futures.getDone(stateFuture);
         if (latestValues == null) {
-            latestValues = fetchLatestValues(ctx, deviceId);
+            latestValues = new DataSnapshot(deviceProfile.getEntityKeys());
         }
+        latestValues.putAll(snapshot);
+        fetchedKeys = loadingKeys;
+        if (persistState && pds == null) {
+            initPersistedState(ctx, loadedState);
+        }
+    }
+
+    private void doProcess(TbContext ctx, TbMsg msg) throws ExecutionException, InterruptedException {
         boolean stateChanged = false;
         if (msg.getType().equals(SessionMsgType.POST_TELEMETRY_REQUEST.name())) {
             stateChanged = processTelemetry(ctx, msg);
@@ -160,8 +311,7 @@ class DeviceState {
             ctx.tellSuccess(msg);
         }
         if (persistState && stateChanged) {
-            state.setStateData(JacksonUtil.toString(pds));
-            state = ctx.saveRuleNodeState(state);
+            stateChangeListener.accept(deviceId);
         }
     }
 
@@ -252,7 +402,9 @@ class DeviceState {
 
     protected boolean processTelemetry(TbContext ctx, TbMsg msg) throws ExecutionException, InterruptedException {
         boolean stateChanged = false;
-        Map<Long, List<KvEntry>> tsKvMap = JsonConverter.convertToSortedTelemetry(new JsonParser().parse(msg.getData()), TbMsgTimeseriesNode.getTs(msg));
+        long msgTs = TbMsgTimeseriesNode.getTs(msg);
+        Map<Long, List<KvEntry>> tsKvMap = msg.hasKvData() ? TbMsgTimeseriesNode.getKvDataTelemetry(msg, msgTs) :
+                JsonConverter.convertToSortedTelemetry(new JsonParser().parse(msg.getData()), msgTs);
         // iterate over data by ts (ASC order).
         for (Map.Entry<Long, List<KvEntry>> entry : tsKvMap.entrySet()) {
             Long ts = entry.getKey();
@@ -313,14 +465,12 @@ class DeviceState {
         return EntityKeyType.ATTRIBUTE;
     }
 
-    private DataSnapshot fetchLatestValues(TbContext ctx, EntityId originator) throws ExecutionException, InterruptedException {
-        Set<AlarmConditionFilterKey> entityKeysToFetch = deviceProfile.getEntityKeys();
+    /**
+     * Fetches the values of the keys. The device fields are read from the device cache synchronously,
+     * the attributes and the latest telemetry are read asynchronously.
+     */
+    private ListenableFuture<DataSnapshot> fetchSnapshot(TbContext ctx, EntityId originator, Set<AlarmConditionFilterKey> entityKeysToFetch) {
         DataSnapshot result = new DataSnapshot(entityKeysToFetch);
-        addEntityKeysToSnapshot(ctx, originator, entityKeysToFetch, result);
-        return result;
-    }
-
-    private void addEntityKeysToSnapshot(TbContext ctx, EntityId originator, Set<AlarmConditionFilterKey> entityKeysToFetch, DataSnapshot result) throws InterruptedException, ExecutionException {
         Set<String> attributeKeys = new HashSet<>();
         Set<String> latestTsKeys = new HashSet<>();
 
@@ -358,19 +508,36 @@ class DeviceState {
             }
         }
 
+        List<ListenableFuture<?>> futures = new ArrayList<>();
+        ListenableFuture<List<TsKvEntry>> latestTsFuture = null;
         if (!latestTsKeys.isEmpty()) {
-            List<TsKvEntry> data = ctx.getTimeseriesService().findLatest(ctx.getTenantId(), originator, latestTsKeys).get();
-            for (TsKvEntry entry : data) {
-                if (entry.getValue() != null) {
-                    result.putValue(new AlarmConditionFilterKey(AlarmConditionKeyType.TIME_SERIES, entry.getKey()), entry.getTs(), toEntityValue(entry));
-                }
-            }
+            latestTsFuture = ctx.getTimeseriesService().findLatest(ctx.getTenantId(), originator, latestTsKeys);
+            futures.add(latestTsFuture);
         }
+        List<ListenableFuture<List<AttributeKvEntry>>> attributeFutures = new ArrayList<>();
         if (!attributeKeys.isEmpty()) {
-            addToSnapshot(result, ctx.getAttributesService().find(ctx.getTenantId(), originator, DataConstants.CLIENT_SCOPE, attributeKeys).get());
-            addToSnapshot(result, ctx.getAttributesService().find(ctx.getTenantId(), originator, DataConstants.SHARED_SCOPE, attributeKeys).get());
-            addToSnapshot(result, ctx.getAttributesService().find(ctx.getTenantId(), originator, DataConstants.SERVER_SCOPE, attributeKeys).get());
+            for (String scope : new String[]{DataConstants.CLIENT_SCOPE, DataConstants.SHARED_SCOPE, DataConstants.SERVER_SCOPE}) {
+                attributeFutures.add(ctx.getAttributesService().find(ctx.getTenantId(), originator, scope, attributeKeys));
+            }
+            futures.addAll(attributeFutures);
+        }
+        if (futures.isEmpty()) {
+            return Futures.immediateFuture(result);
         }
+        ListenableFuture<List<TsKvEntry>> latestTs = latestTsFuture;
+        return Futures.whenAllSucceed(futures).call(() -> {
+            if (latestTs != null) {
+                for (TsKvEntry entry : Futures.getDone(latestTs)) {
+                    if (entry.getValue() != null) {
+                        result.putValue(new AlarmConditionFilterKey(AlarmConditionKeyType.TIME_SERIES, entry.getKey()), entry.getTs(), toEntityValue(entry));
+                    }
+                }
+            }
+            for (ListenableFuture<List<AttributeKvEntry>> attributeFuture : attributeFutures) {
+                addToSnapshot(result, Futures.getDone(attributeFuture));
+            }
+            return result;
+        }, MoreExecutors.directExecutor());
     }
 
     private void addToSnapshot(DataSnapshot snapshot, List<AttributeKvEntry> data) {
@@ -17,6 +17,8 @@ package org.thingsboard.rule.engine.profile;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import lombok.extern.slf4j.Slf4j;
 import org.thingsboard.rule.engine.api.RuleEngineDeviceProfileCache;
 import org.thingsboard.rule.engine.api.RuleNode;
@@ -40,7 +42,12 @@ import org.thingsboard.server.common.msg.TbMsgMetaData;
 import org.thingsboard.server.common.msg.queue.PartitionChangeMsg;
 import org.thingsboard.common.util.JacksonUtil;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
@@ -63,11 +70,22 @@ public class TbDeviceProfileNode implements TbNode {
     private static final String PERIODIC_MSG_TYPE = "TbDeviceProfilePeriodicMsg";
     private static final String PROFILE_UPDATE_MSG_TYPE = "TbDeviceProfileUpdateMsg";
     private static final String DEVICE_UPDATE_MSG_TYPE = "TbDeviceUpdateMsg";
+    private static final String DATA_LOADED_MSG_TYPE = "TbDeviceProfileDataLoadedMsg";
+    private static final String PERSIST_STATES_MSG_TYPE = "TbDeviceProfilePersistStatesMsg";
+    private static final long PERSIST_STATES_INTERVAL_MS = TimeUnit.SECONDS.toMillis(1);
+    private static final long PERSIST_STATES_ON_DESTROY_TIMEOUT_MS = TimeUnit.SECONDS.toMillis(10);
 
     private TbDeviceProfileNodeConfiguration config;
     private RuleEngineDeviceProfileCache cache;
     private TbContext ctx;
     private final Map<DeviceId, DeviceState> deviceStates = new ConcurrentHashMap<>();
+    // Devices with the duration of the alarm conditions being counted. Only these devices are checked by the periodic harvesting
+    private final Set<DeviceId> devicesWithTimers = new HashSet<>();
+    // Devices with the alarm rules state changed since the last save. The state is saved in batches, once per interval
+    private final Set<DeviceId> changedStates = new LinkedHashSet<>();
+    private boolean persistStatesScheduled;
+    // Chain of the state writes, so the writes of the node are executed one by one in order
+    private ListenableFuture<?> stateWrites = Futures.immediateFuture(null);
 
     @Override
     public void init(TbContext ctx, TbNodeConfiguration configuration) throws TbNodeException {
@@ -86,7 +104,11 @@ public class TbDeviceProfileNode implements TbNode {
                     for (RuleNodeState rns : states.getData()) {
                         fetchCount++;
                         if (rns.getEntityId().getEntityType().equals(EntityType.DEVICE) && ctx.isLocalEntity(rns.getEntityId())) {
-                            getOrCreateDeviceState(ctx, new DeviceId(rns.getEntityId().getId()), rns);
+                            DeviceId deviceId = new DeviceId(rns.getEntityId().getId());
+                            DeviceState deviceState = getOrCreateDeviceState(ctx, deviceId, rns);
+                            if (deviceState != null) {
+                                updateTimers(deviceId, deviceState);
+                            }
                         }
                     }
                 }
@@ -110,6 +132,19 @@ public class TbDeviceProfileNode implements TbNode {
         if (msg.getType().equals(PERIODIC_MSG_TYPE)) {
             scheduleAlarmHarvesting(ctx, msg);
             harvestAlarms(ctx, System.currentTimeMillis());
+        } else if (msg.getType().equals(DATA_LOADED_MSG_TYPE)) {
+            DeviceId deviceId = new DeviceId(msg.getOriginator().getId());
+            DeviceState deviceState = deviceStates.get(deviceId);
+            if (deviceState != null) {
+                try {
+                    deviceState.onDataLoaded(ctx);
+                } finally {
+                    updateTimers(deviceId, deviceState);
+                }
+            }
+        } else if (msg.getType().equals(PERSIST_STATES_MSG_TYPE)) {
+            persistStatesScheduled = false;
+            persistChangedStates();
         } else if (msg.getType().equals(PROFILE_UPDATE_MSG_TYPE)) {
             updateProfile(ctx, new DeviceProfileId(UUID.fromString(msg.getData())));
         } else if (msg.getType().equals(DEVICE_UPDATE_MSG_TYPE)) {
@@ -132,7 +167,11 @@ public class TbDeviceProfileNode implements TbNode {
                 } else {
                     DeviceState deviceState = getOrCreateDeviceState(ctx, deviceId, null);
                     if (deviceState != null) {
-                        deviceState.process(ctx, msg);
+                        try {
+                            deviceState.process(ctx, msg);
+                        } finally {
+                            updateTimers(deviceId, deviceState);
+                        }
                     } else {
                         log.info("Device was not found! Most probably device [" + deviceId + "] has been removed from the database. Acknowledging msg.");
                         ctx.ack(msg);
@@ -146,14 +185,39 @@ public class TbDeviceProfileNode implements TbNode {
 
     @Override
     public void onPartitionChangeMsg(TbContext ctx, PartitionChangeMsg msg) {
+        persistChangedStates();
         // Cleanup the cache for all entities that are no longer assigned to current server partitions
-        deviceStates.entrySet().removeIf(entry -> !ctx.isLocalEntity(entry.getKey()));
+        deviceStates.entrySet().removeIf(entry -> {
+            if (ctx.isLocalEntity(entry.getKey())) {
+                return false;
+            }
+            devicesWithTimers.remove(entry.getKey());
+            // the device is processed by other server now, so the messages queued while the data was loading are not processed here
+            failPendingMsgs(entry.getValue(), "Device [" + entry.getKey() + "] is processed by other server now");
+            return true;
+        });
     }
 
     @Override
     public void destroy() {
         ctx.removeListeners();
+        persistChangedStates();
+        try {
+            stateWrites.get(PERSIST_STATES_ON_DESTROY_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            log.warn("[{}] Failed to wait for the alarm rules state to be saved", ctx.getSelfId(), e);
+        }
+        deviceStates.values().forEach(state -> failPendingMsgs(state, "Rule node [" + ctx.getSelfId() + "] is stopped"));
         deviceStates.clear();
+        devicesWithTimers.clear();
+    }
+
+    private void failPendingMsgs(DeviceState state, String reason) {
+        List<TbMsg> pendingMsgs = state.removePendingMsgs();
+        if (!pendingMsgs.isEmpty()) {
+            RuntimeException error = new RuntimeException(reason + ", the device data was not loaded");
+            pendingMsgs.forEach(msg -> ctx.tellFailure(msg, error));
+        }
     }
 
     protected DeviceState getOrCreateDeviceState(TbContext ctx, DeviceId deviceId, RuleNodeState rns) {
@@ -161,21 +225,87 @@ public class TbDeviceProfileNode implements TbNode {
         if (deviceState == null) {
             DeviceProfile deviceProfile = cache.get(ctx.getTenantId(), deviceId);
             if (deviceProfile != null) {
-                deviceState = new DeviceState(ctx, config, deviceId, new ProfileState(deviceProfile), rns);
+                deviceState = new DeviceState(ctx, config, deviceId, new ProfileState(deviceProfile), rns, this::onStateChanged);
                 deviceStates.put(deviceId, deviceState);
             }
         }
         return deviceState;
     }
 
+    static TbMsg newDataLoadedMsg(DeviceId deviceId) {
+        return TbMsg.newMsg(DATA_LOADED_MSG_TYPE, deviceId, TbMsgMetaData.EMPTY, "{}");
+    }
+
+    private void onStateChanged(DeviceId deviceId) {
+        changedStates.add(deviceId);
+        if (!persistStatesScheduled) {
+            persistStatesScheduled = true;
+            ctx.tellSelf(TbMsg.newMsg(PERSIST_STATES_MSG_TYPE, ctx.getTenantId(), TbMsgMetaData.EMPTY, "{}"), PERSIST_STATES_INTERVAL_MS);
+        }
+    }
+
+    /**
+     * Serializes the latest states of the changed devices and saves them in a single batch. Multiple changes
+     * of the same device since the last save are written once.
+     */
+    private void persistChangedStates() {
+        if (changedStates.isEmpty()) {
+            return;
+        }
+        List<DeviceState> states = new ArrayList<>(changedStates.size());
+        List<RuleNodeState> batch = new ArrayList<>(changedStates.size());
+        for (DeviceId deviceId : changedStates) {
+            DeviceState state = deviceStates.get(deviceId);
+            if (state != null) {
+                states.add(state);
+                batch.add(state.getStateToPersist());
+            }
+        }
+        changedStates.clear();
+        log.trace("[{}] Saving alarm rules state of {} devices", ctx.getSelfId(), batch.size());
+        addStateWrite(() -> {
+            for (int i = 0; i < batch.size(); i++) {
+                states.get(i).onStatePersisted(ctx.saveRuleNodeState(batch.get(i)));
+            }
+        });
+    }
+
+    private void addStateWrite(Runnable write) {
+        stateWrites = Futures.transform(stateWrites, r -> {
+            try {
+                write.run();
+            } catch (Exception e) {
+                log.warn("[{}] Failed to save the alarm rules state", ctx.getSelfId(), e);
+            }
+            return null;
+        }, ctx.getDbCallbackExecutor());
+    }
+
     protected void scheduleAlarmHarvesting(TbContext ctx, TbMsg msg) {
         TbMsg periodicCheck = TbMsg.newMsg(PERIODIC_MSG_TYPE, ctx.getTenantId(), msg != null ? msg.getCustomerId() : null, TbMsgMetaData.EMPTY, "{}");
         ctx.tellSelf(periodicCheck, TimeUnit.MINUTES.toMillis(1));
     }
 
     protected void harvestAlarms(TbContext ctx, long ts) throws ExecutionException, InterruptedException {
-        for (DeviceState state : deviceStates.values()) {
-            state.harvestAlarms(ctx, ts);
+        for (DeviceId deviceId : new ArrayList<>(devicesWithTimers)) {
+            DeviceState state = deviceStates.get(deviceId);
+            if (state != null) {
+                try {
+                    state.harvestAlarms(ctx, ts);
+                } finally {
+                    updateTimers(deviceId, state);
+                }
+            } else {
+                devicesWithTimers.remove(deviceId);
+            }
+        }
+    }
+
+    private void updateTimers(DeviceId deviceId, DeviceState state) {
+        if (state.hasPendingTimers()) {
+            devicesWithTimers.add(deviceId);
+        } else {
+            devicesWithTimers.remove(deviceId);
         }
     }
 
@@ -183,9 +313,11 @@ public class TbDeviceProfileNode implements TbNode {
         DeviceProfile deviceProfile = cache.get(ctx.getTenantId(), deviceProfileId);
         if (deviceProfile != null) {
             log.debug("[{}] Received device profile update notification: {}", ctx.getSelfId(), deviceProfile);
-            for (DeviceState state : deviceStates.values()) {
+            for (Map.Entry<DeviceId, DeviceState> entry : deviceStates.entrySet()) {
+                DeviceState state = entry.getValue();
                 if (deviceProfile.getId().equals(state.getProfileId())) {
                     state.updateProfile(ctx, deviceProfile);
+                    updateTimers(entry.getKey(), state);
                 }
             }
         } else {
@@ -228,8 +360,14 @@ public class TbDeviceProfileNode implements TbNode {
 
     private void removeDeviceState(DeviceId deviceId) {
         DeviceState state = deviceStates.remove(deviceId);
+        changedStates.remove(deviceId);
+        devicesWithTimers.remove(deviceId);
+        if (state != null) {
+            // the messages queued while the data was loading are processed by the new device state
+            state.removePendingMsgs().forEach(msg -> ctx.tellSelf(msg, 0L));
+        }
         if (config.isPersistAlarmRulesState() && (state != null || !config.isFetchAlarmRulesStateOnStart())) {
-            ctx.removeRuleNodeStateForEntity(deviceId);
+            addStateWrite(() -> ctx.removeRuleNodeStateForEntity(deviceId));
         }
     }
 }
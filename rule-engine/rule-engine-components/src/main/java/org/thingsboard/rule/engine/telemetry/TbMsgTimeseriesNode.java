@@ -31,11 +31,13 @@ import org.thingsboard.server.common.data.kv.KvEntry;
 import org.thingsboard.server.common.data.kv.TsKvEntry;
 import org.thingsboard.server.common.data.plugin.ComponentType;
 import org.thingsboard.server.common.msg.TbMsg;
+import org.thingsboard.server.common.msg.TbMsgKvDataUtils;
 import org.thingsboard.server.common.msg.session.SessionMsgType;
 import org.thingsboard.server.common.transport.adaptor.JsonConverter;
 import org.thingsboard.server.common.data.tenant.profile.DefaultTenantProfileConfiguration;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
@@ -77,10 +79,9 @@ public class TbMsgTimeseriesNode implements TbNode {
             return;
         }
         long ts = getTs(msg);
-        String src = msg.getData();
-        Map<Long, List<KvEntry>> tsKvMap = JsonConverter.convertToTelemetry(new JsonParser().parse(src), ts);
+        Map<Long, List<KvEntry>> tsKvMap = msg.hasKvData() ? getKvDataTelemetry(msg, ts) : JsonConverter.convertToTelemetry(new JsonParser().parse(msg.getData()), ts);
         if (tsKvMap.isEmpty()) {
-            ctx.tellFailure(msg, new IllegalArgumentException("Msg body is empty: " + src));
+            ctx.tellFailure(msg, new IllegalArgumentException("Msg body is empty: " + msg.getData()));
             return;
         }
         List<TsKvEntry> tsKvEntryList = new ArrayList<>();
@@ -97,6 +98,14 @@ public class TbMsgTimeseriesNode implements TbNode {
         ctx.getTelemetryService().saveAndNotify(ctx.getTenantId(), msg.getCustomerId(), msg.getOriginator(), tsKvEntryList, ttl, new TelemetryNodeCallback(ctx, msg));
     }
 
+    /**
+     * Uses the typed data of the message as is, so the JSON text of the message data is neither rendered nor parsed.
+     */
+    public static Map<Long, List<KvEntry>> getKvDataTelemetry(TbMsg msg, long ts) {
+        List<KvEntry> kvEntries = TbMsgKvDataUtils.toKvEntries(msg.getKvData());
+        return kvEntries.isEmpty() ? Collections.emptyMap() : Collections.singletonMap(ts, kvEntries);
+    }
+
     public static long getTs(TbMsg msg) {
         long ts = -1;
         String tsStr = msg.getMetaData().getValue("ts");
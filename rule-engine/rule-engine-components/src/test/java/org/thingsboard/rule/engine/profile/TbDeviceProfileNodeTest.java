@@ -19,12 +19,16 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.AdditionalAnswers;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.MockitoJUnitRunner;
+import org.thingsboard.common.util.ListeningExecutor;
 import org.thingsboard.rule.engine.api.RuleEngineAlarmService;
 import org.thingsboard.rule.engine.api.RuleEngineDeviceProfileCache;
 import org.thingsboard.rule.engine.api.TbContext;
@@ -49,6 +53,7 @@ import org.thingsboard.server.common.data.id.DeviceId;
 import org.thingsboard.server.common.data.id.DeviceProfileId;
 import org.thingsboard.server.common.data.id.TenantId;
 import org.thingsboard.server.common.data.kv.AttributeKvEntry;
+import org.thingsboard.server.common.data.kv.TsKvEntry;
 import org.thingsboard.server.common.data.query.BooleanFilterPredicate;
 import org.thingsboard.server.common.data.query.DynamicValue;
 import org.thingsboard.server.common.data.query.DynamicValueSourceType;
@@ -74,6 +79,7 @@ import java.util.List;
 import java.util.Optional;
 import java.util.TreeMap;
 import java.util.UUID;
+import java.util.concurrent.Callable;
 import java.util.concurrent.TimeUnit;
 
 import static org.mockito.ArgumentMatchers.eq;
@@ -1411,14 +1417,270 @@ public class TbDeviceProfileNodeTest {
         verify(ctx, Mockito.never()).tellFailure(Mockito.any(), Mockito.any());
     }
 
+    @Test
+    public void testAlarmCreateWhenSnapshotIsLoadedAsynchronously() throws Exception {
+        init();
+
+        DeviceProfile deviceProfile = new DeviceProfile();
+        DeviceProfileData deviceProfileData = new DeviceProfileData();
+
+        AlarmConditionFilter highTempFilter = new AlarmConditionFilter();
+        highTempFilter.setKey(new AlarmConditionFilterKey(AlarmConditionKeyType.TIME_SERIES, "temperature"));
+        highTempFilter.setValueType(EntityKeyValueType.NUMERIC);
+        NumericFilterPredicate highTemperaturePredicate = new NumericFilterPredicate();
+        highTemperaturePredicate.setOperation(NumericFilterPredicate.NumericOperation.GREATER);
+        highTemperaturePredicate.setValue(new FilterPredicateValue<>(30.0));
+        highTempFilter.setPredicate(highTemperaturePredicate);
+        AlarmCondition alarmCondition = new AlarmCondition();
+        alarmCondition.setCondition(Collections.singletonList(highTempFilter));
+        AlarmRule alarmRule = new AlarmRule();
+        alarmRule.setCondition(alarmCondition);
+        DeviceProfileAlarm dpa = new DeviceProfileAlarm();
+        dpa.setId("highTemperatureAlarmID");
+        dpa.setAlarmType("highTemperatureAlarm");
+        dpa.setCreateRules(new TreeMap<>(Collections.singletonMap(AlarmSeverity.CRITICAL, alarmRule)));
+
+        deviceProfileData.setAlarms(Collections.singletonList(dpa));
+        deviceProfile.setProfileData(deviceProfileData);
+
+        SettableFuture<List<TsKvEntry>> latestFuture = SettableFuture.create();
+        Mockito.when(cache.get(tenantId, deviceId)).thenReturn(deviceProfile);
+        Mockito.when(timeseriesService.findLatest(tenantId, deviceId, Collections.singleton("temperature")))
+                .thenReturn(latestFuture);
+        Mockito.when(alarmService.findLatestByOriginatorAndType(tenantId, deviceId, "highTemperatureAlarm")).thenReturn(Futures.immediateFuture(null));
+        Mockito.when(alarmService.createOrUpdateAlarm(Mockito.any())).thenAnswer(AdditionalAnswers.returnsFirstArg());
+
+        TbMsg theMsg = TbMsg.newMsg("ALARM", deviceId, new TbMsgMetaData(), "");
+        Mockito.when(ctx.newMsg(Mockito.anyString(), Mockito.anyString(), Mockito.any(), Mockito.any(), Mockito.any(), Mockito.anyString())).thenReturn(theMsg);
+
+        ObjectNode data = mapper.createObjectNode();
+        data.put("temperature", 42);
+        TbMsg msg = TbMsg.newMsg(SessionMsgType.POST_TELEMETRY_REQUEST.name(), deviceId, new TbMsgMetaData(),
+                TbMsgDataType.JSON, mapper.writeValueAsString(data), null, null);
+        TbMsg msg2 = TbMsg.newMsg(SessionMsgType.POST_TELEMETRY_REQUEST.name(), deviceId, new TbMsgMetaData(),
+                TbMsgDataType.JSON, mapper.writeValueAsString(data), null, null);
+        node.onMsg(ctx, msg);
+        node.onMsg(ctx, msg2);
+        verify(ctx, Mockito.never()).tellSuccess(Mockito.any());
+
+        latestFuture.set(Collections.emptyList());
+        ArgumentCaptor<TbMsg> loadedMsg = ArgumentCaptor.forClass(TbMsg.class);
+        verify(ctx).tellSelf(loadedMsg.capture(), eq(0L));
+        node.onMsg(ctx, loadedMsg.getValue());
+
+        InOrder inOrder = Mockito.inOrder(ctx);
+        inOrder.verify(ctx).tellSuccess(msg);
+        inOrder.verify(ctx).tellSuccess(msg2);
+        verify(ctx).enqueueForTellNext(theMsg, "Alarm Created");
+        verify(ctx, Mockito.never()).tellFailure(Mockito.any(), Mockito.any());
+    }
+
+    @Test
+    public void testPendingMsgsFailedWhenDeviceMovedToOtherServerWhileSnapshotIsLoading() throws Exception {
+        init();
+        Mockito.when(cache.get(tenantId, deviceId)).thenReturn(highTemperatureProfile());
+        Mockito.when(timeseriesService.findLatest(tenantId, deviceId, Collections.singleton("temperature")))
+                .thenReturn(SettableFuture.create());
+
+        TbMsg msg = telemetryMsg(42);
+        TbMsg msg2 = telemetryMsg(42);
+        node.onMsg(ctx, msg);
+        node.onMsg(ctx, msg2);
+
+        Mockito.when(ctx.isLocalEntity(deviceId)).thenReturn(false);
+        node.onPartitionChangeMsg(ctx, null);
+
+        verify(ctx).tellFailure(eq(msg), Mockito.any());
+        verify(ctx).tellFailure(eq(msg2), Mockito.any());
+        verify(ctx, Mockito.never()).ack(Mockito.any());
+        verify(ctx, Mockito.never()).tellSuccess(Mockito.any());
+    }
+
+    @Test
+    public void testPendingMsgsFailedWhenNodeDestroyedWhileSnapshotIsLoading() throws Exception {
+        init();
+        Mockito.when(cache.get(tenantId, deviceId)).thenReturn(highTemperatureProfile());
+        Mockito.when(timeseriesService.findLatest(tenantId, deviceId, Collections.singleton("temperature")))
+                .thenReturn(SettableFuture.create());
+
+        TbMsg msg = telemetryMsg(42);
+        node.onMsg(ctx, msg);
+        node.destroy();
+
+        verify(ctx).tellFailure(eq(msg), Mockito.any());
+        verify(ctx, Mockito.never()).ack(Mockito.any());
+        verify(ctx, Mockito.never()).tellSuccess(Mockito.any());
+    }
+
+    @Test
+    public void testAlarmRulesStateChangesPersistedOncePerInterval() throws Exception {
+        initWithPersistedState();
+
+        node.onMsg(ctx, telemetryMsg(42));
+        node.onMsg(ctx, telemetryMsg(42));
+        verify(ctx, Mockito.never()).saveRuleNodeState(Mockito.any());
+
+        ArgumentCaptor<TbMsg> persistMsg = ArgumentCaptor.forClass(TbMsg.class);
+        verify(ctx).tellSelf(persistMsg.capture(), eq(TimeUnit.SECONDS.toMillis(1)));
+        node.onMsg(ctx, persistMsg.getValue());
+        verify(ctx, Mockito.times(1)).saveRuleNodeState(Mockito.any());
+
+        node.onMsg(ctx, persistMsg.getValue());
+        verify(ctx, Mockito.times(1)).saveRuleNodeState(Mockito.any());
+    }
+
+    @Test
+    public void testAlarmRulesStatePersistedWhenDeviceMovedToOtherServer() throws Exception {
+        initWithPersistedState();
+
+        node.onMsg(ctx, telemetryMsg(42));
+        verify(ctx, Mockito.never()).saveRuleNodeState(Mockito.any());
+
+        Mockito.when(ctx.isLocalEntity(deviceId)).thenReturn(false);
+        node.onPartitionChangeMsg(ctx, null);
+        verify(ctx).saveRuleNodeState(Mockito.any());
+    }
+
+    @Test
+    public void testAlarmRulesStatePersistedWhenNodeDestroyed() throws Exception {
+        initWithPersistedState();
+
+        node.onMsg(ctx, telemetryMsg(42));
+        verify(ctx, Mockito.never()).saveRuleNodeState(Mockito.any());
+
+        node.destroy();
+        verify(ctx).saveRuleNodeState(Mockito.any());
+    }
+
+    @Test
+    public void testDurationAlarmCreatedByPeriodicCheck() throws Exception {
+        init();
+
+        DeviceProfile deviceProfile = new DeviceProfile();
+        DeviceProfileData deviceProfileData = new DeviceProfileData();
+
+        AlarmConditionFilter highTempFilter = new AlarmConditionFilter();
+        highTempFilter.setKey(new AlarmConditionFilterKey(AlarmConditionKeyType.TIME_SERIES, "temperature"));
+        highTempFilter.setValueType(EntityKeyValueType.NUMERIC);
+        NumericFilterPredicate highTemperaturePredicate = new NumericFilterPredicate();
+        highTemperaturePredicate.setOperation(NumericFilterPredicate.NumericOperation.GREATER);
+        highTemperaturePredicate.setValue(new FilterPredicateValue<>(30.0));
+        highTempFilter.setPredicate(highTemperaturePredicate);
+        AlarmCondition alarmCondition = new AlarmCondition();
+        alarmCondition.setCondition(Collections.singletonList(highTempFilter));
+        DurationAlarmConditionSpec durationSpec = new DurationAlarmConditionSpec();
+        durationSpec.setUnit(TimeUnit.SECONDS);
+        durationSpec.setPredicate(new FilterPredicateValue<>(5L));
+        alarmCondition.setSpec(durationSpec);
+        AlarmRule alarmRule = new AlarmRule();
+        alarmRule.setCondition(alarmCondition);
+        DeviceProfileAlarm dpa = new DeviceProfileAlarm();
+        dpa.setId("highTemperatureAlarmID");
+        dpa.setAlarmType("highTemperatureAlarm");
+        dpa.setCreateRules(new TreeMap<>(Collections.singletonMap(AlarmSeverity.CRITICAL, alarmRule)));
+
+        deviceProfileData.setAlarms(Collections.singletonList(dpa));
+        deviceProfile.setProfileData(deviceProfileData);
+
+        Mockito.when(cache.get(tenantId, deviceId)).thenReturn(deviceProfile);
+        Mockito.when(timeseriesService.findLatest(tenantId, deviceId, Collections.singleton("temperature")))
+                .thenReturn(Futures.immediateFuture(Collections.emptyList()));
+        Mockito.when(alarmService.findLatestByOriginatorAndType(tenantId, deviceId, "highTemperatureAlarm")).thenReturn(Futures.immediateFuture(null));
+        Mockito.when(alarmService.createOrUpdateAlarm(Mockito.any())).thenAnswer(AdditionalAnswers.returnsFirstArg());
+
+        TbMsg theMsg = TbMsg.newMsg("ALARM", deviceId, new TbMsgMetaData(), "");
+        Mockito.when(ctx.newMsg(Mockito.anyString(), Mockito.anyString(), Mockito.any(), Mockito.any(), Mockito.any(), Mockito.anyString())).thenReturn(theMsg);
+
+        ObjectNode data = mapper.createObjectNode();
+        data.put("temperature", 42);
+        TbMsgMetaData metaData = new TbMsgMetaData();
+        metaData.putValue("ts", String.valueOf(System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(10)));
+        TbMsg msg = TbMsg.newMsg(SessionMsgType.POST_TELEMETRY_REQUEST.name(), deviceId, metaData,
+                TbMsgDataType.JSON, mapper.writeValueAsString(data), null, null);
+        node.onMsg(ctx, msg);
+        verify(ctx).tellSuccess(msg);
+        verify(ctx, Mockito.never()).enqueueForTellNext(theMsg, "Alarm Created");
+
+        node.onMsg(ctx, TbMsg.newMsg("TbDeviceProfilePeriodicMsg", tenantId, new TbMsgMetaData(), "{}"));
+        verify(ctx).enqueueForTellNext(theMsg, "Alarm Created");
+        verify(ctx, Mockito.never()).tellFailure(Mockito.any(), Mockito.any());
+    }
+
+    private void initWithPersistedState() throws TbNodeException {
+        ObjectNode configuration = mapper.createObjectNode();
+        configuration.put("persistAlarmRulesState", true);
+        init(configuration);
+        Mockito.when(ctx.getDbCallbackExecutor()).thenReturn(new ListeningExecutor() {
+            @Override
+            public <T> ListenableFuture<T> executeAsync(Callable<T> task) {
+                try {
+                    return Futures.immediateFuture(task.call());
+                } catch (Exception e) {
+                    return Futures.immediateFailedFuture(e);
+                }
+            }
+
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        });
+
+        // the repeating condition counts the events, so every message changes the alarm rules state
+        DeviceProfile deviceProfile = highTemperatureProfile();
+        RepeatingAlarmConditionSpec repeatingSpec = new RepeatingAlarmConditionSpec();
+        repeatingSpec.setPredicate(new FilterPredicateValue<>(10));
+        deviceProfile.getProfileData().getAlarms().get(0).getCreateRules().get(AlarmSeverity.CRITICAL).getCondition().setSpec(repeatingSpec);
+
+        Mockito.when(cache.get(tenantId, deviceId)).thenReturn(deviceProfile);
+        Mockito.when(timeseriesService.findLatest(tenantId, deviceId, Collections.singleton("temperature")))
+                .thenReturn(Futures.immediateFuture(Collections.emptyList()));
+        Mockito.when(alarmService.findLatestByOriginatorAndType(tenantId, deviceId, "highTemperatureAlarm")).thenReturn(Futures.immediateFuture(null));
+    }
+
+    private DeviceProfile highTemperatureProfile() {
+        AlarmConditionFilter highTempFilter = new AlarmConditionFilter();
+        highTempFilter.setKey(new AlarmConditionFilterKey(AlarmConditionKeyType.TIME_SERIES, "temperature"));
+        highTempFilter.setValueType(EntityKeyValueType.NUMERIC);
+        NumericFilterPredicate highTemperaturePredicate = new NumericFilterPredicate();
+        highTemperaturePredicate.setOperation(NumericFilterPredicate.NumericOperation.GREATER);
+        highTemperaturePredicate.setValue(new FilterPredicateValue<>(30.0));
+        highTempFilter.setPredicate(highTemperaturePredicate);
+        AlarmCondition alarmCondition = new AlarmCondition();
+        alarmCondition.setCondition(Collections.singletonList(highTempFilter));
+        AlarmRule alarmRule = new AlarmRule();
+        alarmRule.setCondition(alarmCondition);
+        DeviceProfileAlarm dpa = new DeviceProfileAlarm();
+        dpa.setId("highTemperatureAlarmID");
+        dpa.setAlarmType("highTemperatureAlarm");
+        dpa.setCreateRules(new TreeMap<>(Collections.singletonMap(AlarmSeverity.CRITICAL, alarmRule)));
+
+        DeviceProfileData deviceProfileData = new DeviceProfileData();
+        deviceProfileData.setAlarms(Collections.singletonList(dpa));
+        DeviceProfile deviceProfile = new DeviceProfile();
+        deviceProfile.setProfileData(deviceProfileData);
+        return deviceProfile;
+    }
+
+    private TbMsg telemetryMsg(int temperature) throws Exception {
+        ObjectNode data = mapper.createObjectNode();
+        data.put("temperature", temperature);
+        return TbMsg.newMsg(SessionMsgType.POST_TELEMETRY_REQUEST.name(), deviceId, new TbMsgMetaData(),
+                TbMsgDataType.JSON, mapper.writeValueAsString(data), null, null);
+    }
+
     private void init() throws TbNodeException {
+        init(mapper.createObjectNode());
+    }
+
+    private void init(ObjectNode configuration) throws TbNodeException {
         Mockito.when(ctx.getTenantId()).thenReturn(tenantId);
         Mockito.when(ctx.getDeviceProfileCache()).thenReturn(cache);
         Mockito.when(ctx.getTimeseriesService()).thenReturn(timeseriesService);
         Mockito.when(ctx.getAlarmService()).thenReturn(alarmService);
         Mockito.when(ctx.getDeviceService()).thenReturn(deviceService);
         Mockito.when(ctx.getAttributesService()).thenReturn(attributesService);
-        TbNodeConfiguration nodeConfiguration = new TbNodeConfiguration(mapper.createObjectNode());
+        TbNodeConfiguration nodeConfiguration = new TbNodeConfiguration(configuration);
         node = new TbDeviceProfileNode();
         node.init(ctx, nodeConfiguration);
     }
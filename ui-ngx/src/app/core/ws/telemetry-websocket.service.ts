@@ -74,7 +74,7 @@ export class TelemetryWebsocketService implements TelemetryService {
   cmdsWrapper = new TelemetryPluginCmdsWrapper();
   telemetryUri: string;
 
-  dataStream: WebSocketSubject<TelemetryPluginCmdsWrapper | WebsocketDataMsg>;
+  dataStream: WebSocketSubject<TelemetryPluginCmdsWrapper | WebsocketDataMsg | WebsocketDataMsg[]>;
 
   constructor(private store: Store<AppState>,
               private authService: AuthService,
@@ -265,7 +265,11 @@ export class TelemetryWebsocketService implements TelemetryService {
 
     this.dataStream.subscribe((message) => {
         this.ngZone.runOutsideAngular(() => {
-          this.onMessage(message as WebsocketDataMsg);
+          if (Array.isArray(message)) {
+            message.forEach((msg) => this.onMessage(msg as WebsocketDataMsg));
+          } else {
+            this.onMessage(message as WebsocketDataMsg);
+          }
         });
     },
     (error) => {
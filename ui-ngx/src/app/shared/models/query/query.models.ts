@@ -699,6 +699,9 @@ export interface EntityDataPageLink {
   textSearch?: string;
   sortOrder?: EntityDataSortOrder;
   dynamic?: boolean;
+  afterSortValue?: string;
+  afterEntityId?: string;
+  estimateTotal?: boolean;
 }
 
 export interface AlarmDataPageLink extends EntityDataPageLink {